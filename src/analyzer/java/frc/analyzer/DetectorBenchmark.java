@@ -0,0 +1,196 @@
+package frc.analyzer;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Stream;
+
+import edu.wpi.first.util.datalog.DataLogReader;
+import edu.wpi.first.util.datalog.DataLogRecord;
+import frc.robot.Constants.CoralArmGripperConstants;
+import frc.robot.util.GamePieceDetector;
+import frc.robot.util.GamePieceDetector.GamePiece;
+
+/**
+ * Replays the logged gripper inputs of a directory of robot logs through the game piece detector,
+ * with the thresholds in Constants, and compares its detections with the beam break.
+ * <p>
+ * An intake runs from the gripper voltage going over the detector's intake voltage until it drops
+ * again. For each one the detection latency is measured from its start, and the lead over the beam
+ * break from the break to the detection, both on log timestamps. Intakes the beam saw but the
+ * detector didn't are counted as missed.
+ * <p>
+ * Run with {@code ./gradlew benchmarkDetector -Plogs=<log directory> -Pout=<output directory>}.
+ */
+public final class DetectorBenchmark {
+    private static final String gripperEntry = "CoralArmGripper/Inputs";
+    private static final String beamBreakEntry = "BeamBreak/Inputs";
+
+    private DetectorBenchmark() {}
+
+    /** Results for one log */
+    private static final class Result {
+        final String file;
+        long intakes = 0;
+        long detections = 0;
+        long missed = 0;
+        final MatchSummary.Stat detect_latency_ms = new MatchSummary.Stat();
+        final MatchSummary.Stat beam_break_latency_ms = new MatchSummary.Stat();
+        final MatchSummary.Stat lead_ms = new MatchSummary.Stat();
+
+        Result(String file) {
+            this.file = file;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Path log_directory = Path.of(args.length > 0 ? args[0] : "logs");
+        Path output_directory = Path.of(args.length > 1 ? args[1] : "build/analysis");
+
+        List<Path> logs;
+        try (Stream<Path> files = Files.walk(log_directory)) {
+            logs = files.filter(file -> file.getFileName().toString().endsWith(".wpilog")).sorted().toList();
+        }
+        if (logs.isEmpty()) {
+            System.err.println("No .wpilog files in " + log_directory.toAbsolutePath());
+            return;
+        }
+
+        Files.createDirectories(output_directory);
+        Path csv = output_directory.resolve("detector_benchmark.csv");
+        try (BufferedWriter writer = Files.newBufferedWriter(csv)) {
+            writer.write("file,intakes,detections,missed,detect_latency_mean_ms,detect_latency_max_ms,"
+                + "beam_break_latency_mean_ms,beam_break_latency_max_ms,lead_over_beam_break_mean_ms,lead_over_beam_break_min_ms");
+            writer.newLine();
+            for (Path log : logs) {
+                Result result;
+                try {
+                    result = run(log);
+                } catch (IOException | RuntimeException e) {
+                    System.err.println("Skipping " + log + ": " + e.getMessage());
+                    continue;
+                }
+
+                String row = String.format(Locale.ROOT, "\"%s\",%d,%d,%d,%.1f,%.1f,%.1f,%.1f,%.1f,%.1f",
+                    result.file, result.intakes, result.detections, result.missed,
+                    result.detect_latency_ms.mean(), result.detect_latency_ms.max,
+                    result.beam_break_latency_ms.mean(), result.beam_break_latency_ms.max,
+                    result.lead_ms.mean(), result.lead_ms.min);
+                writer.write(row);
+                writer.newLine();
+                System.out.println(row);
+            }
+        }
+        System.out.println("Wrote " + csv.toAbsolutePath());
+    }
+
+    private static Result run(Path path) throws IOException {
+        DataLogReader reader = new DataLogReader(path.toString());
+        if (!reader.isValid())
+            throw new IOException(path + " isn't a wpilog file");
+
+        GamePieceDetector detector = new GamePieceDetector(new GamePieceDetector.Config(
+            CoralArmGripperConstants.detectorFilterTimeConstant,
+            CoralArmGripperConstants.detectorFreeSpeedPerVolt,
+            CoralArmGripperConstants.detectorMinIntakeVoltage,
+            CoralArmGripperConstants.detectorStallSpeedRatio,
+            CoralArmGripperConstants.detectorCoralStallCurrent,
+            CoralArmGripperConstants.detectorAlgaeStallCurrent,
+            CoralArmGripperConstants.detectorStallDebounceTime,
+            CoralArmGripperConstants.detectorReleaseDebounceTime));
+
+        HashMap<Integer, String> names = new HashMap<>();
+        HashMap<Integer, String> types = new HashMap<>();
+        HashMap<String, StructSchema> schemas = new HashMap<>();
+        Result result = new Result(path.getFileName().toString());
+
+        boolean beam_broken = false;
+        boolean intaking = false;
+        // log timestamps in microseconds, -1 until seen during the current intake
+        long intake_start = -1, intake_break = -1, intake_detection = -1;
+
+        for (DataLogRecord record : reader) {
+            if (record.isStart()) {
+                DataLogRecord.StartRecordData start = record.getStartData();
+                names.put(start.entry, start.name);
+                types.put(start.entry, start.type);
+                continue;
+            }
+            if (record.isControl())
+                continue;
+
+            String name = names.get(record.getEntry());
+            if (name == null)
+                continue;
+
+            if (name.startsWith("/.schema/struct:")) {
+                schemas.put(name.substring("/.schema/".length()), new StructSchema(new String(record.getRaw(), StandardCharsets.UTF_8)));
+                continue;
+            }
+            if (!name.equals(gripperEntry) && !name.equals(beamBreakEntry))
+                continue;
+
+            StructSchema schema = schemas.get(types.get(record.getEntry()));
+            if (schema == null)
+                continue;
+            ByteBuffer data = ByteBuffer.wrap(record.getRaw()).order(ByteOrder.LITTLE_ENDIAN);
+            if (data.remaining() < schema.getSize())
+                continue;
+
+            long now = record.getTimestamp();
+            if (name.equals(beamBreakEntry)) {
+                boolean broken = schema.getBoolean(data, "broken");
+                if (broken && !beam_broken && intaking && intake_break < 0) {
+                    intake_break = now;
+                    result.beam_break_latency_ms.add((now - intake_start) / 1000.0);
+                }
+                beam_broken = broken;
+                continue;
+            }
+
+            double voltage = schema.getDouble(data, "voltage");
+            boolean was_intaking = intaking;
+            intaking = voltage > CoralArmGripperConstants.detectorMinIntakeVoltage;
+            if (intaking && !was_intaking) {
+                result.intakes++;
+                intake_start = now;
+                intake_break = -1;
+                intake_detection = -1;
+            }
+
+            GamePiece last_piece = detector.getGamePiece();
+            if (schema.has("sample_count")) {
+                // every signal sample since the last cycle, as the robot ran them
+                int samples = (int) schema.getDouble(data, "sample_count");
+                for (int i = 0; i < samples; i++) {
+                    detector.update(schema.getDouble(data, "sample_timestamps", i), schema.getDouble(data, "sample_currents", i),
+                        schema.getDouble(data, "sample_velocities", i), schema.getDouble(data, "sample_voltages", i), beam_broken);
+                }
+            } else {
+                detector.update(schema.getDouble(data, "timestamp"), schema.getDouble(data, "stator_current"),
+                    schema.getDouble(data, "rotor_velocity"), voltage, beam_broken);
+            }
+            if (detector.getGamePiece() != last_piece && detector.getGamePiece() != GamePiece.None) {
+                result.detections++;
+                result.detect_latency_ms.add(detector.getDetectionLatency() * 1000);
+                if (intaking && intake_detection < 0)
+                    intake_detection = now;
+            }
+
+            if (was_intaking && !intaking) {
+                if (intake_break >= 0 && intake_detection >= 0)
+                    result.lead_ms.add((intake_break - intake_detection) / 1000.0);
+                else if (intake_break >= 0)
+                    result.missed++;
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,117 @@
+package frc.analyzer;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.stream.Stream;
+
+/**
+ * Summarizes a directory of match logs into summary.csv and summary.json, one row per log.
+ * <p>
+ * Logs are parsed in parallel on a fork-join pool, each one in a single streaming pass. Only the
+ * robot's own .wpilog files are read, Phoenix .hoot logs don't carry the robot log entries.
+ * <p>
+ * Run with {@code ./gradlew analyzeLogs -Plogs=<log directory> -Pout=<output directory>}.
+ */
+public final class MatchLogAnalyzer {
+    // files per task below which a task parses instead of splitting
+    private static final int splitThreshold = 2;
+
+    private MatchLogAnalyzer() {}
+
+    public static void main(String[] args) throws Exception {
+        Path log_directory = Path.of(args.length > 0 ? args[0] : "logs");
+        Path output_directory = Path.of(args.length > 1 ? args[1] : "build/analysis");
+
+        List<Path> logs = findLogs(log_directory);
+        if (logs.isEmpty()) {
+            System.err.println("No .wpilog files in " + log_directory.toAbsolutePath());
+            return;
+        }
+
+        long start = System.nanoTime();
+        List<MatchSummary> summaries = new ForkJoinPool().invoke(new ParseTask(logs));
+        summaries.sort(Comparator.comparing(summary -> summary.file));
+
+        Files.createDirectories(output_directory);
+        writeCsv(output_directory.resolve("summary.csv"), summaries);
+        writeJson(output_directory.resolve("summary.json"), summaries);
+
+        System.out.printf("Summarized %d of %d logs in %.1f s into %s%n", summaries.size(), logs.size(),
+            (System.nanoTime() - start) / 1e9, output_directory.toAbsolutePath());
+    }
+
+    private static List<Path> findLogs(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            return files.filter(Files::isRegularFile)
+                .filter(file -> file.getFileName().toString().endsWith(".wpilog"))
+                .sorted()
+                .toList();
+        }
+    }
+
+    /** Parses a range of logs, splitting it in half until it's small enough */
+    private static final class ParseTask extends RecursiveTask<List<MatchSummary>> {
+        private final List<Path> logs;
+
+        ParseTask(List<Path> logs) {
+            this.logs = logs;
+        }
+
+        @Override
+        protected List<MatchSummary> compute() {
+            if (logs.size() > splitThreshold) {
+                int middle = logs.size() / 2;
+                ParseTask first = new ParseTask(logs.subList(0, middle));
+                ParseTask second = new ParseTask(logs.subList(middle, logs.size()));
+                first.fork();
+                List<MatchSummary> summaries = new ArrayList<>(second.compute());
+                summaries.addAll(first.join());
+                return summaries;
+            }
+
+            List<MatchSummary> summaries = new ArrayList<>();
+            for (Path log : logs) {
+                try {
+                    summaries.add(MatchLogParser.parse(log));
+                } catch (IOException | RuntimeException e) {
+                    System.err.println("Skipping " + log + ": " + e.getMessage());
+                }
+            }
+            return summaries;
+        }
+    }
+
+    private static void writeCsv(Path path, List<MatchSummary> summaries) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(path)) {
+            writer.write(MatchSummary.csvHeader());
+            writer.newLine();
+            for (MatchSummary summary : summaries) {
+                writer.write(summary.toCsvRow());
+                writer.newLine();
+            }
+        }
+    }
+
+    private static void writeJson(Path path, List<MatchSummary> summaries) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(path)) {
+            writer.write("[");
+            for (int i = 0; i < summaries.size(); i++) {
+                writer.newLine();
+                writer.write("  ");
+                writer.write(summaries.get(i).toJson());
+                if (i < summaries.size() - 1)
+                    writer.write(",");
+            }
+            writer.newLine();
+            writer.write("]");
+            writer.newLine();
+        }
+    }
+}
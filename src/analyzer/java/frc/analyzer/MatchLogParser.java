@@ -0,0 +1,182 @@
+package frc.analyzer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.HashMap;
+
+import edu.wpi.first.util.datalog.DataLogReader;
+import edu.wpi.first.util.datalog.DataLogRecord;
+
+/**
+ * Reads one robot log in a single pass and summarizes it.
+ * <p>
+ * Records are decoded as they are read from the memory mapped file and folded into running
+ * statistics straight away, so memory use doesn't grow with the length of the log.
+ */
+final class MatchLogParser {
+    private static final String schemaPrefix = "/.schema/";
+    private static final double loopPeriod = 0.02;
+
+    private final HashMap<Integer, String> entry_names = new HashMap<>();
+    private final HashMap<Integer, String> entry_types = new HashMap<>();
+    private final HashMap<String, StructSchema> schemas = new HashMap<>();
+
+    private final MatchSummary summary;
+
+    private String event_name = "";
+    private long match_type = 0;
+    private long match_number = 0;
+
+    private long enabled_since = -1;
+    private long last_timestamp = 0;
+
+    // time the robot last started loading a coral, -1 while not holding one
+    private long intake_time = -1;
+
+    private MatchLogParser(String file) {
+        summary = new MatchSummary(file);
+    }
+
+    /**
+     * @param path the .wpilog file
+     * @return summary of the match in it
+     * @throws IOException if the file can't be read or isn't a wpilog
+     */
+    static MatchSummary parse(Path path) throws IOException {
+        DataLogReader reader = new DataLogReader(path.toString());
+        if (!reader.isValid())
+            throw new IOException(path + " isn't a wpilog file");
+
+        MatchLogParser parser = new MatchLogParser(path.getFileName().toString());
+        for (DataLogRecord record : reader) {
+            parser.read(record);
+        }
+        return parser.finish();
+    }
+
+    private void read(DataLogRecord record) {
+        if (record.isStart()) {
+            DataLogRecord.StartRecordData start = record.getStartData();
+            entry_names.put(start.entry, start.name);
+            entry_types.put(start.entry, start.type);
+            return;
+        }
+        if (record.isControl())
+            return;
+
+        String name = entry_names.get(record.getEntry());
+        if (name == null)
+            return;
+        last_timestamp = record.getTimestamp();
+
+        if (name.startsWith(schemaPrefix)) {
+            String type = name.substring(schemaPrefix.length());
+            if (type.startsWith("struct:"))
+                schemas.put(type, new StructSchema(new String(record.getRaw(), StandardCharsets.UTF_8)));
+            return;
+        }
+
+        switch (name) {
+            case "DS:enabled" -> readEnabled(record.getBoolean(), record.getTimestamp());
+            case "NT:/FMSInfo/EventName" -> event_name = record.getString();
+            case "NT:/FMSInfo/MatchType" -> match_type = record.getInteger();
+            case "NT:/FMSInfo/MatchNumber" -> match_number = record.getInteger();
+            default -> readStruct(name, entry_types.get(record.getEntry()), record);
+        }
+    }
+
+    private void readEnabled(boolean enabled, long timestamp) {
+        if (enabled && enabled_since < 0) {
+            enabled_since = timestamp;
+        } else if (!enabled && enabled_since >= 0) {
+            summary.enabled_seconds += (timestamp - enabled_since) / 1e6;
+            enabled_since = -1;
+        }
+    }
+
+    private void readStruct(String name, String type, DataLogRecord record) {
+        StructSchema schema = type == null ? null : schemas.get(type);
+        if (schema == null)
+            return;
+
+        ByteBuffer data = ByteBuffer.wrap(record.getRaw()).order(ByteOrder.LITTLE_ENDIAN);
+        if (data.remaining() < schema.getSize())
+            return;
+
+        switch (name) {
+            case "Superstructure/Transition" -> readTransition(schema, data, record.getTimestamp());
+            case "Vision/Estimate" -> {
+                summary.vision_estimates++;
+                if (schema.getBoolean(data, "accepted"))
+                    summary.vision_accepted++;
+            }
+            case "Robot/Cycle" -> {
+                double duration = schema.getDouble(data, "duration");
+                summary.loop_cycles++;
+                summary.loop_ms.add(duration * 1000);
+                if (duration > loopPeriod)
+                    summary.loop_overruns++;
+            }
+            case "Robot/CAN" -> {
+                summary.rio_can.add(schema.getDouble(data, "rio_utilization"));
+                summary.canivore_can.add(schema.getDouble(data, "canivore_utilization"));
+            }
+            case "BeamBreak/Latency" -> {
+                summary.beam_break_interrupt_ms.add(schema.getDouble(data, "interrupt_ms"));
+                summary.beam_break_polled_ms.add(schema.getDouble(data, "polled_ms"));
+            }
+            case "SuperstructureThread/Timing" -> {
+                summary.superstructure_thread_jitter_ms.add(schema.getDouble(data, "jitter_ms"));
+                summary.superstructure_thread_latency_ms.add(schema.getDouble(data, "latency_ms"));
+            }
+            case "SuperstructureMainLoop/Timing" -> {
+                summary.superstructure_main_jitter_ms.add(schema.getDouble(data, "jitter_ms"));
+                summary.superstructure_main_latency_ms.add(schema.getDouble(data, "latency_ms"));
+            }
+            case "Superstructure/Ready" -> {
+                summary.press_to_ready_ms.add(schema.getDouble(data, "press_to_ready") * 1000);
+                summary.planned_ready_ms.add(schema.getDouble(data, "planned") * 1000);
+                summary.sequential_ready_ms.add(schema.getDouble(data, "sequential") * 1000);
+            }
+            case "DriveToPose/Result" -> {
+                summary.drive_to_pose_runs++;
+                if (schema.getBoolean(data, "reached"))
+                    summary.time_to_goal.add(schema.getDouble(data, "time_to_goal"));
+            }
+            default -> {}
+        }
+    }
+
+    private void readTransition(StructSchema schema, ByteBuffer data, long timestamp) {
+        String to = schema.getEnum(data, "to");
+        if (to == null)
+            return;
+
+        if (to.equals("IntakeLoad")) {
+            intake_time = timestamp;
+        } else if (to.startsWith("ReleaseL") && intake_time >= 0) {
+            int level = to.charAt(to.length() - 1) - '1';
+            if (level >= 0 && level < MatchSummary.levelCount)
+                summary.cycle_times[level].add((timestamp - intake_time) / 1e6);
+            intake_time = -1;
+        }
+    }
+
+    private MatchSummary finish() {
+        readEnabled(false, last_timestamp);
+
+        if (!event_name.isEmpty() || match_number != 0) {
+            String type = switch ((int) match_type) {
+                case 1 -> "P";
+                case 2 -> "Q";
+                case 3 -> "E";
+                default -> "";
+            };
+            summary.match = (event_name + " " + type + match_number).trim();
+        }
+        return summary;
+    }
+}
@@ -0,0 +1,187 @@
+package frc.analyzer;
+
+import java.util.Locale;
+
+/**
+ * Per match statistics gathered from one robot log.
+ */
+final class MatchSummary {
+    static final int levelCount = 4;
+
+    /** Running count, mean and extremes of a measurement */
+    static final class Stat {
+        long count = 0;
+        double sum = 0;
+        double min = Double.NaN;
+        double max = Double.NaN;
+
+        void add(double value) {
+            if (Double.isNaN(value))
+                return;
+            count++;
+            sum += value;
+            min = count == 1 ? value : Math.min(min, value);
+            max = count == 1 ? value : Math.max(max, value);
+        }
+
+        double mean() {
+            return count == 0 ? Double.NaN : sum / count;
+        }
+    }
+
+    final String file;
+    String match = "";
+    double enabled_seconds = 0;
+
+    final Stat[] cycle_times = new Stat[levelCount];
+
+    long drive_to_pose_runs = 0;
+    final Stat time_to_goal = new Stat();
+
+    long vision_estimates = 0;
+    long vision_accepted = 0;
+
+    long loop_cycles = 0;
+    long loop_overruns = 0;
+    final Stat loop_ms = new Stat();
+
+    final Stat rio_can = new Stat();
+    final Stat canivore_can = new Stat();
+
+    // how long after a beam break the interrupt stopped the gripper and the main loop noticed it
+    final Stat beam_break_interrupt_ms = new Stat();
+    final Stat beam_break_polled_ms = new Stat();
+
+    // mean jitter and latency of each logged batch, for the superstructure thread and the main loop
+    final Stat superstructure_thread_jitter_ms = new Stat();
+    final Stat superstructure_thread_latency_ms = new Stat();
+    final Stat superstructure_main_jitter_ms = new Stat();
+    final Stat superstructure_main_latency_ms = new Stat();
+
+    // superstructure request to arrival, with the planner's estimate and the estimate for moving one axis at a time
+    final Stat press_to_ready_ms = new Stat();
+    final Stat planned_ready_ms = new Stat();
+    final Stat sequential_ready_ms = new Stat();
+
+    MatchSummary(String file) {
+        this.file = file;
+        for (int i = 0; i < levelCount; i++)
+            cycle_times[i] = new Stat();
+    }
+
+    double visionAcceptance() {
+        return vision_estimates == 0 ? Double.NaN : (double) vision_accepted / vision_estimates;
+    }
+
+    static String csvHeader() {
+        StringBuilder builder = new StringBuilder("file,match,enabled_s");
+        for (int i = 1; i <= levelCount; i++)
+            builder.append(",l").append(i).append("_cycles,l").append(i).append("_mean_s,l")
+                .append(i).append("_min_s,l").append(i).append("_max_s");
+        return builder.append(",drive_to_pose_runs,drive_to_pose_reached,time_to_goal_mean_s,time_to_goal_max_s")
+            .append(",vision_estimates,vision_acceptance")
+            .append(",loop_cycles,loop_overruns,loop_mean_ms,loop_max_ms")
+            .append(",rio_can_mean,rio_can_max,canivore_can_mean,canivore_can_max")
+            .append(",beam_break_interrupt_mean_ms,beam_break_interrupt_max_ms,beam_break_polled_mean_ms,beam_break_polled_max_ms")
+            .append(",superstructure_thread_jitter_ms,superstructure_thread_latency_ms,superstructure_main_jitter_ms,superstructure_main_latency_ms")
+            .append(",press_to_ready_count,press_to_ready_mean_ms,press_to_ready_max_ms,planned_ready_mean_ms,sequential_ready_mean_ms")
+            .toString();
+    }
+
+    String toCsvRow() {
+        StringBuilder builder = new StringBuilder();
+        builder.append(csvQuote(file)).append(',').append(csvQuote(match)).append(',').append(number(enabled_seconds));
+        for (Stat stat : cycle_times)
+            builder.append(',').append(stat.count).append(',').append(number(stat.mean()))
+                .append(',').append(number(stat.min)).append(',').append(number(stat.max));
+        builder.append(',').append(drive_to_pose_runs).append(',').append(time_to_goal.count)
+            .append(',').append(number(time_to_goal.mean())).append(',').append(number(time_to_goal.max));
+        builder.append(',').append(vision_estimates).append(',').append(number(visionAcceptance()));
+        builder.append(',').append(loop_cycles).append(',').append(loop_overruns)
+            .append(',').append(number(loop_ms.mean())).append(',').append(number(loop_ms.max));
+        builder.append(',').append(number(rio_can.mean())).append(',').append(number(rio_can.max))
+            .append(',').append(number(canivore_can.mean())).append(',').append(number(canivore_can.max));
+        builder.append(',').append(number(beam_break_interrupt_ms.mean())).append(',').append(number(beam_break_interrupt_ms.max))
+            .append(',').append(number(beam_break_polled_ms.mean())).append(',').append(number(beam_break_polled_ms.max));
+        builder.append(',').append(number(superstructure_thread_jitter_ms.mean()))
+            .append(',').append(number(superstructure_thread_latency_ms.mean()))
+            .append(',').append(number(superstructure_main_jitter_ms.mean()))
+            .append(',').append(number(superstructure_main_latency_ms.mean()));
+        builder.append(',').append(press_to_ready_ms.count).append(',').append(number(press_to_ready_ms.mean()))
+            .append(',').append(number(press_to_ready_ms.max)).append(',').append(number(planned_ready_ms.mean()))
+            .append(',').append(number(sequential_ready_ms.mean()));
+        return builder.toString();
+    }
+
+    String toJson() {
+        StringBuilder builder = new StringBuilder("{");
+        builder.append("\"file\":").append(jsonString(file))
+            .append(",\"match\":").append(jsonString(match))
+            .append(",\"enabled_s\":").append(jsonNumber(enabled_seconds));
+
+        builder.append(",\"cycles\":{");
+        for (int i = 0; i < levelCount; i++) {
+            if (i > 0)
+                builder.append(',');
+            builder.append("\"L").append(i + 1).append("\":").append(jsonStat(cycle_times[i]));
+        }
+        builder.append('}');
+
+        builder.append(",\"drive_to_pose\":{\"runs\":").append(drive_to_pose_runs)
+            .append(",\"time_to_goal_s\":").append(jsonStat(time_to_goal)).append('}');
+        builder.append(",\"vision\":{\"estimates\":").append(vision_estimates)
+            .append(",\"accepted\":").append(vision_accepted)
+            .append(",\"acceptance\":").append(jsonNumber(visionAcceptance())).append('}');
+        builder.append(",\"loop\":{\"cycles\":").append(loop_cycles)
+            .append(",\"overruns\":").append(loop_overruns)
+            .append(",\"ms\":").append(jsonStat(loop_ms)).append('}');
+        builder.append(",\"can\":{\"rio\":").append(jsonStat(rio_can))
+            .append(",\"canivore\":").append(jsonStat(canivore_can)).append('}');
+        builder.append(",\"beam_break\":{\"interrupt_ms\":").append(jsonStat(beam_break_interrupt_ms))
+            .append(",\"polled_ms\":").append(jsonStat(beam_break_polled_ms)).append('}');
+        builder.append(",\"superstructure_timing\":{\"thread_jitter_ms\":").append(jsonStat(superstructure_thread_jitter_ms))
+            .append(",\"thread_latency_ms\":").append(jsonStat(superstructure_thread_latency_ms))
+            .append(",\"main_jitter_ms\":").append(jsonStat(superstructure_main_jitter_ms))
+            .append(",\"main_latency_ms\":").append(jsonStat(superstructure_main_latency_ms)).append('}');
+        builder.append(",\"press_to_ready\":{\"ms\":").append(jsonStat(press_to_ready_ms))
+            .append(",\"planned_ms\":").append(jsonStat(planned_ready_ms))
+            .append(",\"sequential_ms\":").append(jsonStat(sequential_ready_ms)).append('}');
+        return builder.append('}').toString();
+    }
+
+    private static String number(double value) {
+        return Double.isNaN(value) ? "" : String.format(Locale.ROOT, "%.4f", value);
+    }
+
+    private static String jsonNumber(double value) {
+        return Double.isNaN(value) ? "null" : String.format(Locale.ROOT, "%.4f", value);
+    }
+
+    private static String jsonStat(Stat stat) {
+        return "{\"count\":" + stat.count + ",\"mean\":" + jsonNumber(stat.mean())
+            + ",\"min\":" + jsonNumber(stat.min) + ",\"max\":" + jsonNumber(stat.max) + "}";
+    }
+
+    private static String csvQuote(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0)
+            return value;
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    private static String jsonString(String value) {
+        StringBuilder builder = new StringBuilder("\"");
+        for (char c : value.toCharArray()) {
+            switch (c) {
+                case '"' -> builder.append("\\\"");
+                case '\\' -> builder.append("\\\\");
+                default -> {
+                    if (c < 0x20)
+                        builder.append(String.format("\\u%04x", (int) c));
+                    else
+                        builder.append(c);
+                }
+            }
+        }
+        return builder.append('"').toString();
+    }
+}
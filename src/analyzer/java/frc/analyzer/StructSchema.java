@@ -0,0 +1,124 @@
+package frc.analyzer;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Decoder for the struct schemas the robot registers with its log, eg.
+ * {@code enum {Initial=0,Storage=1} int8 from;double time_in_state}.
+ * <p>
+ * Only what {@code RobotLog} writes is supported: fixed size scalar fields, optional enum names
+ * on integer fields and fixed size arrays of scalars.
+ */
+final class StructSchema {
+    private final HashMap<String, Integer> offsets = new HashMap<>();
+    private final HashMap<String, String> types = new HashMap<>();
+    private final HashMap<String, Integer> counts = new HashMap<>();
+    private final HashMap<String, Map<Integer, String>> enum_names = new HashMap<>();
+    private final int size;
+
+    StructSchema(String schema) {
+        int offset = 0;
+        for (String declaration : schema.split(";")) {
+            declaration = declaration.trim();
+            if (declaration.isEmpty())
+                continue;
+
+            Map<Integer, String> names = null;
+            if (declaration.startsWith("enum")) {
+                int close = declaration.indexOf('}');
+                names = parseEnum(declaration.substring(declaration.indexOf('{') + 1, close));
+                declaration = declaration.substring(close + 1).trim();
+            }
+
+            String[] parts = declaration.split("\\s+");
+            if (parts.length != 2)
+                throw new IllegalArgumentException("Can't parse struct field '" + declaration + "'");
+
+            String type = parts[0];
+            String name = parts[1];
+            int count = 1;
+            int bracket = name.indexOf('[');
+            if (bracket >= 0) {
+                count = Integer.parseInt(name.substring(bracket + 1, name.indexOf(']')).trim());
+                name = name.substring(0, bracket);
+            }
+
+            offsets.put(name, offset);
+            types.put(name, type);
+            counts.put(name, count);
+            if (count == 1 && names != null)
+                enum_names.put(name, names);
+            offset += sizeOf(type) * count;
+        }
+        size = offset;
+    }
+
+    private static Map<Integer, String> parseEnum(String body) {
+        HashMap<Integer, String> names = new HashMap<>();
+        for (String value : body.split(",")) {
+            int equals = value.indexOf('=');
+            if (equals < 0)
+                continue;
+            names.put(Integer.parseInt(value.substring(equals + 1).trim()), value.substring(0, equals).trim());
+        }
+        return names;
+    }
+
+    private static int sizeOf(String type) {
+        return switch (type) {
+            case "bool", "char", "int8", "uint8" -> 1;
+            case "int16", "uint16" -> 2;
+            case "int32", "uint32", "float", "float32" -> 4;
+            case "int64", "uint64", "double", "float64" -> 8;
+            default -> throw new IllegalArgumentException("Unsupported struct field type " + type);
+        };
+    }
+
+    int getSize() {
+        return size;
+    }
+
+    boolean has(String field) {
+        return offsets.containsKey(field);
+    }
+
+    /** @return the field as a double, NaN if the struct has no such field */
+    double getDouble(ByteBuffer data, String field) {
+        return getDouble(data, field, 0);
+    }
+
+    /** @return an element of an array field as a double, NaN if the struct has no such element */
+    double getDouble(ByteBuffer data, String field, int index) {
+        Integer offset = offsets.get(field);
+        if (offset == null || index < 0 || index >= counts.get(field))
+            return Double.NaN;
+
+        String type = types.get(field);
+        offset += index * sizeOf(type);
+        return switch (type) {
+            case "bool", "int8", "char" -> data.get(offset);
+            case "uint8" -> data.get(offset) & 0xff;
+            case "int16" -> data.getShort(offset);
+            case "uint16" -> data.getShort(offset) & 0xffff;
+            case "int32" -> data.getInt(offset);
+            case "uint32" -> data.getInt(offset) & 0xffffffffL;
+            case "float", "float32" -> data.getFloat(offset);
+            case "int64", "uint64" -> data.getLong(offset);
+            default -> data.getDouble(offset);
+        };
+    }
+
+    boolean getBoolean(ByteBuffer data, String field) {
+        return getDouble(data, field) != 0;
+    }
+
+    /** @return the enum name of an integer field, or null if the value isn't named */
+    String getEnum(ByteBuffer data, String field) {
+        Map<Integer, String> names = enum_names.get(field);
+        if (names == null)
+            return null;
+        return names.get((int) getDouble(data, field));
+    }
+}
@@ -0,0 +1,296 @@
+package frc.analyzer;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+
+import org.photonvision.PhotonPoseEstimator.PoseStrategy;
+
+import edu.wpi.first.apriltag.AprilTagFieldLayout;
+import edu.wpi.first.apriltag.AprilTagFields;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.util.datalog.DataLogReader;
+import edu.wpi.first.util.datalog.DataLogRecord;
+import frc.robot.Constants.VisionConstants;
+import frc.robot.io.VisionInputs;
+import frc.robot.subsystems.CameraConfig;
+import frc.robot.subsystems.CameraSolver;
+import frc.robot.util.PipelineResultLog;
+import frc.robot.util.VisionFusion;
+
+/**
+ * Solves a pipeline result recording with several camera configs, as fast as it can, and reports
+ * the pose error and solve time of each.
+ * <p>
+ * The reference pose comes from the robot log of the same run: VisionSim/Truth when it was a
+ * simulation, otherwise the drivetrain's own estimate in Drive/Inputs. Every config is run through
+ * the same solve, std dev model and fusion as on the robot, with results batched into 20 ms robot
+ * cycles. The deployed config is run with each single tag strategy, followed by any configs given.
+ * <p>
+ * Run with {@code ./gradlew benchmarkVision -Precording=<.pvresults> -Preference=<.wpilog> [-Pconfigs=a.json,b.json]}.
+ */
+public final class VisionBenchmark {
+    private static final long cycleMicros = 20_000;
+    private static final PoseStrategy[] singleTagStrategies = {
+        PoseStrategy.LOWEST_AMBIGUITY, PoseStrategy.PNP_DISTANCE_TRIG_SOLVE, PoseStrategy.CONSTRAINED_SOLVEPNP,
+    };
+
+    private VisionBenchmark() {}
+
+    /** Time ordered reference poses with linear interpolation between them */
+    private static final class Reference {
+        long[] time = new long[1024];
+        double[] x = new double[1024];
+        double[] y = new double[1024];
+        double[] theta = new double[1024];
+        int count = 0;
+
+        void add(long timestamp, double px, double py, double ptheta) {
+            if (count == time.length) {
+                time = Arrays.copyOf(time, count * 2);
+                x = Arrays.copyOf(x, count * 2);
+                y = Arrays.copyOf(y, count * 2);
+                theta = Arrays.copyOf(theta, count * 2);
+            }
+            time[count] = timestamp;
+            x[count] = px;
+            y[count] = py;
+            theta[count] = ptheta;
+            count++;
+        }
+
+        /** @return the pose at a time, or null outside the reference */
+        Pose2d at(long timestamp) {
+            if (count == 0 || timestamp < time[0] || timestamp > time[count - 1])
+                return null;
+
+            int index = Arrays.binarySearch(time, 0, count, timestamp);
+            if (index >= 0)
+                return new Pose2d(x[index], y[index], new Rotation2d(theta[index]));
+
+            int after = -index - 1;
+            int before = after - 1;
+            double t = (double) (timestamp - time[before]) / (time[after] - time[before]);
+            Rotation2d heading = new Rotation2d(theta[before]).interpolate(new Rotation2d(theta[after]), t);
+            return new Pose2d(x[before] + (x[after] - x[before]) * t, y[before] + (y[after] - y[before]) * t, heading);
+        }
+    }
+
+    /** Results for one config */
+    private static final class Result {
+        final String name;
+        String failure = null;
+        long results = 0;
+        long estimates = 0;
+        final MatchSummary.Stat estimate_error = new MatchSummary.Stat();
+        final MatchSummary.Stat estimate_error_squared = new MatchSummary.Stat();
+        final MatchSummary.Stat fused_error = new MatchSummary.Stat();
+        final MatchSummary.Stat fused_error_squared = new MatchSummary.Stat();
+        final MatchSummary.Stat solve_us = new MatchSummary.Stat();
+
+        Result(String name) {
+            this.name = name;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: VisionBenchmark <recording.pvresults> <reference.wpilog> [config.json ...] [output directory]");
+            return;
+        }
+        String recording = args[0];
+        Reference reference = loadReference(Path.of(args[1]));
+        if (reference.count == 0) {
+            System.err.println("No VisionSim/Truth or Drive/Inputs poses in " + args[1]);
+            return;
+        }
+
+        Path output_directory = Path.of("build/analysis");
+        List<String> extra_configs = new ArrayList<>();
+        for (int i = 2; i < args.length; i++) {
+            if (args[i].endsWith(".json"))
+                extra_configs.add(args[i]);
+            else
+                output_directory = Path.of(args[i]);
+        }
+
+        AprilTagFieldLayout layout = AprilTagFieldLayout.loadField(AprilTagFields.k2025ReefscapeAndyMark);
+
+        List<Result> results = new ArrayList<>();
+        File deployed = new File("src/main/deploy", VisionConstants.cameraConfigFile);
+        for (PoseStrategy strategy : singleTagStrategies) {
+            List<CameraConfig> configs = CameraConfig.load(deployed);
+            for (CameraConfig config : configs)
+                config.single_tag_strategy = strategy;
+            results.add(run("deployed, single tag " + strategy.name(), configs, recording, reference, layout));
+        }
+        for (String path : extra_configs) {
+            results.add(run(path, CameraConfig.load(new File(path)), recording, reference, layout));
+        }
+
+        Files.createDirectories(output_directory);
+        Path csv = output_directory.resolve("vision_benchmark.csv");
+        try (BufferedWriter writer = Files.newBufferedWriter(csv)) {
+            writer.write("config,results,estimates,estimate_rmse_m,estimate_max_m,fused,fused_rmse_m,fused_max_m,solve_mean_us,solve_max_us,failure");
+            writer.newLine();
+            for (Result result : results) {
+                String row = String.format(Locale.ROOT, "\"%s\",%d,%d,%.4f,%.4f,%d,%.4f,%.4f,%.1f,%.1f,\"%s\"",
+                    result.name, result.results, result.estimates,
+                    Math.sqrt(result.estimate_error_squared.mean()), result.estimate_error.max,
+                    result.fused_error.count, Math.sqrt(result.fused_error_squared.mean()), result.fused_error.max,
+                    result.solve_us.mean(), result.solve_us.max,
+                    result.failure == null ? "" : result.failure);
+                writer.write(row);
+                writer.newLine();
+                System.out.println(row);
+            }
+        }
+        System.out.println("Wrote " + csv.toAbsolutePath());
+    }
+
+    private static Result run(String name, List<CameraConfig> configs, String recording, Reference reference, AprilTagFieldLayout layout) {
+        Result result = new Result(name);
+        CameraSolver[] solvers = new CameraSolver[configs.size()];
+        HashMap<String, Integer> config_indices = new HashMap<>();
+        for (int i = 0; i < solvers.length; i++) {
+            solvers[i] = new CameraSolver(i, configs.get(i), layout);
+            config_indices.put(configs.get(i).name, i);
+        }
+        // recorded cameras are matched to the configs by name
+        int[] solver_indices = new int[256];
+        Arrays.fill(solver_indices, -1);
+
+        VisionInputs batch = new VisionInputs("Benchmark/Observation");
+        VisionFusion fusion = new VisionFusion(VisionInputs.maxObservations,
+            VisionConstants.fusionWindow, VisionConstants.fusionGateSigmas);
+
+        long cycle_end = Long.MIN_VALUE;
+        try (PipelineResultLog.Reader reader = new PipelineResultLog.Reader(recording)) {
+            while (reader.next()) {
+                if (reader.type == PipelineResultLog.cameraRecord) {
+                    solver_indices[reader.camera] = config_indices.getOrDefault(reader.getCameraName(), -1);
+                    continue;
+                }
+                int solver = solver_indices[reader.camera];
+                if (solver < 0)
+                    continue;
+
+                if (reader.type == PipelineResultLog.calibrationRecord) {
+                    solvers[solver].setCalibration(reader.getCameraMatrix(), reader.getDistCoeffs());
+                    continue;
+                }
+                if (reader.type != PipelineResultLog.resultRecord)
+                    continue;
+
+                if (reader.timestamp >= cycle_end || batch.count >= VisionInputs.maxObservations) {
+                    score(batch, fusion, configs, reference, result);
+                    batch.clear();
+                    cycle_end = reader.timestamp + cycleMicros;
+                }
+
+                Pose2d heading_pose = reference.at(reader.timestamp);
+                if (heading_pose != null)
+                    solvers[solver].addHeading(reader.timestamp / 1e6, heading_pose.getRotation());
+
+                long cost = solvers[solver].solve(reader.getResult(0), batch);
+                result.results++;
+                result.solve_us.add(cost / 1000.0);
+            }
+            score(batch, fusion, configs, reference, result);
+        } catch (IOException | RuntimeException | LinkageError e) {
+            // constrained solvepnp needs PhotonVision's native library, which may be missing on a desktop
+            result.failure = e.toString();
+        }
+        return result;
+    }
+
+    private static void score(VisionInputs batch, VisionFusion fusion, List<CameraConfig> configs, Reference reference, Result result) {
+        fusion.clear();
+        for (int i = 0; i < batch.count; i++) {
+            if (!batch.hasPose(i))
+                continue;
+
+            Pose2d estimate = new Pose2d(batch.x[i], batch.y[i], new Rotation2d(batch.theta[i]));
+            Pose2d truth = reference.at(Math.round(batch.timestamp[i] * 1e6));
+            if (truth == null)
+                continue;
+
+            double error = estimate.getTranslation().getDistance(truth.getTranslation());
+            result.estimates++;
+            result.estimate_error.add(error);
+            result.estimate_error_squared.add(error * error);
+
+            // the reference stands in for odometry, over a fusion window the two hardly differ
+            fusion.add(batch.camera[i], batch.timestamp[i], estimate, truth,
+                configs.get(batch.camera[i]).getStdDevs(batch.tag_count[i], batch.avg_tag_distance[i], batch.strategy[i]));
+        }
+
+        fusion.fuse();
+        for (int i = 0; i < fusion.count; i++) {
+            Pose2d truth = reference.at(Math.round(fusion.timestamp[i] * 1e6));
+            if (truth == null)
+                continue;
+
+            double error = fusion.getPose(i).getTranslation().getDistance(truth.getTranslation());
+            result.fused_error.add(error);
+            result.fused_error_squared.add(error * error);
+        }
+    }
+
+    private static Reference loadReference(Path path) throws IOException {
+        DataLogReader reader = new DataLogReader(path.toString());
+        if (!reader.isValid())
+            throw new IOException(path + " isn't a wpilog file");
+
+        HashMap<Integer, String> names = new HashMap<>();
+        HashMap<String, StructSchema> schemas = new HashMap<>();
+        HashMap<Integer, String> types = new HashMap<>();
+        Reference truth = new Reference();
+        Reference drive = new Reference();
+
+        for (DataLogRecord record : reader) {
+            if (record.isStart()) {
+                DataLogRecord.StartRecordData start = record.getStartData();
+                names.put(start.entry, start.name);
+                types.put(start.entry, start.type);
+                continue;
+            }
+            if (record.isControl())
+                continue;
+
+            String name = names.get(record.getEntry());
+            if (name == null)
+                continue;
+
+            if (name.startsWith("/.schema/struct:")) {
+                schemas.put(name.substring("/.schema/".length()), new StructSchema(new String(record.getRaw(), StandardCharsets.UTF_8)));
+                continue;
+            }
+            if (!name.equals("VisionSim/Truth") && !name.equals("Drive/Inputs"))
+                continue;
+
+            StructSchema schema = schemas.get(types.get(record.getEntry()));
+            if (schema == null)
+                continue;
+            ByteBuffer data = ByteBuffer.wrap(record.getRaw()).order(ByteOrder.LITTLE_ENDIAN);
+            if (data.remaining() < schema.getSize())
+                continue;
+
+            Reference target = name.equals("VisionSim/Truth") ? truth : drive;
+            target.add(record.getTimestamp(),
+                schema.getDouble(data, "x"), schema.getDouble(data, "y"), schema.getDouble(data, "theta"));
+        }
+        return truth.count > 0 ? truth : drive;
+    }
+}
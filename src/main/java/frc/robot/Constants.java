@@ -1,5 +1,7 @@
 package frc.robot;
 
+import java.util.List;
+
 public class Constants {
     public static final class ElevatorConstants {
         public static final int leftMotorID = 20;
@@ -12,10 +14,22 @@ public class Constants {
 
         public static final double heightTolerance = 0.0015;
 
+        // settle prediction, see SettlePredictor
+        public static final double settleLookahead = 0.06;
+        public static final double trackingTolerance = 0.01;
+
+        // never extrapolate a position sample further than this, in seconds
+        public static final double maxLatencyCompensation = 0.03;
+
         public static final double sprocketRadius = 0.0254 * 0.905;
+        public static final double metersPerRotation = 22 * 0.25 * 0.0254; // 22T #25 sprocket
 
         // public static final double canrangeOffset = 0.16;
 
+        // simulation model
+        public static final double simCarriageMass = 6;
+        public static final double simMaxHeight = 0.7;
+
         public static final int heightSensorID = 22;
         public static final int bottomSensorDIO = 0;
     }
@@ -33,11 +47,43 @@ public class Constants {
 
         public static final double pivotMotorGearRatio = 37.5;
         public static final double pivotMotorTolerance = 0.01;
+
+        // settle prediction, see SettlePredictor
+        public static final double pivotSettleLookahead = 0.06;
+        public static final double pivotTrackingTolerance = 0.015;
+        // CANcoder status rate, the same 50 Hz the pivot has always run at
+        public static final double settleSignalFrequency = 50;
+
+        // never extrapolate a position sample further than this, in seconds
+        public static final double maxLatencyCompensation = 0.05;
+
+        // simulation model, the angle limit is in rotations either side of horizontal
+        public static final double simArmMOI = 0.15;
+        public static final double simArmLength = 0.4;
+        public static final double simMaxAngle = 0.3;
     }
 
     public static final class CoralArmGripperConstants {
         public static final int gripperMotorID = 32;
         public static final double gripperMotorCurrentLimit = 60;
+
+        // the gripper signal thread queues every sample, the detector runs through all of them each loop
+        public static final double detectorSignalFrequency = 250;
+
+        // game piece detector thresholds, tune these against logged intakes with benchmarkDetector
+        // the filter spans about four signal periods
+        public static final double detectorFilterTimeConstant = 0.015;
+        public static final double detectorFreeSpeedPerVolt = 8.3; // rotor rps per volt, Kraken X60 free speed / 12 V
+        public static final double detectorMinIntakeVoltage = 0.5;
+        public static final double detectorStallSpeedRatio = 0.35;
+        public static final double detectorCoralStallCurrent = 12;
+        public static final double detectorAlgaeStallCurrent = 35;
+        public static final double detectorStallDebounceTime = 0.04;
+        public static final double detectorReleaseDebounceTime = 0.1;
+        public static final double detectorMinConfidence = 0.5;
+
+        // simulation model
+        public static final double simRollerMOI = 0.001;
     }
 
     public static final class L1PivotConstants {
@@ -66,10 +112,159 @@ public class Constants {
 
     public static final class ElevatorSupersystemConstants {
         public static final int beamBreakSensorDIO = 6;
+        // the detector reads a broken beam as coral straight away, so a beam broken this long without a
+        // detection means the detector isn't running
+        public static final double detectionFaultTime = 0.25;
+
+        // step the superstructure from a thread woken by the 250 Hz elevator signals instead of the scheduler
+        public static final boolean useMechanismThread = false;
+        public static final double mechanismThreadFrequency = 250;
+        public static final int mechanismThreadPriority = 1;
+    }
+
+    public static final class SuperstructurePlannerConstants {
+        // Motion Magic limits converted to meters and pivot rotations
+        public static final double elevatorMaxVelocity = ElevatorConstants.motorCruiseVelocity * ElevatorConstants.metersPerRotation;
+        public static final double elevatorMaxAcceleration = ElevatorConstants.motorMaxAcceleration * ElevatorConstants.metersPerRotation;
+        public static final double pivotMaxVelocity = CoralArmPivotConstants.pivotMotorCruiseVelocity;
+        public static final double pivotMaxAcceleration = CoralArmPivotConstants.pivotMotorAcceleration;
+
+        // lag delays are searched coarsely first, then finely just before the first safe coarse delay
+        public static final double coarsePlanTimeStep = 0.05;
+        public static final double planTimeStep = 0.01;
+        public static final double collisionCheckStep = 0.005;
+
+        public static final double gateHeightTolerance = 0.005;
+        public static final double gateAngleTolerance = 0.005;
+
+        // how close the mechanisms must be to a preset to reuse its cached plans
+        public static final double presetHeightTolerance = 0.02;
+        public static final double presetAngleTolerance = 0.02;
+
+        // slower than this, and with no goal further away, a mechanism counts as resting at a preset
+        public static final double restHeightVelocity = 0.02;
+        public static final double restAngleVelocity = 0.02;
+
+        // how close both axes must be to count a move as finished when timing it
+        public static final double readyHeightTolerance = 0.01;
+        public static final double readyAngleTolerance = 0.01;
+
+        // predicted arrivals that haven't really arrived after this long count as false readies
+        public static final double readyGraceTime = 0.25;
+
+        // room planned paths leave around the keep-outs for tracking error, small enough that the
+        // horizontal presets just above the lower region stay outside it
+        public static final double keepOutHeightMargin = 0.01;
+        public static final double keepOutAngleMargin = 0.003;
+
+        /** Rectangle in joint space (elevator height, pivot angle) the superstructure must not enter */
+        public record KeepOut(String name, double min_height, double max_height, double min_angle, double max_angle) {
+            public boolean contains(double height, double angle) {
+                return contains(height, angle, 0, 0);
+            }
+
+            /** @return true if the point is inside the rectangle grown by a margin on every side */
+            public boolean contains(double height, double angle, double height_margin, double angle_margin) {
+                return height > min_height - height_margin && height < max_height + height_margin
+                    && angle > min_angle - angle_margin && angle < max_angle + angle_margin;
+            }
+        }
+
+        // Neither region is measured yet. Both are the envelope the old staged sequences, which ran on
+        // the robot, kept the arm inside, so they are at least as strict as what was proven safe.
+        // TODO: replace them with the crossmember, intake and bumper outlines from CAD before opening them up
+        public static final List<KeepOut> keepOuts = List.of(
+            // the old intake sequences only swung the arm below horizontal with the carriage at or
+            // above the intake grip height (0.4387 m), every lower preset holds it at or above horizontal
+            new KeepOut("arm below horizontal", -1, 0.42, -1, -0.005),
+            // the old barge sequence only tilted the arm past the L4 angle (0.14) with the carriage at
+            // barge height (0.685 m), lower down only the starting pose at the bottom of travel does
+            new KeepOut("arm tilted back", 0.02, 0.665, 0.16, 1));
     }
 
     public static final class StatusLEDConstants {
         public static final int statusLEDPort = 9;
         public static final int statusLEDCount = 23;
     }
+
+    public static final class LaunchpadConstants {
+        // read the buttons from the bridge's launchpad/buttons topic instead of three vjoys, in simulation
+        // the sim GUI's vjoys are mirrored onto the topic in place of the bridge
+        public static final boolean useNetworkTablesTransport = false;
+    }
+
+    public static final class VisionConstants {
+        // estimates from different cameras captured this close together are fused into one measurement
+        public static final double fusionWindow = 0.02;
+        public static final double fusionGateSigmas = 3;
+
+        // relative to the deploy directory
+        public static final String cameraConfigFile = "vision/cameras.json";
+        // how often each camera worker publishes its health metrics, in seconds
+        public static final double cameraMetricsPeriod = 1.0;
+
+        // raw pipeline results are recorded next to the robot log, for replaying into benchmarks. Off by
+        // default, a recording grows by every frame of every camera
+        public static final boolean recordPipelineResults = false;
+        // the recording stops once it reaches this size, in bytes
+        public static final long maxPipelineRecordingBytes = 512L * 1024 * 1024;
+
+        // while disabled, estimates from the last preMatchWindow seconds are averaged into a pre-match pose
+        public static final double preMatchWindow = 2.0;
+        public static final int preMatchMinSamples = 10;
+        public static final double preMatchOutlierDistance = 0.2;
+        // estimates less certain than this are left out of the pre-match pose, in meters
+        public static final double preMatchMaxStdDev = 1.0;
+
+        // how close the pre-match pose must be to the auto start pose to show green, and yellow
+        public static final double autoStartTolerance = 0.05;
+        public static final double autoStartHeadingToleranceDeg = 3;
+        public static final double autoStartNearDistance = 0.3;
+        // default for the dashboard option to start auto from the pre-match pose instead of the path start
+        public static final boolean seedPoseFromVision = false;
+
+        // reef tags seen directly are trusted for alignment after tagMinFrames frames within tagMaxAge seconds
+        public static final double tagMaxAge = 0.25;
+        public static final int tagMinFrames = 3;
+        public static final double tagMaxAmbiguity = 0.2;
+        // trust fades out between these distances to the tag, in meters
+        public static final double tagFullTrustDistance = 1.0;
+        public static final double tagMaxDistance = 2.0;
+        // share of each new frame in the filtered tag position
+        public static final double tagFilterGain = 0.5;
+    }
+
+    public static final class RobotLogConstants {
+        // how often the log's background writer flushes to disk, in seconds
+        public static final double logFlushPeriod = 0.25;
+
+        // high rate samples are dropped for the rest of a cycle once logging has taken this long
+        public static final double logCycleBudgetUs = 300;
+    }
+
+    public static final class PathfindingConstants {
+        // half the bumper diagonal plus a margin, the robot can turn anywhere along a path. The keep-out
+        // request's half length reaches this at 45 degrees to an obstacle
+        public static final double robotRadius = 0.6;
+
+        public static final double maxVelocity = 3.5;
+        public static final double maxAcceleration = 3.0;
+        // slowest a path takes its sharpest corners
+        public static final double cornerVelocity = 1.0;
+        public static final double samplePeriod = 0.02;
+
+        // closer than this to the goal, or with a clear straight line to it, the align command drives directly
+        public static final double directDistance = 1.0;
+    }
+
+    public static final class KeepOutConstants {
+        // distance the robot center keeps from the field elements square on, a little under half the
+        // bumper length so a scoring pose at the reef is still reachable. Turned towards an element the
+        // bumpers reach further, up to this times the square root of 2 with a corner leading
+        public static final double robotHalfLength = 0.42;
+
+        // speed towards an obstacle is limited to what this deceleration can stop before reaching it
+        public static final double brakingDeceleration = 6.0;
+        public static final double gridResolution = 0.05;
+    }
 }
@@ -41,6 +41,11 @@ public class FieldConstants {
             Units.inchesToMeters(158.501)
         );
 
+        public static final double faceLength = Units.inchesToMeters(36.7926);
+
+        // tags on the reef faces, red then blue
+        public static final int[] tagIds = {6, 7, 8, 9, 10, 11, 17, 18, 19, 20, 21, 22};
+
         public static ArrayList<Pose2d> lefts = new ArrayList<>();
         public static ArrayList<Pose2d> rights = new ArrayList<>();
 
@@ -79,4 +84,91 @@ public class FieldConstants {
             }
         }
     }
+
+    public static class CoralStation {
+        // center of each station's loading face, facing into the field
+        public static final Pose2d leftCenterFace = new Pose2d(
+            Units.inchesToMeters(33.526),
+            Units.inchesToMeters(291.176),
+            Rotation2d.fromDegrees(90 - 144.011)
+        );
+        public static final Pose2d rightCenterFace = new Pose2d(
+            Units.inchesToMeters(33.526),
+            Units.inchesToMeters(25.824),
+            Rotation2d.fromDegrees(144.011 - 90)
+        );
+
+        // where the robot loads, front to the face with the bumpers clear of it
+        public static final double intakeDistance = Units.inchesToMeters(19);
+
+        public static Pose2d getIntakePose(Pose2d face) {
+            return face.transformBy(new Transform2d(intakeDistance, 0, Rotation2d.k180deg));
+        }
+    }
+
+    public static class Barge {
+        // blue cage centers from the field drawings, the red ones are these flipped
+        public static final Translation2d farCage = new Translation2d(Units.inchesToMeters(345.428), Units.inchesToMeters(286.779));
+        public static final Translation2d middleCage = new Translation2d(Units.inchesToMeters(345.428), Units.inchesToMeters(242.855));
+        public static final Translation2d closeCage = new Translation2d(Units.inchesToMeters(345.428), Units.inchesToMeters(199.947));
+
+        // half the width kept clear around a cage, rounded up from the cage and its hanging chain
+        public static final double cageClearance = Units.inchesToMeters(12);
+    }
+
+    /**
+     * Convex outlines of the field elements a robot can't drive through, for both alliances. Each
+     * alliance's cages and the barge leg beside them are one box out to the side wall, the gaps
+     * between cages are too narrow to drive through. Under the middle of the barge, between the two
+     * alliances' cages, is open. Each coral station is the triangle its face cuts off the corner.
+     */
+    public static class Obstacles {
+        public static final ArrayList<Translation2d[]> polygons = new ArrayList<>();
+
+        static {
+            Translation2d[] reef = new Translation2d[6];
+            for (int i = 0; i < 6; i++) {
+                reef[i] = Reef.center.plus(new Translation2d(Reef.faceLength, Rotation2d.fromDegrees(30 + 60 * i)));
+            }
+
+            double cage_x = Barge.closeCage.getX();
+            double cage_y = Barge.closeCage.getY() - Barge.cageClearance;
+            Translation2d[] cages = {
+                new Translation2d(cage_x - Barge.cageClearance, cage_y),
+                new Translation2d(cage_x + Barge.cageClearance, cage_y),
+                new Translation2d(cage_x + Barge.cageClearance, fieldWidth),
+                new Translation2d(cage_x - Barge.cageClearance, fieldWidth),
+            };
+
+            polygons.add(reef);
+            polygons.add(flip(reef));
+            polygons.add(cages);
+            polygons.add(flip(cages));
+            polygons.add(stationCorner(CoralStation.leftCenterFace, fieldWidth));
+            polygons.add(flip(stationCorner(CoralStation.leftCenterFace, fieldWidth)));
+            polygons.add(stationCorner(CoralStation.rightCenterFace, 0));
+            polygons.add(flip(stationCorner(CoralStation.rightCenterFace, 0)));
+        }
+
+        // triangle between the face's line, the alliance wall and the side wall at corner_y
+        private static Translation2d[] stationCorner(Pose2d face, double corner_y) {
+            double nx = face.getRotation().getCos();
+            double ny = face.getRotation().getSin();
+            double offset = nx * face.getX() + ny * face.getY();
+            return new Translation2d[] {
+                new Translation2d(0, corner_y),
+                new Translation2d((offset - ny * corner_y) / nx, corner_y),
+                new Translation2d(0, offset / ny),
+            };
+        }
+
+        // the red field is the blue one rotated about the center
+        private static Translation2d[] flip(Translation2d[] polygon) {
+            Translation2d[] flipped = new Translation2d[polygon.length];
+            for (int i = 0; i < polygon.length; i++) {
+                flipped[i] = new Translation2d(fieldLength - polygon[i].getX(), fieldWidth - polygon[i].getY());
+            }
+            return flipped;
+        }
+    }
 }
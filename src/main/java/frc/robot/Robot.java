@@ -4,32 +4,136 @@
 
 package frc.robot;
 
-import frc.robot.subsystems.Elevator;
+import java.util.ArrayList;
+import java.util.function.Supplier;
+
+import frc.robot.commands.AlignBenchmark;
+import frc.robot.io.IOMode;
+import frc.robot.io.LogReplay;
+import frc.robot.subsystems.PreMatchCheck;
 import frc.robot.subsystems.Vision;
 import frc.robot.supersystems.ElevatorSupersystem;
+import frc.robot.util.RobotLog;
+import frc.robot.util.TalonFXOutput;
+import com.ctre.phoenix6.CANBus;
+import edu.wpi.first.networktables.DoublePublisher;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.wpilibj.DataLogManager;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.RobotBase;
+import edu.wpi.first.wpilibj.RobotController;
 import edu.wpi.first.wpilibj.TimedRobot;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj.simulation.DriverStationSim;
+import edu.wpi.first.wpilibj.simulation.SimHooks;
 import edu.wpi.first.wpilibj.smartdashboard.Field2d;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.CommandScheduler;
+import edu.wpi.first.wpilibj2.command.Commands;
+import edu.wpi.first.math.geometry.Pose2d;
 
 public class Robot extends TimedRobot {
   private Command autonomous_command;
 
   private final RobotContainer robot_container;
   private final Vision vision;
+  private final PreMatchCheck pre_match_check;
 
   private final Field2d field = new Field2d();
 
+  // bus utilization is logged once a second, it changes slowly
+  private final CANBus canivore = new CANBus("canivore");
+  private final RobotLog.StructEntry can_log = new RobotLog.StructEntry(
+    "Robot/CAN", "CANUtilization", "double rio_utilization;double canivore_utilization", 2 * 8, true);
+  private int can_log_counter = 0;
+
+  // scripted simulation run, eg. SIM_TRAJECTORIES=center_1l4,drive_forward ./gradlew simulateJava -Pheadless
+  private static final String simTrajectoriesVariable = "SIM_TRAJECTORIES";
+  // or SIM_ALIGN_BENCHMARK=1 to time the reef align profiles
+  private static final String simAlignBenchmarkVariable = "SIM_ALIGN_BENCHMARK";
+  private Command sim_script = null;
+  private Supplier<String> sim_summary = null;
+  private boolean sim_script_started = false;
+  private volatile boolean sim_script_done = false;
+
+  private final DoublePublisher scheduler_time_publisher = NetworkTableInstance.getDefault()
+    .getTable("Robot").getDoubleTopic("SchedulerUs").publish();
+
   public Robot() {
+    if (IOMode.get() == IOMode.Replay) {
+      LogReplay.open(LogReplay.getLogPath());
+    }
+    RobotLog.start();
     robot_container = new RobotContainer();
-    vision = new Vision(robot_container.drivetrain);
+    vision = new Vision(robot_container.drivetrain, robot_container.reef_tags);
+    pre_match_check = new PreMatchCheck(vision, robot_container::getAutoStartPose);
     SmartDashboard.putData("telepose", field);
   }
 
+  /**
+   * Replays a log instead of running in real time when {@link LogReplay} is active. Simulated time
+   * jumps to the start of each recorded cycle and the loop runs once, as fast as it can.
+   */
+  @Override
+  public void startCompetition() {
+    if (!LogReplay.isActive()) {
+      super.startCompetition();
+      return;
+    }
+
+    robotInit();
+    simulationInit();
+
+    SimHooks.pauseTiming();
+    while (LogReplay.nextCycle()) {
+      SimHooks.stepTiming(Math.max(0, LogReplay.getCycleStart() - Timer.getFPGATimestamp()));
+      loopFunc();
+    }
+
+    System.out.println("Replayed " + LogReplay.getCycleCount() + " cycles");
+    DataLogManager.stop();
+    RobotBase.suppressExitWarning(true);
+  }
+
+  @Override
+  public void endCompetition() {
+    ElevatorSupersystem.getInstance().stopThread();
+    vision.stopRecording();
+    super.endCompetition();
+  }
+
+  @Override
+  protected void loopFunc() {
+    RobotLog.startCycle();
+    super.loopFunc();
+    // after the mode periodics, the watchdog and the dashboards, so the cycle time covers the whole loop
+    RobotLog.endCycle();
+  }
+
   @Override
   public void robotPeriodic() {
+    // runs while disabled too, to find the robot before the match. Autonomous paths run on odometry
+    // alone, as they were tuned
+    if (DriverStation.isAutonomous() && DriverStation.isEnabled()) {
+      vision.discardObservations();
+    } else {
+      vision.updateVision();
+    }
+
+    long start = System.nanoTime();
     CommandScheduler.getInstance().run();
+    scheduler_time_publisher.set((System.nanoTime() - start) / 1000.0);
+
+    TalonFXOutput.publishAll();
+    robot_container.launchpad.flush();
+
+    if (++can_log_counter >= 50 && can_log.begin()) {
+      can_log_counter = 0;
+      can_log.putDouble(RobotController.getCANStatus().percentBusUtilization)
+        .putDouble(canivore.getStatus().BusUtilization)
+        .append();
+    }
     field.setRobotPose(robot_container.drivetrain.getPose());
     // field.setRobotPose(robot_container.drivetrain.getPose());
   }
@@ -40,14 +144,21 @@ public class Robot extends TimedRobot {
   
   @Override
   public void disabledPeriodic() {
+    pre_match_check.update();
   }
 
   @Override
   public void disabledExit() {
+    pre_match_check.clear();
   }
   
   @Override
   public void autonomousInit() {
+    Pose2d pre_match_pose = vision.getPreMatchPose();
+    if (pre_match_pose != null && pre_match_check.shouldSeedPose()) {
+      robot_container.drivetrain.seedPose(pre_match_pose);
+    }
+
     autonomous_command = robot_container.getAutonomousCommand();
     
     if (autonomous_command != null) {
@@ -61,6 +172,8 @@ public class Robot extends TimedRobot {
   
   @Override
   public void autonomousExit() {
+    // a seeded pose the routine never reset from mustn't skip the next auto's reset
+    robot_container.drivetrain.clearSeededPose();
   }
   
   @Override
@@ -74,7 +187,6 @@ public class Robot extends TimedRobot {
   
   @Override
   public void teleopPeriodic() {
-    vision.updateVision();
   }
   
   @Override
@@ -94,7 +206,55 @@ public class Robot extends TimedRobot {
   public void testExit() {
   }
 
+  /**
+   * Drives the listed trajectories back to back with the simulated cameras running, prints the
+   * vision summary and exits, so vision can be measured on a machine without a driver station.
+   * The align benchmark runs the same way.
+   */
+  @Override
+  public void simulationInit() {
+    if (IOMode.get() != IOMode.Sim)
+      return;
+
+    String trajectories = System.getenv(simTrajectoriesVariable);
+    if (System.getenv(simAlignBenchmarkVariable) != null) {
+      AlignBenchmark benchmark = new AlignBenchmark(robot_container.drivetrain);
+      sim_script = benchmark.getCommand();
+      sim_summary = benchmark::getSummary;
+    } else if (trajectories != null) {
+      ArrayList<Command> commands = new ArrayList<>();
+      for (String name : trajectories.split(",")) {
+        commands.add(robot_container.getTrajectoryCommand(name.trim()));
+      }
+      sim_script = Commands.sequence(commands.toArray(Command[]::new));
+      sim_summary = vision::getSimSummary;
+    } else {
+      return;
+    }
+    sim_script = sim_script.finallyDo(() -> sim_script_done = true);
+
+    // teleop, so vision runs the way it does in a match
+    DriverStationSim.setAutonomous(false);
+    DriverStationSim.setEnabled(true);
+    DriverStationSim.notifyNewData();
+  }
+
   @Override
   public void simulationPeriodic() {
+    vision.simulationPeriodic();
+    robot_container.simulationPeriodic();
+
+    if (sim_script == null)
+      return;
+
+    if (!sim_script_started && DriverStation.isTeleopEnabled()) {
+      sim_script.schedule();
+      sim_script_started = true;
+    }
+    if (sim_script_done) {
+      System.out.println(sim_summary.get());
+      DataLogManager.stop();
+      System.exit(0);
+    }
   }
 }
@@ -4,16 +4,24 @@
 
 package frc.robot;
 
+import java.util.HashMap;
+import java.util.List;
+import java.util.Optional;
 import java.util.function.Supplier;
 
 import com.ctre.phoenix6.swerve.SwerveModule.DriveRequestType;
 import com.ctre.phoenix6.swerve.SwerveRequest;
 
+import choreo.Choreo;
 import choreo.auto.AutoChooser;
 import choreo.auto.AutoFactory;
+import choreo.trajectory.SwerveSample;
+import choreo.trajectory.Trajectory;
 import edu.wpi.first.math.filter.SlewRateLimiter;
 import edu.wpi.first.math.geometry.Pose2d;
 import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.networktables.StringSubscriber;
 import edu.wpi.first.wpilibj.DriverStation;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import edu.wpi.first.wpilibj.util.Color;
@@ -24,15 +32,24 @@ import edu.wpi.first.wpilibj2.command.button.CommandXboxController;
 import edu.wpi.first.wpilibj2.command.button.Trigger;
 import edu.wpi.first.wpilibj2.command.sysid.SysIdRoutine.Direction;
 import frc.robot.commands.DriveToPose;
+import frc.robot.commands.PathfindToPose;
 import frc.robot.control.Launchpad;
+import frc.robot.control.LaunchpadBridgeStandIn;
 import frc.robot.generated.TunerConstants;
 import frc.robot.subsystems.CommandSwerveDrivetrain;
 import frc.robot.subsystems.CoralArmGripper;
 import frc.robot.subsystems.CoralArmPivot;
 import frc.robot.subsystems.Elevator;
+import frc.robot.subsystems.KeepOutRequest;
 import frc.robot.subsystems.StatusLED;
+import frc.robot.subsystems.Vision;
 import frc.robot.supersystems.ElevatorSupersystem;
+import frc.robot.Constants.LaunchpadConstants;
+import frc.robot.Constants.PathfindingConstants;
 import frc.robot.util.AllianceFlipUtil;
+import frc.robot.util.NavigationGraph;
+import frc.robot.util.Pathfinder;
+import frc.robot.util.TagTracker;
 
 public class RobotContainer {
         // initialize subsystems
@@ -44,6 +61,8 @@ public class RobotContainer {
         // Climber climber = Climber.getInstance();
 
         Launchpad launchpad = new Launchpad(1, 2, 3, new Color8Bit(255, 255, 255));
+        // publishes the vjoys for the NetworkTables transport in simulation, null otherwise
+        private LaunchpadBridgeStandIn launchpad_bridge = null;
 
         private double max_speed = TunerConstants.kSpeedAt12Volts.magnitude(); // kSpeedAt12Volts desired top speed
                                                                                // desired top speed
@@ -54,6 +73,8 @@ public class RobotContainer {
                         .withDeadband(max_speed * 0.1)
                         .withRotationalDeadband(max_angular_rate * 0.1) // Add a 10% deadband
                         .withDriveRequestType(DriveRequestType.OpenLoopVoltage); // Use closed-loop control for drive motors
+        // driver speeds into the field elements are limited to what the robot can brake from
+        private final KeepOutRequest keep_out = new KeepOutRequest();
 
         private final SwerveRequest.RobotCentric robot_centric = new SwerveRequest.RobotCentric()
                         .withDriveRequestType(DriveRequestType.Velocity);
@@ -65,11 +86,22 @@ public class RobotContainer {
         private final CommandXboxController controller = new CommandXboxController(0);
 
         public final CommandSwerveDrivetrain drivetrain = TunerConstants.createDrivetrain();
+        // reef tags seen by the cameras, for lining up with them directly
+        public final TagTracker reef_tags = new TagTracker(Vision.FIELD_LAYOUT, FieldConstants.Reef.tagIds);
+        // paths around the field elements, the graph is built once at boot
+        private final NavigationGraph navigation_graph = new NavigationGraph(FieldConstants.Obstacles.polygons,
+                        PathfindingConstants.robotRadius, FieldConstants.fieldLength, FieldConstants.fieldWidth);
+        private final Pathfinder pathfinder = new Pathfinder(navigation_graph);
 
         // Choreo stuff
         private final AutoFactory auto_factory;
         private final AutoRoutines auto_routines;
         private final AutoChooser auto_chooser = new AutoChooser();
+        // first trajectory of each auto, for checking the robot is placed at its start
+        private final HashMap<String, String> auto_start_trajectories = new HashMap<>();
+        private final HashMap<String, Optional<Trajectory<SwerveSample>>> loaded_trajectories = new HashMap<>();
+        private final StringSubscriber active_auto = NetworkTableInstance.getDefault().getTable("SmartDashboard")
+                        .getSubTable("Auto Chooser").getStringTopic("active").subscribe("");
         
         private final SlewRateLimiter slew_rate_limiter_x = new SlewRateLimiter(1);
         private final SlewRateLimiter slew_rate_limiter_y = new SlewRateLimiter(1);
@@ -86,12 +118,24 @@ public class RobotContainer {
                 if (Robot.isSimulation()) {
                         DriverStation.silenceJoystickConnectionWarning(true);
                 }
+                pathfinder.start();
+                KeepOutRequest.warmUp();
+
+                if (LaunchpadConstants.useNetworkTablesTransport) {
+                        launchpad.setTransport(Launchpad.Transport.NetworkTables);
+                        if (Robot.isSimulation()) {
+                                launchpad_bridge = new LaunchpadBridgeStandIn();
+                        }
+                }
+
                 // Add Autos
                 auto_factory = drivetrain.createAutoFactory();
 
                 auto_routines = new AutoRoutines(auto_factory);
                 auto_chooser.addRoutine("Center 1L4", auto_routines::Center1l4);
                 auto_chooser.addRoutine("Drive Forward", auto_routines::DriveForward);
+                auto_start_trajectories.put("Center 1L4", "center_1l4");
+                auto_start_trajectories.put("Drive Forward", "drive_forward");
 
                 SmartDashboard.putData("Auto Chooser", auto_chooser);
 
@@ -106,14 +150,27 @@ public class RobotContainer {
         // Auto align bindings
         private Supplier<Pose2d> nearestLeftCoral() {
                 return () -> {
-                        return drivetrain.getState().Pose.nearest(
+                        return drivetrain.getPose().nearest(
                                         FieldConstants.Reef.lefts.stream().map(AllianceFlipUtil::apply).toList());
                 };
         }
 
+        private Supplier<Pose2d> nearestCoralStation() {
+                return () -> {
+                        return drivetrain.getPose().nearest(List.of(
+                                        AllianceFlipUtil.apply(FieldConstants.CoralStation.getIntakePose(FieldConstants.CoralStation.leftCenterFace)),
+                                        AllianceFlipUtil.apply(FieldConstants.CoralStation.getIntakePose(FieldConstants.CoralStation.rightCenterFace))));
+                };
+        }
+
+        /** Drives around the field elements to a target, then aligns to it */
+        private Command pathfindAndAlign(Supplier<Pose2d> target, DriveToPose align) {
+                return new PathfindToPose(drivetrain, pathfinder, navigation_graph, target).andThen(align);
+        }
+
         private Supplier<Pose2d> nearestRightCoral() {
                 return () -> {
-                        return drivetrain.getState().Pose.nearest(
+                        return drivetrain.getPose().nearest(
                                         FieldConstants.Reef.rights.stream().map(AllianceFlipUtil::apply).toList());
                 };
 
@@ -126,7 +183,7 @@ public class RobotContainer {
                 // Drivetrain will execute this command periodically
                 drivetrain.setDefaultCommand(
                                 drivetrain.applyRequest(
-                                                () -> drive.withVelocityX(getControlY() * max_speed) // Drive
+                                                () -> keep_out.withRequest(drive.withVelocityX(getControlY() * max_speed) // Drive
                                                                                                               // forward
                                                                                                               // with
                                                                                                               // negative
@@ -150,13 +207,13 @@ public class RobotContainer {
                                                                                                     // with
                                                                                                     // negative X (left)
 
-                                ));
+                                )));
 
                 // TODO: turtle trigger was a problem in auto so we commented it out, will fix it later
                 turtle_trigger
                         .and(DriverStation::isTeleopEnabled)
                         .whileTrue(drivetrain.applyRequest(
-                                () -> drive.withVelocityX(getControlY() * max_speed * turtle_mode) // Drive
+                                () -> keep_out.withRequest(drive.withVelocityX(getControlY() * max_speed * turtle_mode) // Drive
                                                                                                             // forward
                                                                                                             // with
                                                                                                             // negative
@@ -173,7 +230,7 @@ public class RobotContainer {
                                                                                // counterclockwise
                                                                                // with negative X
                                                                                // (left)
-                ));
+                )));
 
                 controller.a().whileTrue(drivetrain.applyRequest(() -> brake));
                 controller.b().whileTrue(drivetrain.applyRequest(
@@ -208,14 +265,18 @@ public class RobotContainer {
                                                 () -> robot_centric.withVelocityX(-max_speed * slower_turtle_mode)
                                                                 .withVelocityY(0)));
 
-                DriveToPose left_go_to_pose = new DriveToPose(drivetrain, nearestLeftCoral());
-                DriveToPose right_go_to_pose = new DriveToPose(drivetrain, nearestRightCoral());
+                DriveToPose left_go_to_pose = new DriveToPose(drivetrain, nearestLeftCoral(), reef_tags);
+                DriveToPose right_go_to_pose = new DriveToPose(drivetrain, nearestRightCoral(), reef_tags);
 
                 (new Trigger(left_go_to_pose::atGoal)).or(right_go_to_pose::atGoal).whileTrue(status_led.flashColor(Color.kGreen, 1));
 
                 // left/right reef align
-                launchpad.getButton(2, 0).whileTrue(left_go_to_pose);
-                launchpad.getButton(3, 0).whileTrue(right_go_to_pose);
+                launchpad.getButton(2, 0).whileTrue(pathfindAndAlign(nearestLeftCoral(), left_go_to_pose));
+                launchpad.getButton(3, 0).whileTrue(pathfindAndAlign(nearestRightCoral(), right_go_to_pose));
+
+                // coral station align
+                controller.rightBumper().whileTrue(pathfindAndAlign(nearestCoralStation(),
+                                new DriveToPose(drivetrain, nearestCoralStation())));
 
                 // Elevator/coral arm controls
                 launchpad.getButton(8, 1).onTrue(supersystem.coralPrepareL1());
@@ -278,7 +339,33 @@ public class RobotContainer {
         // return leftSide;
         // }
 
+        /** Mirrors the sim GUI's vjoys to the Launchpad topic when it's used in simulation */
+        public void simulationPeriodic() {
+                if (launchpad_bridge != null) {
+                        launchpad_bridge.mirror(1, 2, 3);
+                }
+        }
+
         public Command getAutonomousCommand() {
                 return auto_chooser.selectedCommand();
         }
+
+        /** @return where the selected auto starts, for the current alliance, or empty if it has no path */
+        public Optional<Pose2d> getAutoStartPose() {
+                String name = auto_start_trajectories.get(active_auto.get());
+                if (name == null) {
+                        return Optional.empty();
+                }
+
+                return loaded_trajectories.computeIfAbsent(name, Choreo::loadTrajectory)
+                                .flatMap(trajectory -> trajectory.getInitialPose(AllianceFlipUtil.shouldFlip()));
+        }
+
+        /**
+         * @param name Choreo trajectory name
+         * @return a command that places the robot at the start of the trajectory and follows it
+         */
+        public Command getTrajectoryCommand(String name) {
+                return Commands.sequence(auto_factory.resetOdometry(name), auto_factory.trajectoryCmd(name));
+        }
 }
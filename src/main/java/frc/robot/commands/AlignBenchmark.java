@@ -0,0 +1,75 @@
+package frc.robot.commands;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Transform2d;
+import edu.wpi.first.wpilibj2.command.Command;
+import edu.wpi.first.wpilibj2.command.Commands;
+import frc.robot.FieldConstants;
+import frc.robot.subsystems.CommandSwerveDrivetrain;
+
+/**
+ * Times DriveToPose with the trapezoid profile against the synchronized one, from the same set of
+ * starts around a reef branch, in simulation.
+ * <p>
+ * Each run places the robot at rest at its start, aligns to the branch on the field pose alone and
+ * records the time to goal, or NaN if it isn't reached within {@link #timeout} seconds.
+ */
+public class AlignBenchmark {
+    private static final double timeout = 6.0;
+    private static final double settleTime = 0.5;
+
+    // starts relative to the branch, behind it is towards the robot's back
+    private static final Transform2d[] starts = {
+        new Transform2d(-0.3, 0.0, Rotation2d.kZero),
+        new Transform2d(-1.0, 0.0, Rotation2d.kZero),
+        new Transform2d(-0.5, 0.5, Rotation2d.fromDegrees(30)),
+        new Transform2d(-1.5, -1.0, Rotation2d.fromDegrees(90)),
+        new Transform2d(-2.0, 1.5, Rotation2d.fromDegrees(-150)),
+    };
+
+    private final CommandSwerveDrivetrain chassis;
+    private final Pose2d target = FieldConstants.Reef.lefts.get(0);
+    private final List<String> rows = new ArrayList<>();
+
+    public AlignBenchmark(CommandSwerveDrivetrain chassis) {
+        this.chassis = chassis;
+    }
+
+    /** @return a command running every start with both profiles */
+    public Command getCommand() {
+        ArrayList<Command> runs = new ArrayList<>();
+        for (Transform2d start : starts) {
+            DriveToPose trapezoid = new DriveToPose(chassis, () -> target);
+            DriveToPose timeOptimal = new DriveToPose(chassis, () -> target).withTimeOptimalProfile();
+            runs.add(run(start, trapezoid));
+            runs.add(run(start, timeOptimal));
+            runs.add(Commands.runOnce(() -> rows.add(String.format(Locale.ROOT,
+                "%5.2f %5.2f %6.0f  %8.3f %8.3f",
+                start.getX(), start.getY(), start.getRotation().getDegrees(),
+                trapezoid.getTimeToGoal(), timeOptimal.getTimeToGoal()))));
+        }
+        return Commands.sequence(runs.toArray(Command[]::new));
+    }
+
+    private Command run(Transform2d start, DriveToPose align) {
+        return Commands.sequence(
+            Commands.runOnce(() -> chassis.resetPose(target.transformBy(start))),
+            Commands.waitSeconds(settleTime),
+            align.until(align::atGoal).withTimeout(timeout));
+    }
+
+    /** @return the time to goal of every start, as a table */
+    public String getSummary() {
+        StringBuilder summary = new StringBuilder("Align benchmark, time to goal in seconds\n");
+        summary.append("    x     y  theta  trapezoid time_optimal\n");
+        for (String row : rows) {
+            summary.append(row).append('\n');
+        }
+        return summary.toString();
+    }
+}
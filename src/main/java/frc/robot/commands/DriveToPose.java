@@ -1,5 +1,7 @@
 package frc.robot.commands;
 
+import static edu.wpi.first.units.Units.MetersPerSecond;
+
 import java.lang.annotation.Target;
 import java.util.function.DoubleSupplier;
 import java.util.function.Supplier;
@@ -15,11 +17,20 @@ import edu.wpi.first.math.geometry.Translation2d;
 import edu.wpi.first.math.kinematics.ChassisSpeeds;
 import edu.wpi.first.math.trajectory.TrapezoidProfile;
 import edu.wpi.first.math.util.Units;
+import edu.wpi.first.networktables.DoublePublisher;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.wpilibj.TimedRobot;
+import edu.wpi.first.wpilibj.Timer;
 import edu.wpi.first.wpilibj.smartdashboard.Field2d;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import edu.wpi.first.wpilibj2.command.Command;
+import frc.robot.generated.TunerConstants;
 import frc.robot.subsystems.CommandSwerveDrivetrain;
+import frc.robot.subsystems.KeepOutRequest;
 import frc.robot.util.GeomUtil;
+import frc.robot.util.PoseProfile;
+import frc.robot.util.RobotLog;
+import frc.robot.util.TagTracker;
 
 public class DriveToPose extends Command {
     private static final double drivekP = 6;
@@ -34,10 +45,22 @@ public class DriveToPose extends Command {
     public static final double thetaTolerance = Units.degreesToRadians(1.0);
     private static final double ffMinRadius = 0.005;
     private static final double ffMaxRadius = 0.07;
+    // lined up with a tag seen directly there's no pose estimate lag to overshoot on, so it can go faster
+    private static final double tagDriveMaxVelocity = 1.2;
+    private static final double tagMaxGoalDistance = 1.5;
+    // synchronized profile, the module speed share leaves headroom for feedback
+    private static final double profileMaxAcceleration = 3.0;
+    private static final double profileModuleSpeedShare = 0.8;
+    private static final double profilePeriod = TimedRobot.kDefaultPeriod;
 
     private CommandSwerveDrivetrain chassis;
     private Supplier<Pose2d> target;
+    private final TagTracker tags;
+    private double tagTrust = 0.0;
     private final SwerveRequest.ApplyRobotSpeeds drive = new SwerveRequest.ApplyRobotSpeeds().withDriveRequestType(DriveRequestType.Velocity);
+    // keeps a fast align from driving the bumpers into the reef
+    private final KeepOutRequest keepOut = new KeepOutRequest().withRequest(drive);
+    private final SwerveRequest.SwerveDriveBrake brake = new SwerveRequest.SwerveDriveBrake();
 
     private static final ProfiledPIDController driveController = new ProfiledPIDController(drivekP, 0.1, drivekD,
         new TrapezoidProfile.Constraints(driveMaxVelocity, driveMaxAcceleration));
@@ -54,22 +77,67 @@ public class DriveToPose extends Command {
 
     private Field2d targetField2d = new Field2d();
 
+    private boolean timeOptimal = false;
+    private PoseProfile profile;
+    private double setpointX, setpointY, setpointTheta;
+    private double setpointVx, setpointVy, setpointOmega;
+    private double profileTimeLeft = 0.0;
+    private static final DoublePublisher profilePlanPublisher = NetworkTableInstance.getDefault()
+        .getTable("DriveToPose").getDoubleTopic("ProfilePlanUs").publish();
+
+    private double startTime = 0;
+    private double goalTime = Double.NaN;
+    // time to goal is NaN when the command ended before reaching the goal
+    private final RobotLog.StructEntry resultLog = new RobotLog.StructEntry(
+        "DriveToPose/Result", "DriveToPoseResult",
+        "bool reached;double time_to_goal;double duration;double drive_error;double theta_error;double tag_trust",
+        1 + 5 * 8, false);
+
     public DriveToPose(CommandSwerveDrivetrain chassis, Supplier<Pose2d> target) {
+        this(chassis, target, null);
+    }
+
+    /**
+     * Drives to a target, lining up with the nearest tracked tag as the cameras see it once it's
+     * trusted. The target moves from the field pose to the same pose relative to the seen tag as
+     * the trust grows, which takes the pose estimate's latency and error out of the final approach.
+     *
+     * @param tags tags seen directly, or null to only use the field pose
+     */
+    public DriveToPose(CommandSwerveDrivetrain chassis, Supplier<Pose2d> target, TagTracker tags) {
         this.chassis = chassis;
         this.target = target;
+        this.tags = tags;
 
         thetaController.enableContinuousInput(-Math.PI, Math.PI);
 
         addRequirements(chassis);
     }
 
+    /**
+     * Follows a synchronized x, y and heading profile instead of the trapezoid profile on distance.
+     * The profile starts from the robot's current velocity, uses the module speed limit and is
+     * planned again every cycle from the last setpoint, so it follows a moving target. Whether it
+     * aligns faster is for AlignBenchmark to show, no binding uses it until then.
+     */
+    public DriveToPose withTimeOptimalProfile() {
+        double driveRadius = 0.0;
+        for (Translation2d module : chassis.getModuleLocations()) {
+            driveRadius = Math.max(driveRadius, module.getNorm());
+        }
+        profile = new PoseProfile(
+            TunerConstants.kSpeedAt12Volts.in(MetersPerSecond) * profileModuleSpeedShare, profileMaxAcceleration, driveRadius);
+        timeOptimal = true;
+        return this;
+    }
+
     @Override
     public void initialize() {
         // SmartDashboard.putString("init", target.get().toString()); // Diagnostic
         SmartDashboard.putData("targetPose", targetField2d); // Diagnostic
         targetField2d.setRobotPose(target.get());
         Pose2d currentPose = robot.get();
-        ChassisSpeeds fieldVelocity = chassis.getState().Speeds;
+        ChassisSpeeds fieldVelocity = chassis.getSpeeds();
         Translation2d linearFieldVelocity =
             new Translation2d(fieldVelocity.vxMetersPerSecond, fieldVelocity.vyMetersPerSecond);
         driveController.reset(
@@ -88,6 +156,18 @@ public class DriveToPose extends Command {
         thetaController.reset(
             currentPose.getRotation().getRadians(), fieldVelocity.omegaRadiansPerSecond);
         lastSetpointTranslation = currentPose.getTranslation();
+
+        ChassisSpeeds speeds = ChassisSpeeds.fromRobotRelativeSpeeds(chassis.getSpeeds(), currentPose.getRotation());
+        setpointX = currentPose.getX();
+        setpointY = currentPose.getY();
+        setpointTheta = currentPose.getRotation().getRadians();
+        setpointVx = speeds.vxMetersPerSecond;
+        setpointVy = speeds.vyMetersPerSecond;
+        setpointOmega = speeds.omegaRadiansPerSecond;
+        profileTimeLeft = Double.POSITIVE_INFINITY;
+
+        startTime = Timer.getFPGATimestamp();
+        goalTime = Double.NaN;
     }
 
     @Override
@@ -96,7 +176,17 @@ public class DriveToPose extends Command {
 
         // Get current pose and target pose
         Pose2d currentPose = robot.get();
-        Pose2d targetPose = target.get();
+        Pose2d targetPose = applyTagTarget(target.get(), currentPose);
+
+        if (timeOptimal) {
+            followProfile(currentPose, targetPose);
+            return;
+        }
+
+        double maxVelocity = MathUtil.interpolate(driveMaxVelocity, tagDriveMaxVelocity, tagTrust);
+        if (maxVelocity != driveController.getConstraints().maxVelocity) {
+            driveController.setConstraints(new TrapezoidProfile.Constraints(maxVelocity, driveMaxAcceleration));
+        }
 
         // Calculate drive speed
         double currentDistance = currentPose.getTranslation().getDistance(targetPose.getTranslation());
@@ -152,20 +242,85 @@ public class DriveToPose extends Command {
                 thetaVelocity, omegaFF.getAsDouble() * 4.69/Math.hypot(10.75, 10.75), thetaS);
 
         // Command speeds (ROBOT RELATIVE)
-        chassis.setControl(drive.withSpeeds(ChassisSpeeds.fromFieldRelativeSpeeds(
-            driveVelocity.getX(), driveVelocity.getY(), thetaVelocity, currentPose.getRotation())));
+        chassis.setControl(keepOut.withRequest(drive.withSpeeds(ChassisSpeeds.fromFieldRelativeSpeeds(
+            driveVelocity.getX(), driveVelocity.getY(), thetaVelocity, currentPose.getRotation()))));
+
+        if (Double.isNaN(goalTime) && atGoal()) {
+            goalTime = Timer.getFPGATimestamp();
+        }
     }
 
     @Override
     public void end(boolean interrupted) {
-        chassis.setControl(new SwerveRequest.SwerveDriveBrake());
+        chassis.setControl(brake);
         running = false;
+
+        if (resultLog.begin()) {
+            resultLog.putBoolean(!Double.isNaN(goalTime))
+                .putDouble(goalTime - startTime)
+                .putDouble(Timer.getFPGATimestamp() - startTime)
+                .putDouble(driveErrorAbs)
+                .putDouble(thetaErrorAbs)
+                .putDouble(tagTrust)
+                .append();
+        }
+    }
+
+    private void followProfile(Pose2d currentPose, Pose2d targetPose) {
+        long planStart = System.nanoTime();
+        profile.plan(setpointX, setpointY, setpointTheta, setpointVx, setpointVy, setpointOmega,
+            targetPose.getX(), targetPose.getY(), targetPose.getRotation().getRadians());
+        profilePlanPublisher.set((System.nanoTime() - planStart) / 1000.0);
+        setpointX = profile.getX(profilePeriod);
+        setpointY = profile.getY(profilePeriod);
+        setpointTheta = profile.getTheta(profilePeriod);
+        setpointVx = profile.getVx(profilePeriod);
+        setpointVy = profile.getVy(profilePeriod);
+        setpointOmega = profile.getOmega(profilePeriod);
+        profileTimeLeft = profile.getTotalTime() - profilePeriod;
+
+        driveErrorAbs = currentPose.getTranslation().getDistance(targetPose.getTranslation());
+        thetaErrorAbs = Math.abs(currentPose.getRotation().minus(targetPose.getRotation()).getRadians());
+
+        // Profile velocity plus feedback on the setpoint (FIELD RELATIVE)
+        double vx = setpointVx + drivekP * (setpointX - currentPose.getX());
+        double vy = setpointVy + drivekP * (setpointY - currentPose.getY());
+        double omega = setpointOmega + thetakP * MathUtil.angleModulus(setpointTheta - currentPose.getRotation().getRadians());
+        chassis.setControl(keepOut.withRequest(drive.withSpeeds(ChassisSpeeds.fromFieldRelativeSpeeds(vx, vy, omega, currentPose.getRotation()))));
+
+        if (Double.isNaN(goalTime) && atGoal()) {
+            goalTime = Timer.getFPGATimestamp();
+        }
+    }
+
+    private Pose2d applyTagTarget(Pose2d fieldTarget, Pose2d currentPose) {
+        tagTrust = 0.0;
+        if (tags == null) return fieldTarget;
+
+        int tag = tags.getNearestTag(fieldTarget, tagMaxGoalDistance);
+        Pose2d odometryPose = chassis.getOdometryPose();
+        tagTrust = tags.getTrust(tag, Timer.getFPGATimestamp(), odometryPose);
+        if (tagTrust == 0.0) return fieldTarget;
+
+        Pose2d tagTarget = tags.getTagRelativeGoal(tag, odometryPose, currentPose, fieldTarget);
+        return fieldTarget.interpolate(tagTarget, tagTrust);
     }
 
     public boolean atGoal() {
+        if (timeOptimal) {
+            return running
+                && profileTimeLeft <= 0.0
+                && driveErrorAbs < driveController.getPositionTolerance()
+                && thetaErrorAbs < thetaController.getPositionTolerance();
+        }
         return running && driveController.atGoal() && thetaController.atGoal();
     }
 
+    /** @return seconds from the start of the last run to reaching the goal, NaN if it didn't */
+    public double getTimeToGoal() {
+        return goalTime - startTime;
+    }
+
     public boolean withinTolerance(double driveTolerance, Rotation2d thetaTolerance) {
         return running
             && Math.abs(driveErrorAbs) < driveTolerance
@@ -0,0 +1,87 @@
+package frc.robot.commands;
+
+import static frc.robot.Constants.PathfindingConstants.*;
+
+import java.util.function.Supplier;
+
+import com.ctre.phoenix6.swerve.SwerveRequest;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj2.command.Command;
+import frc.robot.subsystems.CommandSwerveDrivetrain;
+import frc.robot.util.NavigationGraph;
+import frc.robot.util.Pathfinder;
+
+/**
+ * Drives around the field obstacles to just short of a target, for an align command to finish.
+ * <p>
+ * Ends straight away when the robot is already close to the target or has a clear straight line
+ * to it, and when no path is found. Until the background plan arrives, usually the next cycle, the
+ * drivetrain is told to stop, so it doesn't carry on with whatever it was last asked to do.
+ */
+public class PathfindToPose extends Command {
+    private final CommandSwerveDrivetrain chassis;
+    private final Pathfinder pathfinder;
+    private final NavigationGraph graph;
+    private final Supplier<Pose2d> target;
+    private final SwerveRequest.ApplyRobotSpeeds stop = new SwerveRequest.ApplyRobotSpeeds();
+
+    private boolean direct = false;
+    private long request = -1;
+    private Pathfinder.Path path = null;
+    private double path_start = 0;
+
+    /**
+     * @param graph the graph the pathfinder plans on, for checking the straight line
+     */
+    public PathfindToPose(CommandSwerveDrivetrain chassis, Pathfinder pathfinder, NavigationGraph graph, Supplier<Pose2d> target) {
+        this.chassis = chassis;
+        this.pathfinder = pathfinder;
+        this.graph = graph;
+        this.target = target;
+
+        addRequirements(chassis);
+    }
+
+    @Override
+    public void initialize() {
+        Pose2d pose = chassis.getPose();
+        Pose2d goal = target.get();
+        path = null;
+
+        Translation2d approach = graph.getApproachPoint(goal.getTranslation());
+        direct = pose.getTranslation().getDistance(goal.getTranslation()) < directDistance
+            || (approach != null && graph.isFree(pose.getX(), pose.getY())
+                && graph.isClear(pose.getX(), pose.getY(), approach.getX(), approach.getY()));
+        if (direct)
+            return;
+
+        ChassisSpeeds speeds = ChassisSpeeds.fromRobotRelativeSpeeds(chassis.getSpeeds(), pose.getRotation());
+        request = pathfinder.request(pose, speeds, goal);
+        chassis.setControl(stop);
+    }
+
+    @Override
+    public void execute() {
+        if (direct)
+            return;
+
+        if (path == null) {
+            path = pathfinder.getPath(request);
+            if (path == null)
+                return;
+            path_start = Timer.getFPGATimestamp();
+        }
+        if (path.found())
+            chassis.followPath(path.sample(Timer.getFPGATimestamp() - path_start));
+    }
+
+    @Override
+    public boolean isFinished() {
+        return direct
+            || (path != null && (!path.found() || Timer.getFPGATimestamp() - path_start > path.getTotalTime()));
+    }
+}
@@ -1,13 +1,26 @@
 package frc.robot.control;
 
 import edu.wpi.first.networktables.*;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Timer;
 import edu.wpi.first.wpilibj.util.Color;
 import edu.wpi.first.wpilibj.util.Color8Bit;
-import edu.wpi.first.wpilibj2.command.Commands;
-import edu.wpi.first.wpilibj2.command.button.CommandGenericHID;
+import edu.wpi.first.wpilibj2.command.CommandScheduler;
 import edu.wpi.first.wpilibj2.command.button.Trigger;
+import frc.robot.util.RobotLog;
 
 public class Launchpad {
+    /** Where button presses come from */
+    public enum Transport {
+        /** Three vjoys through the driver station, 32 buttons each */
+        DriverStation,
+        /**
+         * Timestamped 81 bit bitmaps published straight to the launchpad/buttons topic. The bridge
+         * stamps them with its own NT clock, which only matches the robot's once the bridge has
+         * synced its time with the server.
+         */
+        NetworkTables
+    }
 
     //numbers must be within 0-63
     //[63,0,0] - Red || [0,63,0] - Green || [0,0,63] - Blue  || [63,63,63] - White || [0,0,0] - Blank/Black
@@ -28,40 +41,186 @@ public class Launchpad {
     private long[] rgbHex = new long[9*9+1];
     private long[] savedRgbHex = new long[9*9+1];
 
+    // rgbHex packed two colors per long, kept up to date as LEDs change and published by flush()
+    private final long[] packedRgbHex = new long[(rgbHex.length + 1) / 2];
+    private boolean dirty = false;
+    private double minPublishPeriod = 0;
+    private double lastPublishTime = Double.NEGATIVE_INFINITY;
+
+    private long updateCount = 0;
+    private long publishCount = 0;
+    private long bytesSent = 0;
+    private IntegerPublisher savedPublishesPublisher;
+    private IntegerPublisher bytesSentPublisher;
+
     private Trigger[][] buttons = new Trigger[9][9];
     private Color8Bit pressedColor;
 
     private NetworkTableInstance table;
     private NetworkTable launch;
-    private CommandGenericHID[] vjoys;
+    private int[] vjoys;
+    private Transport transport = Transport.DriverStation;
+
+    // button states by button number (y*9+x), bits 0-63 then 64-80, updated once per loop by poll()
+    private final long[] buttonState = new long[2];
+    // buttons seen pressed at any point during this loop, so a press and release between loops isn't lost
+    private final long[] pressedThisLoop = new long[2];
+    private final long[] lastState = new long[2];
+    private DoublePublisher pollTimePublisher;
+    // sentTime is the NT time the bridge sent the state in microseconds, or -1 for the driver station
+    private final RobotLog.StructEntry edgeLog = new RobotLog.StructEntry(
+        "Launchpad/ButtonEdge", "LaunchpadButtonEdge", "uint8 x;uint8 y;bool pressed;int64 sent_time", 3 + 8, false);
+
+    private IntegerArraySubscriber buttonSubscriber;
+    private DoublePublisher pressToCommandPublisher;
+    private DoublePublisher arrivalToCommandPublisher;
+
+    // the first NetworkTables press of this loop, until a command starts from it, or -1
+    private long pendingSentTime = -1;
+    private long pendingArrivalTime = -1;
+    // times in NT microseconds: sent by the bridge, received by the robot, and the command started
+    private final RobotLog.StructEntry commandLog = new RobotLog.StructEntry(
+        "Launchpad/PressToCommand", "LaunchpadPressToCommand", "int64 sent_time;int64 arrival_time;int64 command_time", 3 * 8, false);
 
     public Launchpad(int vjoy1, int vjoy2, int vjoy3, Color8Bit pressedColor) {
         table = NetworkTableInstance.getDefault();
         launch = table.getTable("launchpad");
         rgbTablePublisher = launch.getIntegerArrayTopic("colors").publish();
+        savedPublishesPublisher = launch.getSubTable("stats").getIntegerTopic("SavedPublishes").publish();
+        bytesSentPublisher = launch.getSubTable("stats").getIntegerTopic("BytesSent").publish();
+        pollTimePublisher = launch.getSubTable("stats").getDoubleTopic("PollUs").publish();
+        // needs the bridge's clock synced with the robot's, arrival to command doesn't
+        pressToCommandPublisher = launch.getSubTable("stats").getDoubleTopic("PressToCommandMs").publish();
+        arrivalToCommandPublisher = launch.getSubTable("stats").getDoubleTopic("ArrivalToCommandMs").publish();
+        buttonSubscriber = launch.getIntegerArrayTopic("buttons").subscribe(new long[0],
+            PubSubOption.sendAll(true), PubSubOption.keepDuplicates(true), PubSubOption.pollStorage(64));
         this.pressedColor = pressedColor;
         defaultLEDs();
-        vjoys = new CommandGenericHID[]{new CommandGenericHID(vjoy1), new CommandGenericHID(vjoy2), new CommandGenericHID(vjoy3)};
+        vjoys = new int[]{vjoy1, vjoy2, vjoy3};
+
+        // bound before any button trigger so the masks are fresh when the triggers are checked
+        CommandScheduler.getInstance().getDefaultButtonLoop().bind(this::poll);
+        // button bindings start their commands while the button loop runs, right after poll()
+        CommandScheduler.getInstance().onCommandInitialize(command -> commandStarted());
+
         for (int i = 0; i < 9*9; i++) {
-            int vjoy_num = Math.floorDiv(i,32);
             int row = Math.floorDiv(i,9);
             int col = i%9;
             int button_num = getButtonNum(col,row);
-            // if(row == 3)
-                // System.out.println("("+row+","+col+","+vjoy_num+") "+button_num);
 
             // Change me!
             changeLED(col, row, rgbTable[row][col]);
 
-            int button = button_num - (32 * Math.floorDiv(i,32));
-            // if(button != 0)
-            // {
-            buttons[row][col] = vjoys[vjoy_num].button(button+1);
-            buttons[row][col].onTrue(Commands.print("("+row+","+(col)+") pressed"));
-            buttons[row][col].onFalse(Commands.runOnce((()->this.restoreSavedLED(col,row))));
-            buttons[row][col].onTrue(Commands.runOnce((()->this.feedback(col,row, pressedColor))));
-            // }
+            int word = button_num / 64;
+            long mask = 1L << (button_num % 64);
+            buttons[row][col] = new Trigger(() -> ((buttonState[word] | pressedThisLoop[word]) & mask) != 0);
+        }
+    }
+
+    /**
+     * Selects where button presses are read from. The NetworkTables transport skips the driver
+     * station and isn't limited to 32 buttons per vjoy.
+     *
+     * @param transport the transport to use
+     */
+    public void setTransport(Transport transport) {
+        this.transport = transport;
+        // drop anything queued while the other transport was active
+        buttonSubscriber.readQueue();
+    }
+
+    /**
+     * Reads the button state once and handles only the buttons that changed since the last update
+     */
+    private void poll() {
+        long start = System.nanoTime();
+
+        pressedThisLoop[0] = 0;
+        pressedThisLoop[1] = 0;
+        // a press that started nothing last loop isn't measured
+        pendingSentTime = -1;
+        pendingArrivalTime = -1;
+
+        if (transport == Transport.DriverStation) {
+            // the vjoys carry buttons 0-31, 32-63 and 64-80
+            long low = (DriverStation.getStickButtons(vjoys[0]) & 0xFFFFFFFFL)
+                | ((DriverStation.getStickButtons(vjoys[1]) & 0xFFFFFFFFL) << 32);
+            long high = DriverStation.getStickButtons(vjoys[2]) & 0x1FFFFL;
+            update(low, high, -1, -1);
+        } else {
+            // every queued bitmap is applied in order so no edge is lost between loops
+            for (TimestampedIntegerArray value : buttonSubscriber.readQueue()) {
+                if (value.value.length < 3) {
+                    continue;
+                }
+                update(value.value[1], value.value[2], value.value[0], value.timestamp);
+            }
+        }
+
+        pollTimePublisher.set((System.nanoTime() - start) / 1000.0);
+    }
+
+    /**
+     * Applies a new button state and dispatches the buttons that changed
+     *
+     * @param low button states 0-63
+     * @param high button states 64-80
+     * @param timestamp NT time the state was sent in microseconds, or -1 if unknown
+     * @param arrival NT time the robot received the state in microseconds, or -1 if unknown
+     */
+    private void update(long low, long high, long timestamp, long arrival) {
+        buttonState[0] = low;
+        buttonState[1] = high & 0x1FFFFL;
+
+        for (int word = 0; word < 2; word++) {
+            long changed = buttonState[word] ^ lastState[word];
+            lastState[word] = buttonState[word];
+            pressedThisLoop[word] |= buttonState[word];
+
+            while (changed != 0) {
+                int bit = Long.numberOfTrailingZeros(changed);
+                changed &= changed - 1;
+
+                int button_num = word * 64 + bit;
+                int row = Math.floorDiv(button_num,9);
+                int col = button_num%9;
+                boolean pressed = (buttonState[word] & (1L << bit)) != 0;
+                if (edgeLog.begin()) {
+                    edgeLog.putByte(col).putByte(row).putBoolean(pressed).putLong(timestamp).append();
+                }
+
+                if (pressed) {
+                    System.out.println("("+row+","+(col)+") pressed");
+                    feedback(col, row, pressedColor);
+
+                    if (timestamp >= 0 && pendingSentTime < 0) {
+                        pendingSentTime = timestamp;
+                        pendingArrivalTime = arrival;
+                    }
+                } else {
+                    restoreSavedLED(col, row);
+                }
+            }
+        }
+    }
+
+    /**
+     * Measures from the first NetworkTables press of the loop to the first command it started. Any
+     * command started in the same loop after the press counts, which in practice is the press's own.
+     */
+    private void commandStarted() {
+        if (pendingSentTime < 0) {
+            return;
+        }
+
+        long now = NetworkTablesJNI.now();
+        pressToCommandPublisher.set((now - pendingSentTime) / 1000.0);
+        arrivalToCommandPublisher.set((now - pendingArrivalTime) / 1000.0);
+        if (commandLog.begin()) {
+            commandLog.putLong(pendingSentTime).putLong(pendingArrivalTime).putLong(now).append();
         }
+        pendingSentTime = -1;
+        pendingArrivalTime = -1;
     }
 
     /**
@@ -79,28 +238,53 @@ public class Launchpad {
         return buttons[y][x];
     }
 
-    // Function to shrink the long[] array to a smaller size
-    private long[] shrinkArray(long[] originalArray, int originalSize) {
-        if (originalArray == null || originalArray.length != originalSize) {
-            throw new IllegalArgumentException("Input array size does not match the given original size.");
+    /**
+     * Repacks the pair of colors containing a button into the publish buffer and marks it for the
+     * next flush
+     */
+    private void markDirty(int button_num) {
+        int i = button_num / 2;
+        long combinedValue = (rgbHex[i * 2] & 0xFFFFFFFFL);  // Lower 4 bytes
+        if (i * 2 + 1 < rgbHex.length) {
+            combinedValue |= (rgbHex[i * 2 + 1] & 0xFFFFFFFFL) << 32;  // Upper 4 bytes
         }
+        packedRgbHex[i] = combinedValue;
 
-        // Calculate the size of the result array based on the original size
-        int resultSize = (originalSize + 1) / 2;  // Each resulting element combines two original ones (rounding up for odd sizes)
+        dirty = true;
+        updateCount++;
+    }
 
-        // Array of the new size for the result
-        long[] resultArray = new long[resultSize];
+    /**
+     * Limits how often the LED colors are published
+     *
+     * @param rate maximum publishes per second, 0 for no limit besides once per flush
+     */
+    public void setMaxPublishRate(double rate) {
+        minPublishPeriod = rate > 0 ? 1.0 / rate : 0;
+    }
 
-        // Iterate through the original array and combine two long values in one step
-        for (int i = 0; i < resultSize; i++) {
-            long combinedValue = (originalArray[i * 2] & 0xFFFFFFFFL);  // Lower 4 bytes
-            if (i * 2 + 1 < originalSize) {
-                combinedValue |= (originalArray[i * 2 + 1] & 0xFFFFFFFFL) << 32;  // Upper 4 bytes
-            }
-            resultArray[i] = combinedValue;
+    /**
+     * Publishes the LED colors if any changed since the last publish. Call once per robot loop,
+     * after the scheduler has run.
+     */
+    public void flush() {
+        if (!dirty) {
+            return;
         }
 
-        return resultArray;
+        double now = Timer.getFPGATimestamp();
+        if (now - lastPublishTime < minPublishPeriod) {
+            return;
+        }
+
+        rgbTablePublisher.set(packedRgbHex);
+        dirty = false;
+        lastPublishTime = now;
+
+        publishCount++;
+        bytesSent += packedRgbHex.length * Long.BYTES;
+        savedPublishesPublisher.set(updateCount - publishCount);
+        bytesSentPublisher.set(bytesSent);
     }
 
     private int getButtonNum(int x, int y)
@@ -137,7 +321,7 @@ public class Launchpad {
         long rgbHeax = (rgb[0] << 16) | (rgb[1] << 8) | rgb[2];
         rgbHex[button_num] = rgbHeax;
         savedRgbHex[button_num] = rgbHeax;
-        rgbTablePublisher.set(shrinkArray(rgbHex,rgbHex.length));
+        markDirty(button_num);
     }
 
     /**
@@ -159,7 +343,7 @@ public class Launchpad {
         long rgbHeax = (rgb[0] << 16) | (rgb[1] << 8) | rgb[2];
         rgbHex[button_num] = rgbHeax;
         savedRgbHex[button_num] = rgbHeax;
-        rgbTablePublisher.set(shrinkArray(rgbHex, rgbHex.length));
+        markDirty(button_num);
     }
 
     private void feedback(int x, int y, Color8Bit color8Bit) {
@@ -181,7 +365,7 @@ public class Launchpad {
     {
         int button_num = getButtonNum(x,y);
         rgbHex[button_num] = savedRgbHex[button_num];
-        rgbTablePublisher.set(shrinkArray(rgbHex,rgbHex.length));
+        markDirty(button_num);
     }
 
     /** 
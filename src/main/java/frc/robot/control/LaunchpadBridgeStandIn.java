@@ -0,0 +1,75 @@
+package frc.robot.control;
+
+import edu.wpi.first.networktables.IntegerArrayPublisher;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.networktables.NetworkTablesJNI;
+import edu.wpi.first.networktables.PubSubOption;
+import edu.wpi.first.wpilibj.DriverStation;
+
+/**
+ * Publishes Launchpad button bitmaps the same way the bridge does for the NetworkTables transport,
+ * so it can be tested in simulation or on the robot without the real Launchpad.
+ * <p>
+ * Each value on launchpad/buttons is {timestamp, buttons 0-63, buttons 64-80}, where the timestamp is
+ * the NT time in microseconds the state was sent and button numbers are y*9+x. Running on the robot
+ * its clock is the robot's, so the latencies it gives leave out the bridge's clock sync error.
+ */
+public class LaunchpadBridgeStandIn {
+    private final IntegerArrayPublisher publisher;
+    private final long[] value = new long[3];
+
+    public LaunchpadBridgeStandIn() {
+        publisher = NetworkTableInstance.getDefault().getTable("launchpad").getIntegerArrayTopic("buttons")
+            .publish(PubSubOption.sendAll(true), PubSubOption.keepDuplicates(true));
+    }
+
+    public void press(int x, int y) {
+        set(x, y, true);
+    }
+
+    public void release(int x, int y) {
+        set(x, y, false);
+    }
+
+    /**
+     * Publishes the buttons held on the driver station vjoys, if they changed, so the sim GUI's
+     * joysticks can drive the NetworkTables transport. Call once per loop.
+     */
+    public void mirror(int vjoy1, int vjoy2, int vjoy3) {
+        long low = (DriverStation.getStickButtons(vjoy1) & 0xFFFFFFFFL)
+            | ((DriverStation.getStickButtons(vjoy2) & 0xFFFFFFFFL) << 32);
+        long high = DriverStation.getStickButtons(vjoy3) & 0x1FFFFL;
+        if (low == value[1] && high == value[2]) {
+            return;
+        }
+
+        value[1] = low;
+        value[2] = high;
+        value[0] = NetworkTablesJNI.now();
+        publisher.set(value);
+    }
+
+    /** Presses and releases a button straight away, both edges should still reach the robot */
+    public void tap(int x, int y) {
+        press(x, y);
+        release(x, y);
+    }
+
+    private void set(int x, int y, boolean pressed) {
+        if (x > 8 || y > 8 || x < 0 || y < 0) {
+            throw new IllegalArgumentException("Coords must be within 0-8");
+        }
+
+        int button_num = y*9+x;
+        int word = 1 + button_num / 64;
+        long mask = 1L << (button_num % 64);
+        if (pressed) {
+            value[word] |= mask;
+        } else {
+            value[word] &= ~mask;
+        }
+
+        value[0] = NetworkTablesJNI.now();
+        publisher.set(value);
+    }
+}
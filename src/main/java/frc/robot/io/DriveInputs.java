@@ -0,0 +1,54 @@
+package frc.robot.io;
+
+import java.nio.ByteBuffer;
+
+import com.ctre.phoenix6.Utils;
+import com.ctre.phoenix6.swerve.SwerveDrivetrain.SwerveDriveState;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import frc.robot.util.RobotLog;
+
+/**
+ * Drivetrain state the robot logic reads each cycle. Odometry and pose estimation run inside
+ * Phoenix, so the replayable input is their result rather than the raw module signals.
+ */
+public class DriveInputs extends LoggedInputs {
+    /**
+     * FPGA timestamp of the state, seconds. Converted from Phoenix time when it's read, the offset
+     * between the two clocks isn't the same when replaying.
+     */
+    public double timestamp = 0;
+    public Pose2d pose = Pose2d.kZero;
+    /** robot relative speeds */
+    public ChassisSpeeds speeds = new ChassisSpeeds();
+
+    /** @param name entry name in the log */
+    public DriveInputs(String name) {
+        super(name, "DriveInputs",
+            "double timestamp;double x;double y;double theta;double vx;double vy;double omega",
+            7 * 8);
+    }
+
+    /** Copies the latest Phoenix swerve state */
+    public void fromState(SwerveDriveState state) {
+        timestamp = Utils.currentTimeToFPGATime(state.Timestamp);
+        pose = state.Pose;
+        speeds = new ChassisSpeeds(state.Speeds.vxMetersPerSecond, state.Speeds.vyMetersPerSecond, state.Speeds.omegaRadiansPerSecond);
+    }
+
+    @Override
+    protected void toLog(RobotLog.StructEntry entry) {
+        entry.putDouble(timestamp)
+            .putDouble(pose.getX()).putDouble(pose.getY()).putDouble(pose.getRotation().getRadians())
+            .putDouble(speeds.vxMetersPerSecond).putDouble(speeds.vyMetersPerSecond).putDouble(speeds.omegaRadiansPerSecond);
+    }
+
+    @Override
+    protected void fromLog(ByteBuffer buffer) {
+        timestamp = buffer.getDouble();
+        pose = new Pose2d(buffer.getDouble(), buffer.getDouble(), new Rotation2d(buffer.getDouble()));
+        speeds = new ChassisSpeeds(buffer.getDouble(), buffer.getDouble(), buffer.getDouble());
+    }
+}
@@ -0,0 +1,19 @@
+package frc.robot.io;
+
+import edu.wpi.first.wpilibj.RobotBase;
+
+/** Where subsystem inputs come from */
+public enum IOMode {
+    /** Hardware on the robot */
+    Real,
+    /** Physics simulation on the desktop */
+    Sim,
+    /** Inputs recorded in a log, see {@link LogReplay} */
+    Replay;
+
+    private static final IOMode mode = RobotBase.isReal() ? Real : LogReplay.getLogPath() != null ? Replay : Sim;
+
+    public static IOMode get() {
+        return mode;
+    }
+}
@@ -0,0 +1,208 @@
+package frc.robot.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+
+import edu.wpi.first.util.datalog.DataLogReader;
+import edu.wpi.first.util.datalog.DataLogRecord;
+import edu.wpi.first.wpilibj.simulation.DriverStationSim;
+import frc.robot.util.RobotLog;
+
+/**
+ * Streams a robot log back one robot cycle at a time.
+ * <p>
+ * Records are read in file order up to the next cycle marker logged by {@link RobotLog#endCycle()},
+ * so only one cycle is held in memory. Driver station records are applied to the simulated driver
+ * station as they are read, everything else is kept for {@link LoggedInputs#process()} to pick up.
+ * <p>
+ * Replay runs in simulation when the {@value #logPathVariable} environment variable points at a
+ * log, eg. {@code REPLAY_LOG=logs/FRC_20250315_Q12.wpilog ./gradlew simulateJava}.
+ */
+public final class LogReplay {
+    public static final String logPathVariable = "REPLAY_LOG";
+
+    private static final int joystickCount = 6;
+
+    private static String log_path = null;
+    private static Iterator<DataLogRecord> records = null;
+
+    private static final HashMap<Integer, String> entry_names = new HashMap<>();
+    private static final HashMap<String, List<byte[]>> cycle_records = new HashMap<>();
+    private static double cycle_start = 0;
+    private static long cycle_count = 0;
+
+    private LogReplay() {}
+
+    /** @return the log to replay, or null when not replaying */
+    public static String getLogPath() {
+        return System.getenv(logPathVariable);
+    }
+
+    /**
+     * Opens a log for replay
+     *
+     * @param path path of the .wpilog file
+     * @throws IllegalStateException if the log can't be read
+     */
+    public static synchronized void open(String path) {
+        DataLogReader reader;
+        try {
+            reader = new DataLogReader(path);
+        } catch (IOException e) {
+            throw new IllegalStateException("Can't read replay log " + path, e);
+        }
+        if (!reader.isValid()) {
+            throw new IllegalStateException(path + " isn't a wpilog file");
+        }
+
+        log_path = path;
+        records = reader.iterator();
+    }
+
+    public static boolean isActive() {
+        return records != null;
+    }
+
+    /** @return directory to write the replayed log to, next to the original */
+    public static String getOutputDirectory() {
+        Path parent = Path.of(log_path).toAbsolutePath().getParent();
+        return parent == null ? "" : parent.toString();
+    }
+
+    /** @return file name of the replayed log, the original name with a _replay suffix */
+    public static String getOutputName() {
+        String name = Path.of(log_path).getFileName().toString();
+        if (name.endsWith(".wpilog"))
+            name = name.substring(0, name.length() - ".wpilog".length());
+        return name + "_replay.wpilog";
+    }
+
+    /**
+     * Reads the records of the next cycle
+     *
+     * @return false once the log has no more complete cycles
+     */
+    public static boolean nextCycle() {
+        for (List<byte[]> list : cycle_records.values()) {
+            list.clear();
+        }
+
+        boolean driver_station_changed = false;
+        while (records.hasNext()) {
+            DataLogRecord record = records.next();
+            if (record.isStart()) {
+                DataLogRecord.StartRecordData start = record.getStartData();
+                entry_names.put(start.entry, start.name);
+                continue;
+            }
+            if (record.isControl())
+                continue;
+
+            String name = entry_names.get(record.getEntry());
+            if (name == null)
+                continue;
+
+            if (name.equals(RobotLog.cycleEntryName)) {
+                cycle_start = ByteBuffer.wrap(record.getRaw()).order(ByteOrder.LITTLE_ENDIAN).getDouble();
+                cycle_count++;
+                if (driver_station_changed)
+                    DriverStationSim.notifyNewData();
+                return true;
+            }
+
+            if (name.startsWith("DS:")) {
+                driver_station_changed |= applyDriverStation(name, record);
+                continue;
+            }
+
+            cycle_records.computeIfAbsent(name, k -> new ArrayList<>()).add(record.getRaw());
+        }
+
+        return false;
+    }
+
+    /** @return FPGA timestamp the current cycle started at on the robot, in seconds */
+    public static double getCycleStart() {
+        return cycle_start;
+    }
+
+    public static long getCycleCount() {
+        return cycle_count;
+    }
+
+    /** @return every record of an entry in the current cycle, oldest first */
+    public static List<byte[]> getRecords(String name) {
+        List<byte[]> list = cycle_records.get(name);
+        return list == null ? List.of() : list;
+    }
+
+    /** @return the last record of an entry in the current cycle, or null if there is none */
+    public static ByteBuffer getLatest(String name) {
+        List<byte[]> list = getRecords(name);
+        if (list.isEmpty())
+            return null;
+
+        return ByteBuffer.wrap(list.get(list.size() - 1)).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static boolean applyDriverStation(String name, DataLogRecord record) {
+        switch (name) {
+            case "DS:enabled" -> DriverStationSim.setEnabled(record.getBoolean());
+            case "DS:autonomous" -> DriverStationSim.setAutonomous(record.getBoolean());
+            case "DS:test" -> DriverStationSim.setTest(record.getBoolean());
+            case "DS:estop" -> DriverStationSim.setEStop(record.getBoolean());
+            case "DS:fms" -> DriverStationSim.setFmsAttached(record.getBoolean());
+            case "DS:ds" -> DriverStationSim.setDsAttached(record.getBoolean());
+            default -> {
+                return applyJoystick(name, record);
+            }
+        }
+        return true;
+    }
+
+    private static boolean applyJoystick(String name, DataLogRecord record) {
+        // DS:joystick<n>/buttons, axes or povs
+        if (!name.startsWith("DS:joystick") || name.length() < 13)
+            return false;
+
+        int stick = name.charAt(11) - '0';
+        if (stick < 0 || stick >= joystickCount)
+            return false;
+
+        String field = name.substring(13);
+        switch (field) {
+            case "buttons" -> {
+                boolean[] buttons = record.getBooleanArray();
+                int mask = 0;
+                for (int i = 0; i < buttons.length && i < 32; i++) {
+                    if (buttons[i])
+                        mask |= 1 << i;
+                }
+                DriverStationSim.setJoystickButtonCount(stick, buttons.length);
+                DriverStationSim.setJoystickButtons(stick, mask);
+            }
+            case "axes" -> {
+                float[] axes = record.getFloatArray();
+                DriverStationSim.setJoystickAxisCount(stick, axes.length);
+                for (int i = 0; i < axes.length; i++)
+                    DriverStationSim.setJoystickAxis(stick, i, axes[i]);
+            }
+            case "povs" -> {
+                long[] povs = record.getIntegerArray();
+                DriverStationSim.setJoystickPOVCount(stick, povs.length);
+                for (int i = 0; i < povs.length; i++)
+                    DriverStationSim.setJoystickPOV(stick, i, (int) povs[i]);
+            }
+            default -> {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,51 @@
+package frc.robot.io;
+
+import java.nio.ByteBuffer;
+
+import frc.robot.util.RobotLog;
+
+/**
+ * Everything a subsystem reads from its hardware in one cycle, as a single struct record.
+ * <p>
+ * Subsystems fill their inputs from an IO implementation and then call {@link #process()}, which
+ * logs them. During replay the IO implementation does nothing and {@link #process()} swaps in the
+ * recorded inputs instead, so the logic above it runs exactly as it did on the robot.
+ */
+public abstract class LoggedInputs {
+    private final String name;
+    private final RobotLog.StructEntry entry;
+
+    /**
+     * @param name entry name in the log
+     * @param type struct type name
+     * @param schema struct schema, in the order {@link #toLog} writes the fields
+     * @param size encoded size in bytes
+     */
+    protected LoggedInputs(String name, String type, String schema, int size) {
+        this.name = name;
+        entry = new RobotLog.StructEntry(name, type, schema, size, false);
+    }
+
+    /** Writes every field to the entry, in schema order */
+    protected abstract void toLog(RobotLog.StructEntry entry);
+
+    /** Reads every field back from a recorded record, in schema order */
+    protected abstract void fromLog(ByteBuffer buffer);
+
+    /**
+     * Replaces the inputs with the recorded ones when replaying, then logs them. Inputs that weren't
+     * recorded this cycle keep their last value.
+     */
+    public void process() {
+        if (LogReplay.isActive()) {
+            ByteBuffer recorded = LogReplay.getLatest(name);
+            if (recorded != null)
+                fromLog(recorded);
+        }
+
+        if (entry.begin()) {
+            toLog(entry);
+            entry.append();
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package frc.robot.io;
+
+import frc.robot.util.MechanismSignals;
+
+/**
+ * Hardware of a Motion Magic mechanism. Every method does nothing by default, which is what the
+ * mechanism uses during replay.
+ */
+public interface MechanismIO {
+    /** Reads the hardware into the inputs */
+    default void updateInputs(MechanismInputs inputs) {}
+
+    /** Moves to a position with Motion Magic, in mechanism units */
+    default void setPosition(double position) {}
+
+    default void setVoltage(double volts) {}
+
+    /** @return a private copy of the status signals for another thread, or null without hardware signals */
+    default MechanismSignals cloneSignals() {
+        return null;
+    }
+}
@@ -0,0 +1,62 @@
+package frc.robot.io;
+
+import java.nio.ByteBuffer;
+
+import frc.robot.util.RobotLog;
+import frc.robot.util.SettlePredictor;
+
+/**
+ * Inputs of one Motion Magic mechanism in mechanism units. The position is already extrapolated
+ * from its sample time to when the inputs were read.
+ */
+public class MechanismInputs extends LoggedInputs {
+    /** FPGA timestamp of the position sample in seconds */
+    public double timestamp = 0;
+    public double position = 0;
+    public double velocity = 0;
+    /** Motion Magic position reference */
+    public double reference = 0;
+    /** Motion Magic velocity reference */
+    public double reference_slope = 0;
+    /** seconds between the position sample and when it was read */
+    public double age = 0;
+    /** voltage applied to the motor */
+    public double voltage = 0;
+
+    /** @param name entry name in the log */
+    public MechanismInputs(String name) {
+        super(name, "MechanismInputs",
+            "double timestamp;double position;double velocity;double reference;double reference_slope;double age;double voltage",
+            7 * 8);
+    }
+
+    @Override
+    protected void toLog(RobotLog.StructEntry entry) {
+        entry.putDouble(timestamp).putDouble(position).putDouble(velocity).putDouble(reference)
+            .putDouble(reference_slope).putDouble(age).putDouble(voltage);
+    }
+
+    @Override
+    protected void fromLog(ByteBuffer buffer) {
+        timestamp = buffer.getDouble();
+        position = buffer.getDouble();
+        velocity = buffer.getDouble();
+        reference = buffer.getDouble();
+        reference_slope = buffer.getDouble();
+        age = buffer.getDouble();
+        voltage = buffer.getDouble();
+    }
+
+    /** @see SettlePredictor#willSettle */
+    public boolean willSettle(double goal, double tolerance, double tracking_tolerance, double lookahead) {
+        return SettlePredictor.willSettle(
+            position,
+            velocity,
+            reference,
+            reference_slope,
+            goal,
+            tolerance,
+            tracking_tolerance,
+            lookahead);
+    }
+}
@@ -0,0 +1,12 @@
+package frc.robot.io;
+
+/**
+ * Hardware of a voltage driven roller. Every method does nothing by default, which is what the
+ * roller uses during replay.
+ */
+public interface RollerIO {
+    /** Reads the hardware into the inputs */
+    default void updateInputs(RollerInputs inputs) {}
+
+    default void setVoltage(double volts) {}
+}
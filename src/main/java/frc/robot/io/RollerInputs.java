@@ -0,0 +1,90 @@
+package frc.robot.io;
+
+import java.nio.ByteBuffer;
+
+import frc.robot.util.RobotLog;
+
+/**
+ * Inputs of a voltage driven roller, in rotor units. Besides the latest sample, every sample
+ * received since the last cycle is kept, so a detector can run at the signal rate instead of the
+ * loop rate.
+ */
+public class RollerInputs extends LoggedInputs {
+    /** most samples kept per cycle, 250 Hz signals give 5 in a 20 ms loop */
+    public static final int maxSamples = 8;
+
+    /** FPGA timestamp of the current sample in seconds */
+    public double timestamp = 0;
+    public double stator_current = 0;
+    /** rotor velocity in rotations per second */
+    public double rotor_velocity = 0;
+    /** voltage applied to the motor */
+    public double voltage = 0;
+
+    /** samples received since the last cycle, oldest first, the last one is the current sample */
+    public int sample_count = 0;
+    public final double[] sample_timestamps = new double[maxSamples];
+    public final double[] sample_currents = new double[maxSamples];
+    public final double[] sample_velocities = new double[maxSamples];
+    public final double[] sample_voltages = new double[maxSamples];
+
+    /** @param name entry name in the log */
+    public RollerInputs(String name) {
+        super(name, "RollerInputs",
+            "double timestamp;double stator_current;double rotor_velocity;double voltage;int32 sample_count;"
+                + "double sample_timestamps[" + maxSamples + "];double sample_currents[" + maxSamples + "];"
+                + "double sample_velocities[" + maxSamples + "];double sample_voltages[" + maxSamples + "]",
+            4 * 8 + 4 + 4 * maxSamples * 8);
+    }
+
+    /** Replaces the samples with a single one, also setting the current sample */
+    public void setSample(double timestamp, double stator_current, double rotor_velocity, double voltage) {
+        sample_count = 0;
+        addSample(timestamp, stator_current, rotor_velocity, voltage);
+    }
+
+    /** Adds a sample after the ones already received this cycle, and makes it the current sample */
+    public void addSample(double timestamp, double stator_current, double rotor_velocity, double voltage) {
+        if (sample_count == maxSamples) {
+            // more samples than expected this cycle, keep the newest
+            System.arraycopy(sample_timestamps, 1, sample_timestamps, 0, maxSamples - 1);
+            System.arraycopy(sample_currents, 1, sample_currents, 0, maxSamples - 1);
+            System.arraycopy(sample_velocities, 1, sample_velocities, 0, maxSamples - 1);
+            System.arraycopy(sample_voltages, 1, sample_voltages, 0, maxSamples - 1);
+            sample_count--;
+        }
+        sample_timestamps[sample_count] = timestamp;
+        sample_currents[sample_count] = stator_current;
+        sample_velocities[sample_count] = rotor_velocity;
+        sample_voltages[sample_count] = voltage;
+        sample_count++;
+
+        this.timestamp = timestamp;
+        this.stator_current = stator_current;
+        this.rotor_velocity = rotor_velocity;
+        this.voltage = voltage;
+    }
+
+    @Override
+    protected void toLog(RobotLog.StructEntry entry) {
+        entry.putDouble(timestamp).putDouble(stator_current).putDouble(rotor_velocity).putDouble(voltage);
+        entry.putInt(sample_count);
+        for (double[] samples : new double[][] {sample_timestamps, sample_currents, sample_velocities, sample_voltages}) {
+            for (double sample : samples)
+                entry.putDouble(sample);
+        }
+    }
+
+    @Override
+    protected void fromLog(ByteBuffer buffer) {
+        timestamp = buffer.getDouble();
+        stator_current = buffer.getDouble();
+        rotor_velocity = buffer.getDouble();
+        voltage = buffer.getDouble();
+        sample_count = buffer.getInt();
+        for (double[] samples : new double[][] {sample_timestamps, sample_currents, sample_velocities, sample_voltages}) {
+            for (int i = 0; i < maxSamples; i++)
+                samples[i] = buffer.getDouble();
+        }
+    }
+}
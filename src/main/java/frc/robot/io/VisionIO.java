@@ -0,0 +1,17 @@
+package frc.robot.io;
+
+import edu.wpi.first.math.geometry.Rotation2d;
+
+/** One camera. Cameras aren't created during replay, the observations come from the log instead. */
+public interface VisionIO {
+    /** Adds an observation for every result the camera delivered since the last call */
+    void updateInputs(VisionInputs inputs);
+
+    /**
+     * Records the drivetrain heading, for strategies that solve single tags with a known heading
+     *
+     * @param timestamp FPGA timestamp of the heading in seconds
+     * @param heading field relative robot heading
+     */
+    default void addHeading(double timestamp, Rotation2d heading) {}
+}
@@ -0,0 +1,161 @@
+package frc.robot.io;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Transform2d;
+import frc.robot.util.RobotLog;
+
+/**
+ * Pose observations from every camera in one cycle. A camera can deliver any number of results per
+ * cycle, so unlike {@link LoggedInputs} each observation is its own record.
+ */
+public class VisionInputs {
+    public static final int maxObservations = 32;
+
+    public int count = 0;
+    /** index of the camera that made the observation */
+    public final int[] camera = new int[maxObservations];
+    /** ordinal of the PhotonVision pose strategy that solved the pose */
+    public final int[] strategy = new int[maxObservations];
+    /** number of field tags the pose was solved from */
+    public final int[] tag_count = new int[maxObservations];
+    /** FPGA timestamp of the frame in seconds */
+    public final double[] timestamp = new double[maxObservations];
+    /** estimated pose, NaN if the frame gave no estimate */
+    public final double[] x = new double[maxObservations];
+    public final double[] y = new double[maxObservations];
+    public final double[] theta = new double[maxObservations];
+    /** average distance from the estimated pose to the tags used, in meters */
+    public final double[] avg_tag_distance = new double[maxObservations];
+    /** id of the largest tag in the frame, -1 if it saw none */
+    public final int[] tag_id = new int[maxObservations];
+    /** transform from the robot to that tag as the camera saw it, projected to the floor */
+    public final double[] tag_x = new double[maxObservations];
+    public final double[] tag_y = new double[maxObservations];
+    public final double[] tag_theta = new double[maxObservations];
+    public final double[] tag_ambiguity = new double[maxObservations];
+
+    private final String name;
+    private final RobotLog.StructEntry entry;
+
+    /** @param name entry name in the log */
+    public VisionInputs(String name) {
+        this.name = name;
+        entry = new RobotLog.StructEntry(name, "VisionObservation",
+            "uint8 camera;int8 strategy;uint8 tag_count;double timestamp;double x;double y;double theta;double avg_tag_distance;"
+                + "int8 tag_id;double tag_x;double tag_y;double tag_theta;double tag_ambiguity",
+            4 + 9 * 8, false);
+    }
+
+    public void clear() {
+        count = 0;
+    }
+
+    /**
+     * Adds an observation, dropping it if the cycle is already full
+     *
+     * @param camera_index index of the camera
+     * @param strategy_ordinal ordinal of the pose strategy used, or -1 if the frame gave no estimate
+     * @param frame_timestamp FPGA timestamp of the frame in seconds
+     * @param pose estimated pose, or null if the frame gave no estimate
+     * @param tags number of field tags used
+     * @param distance average distance to the tags used, in meters
+     * @param largest_tag id of the largest tag in the frame, or -1 if it saw none
+     * @param robot_to_tag transform from the robot to that tag, or null if it saw none
+     * @param ambiguity pose ambiguity of that tag
+     */
+    public void add(int camera_index, int strategy_ordinal, double frame_timestamp, Pose2d pose, int tags, double distance,
+            int largest_tag, Transform2d robot_to_tag, double ambiguity) {
+        if (count >= maxObservations)
+            return;
+
+        camera[count] = camera_index;
+        strategy[count] = strategy_ordinal;
+        tag_count[count] = tags;
+        timestamp[count] = frame_timestamp;
+        x[count] = pose == null ? Double.NaN : pose.getX();
+        y[count] = pose == null ? Double.NaN : pose.getY();
+        theta[count] = pose == null ? Double.NaN : pose.getRotation().getRadians();
+        avg_tag_distance[count] = distance;
+        tag_id[count] = robot_to_tag == null ? -1 : largest_tag;
+        tag_x[count] = robot_to_tag == null ? Double.NaN : robot_to_tag.getX();
+        tag_y[count] = robot_to_tag == null ? Double.NaN : robot_to_tag.getY();
+        tag_theta[count] = robot_to_tag == null ? Double.NaN : robot_to_tag.getRotation().getRadians();
+        tag_ambiguity[count] = ambiguity;
+        count++;
+    }
+
+    /** Appends every observation of another set, dropping what doesn't fit */
+    public void addAll(VisionInputs other) {
+        for (int i = 0; i < other.count && count < maxObservations; i++) {
+            camera[count] = other.camera[i];
+            strategy[count] = other.strategy[i];
+            tag_count[count] = other.tag_count[i];
+            timestamp[count] = other.timestamp[i];
+            x[count] = other.x[i];
+            y[count] = other.y[i];
+            theta[count] = other.theta[i];
+            avg_tag_distance[count] = other.avg_tag_distance[i];
+            tag_id[count] = other.tag_id[i];
+            tag_x[count] = other.tag_x[i];
+            tag_y[count] = other.tag_y[i];
+            tag_theta[count] = other.tag_theta[i];
+            tag_ambiguity[count] = other.tag_ambiguity[i];
+            count++;
+        }
+    }
+
+    /** @return true if the observation has a pose estimate */
+    public boolean hasPose(int index) {
+        return !Double.isNaN(x[index]);
+    }
+
+    /** @return true if the observation saw a tag */
+    public boolean hasTag(int index) {
+        return tag_id[index] >= 0;
+    }
+
+    /** @return transform from the robot to the observation's tag */
+    public Transform2d getRobotToTag(int index) {
+        return new Transform2d(tag_x[index], tag_y[index], new Rotation2d(tag_theta[index]));
+    }
+
+    /** Replaces the observations with the recorded ones when replaying, then logs them */
+    public void process() {
+        if (LogReplay.isActive()) {
+            count = 0;
+            for (byte[] record : LogReplay.getRecords(name)) {
+                ByteBuffer buffer = ByteBuffer.wrap(record).order(ByteOrder.LITTLE_ENDIAN);
+                if (count >= maxObservations)
+                    break;
+
+                camera[count] = buffer.get() & 0xFF;
+                strategy[count] = buffer.get();
+                tag_count[count] = buffer.get() & 0xFF;
+                timestamp[count] = buffer.getDouble();
+                x[count] = buffer.getDouble();
+                y[count] = buffer.getDouble();
+                theta[count] = buffer.getDouble();
+                avg_tag_distance[count] = buffer.getDouble();
+                tag_id[count] = buffer.get();
+                tag_x[count] = buffer.getDouble();
+                tag_y[count] = buffer.getDouble();
+                tag_theta[count] = buffer.getDouble();
+                tag_ambiguity[count] = buffer.getDouble();
+                count++;
+            }
+        }
+
+        for (int i = 0; i < count; i++) {
+            if (entry.begin()) {
+                entry.putByte(camera[i]).putByte(strategy[i]).putByte(tag_count[i]).putDouble(timestamp[i])
+                    .putDouble(x[i]).putDouble(y[i]).putDouble(theta[i]).putDouble(avg_tag_distance[i])
+                    .putByte(tag_id[i]).putDouble(tag_x[i]).putDouble(tag_y[i]).putDouble(tag_theta[i]).putDouble(tag_ambiguity[i])
+                    .append();
+            }
+        }
+    }
+}
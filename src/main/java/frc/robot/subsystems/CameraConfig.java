@@ -0,0 +1,122 @@
+package frc.robot.subsystems;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import org.photonvision.PhotonPoseEstimator.PoseStrategy;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import edu.wpi.first.math.Matrix;
+import edu.wpi.first.math.VecBuilder;
+import edu.wpi.first.math.geometry.Rotation3d;
+import edu.wpi.first.math.geometry.Transform3d;
+import edu.wpi.first.math.geometry.Translation3d;
+import edu.wpi.first.math.numbers.N1;
+import edu.wpi.first.math.numbers.N3;
+
+/**
+ * One camera from the camera config in the deploy directory. Fields are named like the JSON keys,
+ * lengths are in meters and angles in radians.
+ */
+public class CameraConfig {
+    /** Standard deviations of a camera's estimates, scaled up with distance to the tags */
+    public static class StdDevModel {
+        public double[] single_tag = {4, 4, 8};
+        public double[] multi_tag = {0.5, 0.5, 1};
+        /** single tag solves with a known heading, the heading is the gyro's so it must not be fed back */
+        public double[] heading_constrained = {0.8, 0.8, 1e3};
+        /** squared distance that doubles the standard deviations */
+        public double distance_scale = 30;
+        /** average tag distance above which estimates are all but ignored */
+        public double max_distance = 4;
+    }
+
+    /** How the camera is simulated, see {@link VisionSim} */
+    public static class SimModel {
+        public int width = 1280;
+        public int height = 800;
+        /** diagonal field of view, in degrees */
+        public double fov_deg = 70;
+        public double fps = 30;
+        public double latency_ms = 30;
+        public double latency_std_ms = 5;
+        /** corner detection noise, in pixels */
+        public double calib_error_px = 0.35;
+        public double calib_error_std_px = 0.1;
+        /** expected number of dropouts per second, and how long each lasts */
+        public double dropout_rate = 0;
+        public double dropout_seconds = 0.5;
+    }
+
+    /** The config file's top level object */
+    public static class CameraList {
+        public List<CameraConfig> cameras = List.of();
+    }
+
+    /** PhotonVision camera name */
+    public String name;
+
+    /** camera position on the robot */
+    public double x, y, z;
+    public double roll, pitch, yaw;
+
+    public PoseStrategy strategy = PoseStrategy.MULTI_TAG_PNP_ON_COPROCESSOR;
+    /** strategy for frames the primary strategy can't solve, usually single tags */
+    public PoseStrategy single_tag_strategy = PoseStrategy.PNP_DISTANCE_TRIG_SOLVE;
+
+    public StdDevModel std_devs = new StdDevModel();
+    public SimModel sim = new SimModel();
+
+    /**
+     * Reads the camera list
+     *
+     * @param file the JSON config
+     * @throws IllegalStateException if the file can't be read or parsed
+     */
+    public static List<CameraConfig> load(File file) {
+        CameraList list;
+        try {
+            list = new ObjectMapper().readValue(file, CameraList.class);
+        } catch (IOException e) {
+            throw new IllegalStateException("Can't read camera config " + file, e);
+        }
+
+        for (CameraConfig camera : list.cameras) {
+            if (camera.name == null || camera.name.isEmpty())
+                throw new IllegalStateException("Camera without a name in " + file);
+        }
+        return list.cameras;
+    }
+
+    public Transform3d getRobotToCamera() {
+        return new Transform3d(new Translation3d(x, y, z), new Rotation3d(roll, pitch, yaw));
+    }
+
+    /**
+     * @param numTags number of tags the estimate was solved from
+     * @param avgDist average distance to those tags, in meters
+     * @param strategy ordinal of the strategy that solved it
+     * @return x, y and heading standard deviations of the estimate
+     */
+    public Matrix<N3, N1> getStdDevs(int numTags, double avgDist, int strategy) {
+        double[] base = std_devs.single_tag;
+        if (numTags > 1) {
+            base = std_devs.multi_tag;
+        } else if (strategy == PoseStrategy.PNP_DISTANCE_TRIG_SOLVE.ordinal()
+                || strategy == PoseStrategy.CONSTRAINED_SOLVEPNP.ordinal()) {
+            base = std_devs.heading_constrained;
+        }
+
+        double scale;
+        if (numTags == 0) {
+            scale = 1;
+        } else if (avgDist > std_devs.max_distance) {
+            scale = 10;
+        } else {
+            scale = 1 + avgDist * avgDist / std_devs.distance_scale;
+        }
+        return VecBuilder.fill(base[0] * scale, base[1] * scale, base[2] * scale);
+    }
+}
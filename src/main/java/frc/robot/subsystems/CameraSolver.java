@@ -0,0 +1,151 @@
+package frc.robot.subsystems;
+
+import java.util.Optional;
+
+import org.photonvision.EstimatedRobotPose;
+import org.photonvision.PhotonPoseEstimator;
+import org.photonvision.PhotonPoseEstimator.ConstrainedSolvepnpParams;
+import org.photonvision.PhotonPoseEstimator.PoseStrategy;
+import org.photonvision.targeting.PhotonPipelineResult;
+import org.photonvision.targeting.PhotonTrackedTarget;
+
+import edu.wpi.first.apriltag.AprilTagFieldLayout;
+import edu.wpi.first.math.Matrix;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Pose3d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Transform2d;
+import edu.wpi.first.math.geometry.Transform3d;
+import edu.wpi.first.math.numbers.N1;
+import edu.wpi.first.math.numbers.N3;
+import edu.wpi.first.math.numbers.N8;
+import frc.robot.io.VisionInputs;
+
+/**
+ * Turns one camera's pipeline results into pose observations, the same way whether the results come
+ * from the camera, a recording or a benchmark.
+ * <p>
+ * Frames with several tags use the primary strategy. Frames where that fails, usually because only
+ * one tag is visible, fall back to the single tag strategy. The heading constrained ones
+ * ({@link PoseStrategy#PNP_DISTANCE_TRIG_SOLVE} and {@link PoseStrategy#CONSTRAINED_SOLVEPNP}) use
+ * the heading history added with {@link #addHeading}, which makes single tag estimates good enough
+ * to use. The time spent is counted per strategy that produced the estimate.
+ */
+public class CameraSolver {
+    // heading is trusted from the gyro, the solve only refines the translation
+    private static final ConstrainedSolvepnpParams constrainedParams = new ConstrainedSolvepnpParams(false, 0);
+
+    /** strategy slot for frames that gave no estimate */
+    public static final int noEstimateSlot = PoseStrategy.values().length;
+
+    private final int index;
+    private final AprilTagFieldLayout layout;
+    private final PhotonPoseEstimator estimator;
+    private final Transform3d robot_to_camera;
+
+    private Optional<Matrix<N3, N3>> camera_matrix = Optional.empty();
+    private Optional<Matrix<N8, N1>> dist_coeffs = Optional.empty();
+
+    private final long[] strategy_nanos = new long[noEstimateSlot + 1];
+    private final long[] strategy_count = new long[noEstimateSlot + 1];
+
+    /**
+     * @param index index the camera's observations are tagged with
+     * @param config camera position and strategies
+     * @param layout field tag layout
+     */
+    public CameraSolver(int index, CameraConfig config, AprilTagFieldLayout layout) {
+        this.index = index;
+        this.layout = layout;
+        robot_to_camera = config.getRobotToCamera();
+        estimator = new PhotonPoseEstimator(layout, config.strategy, robot_to_camera);
+        estimator.setMultiTagFallbackStrategy(config.single_tag_strategy);
+    }
+
+    /**
+     * Records the robot heading for the heading constrained strategies
+     *
+     * @param timestamp FPGA timestamp of the heading in seconds
+     * @param heading field relative robot heading
+     */
+    public synchronized void addHeading(double timestamp, Rotation2d heading) {
+        estimator.addHeadingData(timestamp, heading);
+    }
+
+    /** Sets the camera calibration, constrained solvepnp needs it */
+    public synchronized void setCalibration(Optional<Matrix<N3, N3>> camera_matrix, Optional<Matrix<N8, N1>> dist_coeffs) {
+        this.camera_matrix = camera_matrix;
+        this.dist_coeffs = dist_coeffs;
+    }
+
+    public synchronized boolean hasCalibration() {
+        return camera_matrix.isPresent() && dist_coeffs.isPresent();
+    }
+
+    /**
+     * Solves one result and adds its observation
+     *
+     * @param result the pipeline result, with its receive timestamp set
+     * @param inputs observations to add to
+     * @return time the solve took, in nanoseconds
+     */
+    public synchronized long solve(PhotonPipelineResult result, VisionInputs inputs) {
+        long start = System.nanoTime();
+        Optional<EstimatedRobotPose> estimatedPoseOptional =
+            estimator.update(result, camera_matrix, dist_coeffs, Optional.of(constrainedParams));
+        long cost = System.nanoTime() - start;
+
+        // the largest tag is the one the robot is closest to, eg. the reef face it's lining up with
+        PhotonTrackedTarget largest = null;
+        for (PhotonTrackedTarget tgt : result.getTargets()) {
+            if (layout.getTagPose(tgt.getFiducialId()).isPresent() && (largest == null || tgt.getArea() > largest.getArea())) {
+                largest = tgt;
+            }
+        }
+        int largest_id = largest == null ? -1 : largest.getFiducialId();
+        Transform2d robot_to_tag = largest == null ? null
+            : Pose3d.kZero.plus(robot_to_camera.plus(largest.getBestCameraToTarget())).toPose2d().minus(Pose2d.kZero);
+        double ambiguity = largest == null ? Double.NaN : largest.getPoseAmbiguity();
+
+        if (estimatedPoseOptional.isEmpty()) {
+            strategy_nanos[noEstimateSlot] += cost;
+            strategy_count[noEstimateSlot]++;
+            inputs.add(index, -1, result.getTimestampSeconds(), null, result.getTargets().size(), Double.NaN,
+                largest_id, robot_to_tag, ambiguity);
+            return cost;
+        }
+
+        EstimatedRobotPose estimatedRobotPose = estimatedPoseOptional.get();
+        Pose2d estPose = estimatedRobotPose.estimatedPose.toPose2d();
+        strategy_nanos[estimatedRobotPose.strategy.ordinal()] += cost;
+        strategy_count[estimatedRobotPose.strategy.ordinal()]++;
+
+        int numTags = 0;
+        double avgDist = 0;
+        for (PhotonTrackedTarget tgt : estimatedRobotPose.targetsUsed) {
+            Optional<Pose3d> tagPose = layout.getTagPose(tgt.getFiducialId());
+            if (tagPose.isEmpty()) {
+                continue;
+            }
+            numTags++;
+            avgDist += tagPose.get().toPose2d().getTranslation().getDistance(estPose.getTranslation());
+        }
+        if (numTags > 0) {
+            avgDist /= numTags;
+        }
+
+        inputs.add(index, estimatedRobotPose.strategy.ordinal(), estimatedRobotPose.timestampSeconds, estPose, numTags, avgDist,
+            largest_id, robot_to_tag, ambiguity);
+        return cost;
+    }
+
+    /** @return total solve time of a strategy slot, a strategy ordinal or {@link #noEstimateSlot}, in nanoseconds */
+    public synchronized long getStrategyNanos(int slot) {
+        return strategy_nanos[slot];
+    }
+
+    /** @return number of solves of a strategy slot */
+    public synchronized long getStrategyCount(int slot) {
+        return strategy_count[slot];
+    }
+}
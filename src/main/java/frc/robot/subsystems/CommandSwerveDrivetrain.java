@@ -3,6 +3,10 @@ package frc.robot.subsystems;
 import static edu.wpi.first.units.Units.Second;
 import static edu.wpi.first.units.Units.Volts;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
 import java.util.function.Supplier;
 
 import com.ctre.phoenix6.SignalLogger;
@@ -19,6 +23,9 @@ import edu.wpi.first.math.Matrix;
 import edu.wpi.first.math.controller.PIDController;
 import edu.wpi.first.math.geometry.Pose2d;
 import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Twist2d;
+import edu.wpi.first.math.interpolation.TimeInterpolatableBuffer;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
 import edu.wpi.first.math.numbers.N1;
 import edu.wpi.first.math.numbers.N3;
 import edu.wpi.first.wpilibj.DriverStation;
@@ -29,6 +36,8 @@ import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.Subsystem;
 import edu.wpi.first.wpilibj2.command.sysid.SysIdRoutine;
 import frc.robot.generated.TunerConstants.TunerSwerveDrivetrain;
+import frc.robot.io.DriveInputs;
+import frc.robot.io.IOMode;
 
 /**
  * Class that extends the Phoenix 6 SwerveDrivetrain class and implements
@@ -47,6 +56,20 @@ public class CommandSwerveDrivetrain extends TunerSwerveDrivetrain implements Su
     /* Keep track if we've ever applied the operator perspective before or not */
     private boolean m_hasAppliedOperatorPerspective = false;
 
+    /* State the robot logic reads, replaced by the recorded one during replay */
+    private final DriveInputs m_inputs = new DriveInputs("Drive/Inputs");
+
+    /* Pose from the measured speeds alone. It drifts, but is never corrected by vision, so it's smooth */
+    private static final double kOdometryHistorySeconds = 1.5;
+    private final TimeInterpolatableBuffer<Pose2d> m_odometryHistory = TimeInterpolatableBuffer.createBuffer(kOdometryHistorySeconds);
+    private Pose2d m_odometryPose = Pose2d.kZero;
+    private double m_odometryTimestamp = Double.NaN;
+
+    /* Called with the new pose whenever the pose is reset, e.g. by an auto routine */
+    private final List<Consumer<Pose2d>> m_poseResetListeners = new ArrayList<>();
+    /* Set when the pose was seeded before auto, so the routine's odometry reset keeps it */
+    private boolean m_keepSeededPose = false;
+
     private final SwerveRequest.ApplyFieldSpeeds m_pathApplyFieldSpeeds = new SwerveRequest.ApplyFieldSpeeds().withDriveRequestType(DriveRequestType.Velocity);
     private final PIDController m_pathXController = new PIDController(15, 0, 0.5);
     private final PIDController m_pathYController = new PIDController(15, 0, 0.5);
@@ -136,7 +159,7 @@ public class CommandSwerveDrivetrain extends TunerSwerveDrivetrain implements Su
         SwerveModuleConstants<?, ?, ?>... modules
     ) {
         super(drivetrainConstants, modules);
-        if (Utils.isSimulation()) {
+        if (Utils.isSimulation() && IOMode.get() == IOMode.Sim) {
             startSimThread();
         }
     }
@@ -160,7 +183,7 @@ public class CommandSwerveDrivetrain extends TunerSwerveDrivetrain implements Su
         SwerveModuleConstants<?, ?, ?>... modules
     ) {
         super(drivetrainConstants, odometryUpdateFrequency, modules);
-        if (Utils.isSimulation()) {
+        if (Utils.isSimulation() && IOMode.get() == IOMode.Sim) {
             startSimThread();
         }
     }
@@ -192,7 +215,7 @@ public class CommandSwerveDrivetrain extends TunerSwerveDrivetrain implements Su
         SwerveModuleConstants<?, ?, ?>... modules
     ) {
         super(drivetrainConstants, odometryUpdateFrequency, odometryStandardDeviation, visionStandardDeviation, modules);
-        if (Utils.isSimulation()) {
+        if (Utils.isSimulation() && IOMode.get() == IOMode.Sim) {
             startSimThread();
         }
     }
@@ -203,8 +226,8 @@ public class CommandSwerveDrivetrain extends TunerSwerveDrivetrain implements Su
  
     public AutoFactory createAutoFactory(TrajectoryLogger<SwerveSample> trajLogger) {
         return new AutoFactory(
-            () -> getState().Pose,
-            this::resetPose,
+            this::getPose,
+            this::resetAutoPose,
             this::followPath,
             true,
             this,
@@ -225,7 +248,7 @@ public class CommandSwerveDrivetrain extends TunerSwerveDrivetrain implements Su
     public void followPath(SwerveSample sample) {
         m_pathThetaController.enableContinuousInput(-Math.PI, Math.PI);
 
-        var pose = getState().Pose;
+        var pose = getPose();
 
         var targetSpeeds = sample.getChassisSpeeds();
         targetSpeeds.vxMetersPerSecond += m_pathXController.calculate(
@@ -267,12 +290,29 @@ public class CommandSwerveDrivetrain extends TunerSwerveDrivetrain implements Su
         return m_sysIdRoutineToApply.dynamic(direction);
     }
 
+    /** @return the estimated pose at the start of this cycle */
     public Pose2d getPose() {
-        return getState().Pose;
+        return m_inputs.pose;
+    }
+
+    /** @return FPGA timestamp of {@link #getPose()}, in seconds */
+    public double getPoseTimestamp() {
+        return m_inputs.timestamp;
+    }
+
+    /** @return the robot relative speeds at the start of this cycle */
+    public ChassisSpeeds getSpeeds() {
+        return m_inputs.speeds;
     }
 
     @Override
     public void periodic() {
+        if (IOMode.get() != IOMode.Replay) {
+            m_inputs.fromState(getState());
+        }
+        m_inputs.process();
+        updateOdometry();
+
         /*
          * Periodically try to apply the operator perspective.
          * If we haven't applied the operator perspective before, then we should apply it regardless of DS state.
@@ -292,6 +332,37 @@ public class CommandSwerveDrivetrain extends TunerSwerveDrivetrain implements Su
         }
     }
 
+    private void updateOdometry() {
+        double timestamp = getPoseTimestamp();
+        if (!Double.isNaN(m_odometryTimestamp)) {
+            double dt = timestamp - m_odometryTimestamp;
+            ChassisSpeeds speeds = m_inputs.speeds;
+            m_odometryPose = m_odometryPose.exp(new Twist2d(
+                speeds.vxMetersPerSecond * dt, speeds.vyMetersPerSecond * dt, speeds.omegaRadiansPerSecond * dt));
+        }
+        m_odometryTimestamp = timestamp;
+        m_odometryHistory.addSample(timestamp, m_odometryPose);
+    }
+
+    /**
+     * @return the pose integrated from the measured speeds at the start of this cycle. Its origin is
+     *     arbitrary, only motion relative to earlier odometry poses means anything.
+     */
+    public Pose2d getOdometryPose() {
+        return m_odometryPose;
+    }
+
+    /**
+     * @param timestamp FPGA timestamp, in seconds
+     * @return the odometry pose at that time, or empty if it's older than the history
+     */
+    public Optional<Pose2d> getOdometryPoseAt(double timestamp) {
+        if (Double.isNaN(m_odometryTimestamp) || timestamp < m_odometryTimestamp - kOdometryHistorySeconds) {
+            return Optional.empty();
+        }
+        return m_odometryHistory.getSample(timestamp);
+    }
+
     private void startSimThread() {
         m_lastSimTime = Utils.getCurrentTimeSeconds();
 
@@ -307,6 +378,47 @@ public class CommandSwerveDrivetrain extends TunerSwerveDrivetrain implements Su
         m_simNotifier.startPeriodic(kSimLoopPeriod);
     }
 
+    /**
+     * Adds a listener that's told the new pose whenever the pose is reset
+     *
+     * @param listener Function called with the new pose
+     */
+    public void onPoseReset(Consumer<Pose2d> listener) {
+        m_poseResetListeners.add(listener);
+    }
+
+    /**
+     * Resets the pose to where the robot was measured to be before auto. The next odometry reset
+     * from an auto routine is skipped so the routine starts from this pose.
+     *
+     * @param pose Measured pose
+     */
+    public void seedPose(Pose2d pose) {
+        resetPose(pose);
+        m_keepSeededPose = true;
+    }
+
+    /** Forgets a seeded pose whose odometry reset was never skipped */
+    public void clearSeededPose() {
+        m_keepSeededPose = false;
+    }
+
+    private void resetAutoPose(Pose2d pose) {
+        if (m_keepSeededPose) {
+            m_keepSeededPose = false;
+            return;
+        }
+        resetPose(pose);
+    }
+
+    @Override
+    public void resetPose(Pose2d pose) {
+        super.resetPose(pose);
+        for (Consumer<Pose2d> listener : m_poseResetListeners) {
+            listener.accept(pose);
+        }
+    }
+
     @Override
     public void addVisionMeasurement(Pose2d visionRobotPoseMeters, double timestampSeconds) {
         super.addVisionMeasurement(visionRobotPoseMeters, Utils.fpgaToCurrentTime(timestampSeconds));
@@ -1,23 +1,52 @@
 package frc.robot.subsystems;
 
-import static frc.robot.Constants.CoralArmGripperConstants.gripperMotorCurrentLimit;
-import static frc.robot.Constants.CoralArmGripperConstants.gripperMotorID;
+import static frc.robot.Constants.CoralArmGripperConstants.*;
 
-import com.ctre.phoenix6.configs.TalonFXConfiguration;
-import com.ctre.phoenix6.controls.VoltageOut;
-import com.ctre.phoenix6.hardware.TalonFX;
-import com.ctre.phoenix6.signals.NeutralModeValue;
+import java.util.function.BooleanSupplier;
 
+import com.ctre.phoenix6.SignalLogger;
+
+import edu.wpi.first.networktables.DoublePublisher;
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.networktables.StringPublisher;
 import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
+import edu.wpi.first.wpilibj2.command.button.Trigger;
+import frc.robot.io.IOMode;
+import frc.robot.io.RollerIO;
+import frc.robot.io.RollerInputs;
+import frc.robot.util.GamePieceDetector;
+import frc.robot.util.GamePieceDetector.GamePiece;
 
 public class CoralArmGripper extends SubsystemBase {
     private static CoralArmGripper instance;
 
-    private static final TalonFX gripper_motor = new TalonFX(gripperMotorID, "canivore");
+    private final RollerIO io;
+    private final RollerInputs inputs = new RollerInputs("CoralArmGripper/Inputs");
+
+    private final GamePieceDetector detector = new GamePieceDetector(new GamePieceDetector.Config(
+        detectorFilterTimeConstant,
+        detectorFreeSpeedPerVolt,
+        detectorMinIntakeVoltage,
+        detectorStallSpeedRatio,
+        detectorCoralStallCurrent,
+        detectorAlgaeStallCurrent,
+        detectorStallDebounceTime,
+        detectorReleaseDebounceTime));
+    private BooleanSupplier beam_break = () -> false;
+
+    private final NetworkTable detector_table = NetworkTableInstance.getDefault().getTable("GamePieceDetector");
+    private final StringPublisher piece_publisher = detector_table.getStringTopic("Piece").publish();
+    private final DoublePublisher confidence_publisher = detector_table.getDoubleTopic("Confidence").publish();
+    private final DoublePublisher latency_publisher = detector_table.getDoubleTopic("DetectLatencyMs").publish();
 
     private CoralArmGripper() {
-        configureMotors();
+        io = switch (IOMode.get()) {
+            case Real -> new GripperIOTalonFX();
+            case Sim -> new GripperIOSim();
+            case Replay -> new RollerIO() {};
+        };
     }
 
     public static class GripperVoltage {
@@ -29,6 +58,7 @@ public class CoralArmGripper extends SubsystemBase {
         public static final double releaseCoralL1 = -1.5;
         public static final double holdAlgae = 1;
         public static final double extractAlgae = 10;
+        public static final double extractAlgaeLow = 11;
         public static final double scoreAlgaeProcessor = -6;
         public static final double scoreAlgaeBarge = -12;
     }
@@ -41,15 +71,90 @@ public class CoralArmGripper extends SubsystemBase {
         return instance;
     }
 
-    private void configureMotors() {
-        var gripper_cfg = new TalonFXConfiguration();
-        gripper_cfg.MotorOutput.NeutralMode = NeutralModeValue.Brake;
-        gripper_cfg.CurrentLimits.SupplyCurrentLimitEnable = true;
-        gripper_cfg.CurrentLimits.SupplyCurrentLimit = gripperMotorCurrentLimit;
+    @Override
+    public void periodic() {
+        io.updateInputs(inputs);
+        inputs.process();
+
+        // the beam break is only read once a loop, every signal sample sees its latest state
+        GamePiece last_piece = detector.getGamePiece();
+        boolean beam_broken = beam_break.getAsBoolean();
+        for (int i = 0; i < inputs.sample_count; i++) {
+            detector.update(
+                inputs.sample_timestamps[i],
+                inputs.sample_currents[i],
+                inputs.sample_velocities[i],
+                inputs.sample_voltages[i],
+                beam_broken);
+        }
+
+        if (detector.getGamePiece() != last_piece) {
+            piece_publisher.set(detector.getGamePiece().name());
+            latency_publisher.set(detector.getDetectionLatency() * 1000);
+            SignalLogger.writeString("GamePieceDetector/Piece", detector.getGamePiece().name());
+        }
+        confidence_publisher.set(detector.getConfidence());
+    }
+
+    /**
+     * Sets the beam break the detector fuses with the current signature
+     *
+     * @param beam_break supplier that returns true while the beam is broken
+     */
+    public void setBeamBreakSource(BooleanSupplier beam_break) {
+        this.beam_break = beam_break;
+    }
+
+    public GamePiece getGamePiece() {
+        return detector.getGamePiece();
+    }
+
+    public double getGamePieceConfidence() {
+        return detector.getConfidence();
+    }
+
+    public Trigger hasGamePiece(GamePiece piece) {
+        return new Trigger(() -> detector.getGamePiece() == piece
+            && detector.getConfidence() >= detectorMinConfidence);
     }
 
     // Gripper
     public Command setGripperVoltage(double voltage) {
-        return run(() -> gripper_motor.setControl(new VoltageOut(voltage)));
+        return run(() -> setGripperVoltageNow(voltage));
+    }
+
+    /**
+     * Runs the gripper at a voltage until a stop condition is met, then holds a second voltage.
+     * The check and the write happen under the output lock so an interrupt calling
+     * {@link #setGripperVoltageNow(double)} can't be overwritten by a stale loop.
+     *
+     * @param voltage voltage to run while the stop condition is false
+     * @param stop the stop condition
+     * @param stopped_voltage voltage to hold once the stop condition is true
+     */
+    public Command setGripperVoltageUntil(double voltage, BooleanSupplier stop, double stopped_voltage) {
+        return run(() -> requestVoltageUntil(voltage, stop, stopped_voltage));
+    }
+
+    /**
+     * Non-command version of {@link #setGripperVoltageUntil(double, BooleanSupplier, double)} for
+     * the superstructure state machine
+     */
+    public void requestVoltageUntil(double voltage, BooleanSupplier stop, double stopped_voltage) {
+        synchronized (io) {
+            io.setVoltage(stop.getAsBoolean() ? stopped_voltage : voltage);
+        }
+    }
+
+    /**
+     * Sets the gripper voltage immediately, outside of the command scheduler. Safe to call from
+     * other threads, eg. an interrupt handler.
+     *
+     * @param voltage voltage to apply
+     */
+    public void setGripperVoltageNow(double voltage) {
+        synchronized (io) {
+            io.setVoltage(voltage);
+        }
     }
 }
\ No newline at end of file
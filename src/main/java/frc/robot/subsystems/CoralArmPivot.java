@@ -2,35 +2,37 @@ package frc.robot.subsystems;
 
 import static frc.robot.Constants.CoralArmPivotConstants.*;
 
-import com.ctre.phoenix6.BaseStatusSignal;
-import com.ctre.phoenix6.configs.MagnetSensorConfigs;
-import com.ctre.phoenix6.configs.TalonFXConfiguration;
-import com.ctre.phoenix6.controls.MotionMagicVoltage;
-import com.ctre.phoenix6.hardware.CANcoder;
-import com.ctre.phoenix6.hardware.TalonFX;
-import com.ctre.phoenix6.signals.FeedbackSensorSourceValue;
-import com.ctre.phoenix6.signals.GravityTypeValue;
-import com.ctre.phoenix6.signals.InvertedValue;
-import com.ctre.phoenix6.signals.NeutralModeValue;
-import com.ctre.phoenix6.signals.SensorDirectionValue;
-
 import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.networktables.DoublePublisher;
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableInstance;
 import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
 import edu.wpi.first.wpilibj2.command.button.Trigger;
+import frc.robot.io.IOMode;
+import frc.robot.io.MechanismIO;
+import frc.robot.io.MechanismInputs;
+import frc.robot.util.MechanismSignals;
 
 public class CoralArmPivot extends SubsystemBase {
     private static CoralArmPivot instance;
 
-    private static final TalonFX pivot_motor = new TalonFX(pivotMotorID, "canivore");
-    private static final CANcoder pivot_encoder = new CANcoder(pivotEncoderID, "canivore");
-    private static final MotionMagicVoltage pivot_mm_voltage = new MotionMagicVoltage(0).withEnableFOC(true);
+    private final MechanismIO io;
+    private final MechanismInputs inputs = new MechanismInputs("CoralArmPivot/Inputs");
+
+    private final NetworkTable table = NetworkTableInstance.getDefault().getTable("CoralArmPivot");
+    private final DoublePublisher angle_publisher = table.getDoubleTopic("Angle").publish();
+    private final DoublePublisher position_age_publisher = table.getDoubleTopic("PositionAgeMs").publish();
 
-    private final Trigger atMax = new Trigger(() -> MathUtil.isNear(pivot_motor.getPosition().getValueAsDouble(), 0.23, 0.01));
-    private final Trigger atMin = new Trigger(() -> MathUtil.isNear(pivot_motor.getPosition().getValueAsDouble(), -0.23, 0.01));
+    private final Trigger atMax = new Trigger(() -> MathUtil.isNear(getAngle(), 0.23, 0.01));
+    private final Trigger atMin = new Trigger(() -> MathUtil.isNear(getAngle(), -0.23, 0.01));
 
     private CoralArmPivot() {
-        configureMotors();
+        io = switch (IOMode.get()) {
+            case Real -> new PivotIOTalonFX();
+            case Sim -> new PivotIOSim();
+            case Replay -> new MechanismIO() {};
+        };
     }
 
     public static class PivotAngle {
@@ -47,6 +49,7 @@ public class CoralArmPivot extends SubsystemBase {
         public static final double intakeGrip = -0.255;
         public static final double scoreProcessor = 0;
         public static final double scoreBarge = 0.21;
+        public static final double releaseCoral = 0;
     }
 
     // private final SysIdRoutine sysIdRoutine = new SysIdRoutine(
@@ -77,64 +80,67 @@ public class CoralArmPivot extends SubsystemBase {
         return instance;
     }    
 
-    private void configureMotors() {
-        // Encoder
-        BaseStatusSignal.setUpdateFrequencyForAll(50, pivot_encoder.getPosition(), pivot_encoder.getVelocity());
-        pivot_encoder.optimizeBusUtilization();
-
-        var encoder_cfg = new MagnetSensorConfigs();
-        encoder_cfg.SensorDirection = SensorDirectionValue.Clockwise_Positive;
-        encoder_cfg.MagnetOffset = pivotEncoderOffset;
-        pivot_encoder.getConfigurator().apply(encoder_cfg);
-
-        // Motor
-        BaseStatusSignal.setUpdateFrequencyForAll(50, pivot_motor.getPosition(), pivot_motor.getVelocity(), pivot_motor.getMotorVoltage(), pivot_motor.getRotorVelocity(), pivot_motor.getRotorPosition());
-        pivot_motor.optimizeBusUtilization();
+    @Override
+    public void periodic() {
+        io.updateInputs(inputs);
+        inputs.process();
 
-        var pivot_cfg = new TalonFXConfiguration();
-        pivot_cfg.MotorOutput.Inverted = InvertedValue.Clockwise_Positive;
-        pivot_cfg.Feedback.FeedbackRemoteSensorID = pivotEncoderID;
-        pivot_cfg.Feedback.FeedbackSensorSource = FeedbackSensorSourceValue.FusedCANcoder;
-        pivot_cfg.Feedback.RotorToSensorRatio = pivotMotorGearRatio;
-
-        pivot_cfg.MotorOutput.NeutralMode = NeutralModeValue.Brake;
-
-        pivot_cfg.Slot0.GravityType = GravityTypeValue.Arm_Cosine;
-        pivot_cfg.Slot0.kA = 0.26315;
-        pivot_cfg.Slot0.kG = 0.39575;
-        pivot_cfg.Slot0.kS = 0.10091;
-        pivot_cfg.Slot0.kV = 4.4567;
-        pivot_cfg.Slot0.kP = 68.814;
-        pivot_cfg.Slot0.kI = 0;
-        pivot_cfg.Slot0.kD = 8.8037;
+        angle_publisher.set(getAngle());
+        position_age_publisher.set(getPositionAge() * 1000);
+    }
 
-        pivot_cfg.MotionMagic.MotionMagicAcceleration = pivotMotorAcceleration;
-        pivot_cfg.MotionMagic.MotionMagicCruiseVelocity = pivotMotorCruiseVelocity;
+    /** @return the inputs read by the main loop, in rotations */
+    public MechanismInputs getInputs() {
+        return inputs;
+    }
 
-        pivot_cfg.CurrentLimits.SupplyCurrentLimitEnable = true;
-        pivot_cfg.CurrentLimits.SupplyCurrentLimit = pivotMotorCurrentLimit;
+    /** @return a private copy of the signals for a thread other than the main loop, or null without hardware */
+    public MechanismSignals cloneSignals() {
+        return io.cloneSignals();
+    }
 
-        pivot_motor.getConfigurator().apply(pivot_cfg);
+    /** @return the angle in rotations, extrapolated from the last CANcoder sample to when it was read */
+    public double getAngle() {
+        return inputs.position;
     }
 
-    private double getAngle() {
-        return pivot_encoder.getAbsolutePosition().getValueAsDouble();
+    /** @return seconds between the last CANcoder sample and when it was read */
+    public double getPositionAge() {
+        return inputs.age;
     }
 
     public Trigger isAtAngle(double goalAngle) {
         return new Trigger(() -> MathUtil.isNear(goalAngle, getAngle(), pivotMotorTolerance));
     }
 
+    /**
+     * Predicts whether the pivot will be settled at an angle within the settle lookahead, from the
+     * Motion Magic reference and the measured velocity
+     *
+     * @param goalAngle angle in rotations
+     * @param tolerance how close to the angle counts as settled, in rotations
+     * @param lookahead how far ahead to predict, in seconds
+     */
+    public boolean willBeAtAngle(double goalAngle, double tolerance, double lookahead) {
+        return inputs.willSettle(goalAngle, tolerance, pivotTrackingTolerance, lookahead);
+    }
+
     public Trigger isGreaterThanAngle(double angle) {
         return new Trigger(() -> getAngle() > angle);
     }
 
+    /**
+     * Drives the pivot towards an angle without going through the command scheduler. Used by the
+     * superstructure state machine, which owns the pivot while it is active.
+     *
+     * @param goalAngle angle in rotations
+     */
+    public void requestAngle(double goalAngle) {
+        io.setPosition(goalAngle);
+    }
+
     public Command setAngle(double goalAngle) {
-        return run(() -> {
-            pivot_motor.setControl(
-                pivot_mm_voltage.withPosition(goalAngle)
-            );
-        });
+        return run(() -> requestAngle(goalAngle));
     }
 
     // public Command runSysICommand() {
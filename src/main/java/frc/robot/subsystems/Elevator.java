@@ -2,30 +2,28 @@ package frc.robot.subsystems;
 
 import static frc.robot.Constants.ElevatorConstants.*;
 
-import com.ctre.phoenix6.controls.Follower;
-import com.ctre.phoenix6.BaseStatusSignal;
-import com.ctre.phoenix6.configs.TalonFXConfiguration;
-import com.ctre.phoenix6.controls.MotionMagicVoltage;
-import com.ctre.phoenix6.controls.VoltageOut;
-import com.ctre.phoenix6.hardware.TalonFX;
-import com.ctre.phoenix6.signals.FeedbackSensorSourceValue;
-import com.ctre.phoenix6.signals.GravityTypeValue;
-import com.ctre.phoenix6.signals.InvertedValue;
-import com.ctre.phoenix6.signals.NeutralModeValue;
-
 import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.networktables.DoublePublisher;
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableInstance;
 import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
 import edu.wpi.first.wpilibj2.command.button.Trigger;
+import frc.robot.io.IOMode;
+import frc.robot.io.MechanismIO;
+import frc.robot.io.MechanismInputs;
+import frc.robot.util.MechanismSignals;
 
 public class Elevator extends SubsystemBase {
     private static Elevator instance;
 
-    private static final TalonFX leader_motor = new TalonFX(leftMotorID, "canivore"); 
-    private static final TalonFX follower_motor = new TalonFX(rightMotorID, "canivore");
-    private static final MotionMagicVoltage mm_voltage = new MotionMagicVoltage(0).withEnableFOC(true).withSlot(0);
-    private static final Follower follow = new Follower(leftMotorID, false);
+    private final MechanismIO io;
+    private final MechanismInputs inputs = new MechanismInputs("Elevator/Inputs");
     
+    private final NetworkTable table = NetworkTableInstance.getDefault().getTable("Elevator");
+    private final DoublePublisher height_publisher = table.getDoubleTopic("Height").publish();
+    private final DoublePublisher position_age_publisher = table.getDoubleTopic("PositionAgeMs").publish();
+
     private final Trigger atMax = new Trigger(() -> MathUtil.isNear(getHeight(), 0.58, 0.0254));
     private final Trigger atMin = new Trigger(() -> MathUtil.isNear(getHeight(), 0, 0.0254));
 
@@ -52,7 +50,11 @@ public class Elevator extends SubsystemBase {
     // );
 
     private Elevator() {
-        configureMotors();
+        io = switch (IOMode.get()) {
+            case Real -> new ElevatorIOTalonFX();
+            case Sim -> new ElevatorIOSim();
+            case Replay -> new MechanismIO() {};
+        };
     }
 
     public static synchronized Elevator getInstance() {
@@ -79,49 +81,33 @@ public class Elevator extends SubsystemBase {
         public static final double scoreBarge = 0.6850;
     }
 
-    private void configureMotors() {
-        BaseStatusSignal.setUpdateFrequencyForAll(250, leader_motor.getPosition(), leader_motor.getVelocity(), leader_motor.getMotorVoltage());
-
-        var cfg = new TalonFXConfiguration();
-        cfg.MotorOutput.Inverted = InvertedValue.CounterClockwise_Positive;
-        cfg.MotorOutput.NeutralMode = NeutralModeValue.Brake;
-        
-        // Encoder
-        cfg.Feedback.FeedbackSensorSource = FeedbackSensorSourceValue.RotorSensor;
-        cfg.Feedback.SensorToMechanismRatio = motorGearRatio;
-        
-        // MotionMagic
-        cfg.MotionMagic.MotionMagicAcceleration = motorMaxAcceleration;
-        cfg.MotionMagic.MotionMagicCruiseVelocity = motorCruiseVelocity;
-        
-        // PID + motionmagic constants
-        cfg.Slot0.GravityType = GravityTypeValue.Elevator_Static;
-        cfg.Slot0.kA = 0.017551;
-        cfg.Slot0.kG = 0.32715;
-        cfg.Slot0.kS = 0.016181;
-        cfg.Slot0.kV = 0.92225;
-        cfg.Slot0.kP = 83.066;
-        cfg.Slot0.kI = 0;
-        cfg.Slot0.kD = 2.3041;
-        
-        leader_motor.getConfigurator().apply(cfg);
-        follower_motor.getConfigurator().apply(cfg);
-        
-        leader_motor.optimizeBusUtilization();
-        
-        leader_motor.setPosition(0);
-        follower_motor.setPosition(0);
+    @Override
+    public void periodic() {
+        io.updateInputs(inputs);
+        inputs.process();
+
+        height_publisher.set(getHeight());
+        position_age_publisher.set(getPositionAge() * 1000);
     }
 
-    private static double translateHeightToRotations(double goalHeight) {
-        return goalHeight / (22 * 0.25 * 0.0254);
+    /** @return the inputs read by the main loop, in meters */
+    public MechanismInputs getInputs() {
+        return inputs;
     }
-    private static double translateRotationsToHeight(double goalAngle) {
-        return (22 * 0.25 * 0.0254) * goalAngle;
+
+    /** @return a private copy of the signals for a thread other than the main loop, or null without hardware */
+    public MechanismSignals cloneSignals() {
+        return io.cloneSignals();
     }
 
+    /** @return the height in meters, extrapolated from the last position sample to when it was read */
     public double getHeight() {
-        return translateRotationsToHeight(leader_motor.getPosition().getValueAsDouble());
+        return inputs.position;
+    }
+
+    /** @return seconds between the last position sample and when it was read */
+    public double getPositionAge() {
+        return inputs.age;
     }
 
     public Trigger isAtHeight(double goalHeight) {
@@ -131,22 +117,38 @@ public class Elevator extends SubsystemBase {
         return new Trigger(() -> MathUtil.isNear(goalHeight, getHeight(), tolerance));
     }
 
+    /**
+     * Predicts whether the elevator will be settled at a height within the settle lookahead, from
+     * the Motion Magic reference and the measured velocity
+     *
+     * @param goalHeight height in meters
+     * @param tolerance how close to the height counts as settled, in meters
+     * @param lookahead how far ahead to predict, in seconds
+     */
+    public boolean willBeAtHeight(double goalHeight, double tolerance, double lookahead) {
+        return inputs.willSettle(goalHeight, tolerance, trackingTolerance, lookahead);
+    }
+
     public Trigger isGreaterThanHeight(double height) {
         return new Trigger(() -> getHeight() > (height + heightTolerance));
     }
 
+    /**
+     * Drives the elevator towards a height without going through the command scheduler. Used by the
+     * superstructure state machine, which owns the elevator while it is active.
+     *
+     * @param goalHeight height in meters
+     */
+    public void requestHeight(double goalHeight) {
+        io.setPosition(goalHeight);
+    }
+
     public Command setHeight(double goalHeight) {
-        return run(() -> {
-            leader_motor.setControl(mm_voltage.withPosition(translateHeightToRotations(goalHeight)));
-            follower_motor.setControl(follow);
-        });
+        return run(() -> requestHeight(goalHeight));
     }
 
     public Command stopElevator() {
-        return runOnce(() -> {
-            leader_motor.setControl(new VoltageOut(0));
-            follower_motor.setControl(follow);
-        });
+        return runOnce(() -> io.setVoltage(0));
     }
 
     // public Command runSysICommand() {
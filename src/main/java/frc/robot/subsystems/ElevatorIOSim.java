@@ -0,0 +1,54 @@
+package frc.robot.subsystems;
+
+import static frc.robot.Constants.ElevatorConstants.*;
+
+import com.ctre.phoenix6.sim.TalonFXSimState;
+
+import edu.wpi.first.math.system.plant.DCMotor;
+import edu.wpi.first.wpilibj.RobotController;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj.simulation.ElevatorSim;
+import frc.robot.io.MechanismInputs;
+
+/**
+ * Simulated elevator. The Talons run their own Motion Magic in Phoenix simulation, this only moves
+ * a physics model with the voltage they apply and feeds the rotor position back.
+ */
+public class ElevatorIOSim extends ElevatorIOTalonFX {
+    private final ElevatorSim elevator_sim = new ElevatorSim(
+        DCMotor.getKrakenX60Foc(2),
+        motorGearRatio,
+        simCarriageMass,
+        metersPerRotation / (2 * Math.PI),
+        0,
+        simMaxHeight,
+        true,
+        0);
+
+    private final TalonFXSimState leader_sim = leader_motor.getSimState();
+    private final TalonFXSimState follower_sim = follower_motor.getSimState();
+    private double last_time = Double.NaN;
+
+    @Override
+    public void updateInputs(MechanismInputs inputs) {
+        double now = Timer.getFPGATimestamp();
+        double dt = Double.isNaN(last_time) ? 0.02 : now - last_time;
+        last_time = now;
+
+        double battery = RobotController.getBatteryVoltage();
+        leader_sim.setSupplyVoltage(battery);
+        follower_sim.setSupplyVoltage(battery);
+
+        elevator_sim.setInputVoltage(leader_sim.getMotorVoltage());
+        elevator_sim.update(dt);
+
+        double rotor_position = elevator_sim.getPositionMeters() / metersPerRotation * motorGearRatio;
+        double rotor_velocity = elevator_sim.getVelocityMetersPerSecond() / metersPerRotation * motorGearRatio;
+        leader_sim.setRawRotorPosition(rotor_position);
+        leader_sim.setRotorVelocity(rotor_velocity);
+        follower_sim.setRawRotorPosition(rotor_position);
+        follower_sim.setRotorVelocity(rotor_velocity);
+
+        super.updateInputs(inputs);
+    }
+}
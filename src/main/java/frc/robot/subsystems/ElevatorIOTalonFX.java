@@ -0,0 +1,101 @@
+package frc.robot.subsystems;
+
+import static frc.robot.Constants.ElevatorConstants.*;
+
+import com.ctre.phoenix6.StatusSignal;
+import com.ctre.phoenix6.configs.TalonFXConfiguration;
+import com.ctre.phoenix6.hardware.TalonFX;
+import com.ctre.phoenix6.signals.FeedbackSensorSourceValue;
+import com.ctre.phoenix6.signals.GravityTypeValue;
+import com.ctre.phoenix6.signals.InvertedValue;
+import com.ctre.phoenix6.signals.NeutralModeValue;
+
+import edu.wpi.first.units.measure.Voltage;
+import frc.robot.io.MechanismIO;
+import frc.robot.io.MechanismInputs;
+import frc.robot.util.MechanismSignals;
+import frc.robot.util.TalonFXOutput;
+
+/** Elevator hardware, two Krakens with the right one following the left */
+public class ElevatorIOTalonFX implements MechanismIO {
+    protected final TalonFX leader_motor = new TalonFX(leftMotorID, "canivore");
+    protected final TalonFX follower_motor = new TalonFX(rightMotorID, "canivore");
+    private final TalonFXOutput leader_output = new TalonFXOutput("Elevator/Leader", leader_motor).withEnableFOC(true);
+    private final TalonFXOutput follower_output = new TalonFXOutput("Elevator/Follower", follower_motor);
+
+    private final MechanismSignals signals = new MechanismSignals(
+        leader_motor.getPosition(),
+        leader_motor.getVelocity(),
+        leader_motor.getClosedLoopReference(),
+        leader_motor.getClosedLoopReferenceSlope(),
+        metersPerRotation,
+        maxLatencyCompensation);
+    private final StatusSignal<Voltage> motor_voltage = leader_motor.getMotorVoltage();
+
+    public ElevatorIOTalonFX() {
+        configureMotors();
+    }
+
+    private void configureMotors() {
+        signals.setUpdateFrequency(250);
+        motor_voltage.setUpdateFrequency(250);
+
+        var cfg = new TalonFXConfiguration();
+        cfg.MotorOutput.Inverted = InvertedValue.CounterClockwise_Positive;
+        cfg.MotorOutput.NeutralMode = NeutralModeValue.Brake;
+        
+        // Encoder
+        cfg.Feedback.FeedbackSensorSource = FeedbackSensorSourceValue.RotorSensor;
+        cfg.Feedback.SensorToMechanismRatio = motorGearRatio;
+        
+        // MotionMagic
+        cfg.MotionMagic.MotionMagicAcceleration = motorMaxAcceleration;
+        cfg.MotionMagic.MotionMagicCruiseVelocity = motorCruiseVelocity;
+        
+        // PID + motionmagic constants
+        cfg.Slot0.GravityType = GravityTypeValue.Elevator_Static;
+        cfg.Slot0.kA = 0.017551;
+        cfg.Slot0.kG = 0.32715;
+        cfg.Slot0.kS = 0.016181;
+        cfg.Slot0.kV = 0.92225;
+        cfg.Slot0.kP = 83.066;
+        cfg.Slot0.kI = 0;
+        cfg.Slot0.kD = 2.3041;
+        
+        leader_motor.getConfigurator().apply(cfg);
+        follower_motor.getConfigurator().apply(cfg);
+        
+        leader_motor.optimizeBusUtilization();
+        
+        leader_motor.setPosition(0);
+        follower_motor.setPosition(0);
+
+        follower_output.setFollower(leftMotorID, false);
+    }
+
+    @Override
+    public void updateInputs(MechanismInputs inputs) {
+        signals.refresh();
+        signals.fill(inputs);
+
+        motor_voltage.refresh();
+        inputs.voltage = motor_voltage.getValueAsDouble();
+    }
+
+    @Override
+    public void setPosition(double height) {
+        leader_output.setMotionMagicVoltage(height / metersPerRotation);
+        follower_output.setFollower(leftMotorID, false);
+    }
+
+    @Override
+    public void setVoltage(double volts) {
+        leader_output.setVoltage(volts);
+        follower_output.setFollower(leftMotorID, false);
+    }
+
+    @Override
+    public MechanismSignals cloneSignals() {
+        return signals.copy();
+    }
+}
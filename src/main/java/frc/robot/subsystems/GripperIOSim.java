@@ -0,0 +1,41 @@
+package frc.robot.subsystems;
+
+import static frc.robot.Constants.CoralArmGripperConstants.*;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.system.plant.DCMotor;
+import edu.wpi.first.math.system.plant.LinearSystemId;
+import edu.wpi.first.wpilibj.RobotController;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj.simulation.DCMotorSim;
+import frc.robot.io.RollerIO;
+import frc.robot.io.RollerInputs;
+
+/** Simulated gripper, a free spinning roller with no game piece model */
+public class GripperIOSim implements RollerIO {
+    private static final DCMotor motor = DCMotor.getKrakenX60(1);
+
+    private final DCMotorSim roller_sim = new DCMotorSim(
+        LinearSystemId.createDCMotorSystem(motor, simRollerMOI, 1), motor);
+
+    private volatile double applied_voltage = 0;
+    private double last_time = Double.NaN;
+
+    @Override
+    public void updateInputs(RollerInputs inputs) {
+        double now = Timer.getFPGATimestamp();
+        double dt = Double.isNaN(last_time) ? 0.02 : now - last_time;
+        last_time = now;
+
+        double battery = RobotController.getBatteryVoltage();
+        roller_sim.setInputVoltage(MathUtil.clamp(applied_voltage, -battery, battery));
+        roller_sim.update(dt);
+
+        inputs.setSample(now, roller_sim.getCurrentDrawAmps(), roller_sim.getAngularVelocityRPM() / 60, applied_voltage);
+    }
+
+    @Override
+    public void setVoltage(double volts) {
+        applied_voltage = volts;
+    }
+}
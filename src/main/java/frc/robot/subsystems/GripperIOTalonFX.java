@@ -0,0 +1,86 @@
+package frc.robot.subsystems;
+
+import static frc.robot.Constants.CoralArmGripperConstants.*;
+
+import com.ctre.phoenix6.BaseStatusSignal;
+import com.ctre.phoenix6.StatusSignal;
+import com.ctre.phoenix6.Utils;
+import com.ctre.phoenix6.configs.TalonFXConfiguration;
+import com.ctre.phoenix6.hardware.TalonFX;
+import com.ctre.phoenix6.signals.NeutralModeValue;
+
+import edu.wpi.first.units.measure.AngularVelocity;
+import edu.wpi.first.units.measure.Current;
+import edu.wpi.first.units.measure.Voltage;
+import frc.robot.io.RollerIO;
+import frc.robot.io.RollerInputs;
+import frc.robot.util.TalonFXOutput;
+
+/**
+ * Coral arm gripper hardware. A signal thread waits on the current, velocity and voltage signals
+ * and queues every sample, so the detector sees all of them and not just the latest one each loop.
+ */
+public class GripperIOTalonFX implements RollerIO {
+    private final TalonFX gripper_motor = new TalonFX(gripperMotorID, "canivore");
+    private final TalonFXOutput gripper_output = new TalonFXOutput("CoralArmGripper", gripper_motor);
+
+    // only read by the signal thread
+    private final StatusSignal<Current> stator_current = gripper_motor.getStatorCurrent();
+    private final StatusSignal<AngularVelocity> rotor_velocity = gripper_motor.getRotorVelocity();
+    private final StatusSignal<Voltage> motor_voltage = gripper_motor.getMotorVoltage();
+
+    // samples queued by the signal thread since the last updateInputs, never logged
+    private final RollerInputs queued = new RollerInputs("CoralArmGripper/Queued");
+
+    public GripperIOTalonFX() {
+        configureMotors();
+
+        Thread signal_thread = new Thread(this::readSignals, "GripperSignalThread");
+        signal_thread.setDaemon(true);
+        signal_thread.start();
+    }
+
+    private void configureMotors() {
+        BaseStatusSignal.setUpdateFrequencyForAll(detectorSignalFrequency, stator_current, rotor_velocity, motor_voltage);
+
+        var gripper_cfg = new TalonFXConfiguration();
+        gripper_cfg.MotorOutput.NeutralMode = NeutralModeValue.Brake;
+        gripper_cfg.CurrentLimits.SupplyCurrentLimitEnable = true;
+        gripper_cfg.CurrentLimits.SupplyCurrentLimit = gripperMotorCurrentLimit;
+        gripper_motor.getConfigurator().apply(gripper_cfg);
+    }
+
+    // the samples carry their CAN timestamps, so the thread doesn't need a real-time priority
+    private void readSignals() {
+        while (true) {
+            if (!BaseStatusSignal.waitForAll(2.0 / detectorSignalFrequency, stator_current, rotor_velocity, motor_voltage).isOK())
+                continue;
+
+            synchronized (queued) {
+                queued.addSample(
+                    Utils.currentTimeToFPGATime(stator_current.getTimestamp().getTime()),
+                    stator_current.getValueAsDouble(),
+                    rotor_velocity.getValueAsDouble(),
+                    motor_voltage.getValueAsDouble());
+            }
+        }
+    }
+
+    @Override
+    public void updateInputs(RollerInputs inputs) {
+        synchronized (queued) {
+            // no samples this cycle leaves the current sample as it was
+            inputs.sample_count = 0;
+            for (int i = 0; i < queued.sample_count; i++) {
+                inputs.addSample(queued.sample_timestamps[i], queued.sample_currents[i],
+                    queued.sample_velocities[i], queued.sample_voltages[i]);
+            }
+            queued.sample_count = 0;
+        }
+    }
+
+    @Override
+    public void setVoltage(double volts) {
+        gripper_output.setVoltage(volts);
+    }
+}
@@ -0,0 +1,144 @@
+package frc.robot.subsystems;
+
+import static frc.robot.Constants.KeepOutConstants.*;
+
+import com.ctre.phoenix6.StatusCode;
+import com.ctre.phoenix6.swerve.SwerveDrivetrain.SwerveControlParameters;
+import com.ctre.phoenix6.swerve.SwerveModule;
+import com.ctre.phoenix6.swerve.SwerveRequest;
+
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+
+import frc.robot.FieldConstants;
+import frc.robot.util.FieldDistanceGrid;
+
+/**
+ * Wraps a drive request and takes out the part of its velocity that would carry the robot into a
+ * field element or wall faster than it could brake before reaching it.
+ * <p>
+ * Runs in the drivetrain's odometry thread on every update, from the pose the drivetrain has right
+ * then, so it reacts at the odometry rate rather than the robot loop's. Only the velocity towards
+ * the nearest obstacle is limited, the robot can still slide along or back away from it. The
+ * wrapped request is only read, its settings are copied into a request of this one's own, since the
+ * main loop may change it while the odometry thread applies it.
+ * <p>
+ * The clearance kept is how far the square bumpers reach towards the obstacle at the current
+ * heading, from half their length square on to half the diagonal with a corner leading.
+ * <p>
+ * {@link SwerveRequest.FieldCentric} and {@link SwerveRequest.ApplyRobotSpeeds} are limited, any
+ * other request is passed through unchanged.
+ */
+public class KeepOutRequest implements SwerveRequest {
+    // shared by every request, built on first use
+    private static final FieldDistanceGrid field = new FieldDistanceGrid(FieldConstants.Obstacles.polygons,
+        FieldConstants.fieldLength, FieldConstants.fieldWidth, gridResolution);
+
+    // set from the main loop, applied from the odometry thread
+    private volatile SwerveRequest request = new SwerveRequest.Idle();
+
+    // the limited requests actually applied, only touched by the odometry thread
+    private final SwerveRequest.FieldCentric field_centric = new SwerveRequest.FieldCentric();
+    private final SwerveRequest.ApplyRobotSpeeds robot_speeds = new SwerveRequest.ApplyRobotSpeeds()
+        .withSpeeds(new ChassisSpeeds());
+
+    // limited field relative velocity, written by limit
+    private double limited_vx, limited_vy;
+
+    /** Builds the shared distance grid, so the first request doesn't pay for it */
+    public static void warmUp() {
+        field.getDistance(0, 0);
+    }
+
+    public KeepOutRequest withRequest(SwerveRequest request) {
+        this.request = request;
+        return this;
+    }
+
+    @Override
+    public StatusCode apply(SwerveControlParameters parameters, SwerveModule<?, ?, ?>... modulesToApply) {
+        double x = parameters.currentPose.getX();
+        double y = parameters.currentPose.getY();
+        double heading_cos = parameters.currentPose.getRotation().getCos();
+        double heading_sin = parameters.currentPose.getRotation().getSin();
+        // read once, the main loop can swap the request at any time
+        SwerveRequest wrapped = request;
+
+        if (wrapped instanceof SwerveRequest.FieldCentric drive) {
+            field_centric.VelocityX = drive.VelocityX;
+            field_centric.VelocityY = drive.VelocityY;
+            field_centric.RotationalRate = drive.RotationalRate;
+            field_centric.Deadband = drive.Deadband;
+            field_centric.RotationalDeadband = drive.RotationalDeadband;
+            field_centric.CenterOfRotation = drive.CenterOfRotation;
+            field_centric.DriveRequestType = drive.DriveRequestType;
+            field_centric.SteerRequestType = drive.SteerRequestType;
+            field_centric.DesaturateWheelSpeeds = drive.DesaturateWheelSpeeds;
+            field_centric.ForwardPerspective = drive.ForwardPerspective;
+
+            double vx = field_centric.VelocityX, vy = field_centric.VelocityY;
+            // operator perspective speeds are turned into field speeds and back
+            double cos = 1, sin = 0;
+            if (field_centric.ForwardPerspective == SwerveRequest.ForwardPerspectiveValue.OperatorPerspective) {
+                cos = parameters.operatorForwardDirection.getCos();
+                sin = parameters.operatorForwardDirection.getSin();
+            }
+            if (limit(x, y, heading_cos, heading_sin, vx * cos - vy * sin, vx * sin + vy * cos)) {
+                field_centric.VelocityX = limited_vx * cos + limited_vy * sin;
+                field_centric.VelocityY = -limited_vx * sin + limited_vy * cos;
+            }
+            return field_centric.apply(parameters, modulesToApply);
+        }
+
+        if (wrapped instanceof SwerveRequest.ApplyRobotSpeeds drive) {
+            ChassisSpeeds speeds = drive.Speeds;
+            robot_speeds.Speeds.vxMetersPerSecond = speeds.vxMetersPerSecond;
+            robot_speeds.Speeds.vyMetersPerSecond = speeds.vyMetersPerSecond;
+            robot_speeds.Speeds.omegaRadiansPerSecond = speeds.omegaRadiansPerSecond;
+            robot_speeds.WheelForceFeedforwardsX = drive.WheelForceFeedforwardsX;
+            robot_speeds.WheelForceFeedforwardsY = drive.WheelForceFeedforwardsY;
+            robot_speeds.CenterOfRotation = drive.CenterOfRotation;
+            robot_speeds.DriveRequestType = drive.DriveRequestType;
+            robot_speeds.SteerRequestType = drive.SteerRequestType;
+            robot_speeds.DesaturateWheelSpeeds = drive.DesaturateWheelSpeeds;
+
+            double vx = robot_speeds.Speeds.vxMetersPerSecond, vy = robot_speeds.Speeds.vyMetersPerSecond;
+            if (limit(x, y, heading_cos, heading_sin, vx * heading_cos - vy * heading_sin, vx * heading_sin + vy * heading_cos)) {
+                robot_speeds.Speeds.vxMetersPerSecond = limited_vx * heading_cos + limited_vy * heading_sin;
+                robot_speeds.Speeds.vyMetersPerSecond = -limited_vx * heading_sin + limited_vy * heading_cos;
+            }
+            return robot_speeds.apply(parameters, modulesToApply);
+        }
+
+        return wrapped.apply(parameters, modulesToApply);
+    }
+
+    /**
+     * Limits a field relative velocity at a point into {@link #limited_vx} and {@link #limited_vy}
+     *
+     * @param heading_cos cosine of the robot's heading
+     * @param heading_sin sine of the robot's heading
+     * @return true if it had to be limited
+     */
+    private boolean limit(double x, double y, double heading_cos, double heading_sin, double vx, double vy) {
+        double gx = field.getGradientX(x, y);
+        double gy = field.getGradientY(x, y);
+        double norm = Math.hypot(gx, gy);
+        if (norm < 1e-6)
+            return false;
+        gx /= norm;
+        gy /= norm;
+
+        // the speed the robot can still stop from in the clearance it has left
+        double toward = -(vx * gx + vy * gy);
+        // how far the bumpers reach along the direction to the obstacle
+        double reach = robotHalfLength * (Math.abs(gx * heading_cos + gy * heading_sin) + Math.abs(gx * heading_sin - gy * heading_cos));
+        double clearance = field.getDistance(x, y) - reach;
+        double allowed = clearance > 0 ? Math.sqrt(2 * brakingDeceleration * clearance) : 0;
+        if (toward <= allowed)
+            return false;
+
+        limited_vx = vx + gx * (toward - allowed);
+        limited_vy = vy + gy * (toward - allowed);
+        return true;
+    }
+}
@@ -0,0 +1,64 @@
+package frc.robot.subsystems;
+
+import static frc.robot.Constants.CoralArmPivotConstants.*;
+
+import com.ctre.phoenix6.sim.CANcoderSimState;
+import com.ctre.phoenix6.sim.ChassisReference;
+import com.ctre.phoenix6.sim.TalonFXSimState;
+
+import edu.wpi.first.math.system.plant.DCMotor;
+import edu.wpi.first.wpilibj.RobotController;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj.simulation.SingleJointedArmSim;
+import frc.robot.io.MechanismInputs;
+import frc.robot.subsystems.CoralArmPivot.PivotAngle;
+
+/**
+ * Simulated pivot. The Talon runs Motion Magic on the fused CANcoder in Phoenix simulation, this
+ * moves an arm model with the applied voltage and feeds both the rotor and the CANcoder.
+ */
+public class PivotIOSim extends PivotIOTalonFX {
+    private final SingleJointedArmSim arm_sim = new SingleJointedArmSim(
+        DCMotor.getKrakenX60Foc(1),
+        pivotMotorGearRatio,
+        simArmMOI,
+        simArmLength,
+        -simMaxAngle * 2 * Math.PI,
+        simMaxAngle * 2 * Math.PI,
+        true,
+        PivotAngle.initial * 2 * Math.PI);
+
+    private final TalonFXSimState motor_sim = pivot_motor.getSimState();
+    private final CANcoderSimState encoder_sim = pivot_encoder.getSimState();
+    private double last_time = Double.NaN;
+
+    public PivotIOSim() {
+        // match the inverts of the real devices so positive still means the same direction
+        motor_sim.Orientation = ChassisReference.Clockwise_Positive;
+        encoder_sim.Orientation = ChassisReference.Clockwise_Positive;
+    }
+
+    @Override
+    public void updateInputs(MechanismInputs inputs) {
+        double now = Timer.getFPGATimestamp();
+        double dt = Double.isNaN(last_time) ? 0.02 : now - last_time;
+        last_time = now;
+
+        double battery = RobotController.getBatteryVoltage();
+        motor_sim.setSupplyVoltage(battery);
+        encoder_sim.setSupplyVoltage(battery);
+
+        arm_sim.setInputVoltage(motor_sim.getMotorVoltage());
+        arm_sim.update(dt);
+
+        double angle = arm_sim.getAngleRads() / (2 * Math.PI);
+        double velocity = arm_sim.getVelocityRadPerSec() / (2 * Math.PI);
+        // raw positions are before the magnet offset is applied
+        encoder_sim.setRawPosition(angle - pivotEncoderOffset);
+        encoder_sim.setVelocity(velocity);
+        motor_sim.setRawRotorPosition(angle * pivotMotorGearRatio);
+        motor_sim.setRotorVelocity(velocity * pivotMotorGearRatio);
+
+        super.updateInputs(inputs);
+    }
+}
@@ -0,0 +1,106 @@
+package frc.robot.subsystems;
+
+import static frc.robot.Constants.CoralArmPivotConstants.*;
+
+import com.ctre.phoenix6.BaseStatusSignal;
+import com.ctre.phoenix6.StatusSignal;
+import com.ctre.phoenix6.configs.MagnetSensorConfigs;
+import com.ctre.phoenix6.configs.TalonFXConfiguration;
+import com.ctre.phoenix6.hardware.CANcoder;
+import com.ctre.phoenix6.hardware.TalonFX;
+import com.ctre.phoenix6.signals.FeedbackSensorSourceValue;
+import com.ctre.phoenix6.signals.GravityTypeValue;
+import com.ctre.phoenix6.signals.InvertedValue;
+import com.ctre.phoenix6.signals.NeutralModeValue;
+import com.ctre.phoenix6.signals.SensorDirectionValue;
+
+import edu.wpi.first.units.measure.Voltage;
+import frc.robot.io.MechanismIO;
+import frc.robot.io.MechanismInputs;
+import frc.robot.util.MechanismSignals;
+import frc.robot.util.TalonFXOutput;
+
+/** Coral arm pivot hardware, a Kraken fused with a CANcoder on the arm */
+public class PivotIOTalonFX implements MechanismIO {
+    protected final TalonFX pivot_motor = new TalonFX(pivotMotorID, "canivore");
+    protected final CANcoder pivot_encoder = new CANcoder(pivotEncoderID, "canivore");
+    private final TalonFXOutput pivot_output = new TalonFXOutput("CoralArmPivot", pivot_motor).withEnableFOC(true);
+
+    // the CANcoder position starts at the absolute position and is continuous from there
+    private final MechanismSignals signals = new MechanismSignals(
+        pivot_encoder.getPosition(),
+        pivot_encoder.getVelocity(),
+        pivot_motor.getClosedLoopReference(),
+        pivot_motor.getClosedLoopReferenceSlope(),
+        1,
+        maxLatencyCompensation);
+    private final StatusSignal<Voltage> motor_voltage = pivot_motor.getMotorVoltage();
+
+    public PivotIOTalonFX() {
+        configureMotors();
+    }
+
+    private void configureMotors() {
+        // Encoder
+        signals.setUpdateFrequency(settleSignalFrequency);
+        pivot_encoder.optimizeBusUtilization();
+
+        var encoder_cfg = new MagnetSensorConfigs();
+        encoder_cfg.SensorDirection = SensorDirectionValue.Clockwise_Positive;
+        encoder_cfg.MagnetOffset = pivotEncoderOffset;
+        pivot_encoder.getConfigurator().apply(encoder_cfg);
+
+        // Motor
+        BaseStatusSignal.setUpdateFrequencyForAll(50, pivot_motor.getPosition(), pivot_motor.getVelocity(), pivot_motor.getMotorVoltage(), pivot_motor.getRotorVelocity(), pivot_motor.getRotorPosition());
+        pivot_motor.optimizeBusUtilization();
+
+        var pivot_cfg = new TalonFXConfiguration();
+        pivot_cfg.MotorOutput.Inverted = InvertedValue.Clockwise_Positive;
+        pivot_cfg.Feedback.FeedbackRemoteSensorID = pivotEncoderID;
+        pivot_cfg.Feedback.FeedbackSensorSource = FeedbackSensorSourceValue.FusedCANcoder;
+        pivot_cfg.Feedback.RotorToSensorRatio = pivotMotorGearRatio;
+
+        pivot_cfg.MotorOutput.NeutralMode = NeutralModeValue.Brake;
+
+        pivot_cfg.Slot0.GravityType = GravityTypeValue.Arm_Cosine;
+        pivot_cfg.Slot0.kA = 0.26315;
+        pivot_cfg.Slot0.kG = 0.39575;
+        pivot_cfg.Slot0.kS = 0.10091;
+        pivot_cfg.Slot0.kV = 4.4567;
+        pivot_cfg.Slot0.kP = 68.814;
+        pivot_cfg.Slot0.kI = 0;
+        pivot_cfg.Slot0.kD = 8.8037;
+
+        pivot_cfg.MotionMagic.MotionMagicAcceleration = pivotMotorAcceleration;
+        pivot_cfg.MotionMagic.MotionMagicCruiseVelocity = pivotMotorCruiseVelocity;
+
+        pivot_cfg.CurrentLimits.SupplyCurrentLimitEnable = true;
+        pivot_cfg.CurrentLimits.SupplyCurrentLimit = pivotMotorCurrentLimit;
+
+        pivot_motor.getConfigurator().apply(pivot_cfg);
+    }
+
+    @Override
+    public void updateInputs(MechanismInputs inputs) {
+        signals.refresh();
+        signals.fill(inputs);
+
+        motor_voltage.refresh();
+        inputs.voltage = motor_voltage.getValueAsDouble();
+    }
+
+    @Override
+    public void setPosition(double angle) {
+        pivot_output.setMotionMagicVoltage(angle);
+    }
+
+    @Override
+    public void setVoltage(double volts) {
+        pivot_output.setVoltage(volts);
+    }
+
+    @Override
+    public MechanismSignals cloneSignals() {
+        return signals.copy();
+    }
+}
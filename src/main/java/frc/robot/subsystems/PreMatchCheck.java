@@ -0,0 +1,122 @@
+package frc.robot.subsystems;
+
+import static frc.robot.Constants.VisionConstants.*;
+
+import java.util.Optional;
+import java.util.function.Supplier;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.networktables.DoublePublisher;
+import edu.wpi.first.networktables.IntegerPublisher;
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.wpilibj.smartdashboard.Field2d;
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+import edu.wpi.first.wpilibj.util.Color;
+import frc.robot.Constants.StatusLEDConstants;
+import frc.robot.subsystems.StatusLED.Layer;
+import frc.robot.util.LEDAnimation;
+
+/**
+ * Compares where vision puts the robot while disabled with where the selected auto starts, so it
+ * can be placed on the field without measuring.
+ * <p>
+ * The distance and heading error are published under PreMatch and both poses are drawn on the
+ * PreMatch/Field widget. The status LEDs show green when the robot is within tolerance, yellow when
+ * it's close and red when it's further, and nothing without an estimate or an auto with a path.
+ * Auto can start from the measured pose instead of the path's start, see {@link #shouldSeedPose}.
+ */
+public class PreMatchCheck {
+    private enum State {
+        None,
+        Placed,
+        Near,
+        Far,
+    }
+
+    private final Vision vision;
+    private final Supplier<Optional<Pose2d>> auto_start;
+    private final StatusLED status_led = StatusLED.getInstance();
+
+    private final LEDAnimation placed_animation = LEDAnimation.solid("PreMatchPlaced", StatusLEDConstants.statusLEDCount, Color.kGreen);
+    private final LEDAnimation near_animation = LEDAnimation.solid("PreMatchNear", StatusLEDConstants.statusLEDCount, Color.kYellow);
+    private final LEDAnimation far_animation = LEDAnimation.solid("PreMatchFar", StatusLEDConstants.statusLEDCount, Color.kRed);
+    private State state = State.None;
+
+    private final Field2d field = new Field2d();
+    private final DoublePublisher distance_publisher;
+    private final DoublePublisher heading_error_publisher;
+    private final IntegerPublisher samples_publisher;
+    private final DoublePublisher spread_publisher;
+
+    /**
+     * @param vision source of the pre-match pose
+     * @param auto_start where the selected auto starts
+     */
+    public PreMatchCheck(Vision vision, Supplier<Optional<Pose2d>> auto_start) {
+        this.vision = vision;
+        this.auto_start = auto_start;
+
+        NetworkTable table = NetworkTableInstance.getDefault().getTable("PreMatch");
+        distance_publisher = table.getDoubleTopic("DistanceM").publish();
+        heading_error_publisher = table.getDoubleTopic("HeadingErrorDeg").publish();
+        samples_publisher = table.getIntegerTopic("Samples").publish();
+        spread_publisher = table.getDoubleTopic("SpreadM").publish();
+
+        SmartDashboard.putData("PreMatch/Field", field);
+        SmartDashboard.putBoolean("PreMatch/SeedFromVision", seedPoseFromVision);
+    }
+
+    /** Updates the dashboard and LEDs, call while disabled */
+    public void update() {
+        Pose2d pose = vision.getPreMatchPose();
+        Optional<Pose2d> start = auto_start.get();
+        samples_publisher.set(vision.getPreMatchSamples());
+        spread_publisher.set(vision.getPreMatchSpread());
+
+        if (pose == null || start.isEmpty()) {
+            distance_publisher.set(Double.NaN);
+            heading_error_publisher.set(Double.NaN);
+            setState(State.None);
+            return;
+        }
+
+        double distance = pose.getTranslation().getDistance(start.get().getTranslation());
+        double heading_error = Math.abs(pose.getRotation().minus(start.get().getRotation()).getDegrees());
+        distance_publisher.set(distance);
+        heading_error_publisher.set(heading_error);
+        field.setRobotPose(pose);
+        field.getObject("AutoStart").setPose(start.get());
+
+        if (distance <= autoStartTolerance && heading_error <= autoStartHeadingToleranceDeg)
+            setState(State.Placed);
+        else if (distance <= autoStartNearDistance)
+            setState(State.Near);
+        else
+            setState(State.Far);
+    }
+
+    /** Clears the LEDs, call when leaving disabled */
+    public void clear() {
+        setState(State.None);
+    }
+
+    /** @return whether auto should start from the pre-match pose, as chosen on the dashboard */
+    public boolean shouldSeedPose() {
+        return SmartDashboard.getBoolean("PreMatch/SeedFromVision", seedPoseFromVision);
+    }
+
+    // the layer restarts its animation when set, so only set it on a change
+    private void setState(State new_state) {
+        if (new_state == state)
+            return;
+        state = new_state;
+
+        switch (state) {
+            case Placed -> status_led.setLayer(Layer.RobotState, placed_animation);
+            case Near -> status_led.setLayer(Layer.RobotState, near_animation);
+            case Far -> status_led.setLayer(Layer.RobotState, far_animation);
+            case None -> status_led.setLayer(Layer.RobotState, null);
+        }
+    }
+}
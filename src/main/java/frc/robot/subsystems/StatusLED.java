@@ -1,22 +1,61 @@
 package frc.robot.subsystems;
 
-import static frc.robot.Constants.StatusLEDConstants.statusLEDCount;
+import static frc.robot.Constants.StatusLEDConstants.*;
 
-import java.time.Instant;
+import java.util.Arrays;
 
-import edu.wpi.first.hal.HALUtil;
+import edu.wpi.first.networktables.DoublePublisher;
+import edu.wpi.first.networktables.IntegerPublisher;
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableInstance;
 import edu.wpi.first.wpilibj.AddressableLED;
 import edu.wpi.first.wpilibj.AddressableLEDBuffer;
+import edu.wpi.first.wpilibj.Timer;
 import edu.wpi.first.wpilibj.util.Color;
 import edu.wpi.first.wpilibj2.command.Command;
+import edu.wpi.first.wpilibj2.command.Commands;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
+import frc.robot.util.LEDAnimation;
 
+/**
+ * Composes precomputed LED animations in priority layers and only pushes to the strip when the
+ * composed frame changes.
+ */
 public class StatusLED extends SubsystemBase {
     private static StatusLED instance;
 
-    private final AddressableLED status_strip = new AddressableLED(9);
+    /** Animation layers, later layers draw over earlier ones */
+    public enum Layer {
+        Idle,
+        RobotState,
+        Alert
+    }
+
+    private final AddressableLED status_strip = new AddressableLED(statusLEDPort);
     AddressableLEDBuffer buf = new AddressableLEDBuffer(statusLEDCount);
 
+    private final Layer[] layers = Layer.values();
+    private final LEDAnimation[] layer_animations = new LEDAnimation[layers.length];
+    private final double[] layer_start_times = new double[layers.length];
+    private final int[] layer_frames = new int[layers.length];
+
+    // RGB bytes of the frame on the strip and the one being composed
+    private byte[] shown_frame = new byte[statusLEDCount * 3];
+    private byte[] composed_frame = new byte[statusLEDCount * 3];
+    private boolean layers_changed = true;
+
+    private long push_count = 0;
+    private long suppressed_count = 0;
+    private long cost_sum = 0;
+    private long max_cost = 0;
+    private int cost_samples = 0;
+
+    private final NetworkTable table = NetworkTableInstance.getDefault().getTable("StatusLED");
+    private final DoublePublisher cost_publisher = table.getDoubleTopic("CostUs").publish();
+    private final DoublePublisher max_cost_publisher = table.getDoubleTopic("MaxCostUs").publish();
+    private final IntegerPublisher push_publisher = table.getIntegerTopic("Pushes").publish();
+    private final IntegerPublisher suppressed_publisher = table.getIntegerTopic("Suppressed").publish();
+
     private StatusLED() {
         status_strip.setLength(statusLEDCount);
 
@@ -24,46 +63,126 @@ public class StatusLED extends SubsystemBase {
 
         status_strip.start();
 
-        setDefaultCommand(rgbStream());
+        setLayer(Layer.Idle, LEDAnimation.rainbow("Rainbow", statusLEDCount, 2, 0.1));
     }
 
-    public Command rgbStream() {
-        return run(() -> {
-            long time = System.currentTimeMillis() / 100;
-            for (int i = 0; i < statusLEDCount; i++)
-                buf.setHSV(i, (int) ((i * 2 + time) % 180), 255, 255);
+    public static StatusLED getInstance() {
+        if (instance == null) {
+            instance = new StatusLED();
+        }
 
-            status_strip.setData(buf);
-        }).ignoringDisable(true);
+        return instance;
     }
 
-    public Command flashColor(Color color, double rate) {
-        return run(() -> {
-            double time = ((double) System.currentTimeMillis()) / 1000;
-            for (int i = 0; i < statusLEDCount; i++) {
-                if ((time / rate) % 2 < 1)
-                    // odds
-                    if ((i & 1) == 1)
-                        buf.setLED(i, color);
-                    else
-                        buf.setLED(i, Color.kWhite);
-                else
-                    // evens
-                    if ((i & 1) == 1)
-                        buf.setLED(i, Color.kWhite);
-                    else
-                        buf.setLED(i, color);
+    @Override
+    public void periodic() {
+        long start = System.nanoTime();
+        double now = Timer.getFPGATimestamp();
+
+        boolean changed = layers_changed;
+        layers_changed = false;
+        for (int l = 0; l < layers.length; l++) {
+            LEDAnimation animation = layer_animations[l];
+            int frame = animation == null ? -1 : animation.getFrameIndex(now - layer_start_times[l]);
+            if (frame != layer_frames[l]) {
+                layer_frames[l] = frame;
+                changed = true;
             }
+        }
 
+        if (changed) {
+            compose();
+        }
+
+        if (changed && !Arrays.equals(composed_frame, shown_frame)) {
+            for (int i = 0; i < statusLEDCount; i++) {
+                buf.setRGB(i, composed_frame[i * 3] & 0xFF, composed_frame[i * 3 + 1] & 0xFF, composed_frame[i * 3 + 2] & 0xFF);
+            }
             status_strip.setData(buf);
-        }).ignoringDisable(true);
+
+            byte[] last = shown_frame;
+            shown_frame = composed_frame;
+            composed_frame = last;
+            push_count++;
+        } else {
+            suppressed_count++;
+        }
+
+        recordCost(System.nanoTime() - start);
     }
 
-    public static StatusLED getInstance() {
-        if (instance == null) {
-            instance = new StatusLED();
+    private void compose() {
+        for (int i = 0; i < statusLEDCount; i++) {
+            int offset = i * 3;
+            composed_frame[offset] = 0;
+            composed_frame[offset + 1] = 0;
+            composed_frame[offset + 2] = 0;
+
+            // top layer first, the first opaque pixel wins
+            for (int l = layers.length - 1; l >= 0; l--) {
+                if (layer_animations[l] == null)
+                    continue;
+
+                byte[] frame = layer_animations[l].getFrame(layer_frames[l]);
+                int source = i * LEDAnimation.bytesPerLED;
+                if (frame[source + 3] != 0) {
+                    composed_frame[offset] = frame[source];
+                    composed_frame[offset + 1] = frame[source + 1];
+                    composed_frame[offset + 2] = frame[source + 2];
+                    break;
+                }
+            }
         }
+    }
 
-        return instance;
+    private void recordCost(long cost) {
+        cost_sum += cost;
+        max_cost = Math.max(max_cost, cost);
+        cost_samples++;
+
+        if (cost_samples >= 50) {
+            cost_publisher.set(cost_sum / 1000.0 / cost_samples);
+            max_cost_publisher.set(max_cost / 1000.0);
+            push_publisher.set(push_count);
+            suppressed_publisher.set(suppressed_count);
+
+            cost_sum = 0;
+            max_cost = 0;
+            cost_samples = 0;
+        }
+    }
+
+    /**
+     * Shows an animation on a layer, replacing whatever the layer showed before
+     *
+     * @param layer the layer to draw on
+     * @param animation the animation, or null to clear the layer
+     */
+    public void setLayer(Layer layer, LEDAnimation animation) {
+        layer_animations[layer.ordinal()] = animation;
+        layer_start_times[layer.ordinal()] = Timer.getFPGATimestamp();
+        layer_frames[layer.ordinal()] = -1;
+        layers_changed = true;
+    }
+
+    /**
+     * Shows an animation on a layer while the command runs. The command doesn't require this
+     * subsystem, so commands on different layers can run together.
+     */
+    public Command show(Layer layer, LEDAnimation animation) {
+        return Commands.startEnd(
+            () -> setLayer(layer, animation),
+            () -> {
+                if (layer_animations[layer.ordinal()] == animation)
+                    setLayer(layer, null);
+            }).ignoringDisable(true);
+    }
+
+    public Command rgbStream() {
+        return show(Layer.Idle, LEDAnimation.rainbow("Rainbow", statusLEDCount, 2, 0.1));
+    }
+
+    public Command flashColor(Color color, double rate) {
+        return show(Layer.Alert, LEDAnimation.alternate("Flash", statusLEDCount, color, Color.kWhite, rate));
     }
 }
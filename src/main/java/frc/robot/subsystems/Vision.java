@@ -1,132 +1,275 @@
 package frc.robot.subsystems;
 
+import static frc.robot.Constants.VisionConstants.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 
-import org.photonvision.EstimatedRobotPose;
 import org.photonvision.PhotonCamera;
-import org.photonvision.PhotonPoseEstimator;
 import org.photonvision.PhotonPoseEstimator.PoseStrategy;
-import org.photonvision.targeting.PhotonPipelineResult;
-import org.photonvision.targeting.PhotonTrackedTarget;
 
 import edu.wpi.first.apriltag.AprilTagFieldLayout;
 import edu.wpi.first.apriltag.AprilTagFields;
 import edu.wpi.first.math.Matrix;
-import edu.wpi.first.math.VecBuilder;
 import edu.wpi.first.math.geometry.Pose2d;
-import edu.wpi.first.math.geometry.Rotation3d;
-import edu.wpi.first.math.geometry.Transform3d;
-import edu.wpi.first.math.geometry.Translation3d;
+import edu.wpi.first.math.geometry.Rotation2d;
 import edu.wpi.first.math.numbers.N1;
 import edu.wpi.first.math.numbers.N3;
+import edu.wpi.first.networktables.DoublePublisher;
+import edu.wpi.first.networktables.IntegerPublisher;
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.wpilibj.DataLogManager;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Filesystem;
+import edu.wpi.first.wpilibj.Timer;
+import frc.robot.io.IOMode;
+import frc.robot.io.VisionIO;
+import frc.robot.io.VisionInputs;
+import frc.robot.util.PipelineResultLog;
+import frc.robot.util.PoseWindow;
+import frc.robot.util.RobotLog;
+import frc.robot.util.TagTracker;
+import frc.robot.util.VisionFusion;
 
 public class Vision {
-    private static final AprilTagFieldLayout FIELD_LAYOUT = AprilTagFieldLayout.loadField(AprilTagFields.k2025ReefscapeAndyMark);
-    private static final PoseStrategy POSE_STRATEGY = PoseStrategy.MULTI_TAG_PNP_ON_COPROCESSOR;
+    public static final AprilTagFieldLayout FIELD_LAYOUT = AprilTagFieldLayout.loadField(AprilTagFields.k2025ReefscapeAndyMark);
     private final CommandSwerveDrivetrain chassis;
-    public static final Matrix<N3, N1> SINGLE_TAG_STD_DEVS = VecBuilder.fill(4, 4, 8);
-    public static final Matrix<N3, N1> MULTI_TAG_STD_DEVS = VecBuilder.fill(0.5, 0.5, 1);
+    private final TagTracker tag_tracker;
+
+    // camera indices in the log are positions in these lists
+    public final List<CameraConfig> configs;
+    public final List<VisionIO> cameras;
+    private VisionSim sim = null;
+    // raw pipeline results, when they're being recorded
+    private PipelineResultLog.Writer recorder = null;
+    private final VisionInputs inputs = new VisionInputs("Vision/Observation");
+
+    // results without an estimate are logged as rejected
+    private final RobotLog.StructEntry estimate_log = new RobotLog.StructEntry(
+        "Vision/Estimate", "VisionEstimate",
+        "uint8 camera;bool accepted;uint8 tags;double capture_time;double x;double y;double theta;double std_xy;double std_theta",
+        3 + 6 * 8, false);
+
+    private final PoseWindow pre_match = new PoseWindow(128, preMatchWindow, preMatchMinSamples, preMatchOutlierDistance);
 
-    public final List<NamedPhotonPoseEstimator> poseEstimators;
+    private final VisionFusion fusion = new VisionFusion(VisionInputs.maxObservations, fusionWindow, fusionGateSigmas);
+    private final RobotLog.StructEntry fused_log = new RobotLog.StructEntry(
+        "Vision/Fused", "VisionFused",
+        "uint8 cameras;uint8 sources;double timestamp;double x;double y;double theta;double std_xy;double std_theta",
+        2 + 6 * 8, false);
 
-    public Vision(CommandSwerveDrivetrain chassis) {
+    // every estimate fused into another is one pose estimator update, and odometry replay, saved
+    private long estimates = 0;
+    private long rejected = 0;
+    private long updates = 0;
+    private long update_nanos = 0;
+    private int publish_counter = 0;
+
+    private final NetworkTable fusion_table = NetworkTableInstance.getDefault().getTable("VisionFusion");
+    private final IntegerPublisher updates_saved_publisher = fusion_table.getIntegerTopic("UpdatesSaved").publish();
+    private final DoublePublisher update_cost_publisher = fusion_table.getDoubleTopic("UpdateUs").publish();
+    private final DoublePublisher time_saved_publisher = fusion_table.getDoubleTopic("TimeSavedMs").publish();
+
+    /**
+     * @param chassis drivetrain to update the pose estimate of
+     * @param tag_tracker gets every tag seen directly, for aligning to it
+     */
+    public Vision(CommandSwerveDrivetrain chassis, TagTracker tag_tracker) {
         this.chassis = chassis;
+        this.tag_tracker = tag_tracker;
 
-        NamedPhotonPoseEstimator front_cam = 
-            new NamedPhotonPoseEstimator(
-                FIELD_LAYOUT,
-                POSE_STRATEGY,
-                new PhotonCamera("front_cam"),
-                new Transform3d(
-                    new Translation3d(0.116, 0.200025, 0.352425),
-                    new Rotation3d(0.0, 0.0, -0.17453292)),
-                "front_cam"
-            );
-
-        NamedPhotonPoseEstimator back_cam = 
-                new NamedPhotonPoseEstimator(
-                    FIELD_LAYOUT,
-                    POSE_STRATEGY,
-                    new PhotonCamera("back_cam"),
-                    new Transform3d(
-                        new Translation3d(-0.0762, 0.19685, 0.55245),
-                        new Rotation3d(0.0, 0.0, Math.PI)),
-                    "back_cam"
-                );
-
-        poseEstimators = List.of(front_cam, back_cam);
-        // poseEstimators = List.of(front_cam);
-    }
+        // the std dev models are needed to replay too, only the cameras themselves aren't
+        configs = CameraConfig.load(new File(Filesystem.getDeployDirectory(), cameraConfigFile));
+        if (configs.size() > 8) {
+            throw new IllegalStateException("The vision log has room for 8 cameras, " + configs.size() + " are configured");
+        }
 
-    public void updateVision() {
-        for (NamedPhotonPoseEstimator poseEstimator : poseEstimators) {
-            for (PhotonPipelineResult pipelineResult : poseEstimator.getCamera().getAllUnreadResults()) {
-                Optional<EstimatedRobotPose> estimatedPoseOptional = poseEstimator.update(pipelineResult);
+        if (IOMode.get() == IOMode.Replay) {
+            cameras = List.of();
+            return;
+        }
 
-                if (estimatedPoseOptional.isPresent()) {
-                    EstimatedRobotPose estimatedRobotPose = estimatedPoseOptional.get();
-                    
-                    Pose2d estPose = estimatedRobotPose.estimatedPose.toPose2d();
+        String recording = VisionIOPlayback.getRecordingPath();
+        if (IOMode.get() == IOMode.Sim && recording != null) {
+            cameras = List.of(new VisionIOPlayback(recording, configs, FIELD_LAYOUT));
+            return;
+        }
 
-                    Matrix<N3, N1> estStdDevs = getEstimationStdDevs(estPose, estimatedRobotPose.targetsUsed);
+        if (IOMode.get() == IOMode.Real && recordPipelineResults) {
+            recorder = openRecorder();
+        }
 
-                    chassis.addVisionMeasurement(estPose, estimatedRobotPose.timestampSeconds, estStdDevs);
-                }
-            }
+        ArrayList<VisionIO> created = new ArrayList<>();
+        ArrayList<PhotonCamera> photon_cameras = new ArrayList<>();
+        for (int i = 0; i < configs.size(); i++) {
+            VisionIOPhoton camera = new VisionIOPhoton(i, configs.get(i), FIELD_LAYOUT, recorder);
+            created.add(camera);
+            photon_cameras.add(camera.getCamera());
         }
-    }
+        cameras = List.copyOf(created);
 
-    private Matrix<N3, N1> getEstimationStdDevs(Pose2d estimatedPose, List<PhotonTrackedTarget> targetsUsed) {
-        var estStdDevs = SINGLE_TAG_STD_DEVS;
-        int numTags = 0;
-        double avgDist = 0;
-        for (var tgt : targetsUsed) {
-            var tagPose = FIELD_LAYOUT.getTagPose(tgt.getFiducialId());
-            if (tagPose.isEmpty()) {
-                continue;
-            }
-            numTags++;
-            
-            avgDist +=
-                tagPose.get().toPose2d().getTranslation().getDistance(estimatedPose.getTranslation());
+        if (IOMode.get() == IOMode.Sim) {
+            sim = new VisionSim(chassis, configs, photon_cameras, FIELD_LAYOUT);
         }
-        if (numTags == 0) {
-        return estStdDevs;
+    }
+
+    private static PipelineResultLog.Writer openRecorder() {
+        String name = "vision_" + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss")) + ".pvresults";
+        String path = new File(DataLogManager.getLogDir(), name).getPath();
+        try {
+            return new PipelineResultLog.Writer(path, maxPipelineRecordingBytes);
+        } catch (IOException e) {
+            DriverStation.reportWarning("Can't record vision results to " + path + ": " + e.getMessage(), false);
+            return null;
         }
-        avgDist /= numTags;
-        // Decrease std devs if multiple targets are visible
-        if (numTags > 1) {
-        estStdDevs = MULTI_TAG_STD_DEVS;
+    }
+
+    /** Closes the pipeline result recording, if there is one */
+    public void stopRecording() {
+        if (recorder == null)
+            return;
+        try {
+            recorder.close();
+        } catch (IOException e) {
+            DriverStation.reportWarning("Can't close the vision recording: " + e.getMessage(), false);
         }
-        if (avgDist > 4) {
-            return estStdDevs.times(10);
+    }
+
+    /**
+     * @return average of the recent vision estimates while disabled, or null without enough of them.
+     *     Uses the drivetrain heading when no estimate solved its own.
+     */
+    public Pose2d getPreMatchPose() {
+        return pre_match.getAverage(Timer.getFPGATimestamp(), chassis.getPose().getRotation());
+    }
+
+    /** @return number of estimates in the last pre-match pose */
+    public int getPreMatchSamples() {
+        return pre_match.getInlierCount();
+    }
+
+    /** @return RMS spread of the estimates in the last pre-match pose, in meters */
+    public double getPreMatchSpread() {
+        return pre_match.getSpread();
+    }
+
+    /** Renders the simulated camera frames, call once per cycle in simulation */
+    public void simulationPeriodic() {
+        if (sim != null) {
+            sim.update();
         }
-        // Increase std devs based on (average) distance
-        return estStdDevs.times(1 + (avgDist * avgDist / 30));
     }
-}
 
-class NamedPhotonPoseEstimator extends PhotonPoseEstimator {
-    private final String name;
-    private final PhotonCamera camera;
-  
-    public NamedPhotonPoseEstimator(
-        AprilTagFieldLayout layout,
-        PoseStrategy strategy,
-        PhotonCamera camera,
-        Transform3d robotToCamera,
-        String name) {
-      super(layout, strategy, robotToCamera);
-      this.name = name;
-      this.camera = camera;
+    /** @return one line summary of the vision simulation, or null when not simulating the cameras */
+    public String getSimSummary() {
+        if (sim == null)
+            return null;
+
+        return String.format("Vision sim: RMSE %.3f m, max error %.3f m, %d estimates, %d without a pose, %d pose estimator updates, %d dropouts",
+            sim.getRmse(), sim.getMaxError(), estimates, rejected, updates, sim.getDropoutCount());
     }
 
-    public PhotonCamera getCamera() {
-        return camera;
+    /** Drops the observations queued by the cameras, so none of them are applied late */
+    public void discardObservations() {
+        inputs.clear();
+        for (VisionIO camera : cameras) {
+            camera.updateInputs(inputs);
+        }
+        inputs.clear();
     }
-  
-    public String getName() {
-      return name;
+
+    public void updateVision() {
+        double heading_time = chassis.getPoseTimestamp();
+        Rotation2d heading = chassis.getPose().getRotation();
+
+        inputs.clear();
+        for (VisionIO camera : cameras) {
+            camera.addHeading(heading_time, heading);
+            camera.updateInputs(inputs);
+        }
+        inputs.process();
+
+        fusion.clear();
+        for (int i = 0; i < inputs.count; i++) {
+            Optional<Pose2d> odometry_pose = chassis.getOdometryPoseAt(inputs.timestamp[i]);
+            if (inputs.hasTag(i)) {
+                if (odometry_pose.isPresent()) {
+                    tag_tracker.addTag(inputs.tag_id[i], inputs.timestamp[i], odometry_pose.get(),
+                        inputs.getRobotToTag(i), inputs.tag_ambiguity[i]);
+                }
+            }
+
+            if (!inputs.hasPose(i)) {
+                rejected++;
+                if (estimate_log.begin()) {
+                    estimate_log.putByte(inputs.camera[i]).putBoolean(false).putByte(inputs.tag_count[i])
+                        .putDouble(inputs.timestamp[i])
+                        .putDouble(Double.NaN).putDouble(Double.NaN).putDouble(Double.NaN)
+                        .putDouble(Double.NaN).putDouble(Double.NaN)
+                        .append();
+                }
+                continue;
+            }
+
+            // a replayed log can have cameras the current config doesn't
+            if (inputs.camera[i] >= configs.size())
+                continue;
+
+            Pose2d estPose = new Pose2d(inputs.x[i], inputs.y[i], new Rotation2d(inputs.theta[i]));
+
+            Matrix<N3, N1> estStdDevs = configs.get(inputs.camera[i]).getStdDevs(inputs.tag_count[i], inputs.avg_tag_distance[i], inputs.strategy[i]);
+
+            fusion.add(inputs.camera[i], inputs.timestamp[i], estPose, odometry_pose.orElse(null), estStdDevs);
+            estimates++;
+
+            // the robot sits still while disabled, so its estimates can simply be averaged
+            if (DriverStation.isDisabled() && estStdDevs.get(0, 0) <= preMatchMaxStdDev) {
+                boolean has_heading = inputs.strategy[i] != PoseStrategy.PNP_DISTANCE_TRIG_SOLVE.ordinal()
+                    && inputs.strategy[i] != PoseStrategy.CONSTRAINED_SOLVEPNP.ordinal();
+                pre_match.add(inputs.timestamp[i], estPose, has_heading);
+            }
+
+            if (estimate_log.begin()) {
+                estimate_log.putByte(inputs.camera[i]).putBoolean(true).putByte(inputs.tag_count[i])
+                    .putDouble(inputs.timestamp[i])
+                    .putDouble(estPose.getX()).putDouble(estPose.getY()).putDouble(estPose.getRotation().getRadians())
+                    .putDouble(estStdDevs.get(0, 0)).putDouble(estStdDevs.get(2, 0))
+                    .append();
+            }
+        }
+
+        fusion.fuse();
+        for (int i = 0; i < fusion.count; i++) {
+            Pose2d fusedPose = fusion.getPose(i);
+            Matrix<N3, N1> fusedStdDevs = fusion.getStdDevs(i);
+
+            long start = System.nanoTime();
+            chassis.addVisionMeasurement(fusedPose, fusion.timestamp[i], fusedStdDevs);
+            update_nanos += System.nanoTime() - start;
+            updates++;
+
+            if (fused_log.begin()) {
+                fused_log.putByte(fusion.cameras[i]).putByte(fusion.sources[i])
+                    .putDouble(fusion.timestamp[i])
+                    .putDouble(fusedPose.getX()).putDouble(fusedPose.getY()).putDouble(fusedPose.getRotation().getRadians())
+                    .putDouble(fusedStdDevs.get(0, 0)).putDouble(fusedStdDevs.get(2, 0))
+                    .append();
+            }
+        }
+
+        if (++publish_counter >= 50) {
+            publish_counter = 0;
+            long saved = estimates - updates;
+            double update_cost = updates == 0 ? 0 : (double) update_nanos / updates;
+            updates_saved_publisher.set(saved);
+            update_cost_publisher.set(update_cost / 1000);
+            time_saved_publisher.set(saved * update_cost / 1e6);
+        }
     }
 }
@@ -0,0 +1,223 @@
+package frc.robot.subsystems;
+
+import static frc.robot.Constants.VisionConstants.*;
+
+import java.io.IOException;
+import java.util.EnumSet;
+
+import org.photonvision.PhotonCamera;
+import org.photonvision.PhotonPoseEstimator.PoseStrategy;
+import org.photonvision.targeting.PhotonPipelineResult;
+
+import edu.wpi.first.apriltag.AprilTagFieldLayout;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.networktables.DoublePublisher;
+import edu.wpi.first.networktables.IntegerPublisher;
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableEvent;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.networktables.NetworkTableListenerPoller;
+import edu.wpi.first.util.WPIUtilJNI;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Timer;
+import frc.robot.io.VisionIO;
+import frc.robot.io.VisionInputs;
+import frc.robot.util.PipelineResultLog;
+
+/**
+ * A PhotonVision camera with its own worker thread.
+ * <p>
+ * The worker sleeps until the camera publishes a result, solves it with a {@link CameraSolver} and
+ * queues the observation, so {@link #updateInputs} on the main loop only copies queued observations
+ * no matter how many cameras there are. Raw results are also written to a recording when one is
+ * given.
+ * <p>
+ * Frame rate, pipeline latency, results per second, solve time and staleness are published under
+ * VisionCameras/name, and the solve time of each strategy under VisionStrategies/name.
+ */
+public class VisionIOPhoton implements VisionIO {
+    private final int index;
+    private final PhotonCamera camera;
+    private final CameraSolver solver;
+    private final PipelineResultLog.Writer recorder;
+
+    // observations solved by the worker since the last updateInputs, staging only and never logged
+    private final VisionInputs pending;
+    private final VisionInputs solved;
+
+    private final Thread worker;
+    private final NetworkTableListenerPoller result_poller;
+
+    private final DoublePublisher[] strategy_cost_publishers = new DoublePublisher[CameraSolver.noEstimateSlot + 1];
+    private final IntegerPublisher[] strategy_count_publishers = new IntegerPublisher[CameraSolver.noEstimateSlot + 1];
+    // solver totals at the last publish, so each period reports only its own solves
+    private final long[] last_strategy_nanos = new long[CameraSolver.noEstimateSlot + 1];
+    private final long[] last_strategy_count = new long[CameraSolver.noEstimateSlot + 1];
+
+    // camera health over the current metrics period, only touched by the worker
+    private double metrics_start = 0;
+    private long result_count = 0;
+    private double latency_sum = 0;
+    private long solve_nanos = 0;
+    private long first_sequence = -1;
+    private long last_sequence = -1;
+    private double last_result_time = Double.NaN;
+
+    private final DoublePublisher fps_publisher;
+    private final DoublePublisher latency_publisher;
+    private final DoublePublisher results_publisher;
+    private final DoublePublisher solve_time_publisher;
+    private final DoublePublisher staleness_publisher;
+
+    /**
+     * @param index index the camera's observations are tagged with
+     * @param config camera name, position and strategies
+     * @param layout field tag layout
+     * @param recorder recording to write raw results to, or null
+     */
+    public VisionIOPhoton(int index, CameraConfig config, AprilTagFieldLayout layout, PipelineResultLog.Writer recorder) {
+        this.index = index;
+        this.recorder = recorder;
+        camera = new PhotonCamera(config.name);
+        solver = new CameraSolver(index, config, layout);
+        pending = new VisionInputs("Vision/" + config.name + "/Pending");
+        solved = new VisionInputs("Vision/" + config.name + "/Solved");
+
+        NetworkTableInstance nt = NetworkTableInstance.getDefault();
+        NetworkTable strategy_table = nt.getTable("VisionStrategies").getSubTable(config.name);
+        for (int i = 0; i < strategy_cost_publishers.length; i++) {
+            String strategy_name = i < PoseStrategy.values().length ? PoseStrategy.values()[i].name() : "NONE";
+            strategy_cost_publishers[i] = strategy_table.getDoubleTopic(strategy_name + "/UpdateUs").publish();
+            strategy_count_publishers[i] = strategy_table.getIntegerTopic(strategy_name + "/Count").publish();
+        }
+
+        NetworkTable camera_table = nt.getTable("VisionCameras").getSubTable(config.name);
+        fps_publisher = camera_table.getDoubleTopic("FPS").publish();
+        latency_publisher = camera_table.getDoubleTopic("PipelineLatencyMs").publish();
+        results_publisher = camera_table.getDoubleTopic("ResultsPerSec").publish();
+        solve_time_publisher = camera_table.getDoubleTopic("SolveUs").publish();
+        staleness_publisher = camera_table.getDoubleTopic("StalenessMs").publish();
+
+        // wakes the worker whenever PhotonVision publishes a result for this camera
+        result_poller = new NetworkTableListenerPoller(nt);
+        result_poller.addListener(
+            nt.getTable("photonvision").getSubTable(config.name).getTopic("rawBytes"),
+            EnumSet.of(NetworkTableEvent.Kind.kValueAll));
+
+        if (recorder != null) {
+            record(() -> recorder.writeCamera(index, config.name));
+        }
+
+        worker = new Thread(this::run, "Vision " + config.name);
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /** @return the PhotonVision camera, for simulation */
+    public PhotonCamera getCamera() {
+        return camera;
+    }
+
+    @Override
+    public void addHeading(double timestamp, Rotation2d heading) {
+        solver.addHeading(timestamp, heading);
+    }
+
+    @Override
+    public void updateInputs(VisionInputs inputs) {
+        synchronized (pending) {
+            inputs.addAll(pending);
+            pending.clear();
+        }
+    }
+
+    private void run() {
+        metrics_start = Timer.getFPGATimestamp();
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                // time out now and then so the metrics still go out while the camera is quiet
+                WPIUtilJNI.waitForObjectTimeout(result_poller.getHandle(), cameraMetricsPeriod);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            result_poller.readQueue();
+
+            for (PhotonPipelineResult pipelineResult : camera.getAllUnreadResults()) {
+                solve(pipelineResult);
+            }
+
+            double now = Timer.getFPGATimestamp();
+            if (now - metrics_start >= cameraMetricsPeriod) {
+                publishMetrics(now);
+            }
+        }
+    }
+
+    private void solve(PhotonPipelineResult pipelineResult) {
+        // the calibration is published once the coprocessor connects, constrained solvepnp needs it
+        if (!solver.hasCalibration()) {
+            solver.setCalibration(camera.getCameraMatrix(), camera.getDistCoeffs());
+            if (solver.hasCalibration() && recorder != null) {
+                record(() -> recorder.writeCalibration(index, camera.getCameraMatrix().get(), camera.getDistCoeffs().get()));
+            }
+        }
+        if (recorder != null) {
+            record(() -> recorder.writeResult(index, pipelineResult));
+        }
+
+        solved.clear();
+        long cost = solver.solve(pipelineResult, solved);
+        synchronized (pending) {
+            pending.addAll(solved);
+        }
+
+        result_count++;
+        solve_nanos += cost;
+        latency_sum += pipelineResult.metadata.getLatencyMillis();
+        if (first_sequence < 0)
+            first_sequence = pipelineResult.metadata.getSequenceID();
+        last_sequence = pipelineResult.metadata.getSequenceID();
+        last_result_time = pipelineResult.getTimestampSeconds();
+    }
+
+    private interface RecorderWrite {
+        void run() throws IOException;
+    }
+
+    private void record(RecorderWrite write) {
+        try {
+            write.run();
+        } catch (IOException e) {
+            DriverStation.reportWarning("Can't record vision results: " + e.getMessage(), false);
+        }
+    }
+
+    private void publishMetrics(double now) {
+        double period = now - metrics_start;
+
+        // sequence ids count every frame the coprocessor processed, even ones we never received
+        fps_publisher.set(result_count == 0 ? 0 : (last_sequence - first_sequence + 1) / period);
+        results_publisher.set(result_count / period);
+        latency_publisher.set(result_count == 0 ? 0 : latency_sum / result_count);
+        solve_time_publisher.set(result_count == 0 ? 0 : solve_nanos / 1000.0 / result_count);
+        staleness_publisher.set(Double.isNaN(last_result_time) ? -1 : (now - last_result_time) * 1000);
+
+        for (int i = 0; i < strategy_cost_publishers.length; i++) {
+            long count = solver.getStrategyCount(i);
+            long nanos = solver.getStrategyNanos(i);
+            long period_count = count - last_strategy_count[i];
+            if (period_count > 0)
+                strategy_cost_publishers[i].set((nanos - last_strategy_nanos[i]) / 1000.0 / period_count);
+            strategy_count_publishers[i].set(period_count);
+            last_strategy_count[i] = count;
+            last_strategy_nanos[i] = nanos;
+        }
+
+        metrics_start = now;
+        result_count = 0;
+        latency_sum = 0;
+        solve_nanos = 0;
+        first_sequence = -1;
+    }
+}
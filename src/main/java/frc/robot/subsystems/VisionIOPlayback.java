@@ -0,0 +1,116 @@
+package frc.robot.subsystems;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import edu.wpi.first.apriltag.AprilTagFieldLayout;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.RobotController;
+import frc.robot.io.VisionIO;
+import frc.robot.io.VisionInputs;
+import frc.robot.util.PipelineResultLog;
+
+/**
+ * Plays a pipeline result recording back in real time in place of the cameras, so the same frames
+ * can be solved again with a different camera config. Results are moved to the current FPGA time,
+ * the first one arriving on the first cycle. Recorded cameras are matched to the configs by name,
+ * cameras that aren't configured are skipped.
+ * <p>
+ * Plays in simulation when the {@value #recordingPathVariable} environment variable points at a
+ * recording, eg. {@code VISION_PLAYBACK=logs/vision_20250315_142210.pvresults ./gradlew simulateJava}.
+ */
+public class VisionIOPlayback implements VisionIO {
+    public static final String recordingPathVariable = "VISION_PLAYBACK";
+
+    private final PipelineResultLog.Reader reader;
+    private final CameraSolver[] solvers;
+    private final HashMap<String, Integer> config_indices = new HashMap<>();
+    // config index of each recorded camera index, -1 until named or when it isn't configured
+    private final int[] solver_indices = new int[256];
+
+    // recorded time plus offset is the current FPGA time, set on the first cycle
+    private long offset = Long.MIN_VALUE;
+    private boolean pending_record = false;
+    private boolean finished = false;
+
+    /**
+     * @param path the recording
+     * @param configs camera configs, matched to the recorded cameras by name
+     * @param layout field tag layout
+     * @throws IllegalStateException if the recording can't be read
+     */
+    public VisionIOPlayback(String path, List<CameraConfig> configs, AprilTagFieldLayout layout) {
+        try {
+            reader = new PipelineResultLog.Reader(path);
+        } catch (IOException e) {
+            throw new IllegalStateException("Can't read vision recording " + path, e);
+        }
+
+        solvers = new CameraSolver[configs.size()];
+        for (int i = 0; i < solvers.length; i++) {
+            solvers[i] = new CameraSolver(i, configs.get(i), layout);
+            config_indices.put(configs.get(i).name, i);
+        }
+        Arrays.fill(solver_indices, -1);
+    }
+
+    /** @return the recording to play, or null when not playing one */
+    public static String getRecordingPath() {
+        return System.getenv(recordingPathVariable);
+    }
+
+    @Override
+    public void addHeading(double timestamp, Rotation2d heading) {
+        for (CameraSolver solver : solvers) {
+            solver.addHeading(timestamp, heading);
+        }
+    }
+
+    @Override
+    public void updateInputs(VisionInputs inputs) {
+        if (finished)
+            return;
+
+        long now = RobotController.getFPGATime();
+        try {
+            while (pending_record || reader.next()) {
+                pending_record = false;
+                if (reader.type == PipelineResultLog.cameraRecord) {
+                    String name = reader.getCameraName();
+                    solver_indices[reader.camera] = config_indices.getOrDefault(name, -1);
+                    if (solver_indices[reader.camera] < 0)
+                        DriverStation.reportWarning("Recorded camera " + name + " isn't configured, skipping it", false);
+                    continue;
+                }
+                int solver = solver_indices[reader.camera];
+                if (solver < 0)
+                    continue;
+
+                switch (reader.type) {
+                    case PipelineResultLog.calibrationRecord ->
+                        solvers[solver].setCalibration(reader.getCameraMatrix(), reader.getDistCoeffs());
+                    case PipelineResultLog.resultRecord -> {
+                        if (offset == Long.MIN_VALUE)
+                            offset = now - reader.timestamp;
+
+                        // keep results from the future for a later cycle
+                        if (reader.timestamp + offset > now) {
+                            pending_record = true;
+                            return;
+                        }
+                        solvers[solver].solve(reader.getResult(offset), inputs);
+                    }
+                    default -> {}
+                }
+            }
+        } catch (IOException e) {
+            DriverStation.reportWarning("Vision playback stopped: " + e.getMessage(), false);
+        }
+
+        finished = true;
+        System.out.println("Vision playback finished");
+    }
+}
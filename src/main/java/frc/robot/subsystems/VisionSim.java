@@ -0,0 +1,174 @@
+package frc.robot.subsystems;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.photonvision.PhotonCamera;
+import org.photonvision.simulation.PhotonCameraSim;
+import org.photonvision.simulation.SimCameraProperties;
+import org.photonvision.simulation.VisionSystemSim;
+
+import com.ctre.phoenix6.swerve.SwerveDrivetrain.SwerveDriveState;
+
+import edu.wpi.first.apriltag.AprilTagFieldLayout;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.kinematics.SwerveDriveOdometry;
+import edu.wpi.first.networktables.DoublePublisher;
+import edu.wpi.first.networktables.IntegerPublisher;
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.wpilibj.Timer;
+import frc.robot.util.RobotLog;
+
+/**
+ * Simulates the cameras with PhotonVision's simulated vision system, from the same config and tag
+ * layout as the real ones, and measures how far the fused pose estimate is from the truth.
+ * <p>
+ * The simulated modules don't slip, so odometry alone, without vision, is the true pose. It's
+ * tracked separately from the drivetrain's estimate and moved along with pose resets, which stand
+ * for the robot being placed on the field. Each camera can drop out at random for a while, seeded
+ * per camera so runs repeat.
+ * <p>
+ * Pose error is published under VisionSim and logged as VisionSim/Truth.
+ */
+public class VisionSim {
+    private final CommandSwerveDrivetrain chassis;
+    private final VisionSystemSim vision_sim = new VisionSystemSim("main");
+    private final SwerveDriveOdometry truth_odometry;
+
+    private final List<CameraConfig> configs;
+    private final List<PhotonCameraSim> camera_sims = new ArrayList<>();
+    private final boolean[] camera_connected;
+    private final double[] dropout_end;
+    private final Random[] dropout_random;
+    private double last_update = Double.NaN;
+
+    private long error_samples = 0;
+    private double error_squared_sum = 0;
+    private double max_error = 0;
+    private long dropout_count = 0;
+
+    private final DoublePublisher error_publisher;
+    private final DoublePublisher heading_error_publisher;
+    private final DoublePublisher rmse_publisher;
+    private final DoublePublisher max_error_publisher;
+    private final IntegerPublisher dropout_publisher;
+
+    private final RobotLog.StructEntry truth_log = new RobotLog.StructEntry(
+        "VisionSim/Truth", "VisionSimTruth", "double x;double y;double theta;double error;double heading_error",
+        5 * 8, true);
+
+    /**
+     * @param chassis the simulated drivetrain
+     * @param configs camera configs, in camera index order
+     * @param cameras the cameras to simulate, in the same order
+     * @param layout field tag layout
+     */
+    public VisionSim(CommandSwerveDrivetrain chassis, List<CameraConfig> configs, List<PhotonCamera> cameras, AprilTagFieldLayout layout) {
+        this.chassis = chassis;
+        this.configs = configs;
+
+        vision_sim.addAprilTags(layout);
+        for (int i = 0; i < configs.size(); i++) {
+            CameraConfig.SimModel model = configs.get(i).sim;
+            SimCameraProperties properties = new SimCameraProperties();
+            properties.setCalibration(model.width, model.height, Rotation2d.fromDegrees(model.fov_deg));
+            properties.setCalibError(model.calib_error_px, model.calib_error_std_px);
+            properties.setFPS(model.fps);
+            properties.setAvgLatencyMs(model.latency_ms);
+            properties.setLatencyStdDevMs(model.latency_std_ms);
+
+            PhotonCameraSim camera_sim = new PhotonCameraSim(cameras.get(i), properties);
+            camera_sims.add(camera_sim);
+            vision_sim.addCamera(camera_sim, configs.get(i).getRobotToCamera());
+        }
+
+        camera_connected = new boolean[configs.size()];
+        dropout_end = new double[configs.size()];
+        dropout_random = new Random[configs.size()];
+        for (int i = 0; i < configs.size(); i++) {
+            camera_connected[i] = true;
+            dropout_random[i] = new Random(i);
+        }
+
+        SwerveDriveState state = chassis.getState();
+        truth_odometry = new SwerveDriveOdometry(chassis.getKinematics(), state.RawHeading, state.ModulePositions, state.Pose);
+        chassis.onPoseReset(pose -> {
+            SwerveDriveState reset_state = chassis.getState();
+            truth_odometry.resetPosition(reset_state.RawHeading, reset_state.ModulePositions, pose);
+        });
+
+        NetworkTable table = NetworkTableInstance.getDefault().getTable("VisionSim");
+        error_publisher = table.getDoubleTopic("PoseErrorM").publish();
+        heading_error_publisher = table.getDoubleTopic("HeadingErrorDeg").publish();
+        rmse_publisher = table.getDoubleTopic("RmseM").publish();
+        max_error_publisher = table.getDoubleTopic("MaxErrorM").publish();
+        dropout_publisher = table.getIntegerTopic("Dropouts").publish();
+    }
+
+    /** Moves the simulated cameras to the true pose and renders their frames, call once per cycle */
+    public void update() {
+        SwerveDriveState state = chassis.getState();
+        Pose2d truth = truth_odometry.update(state.RawHeading, state.ModulePositions);
+
+        double now = Timer.getFPGATimestamp();
+        if (!Double.isNaN(last_update)) {
+            updateDropouts(now, now - last_update);
+        }
+        last_update = now;
+
+        vision_sim.update(truth);
+
+        Pose2d estimate = chassis.getPose();
+        double error = estimate.getTranslation().getDistance(truth.getTranslation());
+        double heading_error = Math.abs(estimate.getRotation().minus(truth.getRotation()).getDegrees());
+        error_samples++;
+        error_squared_sum += error * error;
+        max_error = Math.max(max_error, error);
+
+        error_publisher.set(error);
+        heading_error_publisher.set(heading_error);
+        rmse_publisher.set(getRmse());
+        max_error_publisher.set(max_error);
+        dropout_publisher.set(dropout_count);
+
+        if (truth_log.begin()) {
+            truth_log.putDouble(truth.getX()).putDouble(truth.getY()).putDouble(truth.getRotation().getRadians())
+                .putDouble(error).putDouble(heading_error)
+                .append();
+        }
+    }
+
+    private void updateDropouts(double now, double dt) {
+        for (int i = 0; i < camera_sims.size(); i++) {
+            CameraConfig.SimModel model = configs.get(i).sim;
+            if (camera_connected[i]) {
+                if (dropout_random[i].nextDouble() < model.dropout_rate * dt) {
+                    vision_sim.removeCamera(camera_sims.get(i));
+                    camera_connected[i] = false;
+                    dropout_end[i] = now + model.dropout_seconds;
+                    dropout_count++;
+                }
+            } else if (now >= dropout_end[i]) {
+                vision_sim.addCamera(camera_sims.get(i), configs.get(i).getRobotToCamera());
+                camera_connected[i] = true;
+            }
+        }
+    }
+
+    /** @return root mean square translation error of the pose estimate since startup, in meters */
+    public double getRmse() {
+        return error_samples == 0 ? 0 : Math.sqrt(error_squared_sum / error_samples);
+    }
+
+    /** @return largest translation error of the pose estimate since startup, in meters */
+    public double getMaxError() {
+        return max_error;
+    }
+
+    public long getDropoutCount() {
+        return dropout_count;
+    }
+}
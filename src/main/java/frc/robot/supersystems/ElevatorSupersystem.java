@@ -1,19 +1,53 @@
 package frc.robot.supersystems;
 
 import static frc.robot.Constants.ElevatorSupersystemConstants.*;
-
+import static frc.robot.Constants.SuperstructurePlannerConstants.readyAngleTolerance;
+import static frc.robot.Constants.SuperstructurePlannerConstants.readyGraceTime;
+import static frc.robot.Constants.SuperstructurePlannerConstants.readyHeightTolerance;
+import static frc.robot.Constants.ElevatorConstants.settleLookahead;
+import static frc.robot.Constants.ElevatorConstants.trackingTolerance;
+import static frc.robot.Constants.CoralArmPivotConstants.pivotSettleLookahead;
+import static frc.robot.Constants.CoralArmPivotConstants.pivotTrackingTolerance;
+
+import com.ctre.phoenix6.SignalLogger;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.networktables.DoubleArrayPublisher;
+import edu.wpi.first.networktables.DoublePublisher;
+import edu.wpi.first.networktables.IntegerPublisher;
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.networktables.StringArrayPublisher;
+import edu.wpi.first.networktables.StringPublisher;
 import edu.wpi.first.wpilibj.DigitalInput;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Timer;
 import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.Commands;
+import edu.wpi.first.wpilibj2.command.SubsystemBase;
 import edu.wpi.first.wpilibj2.command.button.Trigger;
-import frc.robot.subsystems.CoralArmGripper.GripperVoltage;
 import frc.robot.subsystems.CoralArmGripper;
+import frc.robot.subsystems.CoralArmGripper.GripperVoltage;
 import frc.robot.subsystems.CoralArmPivot;
 import frc.robot.subsystems.CoralArmPivot.PivotAngle;
 import frc.robot.subsystems.Elevator;
 import frc.robot.subsystems.Elevator.ElevatorHeight;
-
-public class ElevatorSupersystem {
+import frc.robot.supersystems.SuperstructurePlanner.Axis;
+import frc.robot.supersystems.SuperstructurePlanner.AxisState;
+import frc.robot.supersystems.SuperstructurePlanner.Plan;
+import frc.robot.io.MechanismInputs;
+import frc.robot.util.InterruptBeamBreak;
+import frc.robot.util.LoopTimingStats;
+import frc.robot.util.MechanismSignals;
+import frc.robot.util.RobotLog;
+import frc.robot.util.GamePieceDetector.GamePiece;
+
+/**
+ * Runs the elevator, pivot and gripper as one state machine. Commands only request a
+ * {@link SuperstructureState}; periodic walks the precomputed transition table towards it, one
+ * collision free hop at a time, and drives the mechanisms directly.
+ */
+public class ElevatorSupersystem extends SubsystemBase {
     private static ElevatorSupersystem instance;
 
     public static final Elevator elevator = Elevator.getInstance();
@@ -21,124 +55,406 @@ public class ElevatorSupersystem {
     public static final CoralArmPivot coral_arm_pivot = CoralArmPivot.getInstance();
 
     public static boolean beam_break_override = false;
-    
+
     public static final DigitalInput beam_break_sensor = new DigitalInput(beamBreakSensorDIO);
-    public final Trigger hasCoral = new Trigger(() -> beam_break_sensor.get()).negate();
+    public static final InterruptBeamBreak beam_break = new InterruptBeamBreak("BeamBreak", beam_break_sensor);
+    public final Trigger hasCoral = new Trigger(beam_break::isBroken);
+
+    // beam break fused with the gripper current signature
+    public final Trigger hasCoralDetected = coral_arm_gripper.hasGamePiece(GamePiece.Coral);
+    public final Trigger hasAlgaeDetected = coral_arm_gripper.hasGamePiece(GamePiece.Algae).or(hasCoral);
+    // the beam break has held a coral for a while and the detector still hasn't seen it
+    private final Trigger detectorFault = hasCoral.and(hasCoralDetected.negate()).debounce(detectionFaultTime);
+
+    private final SuperstructurePlanner planner = new SuperstructurePlanner();
+    private final SuperstructureTransitions transitions = new SuperstructureTransitions(planner);
+
+    // last state the superstructure arrived at, the hop being moved to and the requested goal
+    // read by the command layer while the mechanism thread steps the state machine
+    private volatile SuperstructureState state = SuperstructureState.Initial;
+    private SuperstructureState target = null;
+    private volatile SuperstructureState goal = null;
+
+    private Plan plan = null;
+    private boolean lag_released = false;
+    // last goals sent to each mechanism, NaN until the first one
+    private double height_goal = Double.NaN;
+    private double angle_goal = Double.NaN;
+    private double gripper_override = Double.NaN;
+
+    private double request_time = 0;
+    private double request_planned_time = 0;
+    private double request_sequential_time = 0;
+    private double predicted_ready_time = Double.NaN;
+    private long false_ready_count = 0;
+    private double state_enter_time = 0;
+    private final double[] time_in_state = new double[SuperstructureState.values().length];
+
+    private SuperstructureThread thread = null;
+    private final LoopTimingStats main_loop_timing = new LoopTimingStats("SuperstructureMainLoop", 0.02, 50);
+
+    private static final String state_type = RobotLog.enumType(SuperstructureState.values());
+    private final RobotLog.StructEntry sample_log = new RobotLog.StructEntry(
+        "Superstructure/Sample", "SuperstructureSample",
+        state_type + " state;" + state_type + " target;" + state_type + " goal;bool lag_released;"
+            + "double height;double height_goal;double height_reference;"
+            + "double angle;double angle_goal;double angle_reference;double gripper_voltage",
+        4 + 7 * 8, true);
+    private final RobotLog.StructEntry transition_log = new RobotLog.StructEntry(
+        "Superstructure/Transition", "SuperstructureTransition",
+        state_type + " from;" + state_type + " to;" + state_type + " goal;double time_in_state;double since_request",
+        3 + 2 * 8, false);
+    private final RobotLog.StructEntry ready_log = new RobotLog.StructEntry(
+        "Superstructure/Ready", "SuperstructureReady",
+        state_type + " goal;double press_to_ready;double planned;double sequential",
+        1 + 3 * 8, false);
+
+    private final NetworkTable planner_table = NetworkTableInstance.getDefault().getTable("SuperstructurePlanner");
+    private final StringPublisher move_goal_publisher = planner_table.getStringTopic("Goal").publish();
+    private final DoublePublisher planned_time_publisher = planner_table.getDoubleTopic("PlannedMs").publish();
+    private final DoublePublisher sequential_time_publisher = planner_table.getDoubleTopic("SequentialMs").publish();
+    private final DoublePublisher ready_time_publisher = planner_table.getDoubleTopic("PressToReadyMs").publish();
+    private final DoublePublisher ready_lead_publisher = planner_table.getDoubleTopic("ReadyLeadMs").publish();
+    private final IntegerPublisher false_ready_publisher = planner_table.getIntegerTopic("FalseReadyCount").publish();
+    // runtime planning happens inside step(), holding the lock the mechanism thread steps under
+    private final DoublePublisher plan_cost_publisher = planner_table.getDoubleTopic("PlanCostUs").publish();
+    private final DoublePublisher max_plan_cost_publisher = planner_table.getDoubleTopic("MaxPlanCostUs").publish();
+    private double max_plan_cost = 0;
+
+    private final NetworkTable state_table = NetworkTableInstance.getDefault().getTable("SuperstructureState");
+    private final StringPublisher state_publisher = state_table.getStringTopic("State").publish();
+    private final StringPublisher goal_publisher = state_table.getStringTopic("Goal").publish();
+    private final DoublePublisher state_time_publisher = state_table.getDoubleTopic("StateTime").publish();
+    private final DoubleArrayPublisher time_in_state_publisher = state_table.getDoubleArrayTopic("TimeInState").publish();
+
+    private ElevatorSupersystem() {
+        coral_arm_gripper.setBeamBreakSource(beam_break::isBroken);
+        hasCoral.onTrue(Commands.runOnce(beam_break::recordPolledBreak).ignoringDisable(true));
+        // also keeps the fault debounce polled every loop, not only while intakeLoad waits on it
+        detectorFault.onTrue(Commands.runOnce(() -> DriverStation.reportWarning(
+            "Game piece detector missed a coral the beam break has held for " + detectionFaultTime + " s", false))
+            .ignoringDisable(true));
+
+        // names line up with the TimeInState array
+        SuperstructureState[] states = SuperstructureState.values();
+        String[] names = new String[states.length];
+        for (SuperstructureState s : states) {
+            names[s.ordinal()] = s.name();
+        }
+        StringArrayPublisher names_publisher = state_table.getStringArrayTopic("States").publish();
+        names_publisher.set(names);
 
-    public Command setState(double elevator_height, double arm_angle, double gripper_voltage) {
-        return Commands.parallel(
-                elevator.setHeight(elevator_height),
-                coral_arm_pivot.setAngle(arm_angle),
-                coral_arm_gripper.setGripperVoltage(gripper_voltage));
+        state_publisher.set(state.name());
+
+        // the thread waits on hardware signals, so it only runs on the robot and in simulation
+        MechanismSignals elevator_signals = elevator.cloneSignals();
+        MechanismSignals pivot_signals = coral_arm_pivot.cloneSignals();
+        if (useMechanismThread && elevator_signals != null && pivot_signals != null) {
+            thread = new SuperstructureThread(elevator_signals, pivot_signals, this::step);
+            thread.start();
+        }
     }
 
-    public Command setState(double elevator_height, double arm_angle) {
-        return Commands.parallel(
-                elevator.setHeight(elevator_height),
-                coral_arm_pivot.setAngle(arm_angle));
+    public static synchronized ElevatorSupersystem getInstance() {
+        if (instance == null) {
+            instance = new ElevatorSupersystem();
+        }
+
+        return instance;
     }
 
-    public Command setStateElevator(double elevator_height) {
-        return Commands.parallel(
-                elevator.setHeight(elevator_height));
+    /** Stops the mechanism thread if it is running, the main loop steps the state machine from then on */
+    public void stopThread() {
+        if (thread == null)
+            return;
+
+        thread.stopThread();
+        thread = null;
     }
 
-    public Command setStateGripper(double gripper_voltage) {
-        return Commands.parallel(
-                coral_arm_gripper.setGripperVoltage(gripper_voltage));
+    @Override
+    public void periodic() {
+        beam_break.update();
+
+        MechanismInputs elevator_inputs = elevator.getInputs();
+        double loop_start = Timer.getFPGATimestamp();
+        if (thread == null)
+            step(elevator_inputs, coral_arm_pivot.getInputs());
+
+        // how old the elevator sample is once the step has acted on it, measured like the thread does
+        // so the two compare, both on FPGA time
+        main_loop_timing.record(loop_start, Timer.getFPGATimestamp() - elevator_inputs.timestamp);
     }
 
-    public Command setStatePivot(double arm_angle) {
-        return Commands.parallel(
-                coral_arm_pivot.setAngle(arm_angle));
+    /**
+     * Advances the state machine. Called from the main loop, or from the mechanism thread at the
+     * elevator signal rate when it is enabled.
+     *
+     * @param elevator_inputs freshly read elevator inputs in meters
+     * @param pivot_inputs freshly read pivot inputs in rotations
+     */
+    private synchronized void step(MechanismInputs elevator_inputs, MechanismInputs pivot_inputs) {
+        // nothing drives the mechanisms until the first request
+        if (goal == null)
+            return;
+
+        double now = Timer.getFPGATimestamp();
+        state_time_publisher.set(now - state_enter_time);
+
+        followPlan(elevator_inputs, pivot_inputs);
+        checkPrediction(now, elevator_inputs, pivot_inputs);
+
+        // hand over to the next stage as soon as both axes are predicted to settle
+        if (willBeNear(plan.goal_height(), plan.goal_angle(), elevator_inputs, pivot_inputs)) {
+            if (plan.next() != null) {
+                // the next stage was planned from rest, plan it again from how the mechanisms are still moving
+                Plan next = plan.next();
+                long start = System.nanoTime();
+                plan = planner.plan(axisState(elevator_inputs, height_goal), axisState(pivot_inputs, angle_goal),
+                    next.goal_height(), next.goal_angle());
+                recordPlanCost(start);
+                lag_released = false;
+            } else {
+                arrive(now, elevator_inputs, pivot_inputs);
+            }
+        }
+
+        double voltage;
+        if (!Double.isNaN(gripper_override)) {
+            voltage = gripper_override;
+        } else {
+            voltage = state == goal ? goal.getVoltage() : goal.getTransitVoltage();
+        }
+
+        if (goal.stopsOnBeamBreak() && Double.isNaN(gripper_override)) {
+            coral_arm_gripper.requestVoltageUntil(voltage, beam_break::isBroken, goal.getStoppedVoltage());
+        } else {
+            coral_arm_gripper.setGripperVoltageNow(voltage);
+        }
+
+        if (sample_log.begin()) {
+            sample_log.putEnum(state).putEnum(target).putEnum(goal).putBoolean(lag_released)
+                .putDouble(elevator_inputs.position).putDouble(plan.goal_height()).putDouble(elevator_inputs.reference)
+                .putDouble(pivot_inputs.position).putDouble(plan.goal_angle()).putDouble(pivot_inputs.reference)
+                .putDouble(voltage)
+                .append();
+        }
     }
 
-    public Command setStatePivotGrip(double arm_angle, double gripper_voltage) {
-        return Commands.parallel(
-                coral_arm_pivot.setAngle(arm_angle),
-                coral_arm_gripper.setGripperVoltage(gripper_voltage));
+    private void followPlan(MechanismInputs elevator_inputs, MechanismInputs pivot_inputs) {
+        double lead_position = plan.lead() == Axis.Elevator ? elevator_inputs.position : pivot_inputs.position;
+        if (!lag_released && plan.isGateReached(lead_position))
+            lag_released = true;
+
+        // the lag axis keeps its previous goal until the lead axis clears the gate
+        if (plan.lead() == Axis.Elevator || lag_released) {
+            height_goal = plan.goal_height();
+            elevator.requestHeight(height_goal);
+        }
+        if (plan.lead() == Axis.Pivot || lag_released) {
+            angle_goal = plan.goal_angle();
+            coral_arm_pivot.requestAngle(angle_goal);
+        }
     }
 
-    public Command setStateElevatorGrip(double elevator_height, double gripper_voltage) {
-        return Commands.parallel(
-                elevator.setHeight(elevator_height),
-                coral_arm_gripper.setGripperVoltage(gripper_voltage));
+    private void arrive(double now, MechanismInputs elevator_inputs, MechanismInputs pivot_inputs) {
+        if (target != state) {
+            if (transition_log.begin()) {
+                transition_log.putEnum(state).putEnum(target).putEnum(goal)
+                    .putDouble(now - state_enter_time).putDouble(now - request_time)
+                    .append();
+            }
+
+            time_in_state[state.ordinal()] += now - state_enter_time;
+            time_in_state_publisher.set(time_in_state);
+
+            state = target;
+            state_enter_time = now;
+            state_publisher.set(state.name());
+            SignalLogger.writeString("SuperstructureState/State", state.name());
+
+            if (state == goal) {
+                ready_time_publisher.set((now - request_time) * 1000);
+                predicted_ready_time = now;
+                if (ready_log.begin()) {
+                    ready_log.putEnum(goal).putDouble(now - request_time)
+                        .putDouble(request_planned_time).putDouble(request_sequential_time)
+                        .append();
+                }
+            }
+        }
+
+        if (state != goal)
+            startHop(elevator_inputs, pivot_inputs);
     }
 
-    public static synchronized ElevatorSupersystem getInstance() {
-        if (instance == null) {
-            instance = new ElevatorSupersystem();
+    /**
+     * Compares a predicted arrival at the goal with when the mechanisms actually got inside the
+     * ready tolerance, to measure the time the prediction saves and catch early calls that never
+     * arrived
+     */
+    private void checkPrediction(double now, MechanismInputs elevator_inputs, MechanismInputs pivot_inputs) {
+        if (Double.isNaN(predicted_ready_time))
+            return;
+
+        Preset preset = goal.getPreset();
+        if (isNear(preset.getHeight(), preset.getAngle(), elevator_inputs, pivot_inputs)) {
+            ready_lead_publisher.set((now - predicted_ready_time) * 1000);
+            predicted_ready_time = Double.NaN;
+        } else if (now - predicted_ready_time > readyGraceTime) {
+            false_ready_publisher.set(++false_ready_count);
+            predicted_ready_time = Double.NaN;
         }
+    }
 
-        return instance;
+    private void startHop(MechanismInputs elevator_inputs, MechanismInputs pivot_inputs) {
+        target = transitions.getNextHop(state, goal);
+
+        // plan from where the mechanisms actually are, they may still be moving from the last request
+        long start = System.nanoTime();
+        plan = planner.plan(axisState(elevator_inputs, height_goal), axisState(pivot_inputs, angle_goal), target.getPreset());
+        recordPlanCost(start);
+        lag_released = false;
+    }
+
+    private void recordPlanCost(long start) {
+        double cost = (System.nanoTime() - start) / 1000.0;
+        max_plan_cost = Math.max(max_plan_cost, cost);
+        plan_cost_publisher.set(cost);
+        max_plan_cost_publisher.set(max_plan_cost);
+    }
+
+    private static AxisState axisState(MechanismInputs inputs, double held_goal) {
+        return new AxisState(inputs.position, inputs.velocity, Double.isNaN(held_goal) ? inputs.position : held_goal);
+    }
+
+    private synchronized void setGoal(SuperstructureState new_goal) {
+        // a state with no safe route from here is refused, the superstructure holds where it is
+        if (!transitions.isReachable(state, new_goal)) {
+            DriverStation.reportError("No collision free route from " + state.name() + " to " + new_goal.name()
+                + ", holding " + state.name(), false);
+            new_goal = state;
+        }
+
+        goal = new_goal;
+        gripper_override = Double.NaN;
+        request_time = Timer.getFPGATimestamp();
+        predicted_ready_time = Double.NaN;
+
+        if (goal.stopsOnBeamBreak()) {
+            double stopped_voltage = goal.getStoppedVoltage();
+            beam_break.armBreakAction(() -> coral_arm_gripper.setGripperVoltageNow(stopped_voltage));
+        } else {
+            beam_break.disarmBreakAction();
+        }
+
+        goal_publisher.set(goal.name());
+        move_goal_publisher.set(goal.getPreset().name());
+        // what the planner expects, against the same moves made one axis after the other like the old sequences
+        request_planned_time = transitions.getCost(state, goal);
+        request_sequential_time = planner.getPlan(state.getPreset(), goal.getPreset()).sequential_duration();
+        planned_time_publisher.set(request_planned_time * 1000);
+        sequential_time_publisher.set(request_sequential_time * 1000);
+
+        startHop(elevator.getInputs(), coral_arm_pivot.getInputs());
+    }
+
+    private static boolean isNear(double height, double angle, MechanismInputs elevator_inputs, MechanismInputs pivot_inputs) {
+        return MathUtil.isNear(height, elevator_inputs.position, readyHeightTolerance)
+                && MathUtil.isNear(angle, pivot_inputs.position, readyAngleTolerance);
+    }
+
+    private static boolean willBeNear(double height, double angle, MechanismInputs elevator_inputs, MechanismInputs pivot_inputs) {
+        return elevator_inputs.willSettle(height, readyHeightTolerance, trackingTolerance, settleLookahead)
+                && pivot_inputs.willSettle(angle, readyAngleTolerance, pivotTrackingTolerance, pivotSettleLookahead);
+    }
+
+    public SuperstructureState getState() {
+        return state;
+    }
+
+    public SuperstructureState getGoal() {
+        return goal;
+    }
+
+    /** @return a trigger that is true once the superstructure has arrived at the requested state */
+    public Trigger isInState(SuperstructureState s) {
+        return new Trigger(() -> state == s && goal == s);
+    }
+
+    /**
+     * Requests a state. The command finishes once the superstructure arrives, or straight away if
+     * the state was refused. The state machine keeps the goal after the command ends or is
+     * interrupted, until another state is requested.
+     *
+     * @param s the state to move to
+     */
+    public Command requestState(SuperstructureState s) {
+        return runOnce(() -> setGoal(s))
+                .andThen(Commands.waitUntil(() -> state == s || goal != s))
+                .withName("Request" + s.name());
+    }
+
+    /** Runs the gripper at a voltage wherever the superstructure is, until the next request */
+    private Command overrideGripper(double voltage) {
+        return runOnce(() -> {
+            synchronized (this) {
+                gripper_override = voltage;
+                beam_break.disarmBreakAction();
+                coral_arm_gripper.setGripperVoltageNow(voltage);
+            }
+        });
     }
 
     public Command storagePosition() {
-        return setStatePivotGrip(PivotAngle.storage, GripperVoltage.zero)
-                .until(coral_arm_pivot.isGreaterThanAngle(0.01))
-                .andThen(setState(ElevatorHeight.storage, PivotAngle.storage));
+        return requestState(SuperstructureState.Storage);
     }
 
     public Command storagePositionAlgae() {
-        return setStatePivotGrip(PivotAngle.storage, GripperVoltage.holdAlgae)
-                .until(coral_arm_pivot.isGreaterThanAngle(0.01))
-                .andThen(setState(ElevatorHeight.storage, PivotAngle.storage));
+        return requestState(SuperstructureState.StorageAlgae);
     }
 
     // INTAKE
     public Command intakePrepare() {
-        return setStatePivot(0)
-                .until(coral_arm_pivot.isAtAngle(0))
-                .andThen(setStateElevator(ElevatorHeight.intakeCatch))
-                .until(elevator.isAtHeight(ElevatorHeight.intakeCatch))
-                .andThen(setState(ElevatorHeight.intakeCatch, PivotAngle.intakeCatch, GripperVoltage.zero))
+        return requestState(SuperstructureState.IntakePrepare)
                 .onlyIf(hasCoral.negate()); // only run of we don't already have a coral
     }
 
     public Command intakeLoad() {
-        return setState(ElevatorHeight.intakeGrip, PivotAngle.intakeGrip, GripperVoltage.intakeCoral)
-                .until(hasCoral)
-                .withTimeout(3)
-                .andThen(setState(ElevatorHeight.postIntakeCatch, PivotAngle.postIntakeCatch, GripperVoltage.zero))
+        return requestState(SuperstructureState.IntakeLoad)
+                .andThen(Commands.waitUntil(hasCoralDetected.or(detectorFault)))
+                .andThen(requestState(SuperstructureState.IntakePost))
                 .onlyIf(elevator.isAtHeight(ElevatorHeight.intakeCatch)
                         .and(coral_arm_pivot.isAtAngle(PivotAngle.intakeCatch))
-                        .and(hasCoral.negate())); // don't try to intake with a low elevator
+                        .and(hasCoral.negate())) // don't try to intake with a low elevator
+                .withName("IntakeLoad");
     }
 
     public Command intakePost() {
-        return setStateElevator(ElevatorHeight.postIntakeCatch)
-                .until(elevator.isAtHeight(ElevatorHeight.postIntakeCatch))
-                .andThen(setStatePivot(PivotAngle.storage))
-                .until(coral_arm_pivot.isAtAngle(PivotAngle.storage))
-                .andThen(setState(ElevatorHeight.storage, PivotAngle.storage));
+        // lift the coral clear of the intake before heading down to storage
+        return requestState(SuperstructureState.IntakePost)
+                .andThen(requestState(SuperstructureState.Storage))
+                .withName("IntakePost");
     }
 
     // SCORE CORAL
     public Command coralPrepareL4() {
-        return setStatePivot(PivotAngle.scoreL4)
-                .until(coral_arm_pivot.isGreaterThanAngle(0.01))
-                .andThen(setState(ElevatorHeight.scoreL4, PivotAngle.scoreL4))
+        return requestState(SuperstructureState.PrepareL4)
                 .onlyIf(hasCoral);
     }
 
     public Command coralPrepareL3() {
-        return setStatePivot(PivotAngle.scoreL3)
-                .until(coral_arm_pivot.isGreaterThanAngle(0.01))
-                .andThen(setState(ElevatorHeight.scoreL3, PivotAngle.scoreL3))
+        return requestState(SuperstructureState.PrepareL3)
                 .onlyIf(hasCoral);
     }
 
     public Command coralPrepareL2() {
-        return setStatePivot(PivotAngle.scoreL2)
-                .until(coral_arm_pivot.isGreaterThanAngle(0.01))
-                .andThen(setState(ElevatorHeight.scoreL2, PivotAngle.scoreL2))
+        return requestState(SuperstructureState.PrepareL2)
                 .onlyIf(hasCoral);
     }
 
     public Command coralPrepareL1() {
-        return setStatePivot(0)
-                .until(coral_arm_pivot.isAtAngle(0))
-                .andThen(setStateElevator(PivotAngle.scoreL1))
+        return requestState(SuperstructureState.PrepareL1)
                 .onlyIf(hasCoral);
     }
 
@@ -150,32 +466,31 @@ public class ElevatorSupersystem {
         .and(coral_arm_pivot.isAtAngle(PivotAngle.scoreL4));
 
     public Command coralScoreL4() {
-        return setStatePivot(0)
-                .until(coral_arm_pivot.isAtAngle(0))
-                .andThen(setStateGripper(-0.5))
-                .withTimeout(1)
-                .andThen(setStateGripper(GripperVoltage.zero));
+        // flatten and release for a second in all, however long the pivot takes
+        return Commands.deadline(Commands.waitSeconds(1), requestState(SuperstructureState.ReleaseL4))
+                .andThen(requestState(SuperstructureState.ScoredL4))
+                .withName("CoralScoreL4");
                 // .onlyIf(elevator.isAtHeight(Preset.ScoreL4.getHeight(), 0.02)
                 //         .and(coral_arm_pivot.isAtAngle(Preset.ScoreL4.getAngle()))
                 //         .and(hasCoral));
     }
 
     public Command coralScoreL3() {
-        return setStatePivotGrip(0, GripperVoltage.releaseCoralL3)
+        return requestState(SuperstructureState.ReleaseL3)
                 .onlyIf(elevator.isAtHeight(ElevatorHeight.scoreL3, 0.02)
                         .and(coral_arm_pivot.isAtAngle(PivotAngle.scoreL3))
                         .and(hasCoral));
     }
 
     public Command coralScoreL2() {
-        return setStatePivotGrip(0, GripperVoltage.releaseCoralL2)
+        return requestState(SuperstructureState.ReleaseL2)
                 .onlyIf(elevator.isAtHeight(ElevatorHeight.scoreL2, 0.02)
                         .and(coral_arm_pivot.isAtAngle(PivotAngle.scoreL2))
                         .and(hasCoral));
     }
 
     public Command coralScoreL1() {
-        return setStatePivotGrip(0, GripperVoltage.releaseCoralL1)
+        return requestState(SuperstructureState.ReleaseL1)
                 .onlyIf(elevator.isAtHeight(ElevatorHeight.scoreL1, 0.02)
                         .and(coral_arm_pivot.isAtAngle(0))
                         .and(hasCoral));
@@ -183,64 +498,58 @@ public class ElevatorSupersystem {
 
     // EXTRACT ALGAE
     public Command extractionPrepareLow() {
-        return setStatePivotGrip(PivotAngle.extractAlgaeLow, 0)
-                .until(coral_arm_pivot.isAtAngle(PivotAngle.extractAlgaeLow))
-                .andThen(setState(ElevatorHeight.extractAlgaeLow, PivotAngle.extractAlgaeLow))
+        return requestState(SuperstructureState.ExtractLowPrepare)
                 .onlyIf(hasCoral.negate()); // can't run if we already have a algae
     }
 
     public Command extractionPrepareHigh() {
-        return setStatePivot(0)
-                .until(coral_arm_pivot.isAtAngle(0))
-                .andThen(setState(ElevatorHeight.extractAlgaeHigh, PivotAngle.extractAlgaeHigh))
+        return requestState(SuperstructureState.ExtractHighPrepare)
                 .onlyIf(hasCoral.negate());
     }
 
     public Command extractionExtractLow() {
-        return setStateGripper(11)
-                .until(hasCoral) // TODO: does the coral trigger the beam break?
-                .withTimeout(3)
-                .andThen(setStateGripper(GripperVoltage.holdAlgae))
+        return requestState(SuperstructureState.ExtractLow)
+                .andThen(Commands.waitUntil(hasAlgaeDetected))
+                .andThen(requestState(SuperstructureState.ExtractLowHold))
                 .onlyIf(elevator.isAtHeight(ElevatorHeight.extractAlgaeLow)
-                        .and(coral_arm_pivot.isAtAngle(PivotAngle.extractAlgaeLow)));
+                        .and(coral_arm_pivot.isAtAngle(PivotAngle.extractAlgaeLow)))
+                .withName("ExtractionExtractLow");
     }
 
     public Command extractionExtractHigh() {
-        return setStateGripper(10)
-                .until(hasCoral)
-                .withTimeout(3)
-                .andThen(setStateGripper(GripperVoltage.holdAlgae))
+        return requestState(SuperstructureState.ExtractHigh)
+                .andThen(Commands.waitUntil(hasAlgaeDetected))
+                .andThen(requestState(SuperstructureState.ExtractHighHold))
                 .onlyIf(elevator.isAtHeight(ElevatorHeight.extractAlgaeHigh)
-                        .and(coral_arm_pivot.isAtAngle(PivotAngle.extractAlgaeHigh)));
+                        .and(coral_arm_pivot.isAtAngle(PivotAngle.extractAlgaeHigh)))
+                .withName("ExtractionExtractHigh");
     }
 
+    /** Stops the gripper wherever the superstructure is, until the next request */
     public Command extractionStop() {
-        return setStateGripper(0);
+        return overrideGripper(GripperVoltage.zero).withName("ExtractionStop");
     }
 
     // SCORE ALGAE
     public Command algaePrepareProcessor() {
-        return setStatePivotGrip(PivotAngle.scoreProcessor, GripperVoltage.holdAlgae)
-            .until(coral_arm_pivot.isAtAngle(PivotAngle.scoreProcessor))
-            .andThen(setState(ElevatorHeight.scoreProcessor, PivotAngle.scoreProcessor));
+        return requestState(SuperstructureState.ProcessorPrepare);
     }
 
+    // algae is scored from wherever the superstructure is
     public Command algaeScoreProcessor() {
-        return setStateGripper(-6)
-            .withTimeout(1.5);
+        return overrideGripper(GripperVoltage.scoreAlgaeProcessor)
+            .andThen(Commands.waitSeconds(1.5))
+            .withName("AlgaeScoreProcessor");
     }
 
     public Command algaePrepareBarge() {
-        return setStatePivotGrip(PivotAngle.scoreL4, GripperVoltage.holdAlgae)
-            .until(coral_arm_pivot.isAtAngle(PivotAngle.scoreL4))
-            .andThen(setState(ElevatorHeight.scoreBarge, PivotAngle.scoreL4))
-            .until(elevator.isAtHeight(ElevatorHeight.scoreBarge))
-            .andThen(setState(ElevatorHeight.scoreBarge, PivotAngle.scoreBarge, GripperVoltage.holdAlgae));
+        return requestState(SuperstructureState.BargePrepare);
     }
 
     public Command algaeScoreBarge() {
-        return setStateGripper(-12)
-            .withTimeout(1)
-            .andThen(setStateGripper(0));
+        return overrideGripper(GripperVoltage.scoreAlgaeBarge)
+            .andThen(Commands.waitSeconds(1))
+            .andThen(overrideGripper(GripperVoltage.zero))
+            .withName("AlgaeScoreBarge");
     }
 }
@@ -0,0 +1,41 @@
+package frc.robot.supersystems;
+
+import frc.robot.subsystems.CoralArmPivot.PivotAngle;
+import frc.robot.subsystems.Elevator.ElevatorHeight;
+
+/** Named elevator height and pivot angle pairs the superstructure moves between */
+public enum Preset {
+    Initial(ElevatorHeight.initial, PivotAngle.initial),
+    Storage(ElevatorHeight.storage, PivotAngle.storage),
+    ScoreL1(ElevatorHeight.scoreL1, PivotAngle.scoreL1),
+    ScoreL2(ElevatorHeight.scoreL2, PivotAngle.scoreL2),
+    ScoreL3(ElevatorHeight.scoreL3, PivotAngle.scoreL3),
+    ScoreL4(ElevatorHeight.scoreL4, PivotAngle.scoreL4),
+    ExtractAlgaeLow(ElevatorHeight.extractAlgaeLow, PivotAngle.extractAlgaeLow),
+    ExtractAlgaeHigh(ElevatorHeight.extractAlgaeHigh, PivotAngle.extractAlgaeHigh),
+    IntakeCatch(ElevatorHeight.intakeCatch, PivotAngle.intakeCatch),
+    PostIntakeCatch(ElevatorHeight.postIntakeCatch, PivotAngle.postIntakeCatch),
+    IntakeGrip(ElevatorHeight.intakeGrip, PivotAngle.intakeGrip),
+    ScoreProcessor(ElevatorHeight.scoreProcessor, PivotAngle.scoreProcessor),
+    ScoreBarge(ElevatorHeight.scoreBarge, PivotAngle.scoreBarge),
+    // scoring heights with the pivot flat, where the coral score commands have always released from
+    ReleaseL2(ElevatorHeight.scoreL2, PivotAngle.releaseCoral),
+    ReleaseL3(ElevatorHeight.scoreL3, PivotAngle.releaseCoral),
+    ReleaseL4(ElevatorHeight.scoreL4, PivotAngle.releaseCoral);
+
+    private final double height;
+    private final double angle;
+
+    Preset(double height, double angle) {
+        this.height = height;
+        this.angle = angle;
+    }
+
+    public double getHeight() {
+        return height;
+    }
+
+    public double getAngle() {
+        return angle;
+    }
+}
@@ -0,0 +1,437 @@
+package frc.robot.supersystems;
+
+import static frc.robot.Constants.SuperstructurePlannerConstants.*;
+
+import java.util.List;
+
+import frc.robot.util.ProfileAxis;
+
+/**
+ * Joint space motion planner for the elevator and coral arm pivot.
+ * <p>
+ * Both mechanisms run Motion Magic, so each axis follows a trapezoid profile from its current
+ * position and velocity to its goal. A plan starts one axis (the lead) right away and releases the
+ * other (the lag) once the lead has crossed a gate position; until then the lag axis keeps moving
+ * to the goal it already had. The planner searches for the smallest lag delay whose combined
+ * trajectory stays out of every keep-out region, so moves that are safe run fully simultaneous.
+ * Moves that no single gate can make safe are routed through an intermediate preset. Plans between
+ * every pair of presets, from rest, are computed once at boot.
+ * <p>
+ * Plans from a moving state are made at runtime under the superstructure lock, so the search is
+ * kept cheap: delays are searched coarsely before finely, the lead axis is sampled once per lead
+ * and the waypoints are tried quickest bound first.
+ */
+public class SuperstructurePlanner {
+    public enum Axis {
+        Elevator,
+        Pivot
+    }
+
+    /**
+     * State of one axis when a plan starts
+     *
+     * @param position current position
+     * @param velocity current velocity
+     * @param held_goal goal the axis keeps moving to until the plan releases it
+     */
+    public record AxisState(double position, double velocity, double held_goal) {
+        public static AxisState atRest(double position) {
+            return new AxisState(position, 0, position);
+        }
+
+        /** @return true if the axis is still and not about to move */
+        public boolean isAtRest(double position_tolerance, double velocity_tolerance) {
+            return Math.abs(velocity) < velocity_tolerance && Math.abs(held_goal - position) < position_tolerance;
+        }
+    }
+
+    /**
+     * A planned move
+     *
+     * @param goal_height elevator goal in meters
+     * @param goal_angle pivot goal in rotations
+     * @param lead the axis that starts immediately
+     * @param gate lead axis position that releases the lag axis, NaN if both start together
+     * @param gate_rising true if the lead axis moves upwards through the gate
+     * @param duration predicted time until both axes reach their goals, including any next plan
+     * @param sequential_duration predicted time for the same move done one axis after the other
+     * @param collision_free false if no searched plan avoided every keep-out region
+     * @param next plan to run once this one reaches its goal, null if this goal is the final one
+     */
+    public record Plan(
+        double goal_height,
+        double goal_angle,
+        Axis lead,
+        double gate,
+        boolean gate_rising,
+        double duration,
+        double sequential_duration,
+        boolean collision_free,
+        Plan next) {
+
+        /**
+         * @param lead_position current position of the lead axis
+         * @return true once the lag axis may start moving
+         */
+        public boolean isGateReached(double lead_position) {
+            return Double.isNaN(gate) || SuperstructurePlanner.isGateReached(lead, gate, gate_rising, lead_position);
+        }
+    }
+
+    private final List<KeepOut> keep_outs;
+    private final Plan[][] plans;
+    private final Plan[][] direct_plans;
+
+    // scratch profiles, planning runs on one thread at a time
+    private final ProfileAxis elevator_profile = new ProfileAxis();
+    private final ProfileAxis pivot_profile = new ProfileAxis();
+    private final ProfileAxis held_profile = new ProfileAxis();
+    private final ProfileAxis released_profile = new ProfileAxis();
+    // first checked time the lead and held lag axes enter a keep-out, see findHeldCollision
+    private double held_collision_time = Double.POSITIVE_INFINITY;
+    private double[] lead_positions = new double[0];
+    private double[] lead_max = new double[0];
+    private double[] lead_min = new double[0];
+    private int lead_samples = 0;
+    private final double[] waypoint_bounds = new double[Preset.values().length];
+    private final int[] waypoint_order = new int[Preset.values().length];
+
+    public SuperstructurePlanner(List<KeepOut> keep_outs) {
+        this.keep_outs = keep_outs;
+
+        Preset[] presets = Preset.values();
+        plans = new Plan[presets.length][presets.length];
+        direct_plans = new Plan[presets.length][presets.length];
+        for (Preset from : presets) {
+            for (Preset to : presets) {
+                Plan direct = planDirect(AxisState.atRest(from.getHeight()), AxisState.atRest(from.getAngle()),
+                    to.getHeight(), to.getAngle());
+                plans[from.ordinal()][to.ordinal()] = direct;
+                direct_plans[from.ordinal()][to.ordinal()] = direct;
+            }
+        }
+
+        // route anything a single gate can't make safe through the quickest safe intermediate preset
+        for (Preset from : presets) {
+            for (Preset to : presets) {
+                Plan direct = plans[from.ordinal()][to.ordinal()];
+                if (direct.collision_free())
+                    continue;
+
+                Plan routed = planThroughPresets(AxisState.atRest(from.getHeight()), AxisState.atRest(from.getAngle()), to);
+                if (routed != null)
+                    plans[from.ordinal()][to.ordinal()] = routed;
+            }
+        }
+    }
+
+    public SuperstructurePlanner() {
+        this(keepOuts);
+    }
+
+    /**
+     * Gets the cached plan between two presets
+     *
+     * @param from starting preset
+     * @param to goal preset
+     * @return the precomputed plan
+     */
+    public Plan getPlan(Preset from, Preset to) {
+        return plans[from.ordinal()][to.ordinal()];
+    }
+
+    /**
+     * Gets the cached plan between two presets without routing through an intermediate preset
+     *
+     * @param from starting preset
+     * @param to goal preset
+     * @return the precomputed single move plan, which may not be collision free
+     */
+    public Plan getDirectPlan(Preset from, Preset to) {
+        return direct_plans[from.ordinal()][to.ordinal()];
+    }
+
+    /**
+     * Plans from the current mechanism state to a preset, using the cache when the mechanisms are
+     * resting at a known preset
+     *
+     * @param elevator elevator state in meters
+     * @param pivot pivot state in rotations
+     * @param goal goal preset
+     * @return the plan
+     */
+    public Plan plan(AxisState elevator, AxisState pivot, Preset goal) {
+        if (elevator.isAtRest(presetHeightTolerance, restHeightVelocity) && pivot.isAtRest(presetAngleTolerance, restAngleVelocity)) {
+            for (Preset from : Preset.values()) {
+                if (Math.abs(from.getHeight() - elevator.position()) < presetHeightTolerance
+                        && Math.abs(from.getAngle() - pivot.position()) < presetAngleTolerance) {
+                    return getPlan(from, goal);
+                }
+            }
+        }
+
+        return plan(elevator, pivot, goal.getHeight(), goal.getAngle());
+    }
+
+    /**
+     * Plans a move from any mechanism state, possibly moving, to a stop at a joint space point.
+     * Goals at a preset may be routed through another preset.
+     */
+    public Plan plan(AxisState elevator, AxisState pivot, double goal_height, double goal_angle) {
+        Plan direct = planDirect(elevator, pivot, goal_height, goal_angle);
+        if (direct.collision_free())
+            return direct;
+
+        for (Preset goal : Preset.values()) {
+            if (goal.getHeight() == goal_height && goal.getAngle() == goal_angle) {
+                Plan routed = planThroughPresets(elevator, pivot, goal);
+                return routed != null ? routed : direct;
+            }
+        }
+
+        return direct;
+    }
+
+    private Plan planThroughPresets(AxisState elevator, AxisState pivot, Preset goal) {
+        // no plan to a waypoint beats both axes moving there at once, so try the waypoints in order
+        // of that bound and stop once it can't beat the best route found
+        Preset[] presets = Preset.values();
+        int count = 0;
+        for (Preset waypoint : presets) {
+            Plan second = plans[waypoint.ordinal()][goal.ordinal()];
+            if (waypoint == goal || second == null || !second.collision_free() || second.next() != null)
+                continue;
+
+            elevator_profile.plan(elevator.position(), elevator.velocity(), waypoint.getHeight(), elevatorMaxVelocity, elevatorMaxAcceleration);
+            pivot_profile.plan(pivot.position(), pivot.velocity(), waypoint.getAngle(), pivotMaxVelocity, pivotMaxAcceleration);
+            double bound = Math.max(elevator_profile.getTotalTime(), pivot_profile.getTotalTime()) + second.duration();
+
+            // insertion sort, there are only a handful of presets
+            int j = count++;
+            while (j > 0 && waypoint_bounds[j - 1] > bound) {
+                waypoint_bounds[j] = waypoint_bounds[j - 1];
+                waypoint_order[j] = waypoint_order[j - 1];
+                j--;
+            }
+            waypoint_bounds[j] = bound;
+            waypoint_order[j] = waypoint.ordinal();
+        }
+
+        Plan best = null;
+        for (int k = 0; k < count; k++) {
+            if (best != null && waypoint_bounds[k] >= best.duration())
+                break;
+
+            Preset waypoint = presets[waypoint_order[k]];
+            Plan first = planDirect(elevator, pivot, waypoint.getHeight(), waypoint.getAngle());
+            Plan second = plans[waypoint.ordinal()][goal.ordinal()];
+            if (!first.collision_free())
+                continue;
+
+            double duration = first.duration() + second.duration();
+            if (best == null || duration < best.duration()) {
+                best = new Plan(first.goal_height(), first.goal_angle(), first.lead(), first.gate(), first.gate_rising(),
+                    duration, first.sequential_duration() + second.sequential_duration(), true, second);
+            }
+        }
+
+        return best;
+    }
+
+    private Plan planDirect(AxisState elevator, AxisState pivot, double goal_height, double goal_angle) {
+        elevator_profile.plan(elevator.position(), elevator.velocity(), goal_height, elevatorMaxVelocity, elevatorMaxAcceleration);
+        pivot_profile.plan(pivot.position(), pivot.velocity(), goal_angle, pivotMaxVelocity, pivotMaxAcceleration);
+        double elevator_time = elevator_profile.getTotalTime();
+        double pivot_time = pivot_profile.getTotalTime();
+        double sequential_duration = elevator_time + pivot_time;
+
+        // try the shortest total time first; a delay of zero moves both axes together
+        Plan best = null;
+        for (Axis lead : Axis.values()) {
+            ProfileAxis lead_profile = lead == Axis.Elevator ? elevator_profile : pivot_profile;
+            AxisState lag = lead == Axis.Elevator ? pivot : elevator;
+            double lead_start = lead == Axis.Elevator ? elevator.position() : pivot.position();
+            holdLag(lead, lag);
+            sampleLead(lead_profile);
+            held_collision_time = findHeldCollision(lead, lead_profile);
+
+            // a coarse pass finds a safe delay, a fine pass looks for an earlier one just before it
+            double best_duration = best == null ? Double.POSITIVE_INFINITY : best.duration();
+            double delay = findSafeDelay(lead, lead_profile, lead_start, 0, lead_profile.getTotalTime(), coarsePlanTimeStep,
+                best_duration, goal_height, goal_angle);
+            if (Double.isNaN(delay))
+                continue;
+            if (delay > 0) {
+                double earlier = findSafeDelay(lead, lead_profile, lead_start, Math.max(0, delay - coarsePlanTimeStep + planTimeStep),
+                    delay - planTimeStep, planTimeStep, best_duration, goal_height, goal_angle);
+                if (!Double.isNaN(earlier))
+                    delay = earlier;
+            }
+
+            double duration = Math.max(lead_profile.getTotalTime(), delay + releaseLag(lead, delay, goal_height, goal_angle));
+            best = makePlan(goal_height, goal_angle, lead, lead_profile, delay, duration, sequential_duration, true);
+        }
+
+        if (best != null)
+            return best;
+
+        // nothing was safe, fall back to moving the pivot completely before the elevator
+        holdLag(Axis.Pivot, elevator);
+        double duration = pivot_time + releaseLag(Axis.Pivot, pivot_time, goal_height, goal_angle);
+        return makePlan(goal_height, goal_angle, Axis.Pivot, pivot_profile, pivot_time, duration, sequential_duration, false);
+    }
+
+    /**
+     * Searches lag delays from first to last in steps, shortest total time first
+     *
+     * @return the first delay that is safe and beats the best duration so far, or NaN if none does
+     */
+    private double findSafeDelay(Axis lead, ProfileAxis lead_profile, double lead_start, double first, double last,
+            double step, double best_duration, double goal_height, double goal_angle) {
+        double lead_time = lead_profile.getTotalTime();
+        for (double delay = first; delay <= last + step; delay += step) {
+            delay = Math.min(delay, last);
+            double duration = Math.max(lead_time, delay + releaseLag(lead, delay, goal_height, goal_angle));
+            if (duration < best_duration && isSafeDelay(lead, lead_profile, lead_start, delay, duration, goal_height, goal_angle))
+                return delay;
+
+            if (delay >= last)
+                break;
+        }
+        return Double.NaN;
+    }
+
+    private boolean isSafeDelay(Axis lead, ProfileAxis lead_profile, double lead_start, double delay, double duration,
+            double goal_height, double goal_angle) {
+        if (delay <= 0)
+            return isCollisionFree(lead, lead_profile, 0, duration);
+
+        // a gate the lead axis is already past would release the lag axis straight away
+        double gate = getGate(lead_profile, delay);
+        boolean gate_rising = isGateRising(lead_profile, delay);
+        if (isGateReached(lead, gate, gate_rising, lead_start))
+            return false;
+
+        // the gate tolerance releases the lag axis a little before the planned delay, check from then
+        double release = findRelease(lead, gate, gate_rising, delay);
+        releaseLag(lead, release, goal_height, goal_angle);
+        return isCollisionFree(lead, lead_profile, release, duration);
+    }
+
+    // the lag axis follows its held goal until released
+    private void holdLag(Axis lead, AxisState lag) {
+        if (lead == Axis.Elevator)
+            held_profile.plan(lag.position(), lag.velocity(), lag.held_goal(), pivotMaxVelocity, pivotMaxAcceleration);
+        else
+            held_profile.plan(lag.position(), lag.velocity(), lag.held_goal(), elevatorMaxVelocity, elevatorMaxAcceleration);
+    }
+
+    /** Plans the lag axis from wherever it is at the release, returns its time from there to the goal */
+    private double releaseLag(Axis lead, double delay, double goal_height, double goal_angle) {
+        double position = held_profile.getPosition(delay);
+        double velocity = held_profile.getVelocity(delay);
+        if (lead == Axis.Elevator)
+            released_profile.plan(position, velocity, goal_angle, pivotMaxVelocity, pivotMaxAcceleration);
+        else
+            released_profile.plan(position, velocity, goal_height, elevatorMaxVelocity, elevatorMaxAcceleration);
+        return released_profile.getTotalTime();
+    }
+
+    private Plan makePlan(double goal_height, double goal_angle, Axis lead, ProfileAxis lead_profile,
+            double delay, double duration, double sequential_duration, boolean collision_free) {
+        if (delay <= 0) {
+            return new Plan(goal_height, goal_angle, lead, Double.NaN, true, duration, sequential_duration, collision_free, null);
+        }
+
+        return new Plan(goal_height, goal_angle, lead, getGate(lead_profile, delay), isGateRising(lead_profile, delay),
+            duration, sequential_duration, collision_free, null);
+    }
+
+    private static double getGate(ProfileAxis lead_profile, double delay) {
+        return lead_profile.getPosition(delay);
+    }
+
+    // the direction the lead axis crosses the gate in, not always towards its goal when it started out moving away
+    private static boolean isGateRising(ProfileAxis lead_profile, double delay) {
+        return lead_profile.getPosition(delay) >= lead_profile.getPosition(Math.max(0, delay - planTimeStep));
+    }
+
+    private static boolean isGateReached(Axis lead, double gate, boolean gate_rising, double lead_position) {
+        double tolerance = lead == Axis.Elevator ? gateHeightTolerance : gateAngleTolerance;
+        return gate_rising
+            ? lead_position >= gate - tolerance
+            : lead_position <= gate + tolerance;
+    }
+
+    // samples the lead axis on the collision check grid up to its last delay, with the running
+    // extremes of its position so the release for any gate is a binary search
+    private void sampleLead(ProfileAxis lead_profile) {
+        lead_samples = (int) (lead_profile.getTotalTime() / collisionCheckStep) + 2;
+        if (lead_positions.length < lead_samples) {
+            lead_positions = new double[lead_samples];
+            lead_max = new double[lead_samples];
+            lead_min = new double[lead_samples];
+        }
+
+        for (int i = 0; i < lead_samples; i++) {
+            double position = lead_profile.getPosition(i * collisionCheckStep);
+            lead_positions[i] = position;
+            lead_max[i] = i == 0 ? position : Math.max(lead_max[i - 1], position);
+            lead_min[i] = i == 0 ? position : Math.min(lead_min[i - 1], position);
+        }
+    }
+
+    /** @return the first checked time before the delay at which the lead axis reaches the gate, or the delay */
+    private double findRelease(Axis lead, double gate, boolean gate_rising, double delay) {
+        // checked times before the delay
+        int count = Math.min(lead_samples, (int) Math.ceil(delay / collisionCheckStep));
+        while (count > 0 && (count - 1) * collisionCheckStep >= delay)
+            count--;
+
+        int low = 0, high = count;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (isGateReached(lead, gate, gate_rising, gate_rising ? lead_max[middle] : lead_min[middle]))
+                high = middle;
+            else
+                low = middle + 1;
+        }
+        return low < count ? low * collisionCheckStep : delay;
+    }
+
+    // until the release the lag axis is on its held course, which is the same for every delay
+    private double findHeldCollision(Axis lead, ProfileAxis lead_profile) {
+        for (int i = 0; i < lead_samples; i++) {
+            double t = i * collisionCheckStep;
+            if (isInKeepOut(lead, lead_positions[i], held_profile.getPosition(t)))
+                return t;
+        }
+        return Double.POSITIVE_INFINITY;
+    }
+
+    private boolean isCollisionFree(Axis lead, ProfileAxis lead_profile, double delay, double duration) {
+        if (held_collision_time < delay)
+            return false;
+
+        // the held course before the release was checked by findHeldCollision
+        for (int i = (int) (delay / collisionCheckStep); i * collisionCheckStep <= duration + collisionCheckStep; i++) {
+            double t = i * collisionCheckStep;
+            double lead_position = i < lead_samples ? lead_positions[i] : lead_profile.getPosition(t);
+            double lag_position = t < delay ? held_profile.getPosition(t) : released_profile.getPosition(t - delay);
+            if (isInKeepOut(lead, lead_position, lag_position))
+                return false;
+        }
+
+        return true;
+    }
+
+    private boolean isInKeepOut(Axis lead, double lead_position, double lag_position) {
+        double height = lead == Axis.Elevator ? lead_position : lag_position;
+        double angle = lead == Axis.Elevator ? lag_position : lead_position;
+        for (KeepOut keep_out : keep_outs) {
+            if (keep_out.contains(height, angle, keepOutHeightMargin, keepOutAngleMargin))
+                return true;
+        }
+        return false;
+    }
+}
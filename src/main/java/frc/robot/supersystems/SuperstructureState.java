@@ -0,0 +1,76 @@
+package frc.robot.supersystems;
+
+import frc.robot.subsystems.CoralArmGripper.GripperVoltage;
+
+/**
+ * Named states of the elevator, pivot and gripper. The gripper runs {@code transit_voltage} while
+ * the superstructure moves towards the state and {@code voltage} once it has arrived. States with a
+ * stopped voltage switch to it the moment the beam break trips.
+ */
+public enum SuperstructureState {
+    Initial(Preset.Initial, GripperVoltage.zero),
+    Storage(Preset.Storage, GripperVoltage.zero),
+    StorageAlgae(Preset.Storage, GripperVoltage.holdAlgae),
+
+    IntakePrepare(Preset.IntakeCatch, GripperVoltage.zero),
+    IntakeLoad(Preset.IntakeGrip, GripperVoltage.intakeCoral, GripperVoltage.intakeCoral, GripperVoltage.zero),
+    IntakePost(Preset.PostIntakeCatch, GripperVoltage.zero),
+
+    PrepareL1(Preset.ScoreL1, GripperVoltage.zero),
+    PrepareL2(Preset.ScoreL2, GripperVoltage.zero),
+    PrepareL3(Preset.ScoreL3, GripperVoltage.zero),
+    PrepareL4(Preset.ScoreL4, GripperVoltage.zero),
+    // L1 to L3 release while the pivot flattens, L4 only once it is flat
+    ReleaseL1(Preset.ScoreL1, GripperVoltage.releaseCoralL1),
+    ReleaseL2(Preset.ReleaseL2, GripperVoltage.releaseCoralL2),
+    ReleaseL3(Preset.ReleaseL3, GripperVoltage.releaseCoralL3),
+    ReleaseL4(Preset.ReleaseL4, GripperVoltage.zero, GripperVoltage.releaseCoralL4, Double.NaN),
+    ScoredL4(Preset.ReleaseL4, GripperVoltage.zero),
+
+    ExtractLowPrepare(Preset.ExtractAlgaeLow, GripperVoltage.zero),
+    ExtractLow(Preset.ExtractAlgaeLow, GripperVoltage.extractAlgaeLow, GripperVoltage.extractAlgaeLow, GripperVoltage.holdAlgae),
+    ExtractLowHold(Preset.ExtractAlgaeLow, GripperVoltage.holdAlgae),
+    ExtractHighPrepare(Preset.ExtractAlgaeHigh, GripperVoltage.zero),
+    ExtractHigh(Preset.ExtractAlgaeHigh, GripperVoltage.extractAlgae, GripperVoltage.extractAlgae, GripperVoltage.holdAlgae),
+    ExtractHighHold(Preset.ExtractAlgaeHigh, GripperVoltage.holdAlgae),
+
+    ProcessorPrepare(Preset.ScoreProcessor, GripperVoltage.holdAlgae),
+    BargePrepare(Preset.ScoreBarge, GripperVoltage.holdAlgae);
+
+    private final Preset preset;
+    private final double transit_voltage;
+    private final double voltage;
+    private final double stopped_voltage;
+
+    SuperstructureState(Preset preset, double transit_voltage, double voltage, double stopped_voltage) {
+        this.preset = preset;
+        this.transit_voltage = transit_voltage;
+        this.voltage = voltage;
+        this.stopped_voltage = stopped_voltage;
+    }
+
+    SuperstructureState(Preset preset, double voltage) {
+        this(preset, voltage, voltage, Double.NaN);
+    }
+
+    public Preset getPreset() {
+        return preset;
+    }
+
+    public double getTransitVoltage() {
+        return transit_voltage;
+    }
+
+    public double getVoltage() {
+        return voltage;
+    }
+
+    /** @return voltage to switch to when the beam breaks, NaN if the beam break is ignored */
+    public double getStoppedVoltage() {
+        return stopped_voltage;
+    }
+
+    public boolean stopsOnBeamBreak() {
+        return !Double.isNaN(stopped_voltage);
+    }
+}
@@ -0,0 +1,88 @@
+package frc.robot.supersystems;
+
+import static frc.robot.Constants.ElevatorSupersystemConstants.*;
+
+import com.ctre.phoenix6.BaseStatusSignal;
+import com.ctre.phoenix6.StatusCode;
+
+import edu.wpi.first.networktables.IntegerPublisher;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.wpilibj.Threads;
+import edu.wpi.first.wpilibj.Timer;
+import frc.robot.io.MechanismInputs;
+import frc.robot.util.LoopTimingStats;
+import frc.robot.util.MechanismSignals;
+
+/**
+ * Runs the superstructure state machine at the elevator signal rate instead of the 50 Hz scheduler,
+ * the same way Phoenix runs swerve odometry. The thread blocks until a new synchronous set of
+ * elevator signals arrives, refreshes the slower pivot signals and steps the state machine on its
+ * own copies of the signals.
+ */
+public class SuperstructureThread extends Thread {
+    /** One step of the state machine, given freshly read elevator and pivot inputs */
+    public interface Step {
+        void run(MechanismInputs elevator, MechanismInputs pivot);
+    }
+
+    private final MechanismSignals elevator_signals;
+    private final MechanismSignals pivot_signals;
+    // filled straight from the signals and never logged, the thread only runs with hardware signals
+    private final MechanismInputs elevator_inputs = new MechanismInputs("SuperstructureThread/Elevator");
+    private final MechanismInputs pivot_inputs = new MechanismInputs("SuperstructureThread/Pivot");
+    private final Step step;
+
+    private volatile boolean running = true;
+    private long failed_waits = 0;
+
+    private final LoopTimingStats timing = new LoopTimingStats("SuperstructureThread", 1.0 / mechanismThreadFrequency, 250);
+    private final IntegerPublisher failed_waits_publisher = NetworkTableInstance.getDefault()
+        .getTable("SuperstructureThread").getIntegerTopic("FailedWaits").publish();
+
+    /**
+     * @param elevator_signals elevator signals owned by this thread
+     * @param pivot_signals pivot signals owned by this thread
+     * @param step the state machine step
+     */
+    public SuperstructureThread(MechanismSignals elevator_signals, MechanismSignals pivot_signals, Step step) {
+        super("SuperstructureThread");
+        setDaemon(true);
+
+        this.elevator_signals = elevator_signals;
+        this.pivot_signals = pivot_signals;
+        this.step = step;
+    }
+
+    @Override
+    public void run() {
+        Threads.setCurrentThreadPriority(true, mechanismThreadPriority);
+
+        BaseStatusSignal[] wait_signals = elevator_signals.getAll();
+        while (running) {
+            StatusCode status = BaseStatusSignal.waitForAll(2.0 / mechanismThreadFrequency, wait_signals);
+            if (!status.isOK()) {
+                failed_waits_publisher.set(++failed_waits);
+                continue;
+            }
+
+            elevator_signals.fill(elevator_inputs);
+            pivot_signals.refresh();
+            pivot_signals.fill(pivot_inputs);
+            step.run(elevator_inputs, pivot_inputs);
+
+            // the inputs hold FPGA time, see MechanismSignals.getTimestamp
+            double timestamp = elevator_inputs.timestamp;
+            timing.record(timestamp, Timer.getFPGATimestamp() - timestamp);
+        }
+    }
+
+    /** Stops the thread and waits for its last step to finish */
+    public void stopThread() {
+        running = false;
+        try {
+            join((long) (3000 / mechanismThreadFrequency));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package frc.robot.supersystems;
+
+import frc.robot.supersystems.SuperstructurePlanner.Plan;
+
+/**
+ * Transition table between superstructure states, computed once at boot.
+ * <p>
+ * Two states share an edge when the planner can move directly between their presets without
+ * entering a keep-out region, weighted by the planned move time. All pairs shortest paths are
+ * solved up front so resolving a request at runtime is a single array lookup for the next hop.
+ */
+public class SuperstructureTransitions {
+    // small cost per hop so equal time routes prefer fewer stops
+    private static final double hopCost = 0.001;
+
+    private final SuperstructureState[] states = SuperstructureState.values();
+    private final boolean[][] legal;
+    private final double[][] cost;
+    private final int[][] next_hop;
+
+    public SuperstructureTransitions(SuperstructurePlanner planner) {
+        int n = states.length;
+        legal = new boolean[n][n];
+        cost = new double[n][n];
+        next_hop = new int[n][n];
+
+        for (int from = 0; from < n; from++) {
+            for (int to = 0; to < n; to++) {
+                Plan plan = planner.getDirectPlan(states[from].getPreset(), states[to].getPreset());
+                legal[from][to] = from == to || plan.collision_free();
+
+                if (from == to) {
+                    cost[from][to] = 0;
+                    next_hop[from][to] = to;
+                } else if (legal[from][to]) {
+                    cost[from][to] = plan.duration() + hopCost;
+                    next_hop[from][to] = to;
+                } else {
+                    cost[from][to] = Double.POSITIVE_INFINITY;
+                    next_hop[from][to] = -1;
+                }
+            }
+        }
+
+        // Floyd-Warshall, the graph is small enough that this takes well under a millisecond
+        for (int via = 0; via < n; via++) {
+            for (int from = 0; from < n; from++) {
+                for (int to = 0; to < n; to++) {
+                    double through = cost[from][via] + cost[via][to];
+                    if (through < cost[from][to]) {
+                        cost[from][to] = through;
+                        next_hop[from][to] = next_hop[from][via];
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @param from current state
+     * @param to requested state
+     * @return the next state to move to on the way, or {@code from} if no safe route exists
+     */
+    public SuperstructureState getNextHop(SuperstructureState from, SuperstructureState to) {
+        int hop = next_hop[from.ordinal()][to.ordinal()];
+        return hop < 0 ? from : states[hop];
+    }
+
+    public boolean isReachable(SuperstructureState from, SuperstructureState to) {
+        return next_hop[from.ordinal()][to.ordinal()] >= 0;
+    }
+
+    /** @return predicted time in seconds to move between two states, infinite if unreachable */
+    public double getCost(SuperstructureState from, SuperstructureState to) {
+        return cost[from.ordinal()][to.ordinal()];
+    }
+
+    public boolean isLegal(SuperstructureState from, SuperstructureState to) {
+        return legal[from.ordinal()][to.ordinal()];
+    }
+}
@@ -0,0 +1,112 @@
+package frc.robot.util;
+
+import java.util.List;
+
+import edu.wpi.first.math.geometry.Translation2d;
+
+/**
+ * Signed distance from every point of the field to the nearest field element or wall, sampled on a
+ * grid once at boot. Positive is free space, negative is inside an element or past a wall.
+ * <p>
+ * Lookups interpolate bilinearly between the four surrounding cells and allocate nothing, so they
+ * can run inside a swerve request at the odometry rate. The gradient points away from the nearest
+ * obstacle.
+ */
+public class FieldDistanceGrid {
+    private final double resolution;
+    private final int columns;
+    private final int rows;
+    private final float[] distance;
+
+    /**
+     * @param obstacles convex outlines of the field elements, in any winding order
+     * @param field_length field length, in meters
+     * @param field_width field width, in meters
+     * @param resolution cell size, in meters
+     */
+    public FieldDistanceGrid(List<Translation2d[]> obstacles, double field_length, double field_width, double resolution) {
+        this.resolution = resolution;
+        columns = (int) Math.ceil(field_length / resolution) + 1;
+        rows = (int) Math.ceil(field_width / resolution) + 1;
+        distance = new float[columns * rows];
+
+        for (int row = 0; row < rows; row++) {
+            double y = row * resolution;
+            for (int column = 0; column < columns; column++) {
+                double x = column * resolution;
+                double nearest = Math.min(Math.min(x, field_length - x), Math.min(y, field_width - y));
+                for (Translation2d[] obstacle : obstacles) {
+                    nearest = Math.min(nearest, signedDistance(obstacle, x, y));
+                }
+                distance[row * columns + column] = (float) nearest;
+            }
+        }
+    }
+
+    // distance to the nearest edge, negative when inside the convex outline
+    private static double signedDistance(Translation2d[] outline, double x, double y) {
+        double nearest = Double.POSITIVE_INFINITY;
+        int crossings_left = 0, crossings_right = 0;
+        for (int i = 0; i < outline.length; i++) {
+            Translation2d a = outline[i], b = outline[(i + 1) % outline.length];
+            double ex = b.getX() - a.getX(), ey = b.getY() - a.getY();
+            double t = Math.max(0, Math.min(1, ((x - a.getX()) * ex + (y - a.getY()) * ey) / (ex * ex + ey * ey)));
+            nearest = Math.min(nearest, Math.hypot(a.getX() + ex * t - x, a.getY() + ey * t - y));
+
+            double cross = ex * (y - a.getY()) - ey * (x - a.getX());
+            if (cross > 0)
+                crossings_left++;
+            else if (cross < 0)
+                crossings_right++;
+        }
+        // inside a convex outline the point is on the same side of every edge
+        boolean inside = crossings_left == outline.length || crossings_right == outline.length;
+        return inside ? -nearest : nearest;
+    }
+
+    /** @return signed distance to the nearest obstacle, in meters */
+    public double getDistance(double x, double y) {
+        double gx = clampColumn(x / resolution);
+        double gy = clampRow(y / resolution);
+        int column = (int) gx, row = (int) gy;
+        double fx = gx - column, fy = gy - row;
+        int i = row * columns + column;
+
+        double bottom = distance[i] + (distance[i + 1] - distance[i]) * fx;
+        double top = distance[i + columns] + (distance[i + columns + 1] - distance[i + columns]) * fx;
+        return bottom + (top - bottom) * fy;
+    }
+
+    /** @return x component of the distance gradient, the derivative of the bilinear interpolation */
+    public double getGradientX(double x, double y) {
+        double gx = clampColumn(x / resolution);
+        double gy = clampRow(y / resolution);
+        int column = (int) gx, row = (int) gy;
+        double fy = gy - row;
+        int i = row * columns + column;
+
+        return ((distance[i + 1] - distance[i]) * (1 - fy)
+            + (distance[i + columns + 1] - distance[i + columns]) * fy) / resolution;
+    }
+
+    /** @return y component of the distance gradient */
+    public double getGradientY(double x, double y) {
+        double gx = clampColumn(x / resolution);
+        double gy = clampRow(y / resolution);
+        int column = (int) gx, row = (int) gy;
+        double fx = gx - column;
+        int i = row * columns + column;
+
+        return ((distance[i + columns] - distance[i]) * (1 - fx)
+            + (distance[i + columns + 1] - distance[i + 1]) * fx) / resolution;
+    }
+
+    // keeps the cell and its neighbour up and to the right inside the grid
+    private double clampColumn(double gx) {
+        return Math.max(0, Math.min(columns - 1.000001, gx));
+    }
+
+    private double clampRow(double gy) {
+        return Math.max(0, Math.min(rows - 1.000001, gy));
+    }
+}
@@ -0,0 +1,176 @@
+package frc.robot.util;
+
+/**
+ * Streaming game piece detector for a roller gripper.
+ * <p>
+ * Each sample is filtered with a time-aware single pole low pass so irregular sample spacing (eg.
+ * replaying a log) gives the same result as the live robot. A stall is flagged when the filtered
+ * stator current is high while the rotor turns much slower than it would free-spinning at the
+ * applied voltage. Stalls at high current are read as algae, lower current stalls and beam breaks
+ * are read as coral. The result is fused with the beam break into a piece and a confidence.
+ */
+public class GamePieceDetector {
+    public enum GamePiece {
+        None,
+        Coral,
+        Algae
+    }
+
+    /** Thresholds for the detector, all in SI units and rotor rotations */
+    public record Config(
+        double filter_time_constant,
+        double free_speed_per_volt,
+        double min_intake_voltage,
+        double stall_speed_ratio,
+        double coral_stall_current,
+        double algae_stall_current,
+        double stall_debounce_time,
+        double release_debounce_time) {}
+
+    private final Config config;
+
+    private double filtered_current = 0;
+    private double filtered_velocity = 0;
+    private double last_timestamp = Double.NaN;
+
+    private double stall_start_timestamp = Double.NaN;
+    private double release_start_timestamp = Double.NaN;
+    private double intake_start_timestamp = Double.NaN;
+    private double stall_peak_current = 0;
+
+    private GamePiece piece = GamePiece.None;
+    private double confidence = 0;
+    private double detection_timestamp = Double.NaN;
+    private double detection_latency = Double.NaN;
+
+    public GamePieceDetector(Config config) {
+        this.config = config;
+    }
+
+    /**
+     * Adds a sample to the detector
+     *
+     * @param timestamp sample timestamp in seconds
+     * @param stator_current stator current in amps
+     * @param rotor_velocity rotor velocity in rotations per second
+     * @param applied_voltage voltage applied to the motor, positive is intaking
+     * @param beam_broken true if the beam break is blocked
+     */
+    public void update(double timestamp, double stator_current, double rotor_velocity, double applied_voltage, boolean beam_broken) {
+        if (Double.isNaN(last_timestamp)) {
+            filtered_current = Math.abs(stator_current);
+            filtered_velocity = rotor_velocity;
+        } else {
+            double dt = timestamp - last_timestamp;
+            if (dt <= 0)
+                return;
+
+            double alpha = 1 - Math.exp(-dt / config.filter_time_constant());
+            filtered_current += alpha * (Math.abs(stator_current) - filtered_current);
+            filtered_velocity += alpha * (rotor_velocity - filtered_velocity);
+        }
+        last_timestamp = timestamp;
+
+        boolean intaking = applied_voltage > config.min_intake_voltage();
+        if (intaking && Double.isNaN(intake_start_timestamp))
+            intake_start_timestamp = timestamp;
+        else if (!intaking)
+            intake_start_timestamp = Double.NaN;
+
+        // a stall is only meaningful while we are pushing the roller inwards
+        double free_speed = applied_voltage * config.free_speed_per_volt();
+        boolean stalled = intaking
+            && filtered_current > config.coral_stall_current()
+            && filtered_velocity < free_speed * config.stall_speed_ratio();
+
+        if (stalled) {
+            if (Double.isNaN(stall_start_timestamp)) {
+                stall_start_timestamp = timestamp;
+                stall_peak_current = 0;
+            }
+            stall_peak_current = Math.max(stall_peak_current, filtered_current);
+        } else {
+            stall_start_timestamp = Double.NaN;
+        }
+
+        double stall_progress = stalled
+            ? Math.min(1, (timestamp - stall_start_timestamp) / config.stall_debounce_time())
+            : 0;
+        boolean algae_signature = stall_peak_current > config.algae_stall_current();
+
+        GamePiece detected = GamePiece.None;
+        double detected_confidence = 0;
+        if (beam_broken && stall_progress >= 1) {
+            detected = algae_signature ? GamePiece.Algae : GamePiece.Coral;
+            detected_confidence = 1;
+        } else if (beam_broken) {
+            detected = GamePiece.Coral;
+            detected_confidence = 0.7 + 0.3 * stall_progress;
+        } else if (stall_progress >= 1) {
+            detected = algae_signature ? GamePiece.Algae : GamePiece.Coral;
+            detected_confidence = algae_signature ? 0.8 : 0.5;
+        }
+
+        if (detected != GamePiece.None) {
+            release_start_timestamp = Double.NaN;
+            if (piece != detected) {
+                // confidence in the last piece says nothing about this one
+                piece = detected;
+                confidence = detected_confidence;
+                detection_timestamp = timestamp;
+                detection_latency = timestamp - intake_start_timestamp;
+            } else {
+                confidence = Math.max(confidence, detected_confidence);
+            }
+            return;
+        }
+
+        if (piece == GamePiece.None)
+            return;
+
+        // keep the piece while holding it, drop it once the roller spins freely or runs outwards
+        boolean holding = !beam_broken
+            && applied_voltage >= 0
+            && filtered_current > config.coral_stall_current() * 0.5;
+        if (holding) {
+            release_start_timestamp = Double.NaN;
+            return;
+        }
+
+        if (Double.isNaN(release_start_timestamp))
+            release_start_timestamp = timestamp;
+
+        if (timestamp - release_start_timestamp >= config.release_debounce_time()) {
+            piece = GamePiece.None;
+            confidence = 0;
+            release_start_timestamp = Double.NaN;
+        }
+    }
+
+    public GamePiece getGamePiece() {
+        return piece;
+    }
+
+    /** @return confidence in the current piece, from 0 to 1 */
+    public double getConfidence() {
+        return confidence;
+    }
+
+    /** @return timestamp of the sample that detected the current piece, or NaN */
+    public double getDetectionTimestamp() {
+        return detection_timestamp;
+    }
+
+    /** @return seconds between the intake voltage being applied and the last detection, or NaN */
+    public double getDetectionLatency() {
+        return detection_latency;
+    }
+
+    public double getFilteredCurrent() {
+        return filtered_current;
+    }
+
+    public double getFilteredVelocity() {
+        return filtered_velocity;
+    }
+}
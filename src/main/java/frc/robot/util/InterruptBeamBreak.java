@@ -0,0 +1,249 @@
+package frc.robot.util;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import edu.wpi.first.networktables.DoublePublisher;
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.wpilibj.AsynchronousInterrupt;
+import edu.wpi.first.wpilibj.DigitalInput;
+import edu.wpi.first.wpilibj.Timer;
+import frc.robot.io.LogReplay;
+import frc.robot.io.LoggedInputs;
+
+/**
+ * Beam break handled through an asynchronous interrupt instead of scheduler polling.
+ * <p>
+ * Every edge is timestamped by the FPGA and pushed onto a bounded queue. A one-shot action can be
+ * armed to run straight from the interrupt thread when the beam breaks, which lets the gripper stop
+ * without waiting for the next 20 ms scheduler pass.
+ * <p>
+ * Edges are logged from {@link #update()}. When replaying, the interrupt isn't used and the logged
+ * edges are handled in {@link #update()} instead, so an armed action runs at the start of the
+ * cycle that logged its break rather than partway through the one before.
+ * <p>
+ * Each break the main loop notices logs how long the interrupt and the polled trigger took to act
+ * on it, which the match log analyzer compares.
+ */
+public class InterruptBeamBreak {
+    private static final int edgeQueueSize = 32;
+
+    /**
+     * A single beam break edge
+     *
+     * @param broken true if the beam became broken, false if it cleared
+     * @param timestamp FPGA timestamp of the edge in seconds
+     */
+    public record Edge(boolean broken, double timestamp) {}
+
+    private final DigitalInput sensor;
+    private final AsynchronousInterrupt interrupt;
+
+    private final ArrayBlockingQueue<Edge> edges = new ArrayBlockingQueue<>(edgeQueueSize);
+    // edges not yet written to the log, only drained by update
+    private final ArrayBlockingQueue<Edge> unlogged_edges = new ArrayBlockingQueue<>(edgeQueueSize);
+    private final AtomicReference<Runnable> break_action = new AtomicReference<>();
+
+    private volatile double last_break_timestamp = Double.NaN;
+    private volatile double last_clear_timestamp = Double.NaN;
+    private volatile boolean polled_break_recorded = true;
+    private volatile double interrupt_latency_ms = Double.NaN;
+
+    private final BeamBreakInputs inputs;
+    private final String edge_log_name;
+    private final RobotLog.StructEntry edge_log;
+    private final RobotLog.StructEntry latency_log;
+
+    private final DoublePublisher interrupt_latency_publisher;
+    private final DoublePublisher polled_latency_publisher;
+
+    /**
+     * Creates the beam break and starts listening for edges
+     *
+     * @param name name used to publish latency measurements
+     * @param sensor the beam break input, which reads true while the beam is unbroken
+     */
+    public InterruptBeamBreak(String name, DigitalInput sensor) {
+        this.sensor = sensor;
+
+        inputs = new BeamBreakInputs(name + "/Inputs");
+        edge_log_name = name + "/Edge";
+        edge_log = new RobotLog.StructEntry(edge_log_name, "BeamBreakEdge", "bool broken;double timestamp", 1 + 8, false);
+        latency_log = new RobotLog.StructEntry(name + "/Latency", "BeamBreakLatency",
+            "double interrupt_ms;double polled_ms", 2 * 8, false);
+
+        NetworkTable table = NetworkTableInstance.getDefault().getTable(name);
+        interrupt_latency_publisher = table.getDoubleTopic("InterruptStopLatencyMs").publish();
+        polled_latency_publisher = table.getDoubleTopic("PolledLatencyMs").publish();
+
+        interrupt = new AsynchronousInterrupt(sensor, this::onInterrupt);
+        interrupt.setInterruptEdges(true, true);
+        if (!LogReplay.isActive())
+            interrupt.enable();
+    }
+
+    private void onInterrupt(boolean rising, boolean falling) {
+        // the sensor reads false while the beam is broken, so a falling edge is a break
+        double rising_timestamp = rising ? interrupt.getRisingTimestamp() : Double.NaN;
+        double falling_timestamp = falling ? interrupt.getFallingTimestamp() : Double.NaN;
+
+        if (rising && falling && rising_timestamp < falling_timestamp) {
+            onClear(rising_timestamp);
+            onBreak(falling_timestamp);
+        } else {
+            if (falling)
+                onBreak(falling_timestamp);
+            if (rising)
+                onClear(rising_timestamp);
+        }
+    }
+
+    private void onBreak(double timestamp) {
+        last_break_timestamp = timestamp;
+        polled_break_recorded = false;
+        interrupt_latency_ms = Double.NaN;
+
+        Runnable action = break_action.getAndSet(null);
+        if (action != null) {
+            action.run();
+            // the replayed edge is handled a cycle after it happened, so there is no latency to measure
+            if (!LogReplay.isActive()) {
+                interrupt_latency_ms = (Timer.getFPGATimestamp() - timestamp) * 1000;
+                interrupt_latency_publisher.set(interrupt_latency_ms);
+            }
+        }
+
+        Edge edge = new Edge(true, timestamp);
+        offer(edges, edge);
+        offer(unlogged_edges, edge);
+    }
+
+    private void onClear(double timestamp) {
+        last_clear_timestamp = timestamp;
+        Edge edge = new Edge(false, timestamp);
+        offer(edges, edge);
+        offer(unlogged_edges, edge);
+    }
+
+    private static void offer(ArrayBlockingQueue<Edge> queue, Edge edge) {
+        // drop the oldest edge if nobody is draining the queue
+        while (!queue.offer(edge)) {
+            queue.poll();
+        }
+    }
+
+    /** @return true while the beam is broken, or the state recorded this cycle when replaying */
+    public boolean isBroken() {
+        if (LogReplay.isActive())
+            return inputs.broken;
+
+        return !sensor.get();
+    }
+
+    /**
+     * Samples the beam for the log and logs the edges since the last call, after handling the
+     * logged ones when replaying. Call once per loop.
+     */
+    public void update() {
+        if (LogReplay.isActive()) {
+            for (byte[] record : LogReplay.getRecords(edge_log_name)) {
+                ByteBuffer buffer = ByteBuffer.wrap(record).order(ByteOrder.LITTLE_ENDIAN);
+                boolean broken = buffer.get() != 0;
+                double timestamp = buffer.getDouble();
+                if (broken)
+                    onBreak(timestamp);
+                else
+                    onClear(timestamp);
+            }
+        }
+
+        Edge edge;
+        while ((edge = unlogged_edges.poll()) != null) {
+            if (edge_log.begin())
+                edge_log.putBoolean(edge.broken()).putDouble(edge.timestamp()).append();
+        }
+
+        inputs.broken = !sensor.get();
+        inputs.process();
+    }
+
+    /** @return FPGA timestamp of the last break in seconds, or NaN if the beam has never broken */
+    public double getLastBreakTimestamp() {
+        return last_break_timestamp;
+    }
+
+    /** @return FPGA timestamp of the last clear in seconds, or NaN if the beam has never cleared */
+    public double getLastClearTimestamp() {
+        return last_clear_timestamp;
+    }
+
+    /**
+     * Arms an action that runs once, from the interrupt thread, on the next beam break. The action
+     * must be thread safe and quick.
+     *
+     * @param action the action to run
+     */
+    public void armBreakAction(Runnable action) {
+        break_action.set(action);
+    }
+
+    public void disarmBreakAction() {
+        break_action.set(null);
+    }
+
+    /** @return the oldest edge that hasn't been read yet, or null if there is none */
+    public Edge pollEdge() {
+        return edges.poll();
+    }
+
+    /**
+     * Hands every queued edge to a consumer, oldest first
+     *
+     * @param consumer the consumer to receive the edges
+     */
+    public void drainEdges(Consumer<Edge> consumer) {
+        Edge edge;
+        while ((edge = edges.poll()) != null) {
+            consumer.accept(edge);
+        }
+    }
+
+    /**
+     * Records how long after the last break the main loop noticed it. Call this from the polled
+     * trigger so both paths can be compared.
+     */
+    public void recordPolledBreak() {
+        if (polled_break_recorded || Double.isNaN(last_break_timestamp))
+            return;
+        polled_break_recorded = true;
+        if (LogReplay.isActive())
+            return;
+
+        double polled_latency_ms = (Timer.getFPGATimestamp() - last_break_timestamp) * 1000;
+        polled_latency_publisher.set(polled_latency_ms);
+        if (latency_log.begin())
+            latency_log.putDouble(interrupt_latency_ms).putDouble(polled_latency_ms).append();
+    }
+
+    private static class BeamBreakInputs extends LoggedInputs {
+        private boolean broken = false;
+
+        private BeamBreakInputs(String name) {
+            super(name, "BeamBreakInputs", "bool broken", 1);
+        }
+
+        @Override
+        protected void toLog(RobotLog.StructEntry entry) {
+            entry.putBoolean(broken);
+        }
+
+        @Override
+        protected void fromLog(ByteBuffer buffer) {
+            broken = buffer.get() != 0;
+        }
+    }
+}
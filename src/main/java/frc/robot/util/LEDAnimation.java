@@ -0,0 +1,103 @@
+package frc.robot.util;
+
+import edu.wpi.first.wpilibj.util.Color;
+
+/**
+ * An LED animation rendered ahead of time into byte frames.
+ * <p>
+ * Each frame holds four bytes per LED: red, green, blue and an opacity flag. LEDs with the flag
+ * cleared are transparent and show whatever a lower priority layer has underneath.
+ */
+public class LEDAnimation {
+    public static final int bytesPerLED = 4;
+
+    private final String name;
+    private final double frame_period;
+    private final byte[][] frames;
+
+    /**
+     * @param name name of the animation, for logging
+     * @param frame_period seconds each frame is shown for
+     * @param frames rendered frames, {@link #bytesPerLED} bytes per LED
+     */
+    public LEDAnimation(String name, double frame_period, byte[][] frames) {
+        this.name = name;
+        this.frame_period = frame_period;
+        this.frames = frames;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getFrameCount() {
+        return frames.length;
+    }
+
+    /**
+     * @param elapsed seconds since the animation started
+     * @return index of the frame to show
+     */
+    public int getFrameIndex(double elapsed) {
+        if (frames.length == 1)
+            return 0;
+
+        return (int) (Math.max(0, elapsed) / frame_period) % frames.length;
+    }
+
+    public byte[] getFrame(int index) {
+        return frames[index];
+    }
+
+    private static void setLED(byte[] frame, int index, Color color) {
+        frame[index * bytesPerLED] = (byte) (color.red * 255);
+        frame[index * bytesPerLED + 1] = (byte) (color.green * 255);
+        frame[index * bytesPerLED + 2] = (byte) (color.blue * 255);
+        frame[index * bytesPerLED + 3] = 1;
+    }
+
+    /** A single color on every LED */
+    public static LEDAnimation solid(String name, int count, Color color) {
+        byte[] frame = new byte[count * bytesPerLED];
+        for (int i = 0; i < count; i++)
+            setLED(frame, i, color);
+
+        return new LEDAnimation(name, 1, new byte[][] {frame});
+    }
+
+    /**
+     * A rainbow that scrolls one hue step per frame
+     *
+     * @param count number of LEDs
+     * @param hue_per_led hue difference between neighbouring LEDs, out of 180
+     * @param frame_period seconds per hue step
+     */
+    public static LEDAnimation rainbow(String name, int count, int hue_per_led, double frame_period) {
+        byte[][] frames = new byte[180][count * bytesPerLED];
+        for (int f = 0; f < frames.length; f++) {
+            for (int i = 0; i < count; i++)
+                setLED(frames[f], i, Color.fromHSV((i * hue_per_led + f) % 180, 255, 255));
+        }
+
+        return new LEDAnimation(name, frame_period, frames);
+    }
+
+    /**
+     * Odd and even LEDs swap between two colors
+     *
+     * @param count number of LEDs
+     * @param odd color of the odd LEDs in the first frame
+     * @param even color of the even LEDs in the first frame
+     * @param frame_period seconds between swaps
+     */
+    public static LEDAnimation alternate(String name, int count, Color odd, Color even, double frame_period) {
+        byte[][] frames = new byte[2][count * bytesPerLED];
+        for (int i = 0; i < count; i++) {
+            boolean is_odd = (i & 1) == 1;
+            setLED(frames[0], i, is_odd ? odd : even);
+            setLED(frames[1], i, is_odd ? even : odd);
+        }
+
+        return new LEDAnimation(name, frame_period, frames);
+    }
+}
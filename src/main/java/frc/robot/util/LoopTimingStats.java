@@ -0,0 +1,90 @@
+package frc.robot.util;
+
+import edu.wpi.first.networktables.DoublePublisher;
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableInstance;
+
+/**
+ * Period, jitter and latency statistics for a periodic loop, published in batches so the stats
+ * themselves don't add much load to a fast loop. Each batch is also logged under
+ * {@code <name>/Timing}, so loops can be compared offline by the match log analyzer.
+ */
+public class LoopTimingStats {
+    private final double expected_period;
+    private final int publish_interval;
+
+    private double last_timestamp = Double.NaN;
+    private int samples = 0;
+    private double period_sum = 0;
+    private double jitter_sum = 0;
+    private double max_jitter = 0;
+    private double latency_sum = 0;
+    private double max_latency = 0;
+
+    private final DoublePublisher period_publisher;
+    private final DoublePublisher jitter_publisher;
+    private final DoublePublisher max_jitter_publisher;
+    private final DoublePublisher latency_publisher;
+    private final DoublePublisher max_latency_publisher;
+    private final RobotLog.StructEntry timing_log;
+
+    /**
+     * @param name table the stats are published under
+     * @param expected_period expected loop period in seconds
+     * @param publish_interval number of loops to average before publishing
+     */
+    public LoopTimingStats(String name, double expected_period, int publish_interval) {
+        this.expected_period = expected_period;
+        this.publish_interval = publish_interval;
+
+        NetworkTable table = NetworkTableInstance.getDefault().getTable(name);
+        period_publisher = table.getDoubleTopic("PeriodMs").publish();
+        jitter_publisher = table.getDoubleTopic("JitterMs").publish();
+        max_jitter_publisher = table.getDoubleTopic("MaxJitterMs").publish();
+        latency_publisher = table.getDoubleTopic("LatencyMs").publish();
+        max_latency_publisher = table.getDoubleTopic("MaxLatencyMs").publish();
+        timing_log = new RobotLog.StructEntry(name + "/Timing", "LoopTiming",
+            "double period_ms;double jitter_ms;double max_jitter_ms;double latency_ms;double max_latency_ms", 5 * 8, false);
+    }
+
+    /**
+     * Records one loop
+     *
+     * @param timestamp timestamp the loop woke up for, in seconds
+     * @param latency time from that timestamp until the loop finished acting on it, in seconds
+     */
+    public void record(double timestamp, double latency) {
+        if (!Double.isNaN(last_timestamp)) {
+            double period = timestamp - last_timestamp;
+            double jitter = Math.abs(period - expected_period);
+
+            samples++;
+            period_sum += period;
+            jitter_sum += jitter;
+            max_jitter = Math.max(max_jitter, jitter);
+            latency_sum += latency;
+            max_latency = Math.max(max_latency, latency);
+        }
+        last_timestamp = timestamp;
+
+        if (samples >= publish_interval) {
+            period_publisher.set(period_sum / samples * 1000);
+            jitter_publisher.set(jitter_sum / samples * 1000);
+            max_jitter_publisher.set(max_jitter * 1000);
+            latency_publisher.set(latency_sum / samples * 1000);
+            max_latency_publisher.set(max_latency * 1000);
+            if (timing_log.begin()) {
+                timing_log.putDouble(period_sum / samples * 1000).putDouble(jitter_sum / samples * 1000)
+                    .putDouble(max_jitter * 1000).putDouble(latency_sum / samples * 1000).putDouble(max_latency * 1000)
+                    .append();
+            }
+
+            samples = 0;
+            period_sum = 0;
+            jitter_sum = 0;
+            max_jitter = 0;
+            latency_sum = 0;
+            max_latency = 0;
+        }
+    }
+}
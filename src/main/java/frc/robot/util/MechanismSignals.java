@@ -0,0 +1,107 @@
+package frc.robot.util;
+
+import com.ctre.phoenix6.BaseStatusSignal;
+import com.ctre.phoenix6.StatusCode;
+import com.ctre.phoenix6.StatusSignal;
+import com.ctre.phoenix6.Utils;
+
+import edu.wpi.first.units.measure.Angle;
+import edu.wpi.first.units.measure.AngularVelocity;
+import frc.robot.io.MechanismInputs;
+
+/**
+ * The status signals of one Motion Magic mechanism, read together and converted to mechanism units.
+ * <p>
+ * StatusSignal objects must not be refreshed from two threads at once, so anything that reads the
+ * mechanism off the main loop works on its own {@link #copy()}.
+ */
+public class MechanismSignals {
+    private final StatusSignal<Angle> position;
+    private final StatusSignal<AngularVelocity> velocity;
+    private final StatusSignal<Double> reference;
+    private final StatusSignal<Double> reference_slope;
+    private final BaseStatusSignal[] all;
+
+    private final double units_per_rotation;
+    private final double max_latency;
+
+    /**
+     * @param position position signal
+     * @param velocity velocity signal matching the position
+     * @param reference Motion Magic position reference
+     * @param reference_slope Motion Magic velocity reference
+     * @param units_per_rotation mechanism units per signal rotation
+     * @param max_latency longest time in seconds to extrapolate a position sample
+     */
+    public MechanismSignals(StatusSignal<Angle> position, StatusSignal<AngularVelocity> velocity,
+            StatusSignal<Double> reference, StatusSignal<Double> reference_slope,
+            double units_per_rotation, double max_latency) {
+        this.position = position;
+        this.velocity = velocity;
+        this.reference = reference;
+        this.reference_slope = reference_slope;
+        this.units_per_rotation = units_per_rotation;
+        this.max_latency = max_latency;
+
+        all = new BaseStatusSignal[] {position, velocity, reference, reference_slope};
+    }
+
+    /** @return a copy with cloned signals, for use on another thread */
+    public MechanismSignals copy() {
+        return new MechanismSignals(position.clone(), velocity.clone(), reference.clone(), reference_slope.clone(),
+            units_per_rotation, max_latency);
+    }
+
+    public BaseStatusSignal[] getAll() {
+        return all;
+    }
+
+    public StatusCode refresh() {
+        return BaseStatusSignal.refreshAll(all);
+    }
+
+    public StatusCode setUpdateFrequency(double frequency) {
+        return BaseStatusSignal.setUpdateFrequencyForAll(frequency, all);
+    }
+
+    /** @return the position extrapolated from the last sample to now */
+    public double getPosition() {
+        return units_per_rotation * BaseStatusSignal.getLatencyCompensatedValueAsDouble(position, velocity, max_latency);
+    }
+
+    public double getVelocity() {
+        return units_per_rotation * velocity.getValueAsDouble();
+    }
+
+    public double getReference() {
+        return units_per_rotation * reference.getValueAsDouble();
+    }
+
+    public double getReferenceSlope() {
+        return units_per_rotation * reference_slope.getValueAsDouble();
+    }
+
+    /** @return FPGA timestamp of the last position sample in seconds, converted from Phoenix time */
+    public double getTimestamp() {
+        return Utils.currentTimeToFPGATime(position.getTimestamp().getTime());
+    }
+
+    /** @return seconds between the last position sample and the last refresh */
+    public double getAge() {
+        return position.getTimestamp().getLatency();
+    }
+
+    /**
+     * Copies the last refreshed values into a set of inputs, leaving the applied voltage alone
+     *
+     * @param inputs the inputs to fill
+     */
+    public void fill(MechanismInputs inputs) {
+        inputs.timestamp = getTimestamp();
+        inputs.position = getPosition();
+        inputs.velocity = getVelocity();
+        inputs.reference = getReference();
+        inputs.reference_slope = getReferenceSlope();
+        inputs.age = getAge();
+    }
+}
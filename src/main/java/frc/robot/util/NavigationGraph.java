@@ -0,0 +1,332 @@
+package frc.robot.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import edu.wpi.first.math.geometry.Translation2d;
+
+/**
+ * Visibility graph around convex field obstacles, for planning the shortest drivable path between
+ * two points.
+ * <p>
+ * Each obstacle is grown by the robot's radius, so the robot center can be planned as a point, and
+ * the corners of the grown outlines are the graph's nodes. Which nodes can see each other is worked
+ * out once at boot. A query only adds the start and goal, links them to the nodes they can see and
+ * runs A*, which over a few dozen nodes takes well under a millisecond.
+ * <p>
+ * A start or goal inside a grown obstacle, eg. a scoring pose right at the reef, is first moved
+ * straight out of it; the path ends at that approach point and the final move is left to the caller.
+ * <p>
+ * Queries reuse the graph's buffers, so only one thread may find paths. The point and line checks
+ * only read and are safe from any thread.
+ */
+public class NavigationGraph {
+    // nodes sit this far outside the grown outlines so they can see along them
+    private static final double nodeClearance = 0.02;
+    private static final double epsilon = 1e-9;
+
+    private final double field_length;
+    private final double field_width;
+    private final double radius;
+
+    // grown obstacles, counter clockwise
+    private final double[][] poly_x;
+    private final double[][] poly_y;
+
+    private final int node_count;
+    private final double[] node_x;
+    private final double[] node_y;
+    private final boolean[][] visible;
+
+    // per query, with the start and goal as the last two nodes
+    private final double[] cost;
+    private final double[] estimate;
+    private final int[] parent;
+    private final boolean[] closed;
+    private final boolean[] start_visible;
+    private final boolean[] goal_visible;
+
+    /**
+     * @param obstacles convex obstacle outlines, in any winding order
+     * @param radius distance the robot center must keep from the obstacles, in meters
+     * @param field_length field length, in meters
+     * @param field_width field width, in meters
+     */
+    public NavigationGraph(List<Translation2d[]> obstacles, double radius, double field_length, double field_width) {
+        this.field_length = field_length;
+        this.field_width = field_width;
+        this.radius = radius;
+
+        poly_x = new double[obstacles.size()][];
+        poly_y = new double[obstacles.size()][];
+        for (int i = 0; i < obstacles.size(); i++) {
+            grow(obstacles.get(i), radius, i);
+        }
+
+        ArrayList<double[]> nodes = new ArrayList<>();
+        for (int i = 0; i < poly_x.length; i++) {
+            double[] px = poly_x[i];
+            double[] py = poly_y[i];
+            for (int j = 0; j < px.length; j++) {
+                // push the corner a little further out along its bisector
+                double cx = 0, cy = 0;
+                for (int k = 0; k < px.length; k++) {
+                    cx += px[k] / px.length;
+                    cy += py[k] / px.length;
+                }
+                double dx = px[j] - cx, dy = py[j] - cy;
+                double length = Math.hypot(dx, dy);
+                double x = px[j] + dx / length * nodeClearance;
+                double y = py[j] + dy / length * nodeClearance;
+                if (isFree(x, y))
+                    nodes.add(new double[] {x, y});
+            }
+        }
+
+        node_count = nodes.size();
+        node_x = new double[node_count + 2];
+        node_y = new double[node_count + 2];
+        for (int i = 0; i < node_count; i++) {
+            node_x[i] = nodes.get(i)[0];
+            node_y[i] = nodes.get(i)[1];
+        }
+
+        visible = new boolean[node_count][node_count];
+        for (int i = 0; i < node_count; i++) {
+            for (int j = i + 1; j < node_count; j++) {
+                visible[i][j] = visible[j][i] = isClear(node_x[i], node_y[i], node_x[j], node_y[j]);
+            }
+        }
+
+        cost = new double[node_count + 2];
+        estimate = new double[node_count + 2];
+        parent = new int[node_count + 2];
+        closed = new boolean[node_count + 2];
+        start_visible = new boolean[node_count];
+        goal_visible = new boolean[node_count];
+    }
+
+    private void grow(Translation2d[] outline, double radius, int index) {
+        int n = outline.length;
+        double area = 0;
+        for (int i = 0; i < n; i++) {
+            Translation2d a = outline[i], b = outline[(i + 1) % n];
+            area += a.getX() * b.getY() - b.getX() * a.getY();
+        }
+
+        double[] x = new double[n];
+        double[] y = new double[n];
+        for (int i = 0; i < n; i++) {
+            Translation2d p = outline[area > 0 ? i : n - 1 - i];
+            x[i] = p.getX();
+            y[i] = p.getY();
+        }
+
+        // move every edge out by the radius and meet the neighbouring edges at a miter
+        poly_x[index] = new double[n];
+        poly_y[index] = new double[n];
+        for (int i = 0; i < n; i++) {
+            int prev = (i + n - 1) % n, next = (i + 1) % n;
+            double n1x = y[i] - y[prev], n1y = x[prev] - x[i];
+            double n1 = Math.hypot(n1x, n1y);
+            double n2x = y[next] - y[i], n2y = x[i] - x[next];
+            double n2 = Math.hypot(n2x, n2y);
+            n1x /= n1; n1y /= n1; n2x /= n2; n2y /= n2;
+            double scale = radius / (1 + n1x * n2x + n1y * n2y);
+            poly_x[index][i] = x[i] + (n1x + n2x) * scale;
+            poly_y[index][i] = y[i] + (n1y + n2y) * scale;
+        }
+    }
+
+    /** @return true if the robot center can be at a point */
+    public boolean isFree(double x, double y) {
+        if (x < radius || x > field_length - radius || y < radius || y > field_width - radius)
+            return false;
+        for (int i = 0; i < poly_x.length; i++) {
+            if (contains(i, x, y))
+                return false;
+        }
+        return true;
+    }
+
+    /** @return true if the robot center can move in a straight line between two free points */
+    public boolean isClear(double x0, double y0, double x1, double y1) {
+        for (int i = 0; i < poly_x.length; i++) {
+            if (crosses(i, x0, y0, x1, y1))
+                return false;
+        }
+        return true;
+    }
+
+    private boolean contains(int index, double x, double y) {
+        double[] px = poly_x[index], py = poly_y[index];
+        for (int i = 0; i < px.length; i++) {
+            int next = (i + 1) % px.length;
+            double cross = (px[next] - px[i]) * (y - py[i]) - (py[next] - py[i]) * (x - px[i]);
+            if (cross <= 0)
+                return false;
+        }
+        return true;
+    }
+
+    // Cyrus-Beck clip of the segment against the convex outline
+    private boolean crosses(int index, double x0, double y0, double x1, double y1) {
+        double[] px = poly_x[index], py = poly_y[index];
+        double enter = 0, exit = 1;
+        double dx = x1 - x0, dy = y1 - y0;
+        for (int i = 0; i < px.length; i++) {
+            int next = (i + 1) % px.length;
+            // outward normal of a counter clockwise edge
+            double nx = py[next] - py[i], ny = px[i] - px[next];
+            double numerator = nx * (px[i] - x0) + ny * (py[i] - y0);
+            double denominator = nx * dx + ny * dy;
+            if (Math.abs(denominator) < epsilon) {
+                if (numerator < 0)
+                    return false;
+                continue;
+            }
+            double t = numerator / denominator;
+            if (denominator < 0)
+                enter = Math.max(enter, t);
+            else
+                exit = Math.min(exit, t);
+            if (enter >= exit - epsilon)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * @param point a point, free or not
+     * @return the point if it's free, otherwise the nearest free point straight out from the center
+     *     of the obstacle it's in, or null if there's none
+     */
+    public Translation2d getApproachPoint(Translation2d point) {
+        double margin = radius + nodeClearance;
+        double x = Math.max(margin, Math.min(field_length - margin, point.getX()));
+        double y = Math.max(margin, Math.min(field_width - margin, point.getY()));
+
+        // obstacles can touch, so leaving one can land in another
+        for (int moves = 0; moves < poly_x.length && !isFree(x, y); moves++) {
+            int i = 0;
+            while (i < poly_x.length && !contains(i, x, y))
+                i++;
+            if (i == poly_x.length)
+                break;
+
+            double[] px = poly_x[i], py = poly_y[i];
+            double cx = 0, cy = 0;
+            for (int k = 0; k < px.length; k++) {
+                cx += px[k] / px.length;
+                cy += py[k] / px.length;
+            }
+            double dx = x - cx, dy = y - cy;
+            double length = Math.hypot(dx, dy);
+            if (length < epsilon)
+                return null;
+            dx /= length;
+            dy /= length;
+
+            // distance along the ray from the point to where it leaves the outline
+            double exit = Double.POSITIVE_INFINITY;
+            for (int k = 0; k < px.length; k++) {
+                int next = (k + 1) % px.length;
+                double nx = py[next] - py[k], ny = px[k] - px[next];
+                double denominator = nx * dx + ny * dy;
+                if (denominator > epsilon)
+                    exit = Math.min(exit, (nx * (px[k] - x) + ny * (py[k] - y)) / denominator);
+            }
+            x += dx * (exit + nodeClearance);
+            y += dy * (exit + nodeClearance);
+        }
+        return isFree(x, y) ? new Translation2d(x, y) : null;
+    }
+
+    /**
+     * Finds the shortest path between two points
+     *
+     * @return the path's corners from start to goal, empty if there's no path
+     */
+    public List<Translation2d> findPath(Translation2d start, Translation2d goal) {
+        ArrayList<Translation2d> path = new ArrayList<>();
+        Translation2d free_start = getApproachPoint(start);
+        Translation2d free_goal = getApproachPoint(goal);
+        if (free_start == null || free_goal == null)
+            return path;
+
+        int s = node_count, g = node_count + 1;
+        node_x[s] = free_start.getX();
+        node_y[s] = free_start.getY();
+        node_x[g] = free_goal.getX();
+        node_y[g] = free_goal.getY();
+        for (int i = 0; i < node_count; i++) {
+            start_visible[i] = isClear(node_x[s], node_y[s], node_x[i], node_y[i]);
+            goal_visible[i] = isClear(node_x[g], node_y[g], node_x[i], node_y[i]);
+        }
+
+        Arrays.fill(cost, Double.POSITIVE_INFINITY);
+        Arrays.fill(parent, -1);
+        Arrays.fill(closed, false);
+        cost[s] = 0;
+        estimate[s] = distance(s, g);
+
+        while (true) {
+            // few enough nodes that a scan beats a heap
+            int current = -1;
+            for (int i = 0; i < node_count + 2; i++) {
+                if (!closed[i] && cost[i] < Double.POSITIVE_INFINITY && (current < 0 || estimate[i] < estimate[current]))
+                    current = i;
+            }
+            if (current < 0)
+                return path;
+            if (current == g)
+                break;
+            closed[current] = true;
+
+            for (int next = 0; next < node_count + 2; next++) {
+                if (closed[next] || next == current || !isVisible(current, next, s, g))
+                    continue;
+                double next_cost = cost[current] + distance(current, next);
+                if (next_cost < cost[next]) {
+                    cost[next] = next_cost;
+                    estimate[next] = next_cost + distance(next, g);
+                    parent[next] = current;
+                }
+            }
+        }
+
+        for (int node = g; node >= 0; node = parent[node]) {
+            path.add(0, new Translation2d(node_x[node], node_y[node]));
+        }
+        if (free_start.getDistance(start) > epsilon)
+            path.add(0, start);
+        return path;
+    }
+
+    private boolean isVisible(int a, int b, int s, int g) {
+        if (a == s || b == s) {
+            int other = a == s ? b : a;
+            return other == g ? isClear(node_x[s], node_y[s], node_x[g], node_y[g]) : start_visible[other];
+        }
+        if (a == g || b == g)
+            return goal_visible[a == g ? b : a];
+        return visible[a][b];
+    }
+
+    private double distance(int a, int b) {
+        return Math.hypot(node_x[a] - node_x[b], node_y[a] - node_y[b]);
+    }
+
+    /** @return the grown obstacle outlines, for drawing */
+    public List<Translation2d[]> getGrownObstacles() {
+        ArrayList<Translation2d[]> outlines = new ArrayList<>();
+        for (int i = 0; i < poly_x.length; i++) {
+            Translation2d[] outline = new Translation2d[poly_x[i].length];
+            for (int j = 0; j < outline.length; j++)
+                outline[j] = new Translation2d(poly_x[i][j], poly_y[i][j]);
+            outlines.add(outline);
+        }
+        return outlines;
+    }
+}
@@ -0,0 +1,238 @@
+package frc.robot.util;
+
+import static frc.robot.Constants.PathfindingConstants.*;
+
+import java.util.List;
+
+import choreo.trajectory.SwerveSample;
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.networktables.BooleanPublisher;
+import edu.wpi.first.networktables.DoublePublisher;
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.networktables.StructArrayPublisher;
+
+/**
+ * Plans paths around the field obstacles on its own thread, so a plan never holds up the robot
+ * loop, and turns them into samples for {@code CommandSwerveDrivetrain.followPath}.
+ * <p>
+ * Only the latest request is planned; one made while another is planning replaces any waiting
+ * one. The path's corners are driven as straight segments, with the speed at each corner limited
+ * by how sharply it turns and a trapezoid profile along each segment. The heading turns evenly from
+ * start to goal over the whole path.
+ * <p>
+ * Plan time, whether a path was found and the path itself are published under Pathfinding.
+ */
+public class Pathfinder extends Thread {
+    private static final double[] noForces = new double[4];
+
+    /**
+     * A finished plan
+     *
+     * @param request the request it answers
+     * @param samples the trajectory, empty if there's no path
+     * @param plan_ms time taken to plan it
+     */
+    public record Path(long request, SwerveSample[] samples, double plan_ms) {
+        public boolean found() {
+            return samples.length > 0;
+        }
+
+        /** @return duration of the trajectory, in seconds */
+        public double getTotalTime() {
+            return samples.length == 0 ? 0 : samples[samples.length - 1].t;
+        }
+
+        /** @return the sample at a time from the start, holding the last one after the end */
+        public SwerveSample sample(double t) {
+            int index = (int) Math.round(t / samplePeriod);
+            return samples[MathUtil.clamp(index, 0, samples.length - 1)];
+        }
+    }
+
+    private final NavigationGraph graph;
+
+    private final Object lock = new Object();
+    private long last_request = 0;
+    private boolean pending = false;
+    private Pose2d pending_start;
+    private ChassisSpeeds pending_speeds;
+    private Pose2d pending_goal;
+    private volatile Path result = null;
+
+    private final DoublePublisher plan_time_publisher;
+    private final BooleanPublisher found_publisher;
+    private final StructArrayPublisher<Translation2d> path_publisher;
+
+    /** @param graph the field's navigation graph, only its read only checks may be used from other threads */
+    public Pathfinder(NavigationGraph graph) {
+        super("Pathfinder");
+        setDaemon(true);
+        this.graph = graph;
+
+        NetworkTable table = NetworkTableInstance.getDefault().getTable("Pathfinding");
+        plan_time_publisher = table.getDoubleTopic("PlanMs").publish();
+        found_publisher = table.getBooleanTopic("Found").publish();
+        path_publisher = table.getStructArrayTopic("Path", Translation2d.struct).publish();
+    }
+
+    /**
+     * Asks for a path, answered by {@link #getPath} on a later cycle
+     *
+     * @param start current pose
+     * @param field_speeds current field relative speeds, the path starts along them
+     * @param goal where to end, at rest
+     * @return the request's id
+     */
+    public long request(Pose2d start, ChassisSpeeds field_speeds, Pose2d goal) {
+        synchronized (lock) {
+            pending_start = start;
+            pending_speeds = field_speeds;
+            pending_goal = goal;
+            pending = true;
+            lock.notifyAll();
+            return ++last_request;
+        }
+    }
+
+    /** @return the path for a request, or null if it isn't planned yet */
+    public Path getPath(long request) {
+        Path path = result;
+        return path != null && path.request() == request ? path : null;
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            long request;
+            Pose2d start, goal;
+            ChassisSpeeds speeds;
+            synchronized (lock) {
+                while (!pending) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                pending = false;
+                request = last_request;
+                start = pending_start;
+                speeds = pending_speeds;
+                goal = pending_goal;
+            }
+
+            long begin = System.nanoTime();
+            List<Translation2d> corners = graph.findPath(start.getTranslation(), goal.getTranslation());
+            SwerveSample[] samples = corners.isEmpty() ? new SwerveSample[0] : generate(corners, speeds, start, goal);
+            double plan_ms = (System.nanoTime() - begin) / 1e6;
+
+            result = new Path(request, samples, plan_ms);
+            plan_time_publisher.set(plan_ms);
+            found_publisher.set(!corners.isEmpty());
+            path_publisher.set(corners.toArray(Translation2d[]::new));
+        }
+    }
+
+    private static SwerveSample[] generate(List<Translation2d> corners, ChassisSpeeds speeds, Pose2d start, Pose2d goal) {
+        int segments = corners.size() - 1;
+        double[] length = new double[segments];
+        double[] ux = new double[segments];
+        double[] uy = new double[segments];
+        for (int i = 0; i < segments; i++) {
+            Translation2d delta = corners.get(i + 1).minus(corners.get(i));
+            length[i] = delta.getNorm();
+            ux[i] = length[i] > 1e-9 ? delta.getX() / length[i] : 0;
+            uy[i] = length[i] > 1e-9 ? delta.getY() / length[i] : 0;
+        }
+
+        // speed at each corner, limited by the turn there, then by what the acceleration allows
+        double[] speed = new double[segments + 1];
+        speed[0] = segments == 0 ? 0
+            : MathUtil.clamp(speeds.vxMetersPerSecond * ux[0] + speeds.vyMetersPerSecond * uy[0], 0, maxVelocity);
+        for (int i = 1; i < segments; i++) {
+            double cos_turn = ux[i - 1] * ux[i] + uy[i - 1] * uy[i];
+            speed[i] = Math.max(cornerVelocity, maxVelocity * cos_turn);
+        }
+        speed[segments] = 0;
+        for (int i = 0; i < segments; i++)
+            speed[i + 1] = Math.min(speed[i + 1], Math.sqrt(speed[i] * speed[i] + 2 * maxAcceleration * length[i]));
+        for (int i = segments - 1; i >= 0; i--)
+            speed[i] = Math.min(speed[i], Math.sqrt(speed[i + 1] * speed[i + 1] + 2 * maxAcceleration * length[i]));
+
+        // trapezoid along each segment between its corner speeds
+        double[] peak = new double[segments];
+        double[] accel_time = new double[segments];
+        double[] cruise_time = new double[segments];
+        double[] segment_time = new double[segments];
+        double total_time = 0;
+        for (int i = 0; i < segments; i++) {
+            double v0 = speed[i], v1 = speed[i + 1];
+            peak[i] = Math.min(maxVelocity, Math.sqrt((2 * maxAcceleration * length[i] + v0 * v0 + v1 * v1) / 2));
+            peak[i] = Math.max(peak[i], Math.max(v0, v1));
+            double accel_distance = (peak[i] * peak[i] - v0 * v0) / (2 * maxAcceleration);
+            double decel_distance = (peak[i] * peak[i] - v1 * v1) / (2 * maxAcceleration);
+            accel_time[i] = (peak[i] - v0) / maxAcceleration;
+            cruise_time[i] = peak[i] > 1e-9 ? Math.max(0, length[i] - accel_distance - decel_distance) / peak[i] : 0;
+            segment_time[i] = accel_time[i] + cruise_time[i] + (peak[i] - v1) / maxAcceleration;
+            total_time += segment_time[i];
+        }
+
+        double start_heading = start.getRotation().getRadians();
+        double turn = MathUtil.angleModulus(goal.getRotation().getRadians() - start_heading);
+        double omega = total_time > 1e-9 ? turn / total_time : 0;
+
+        int count = (int) Math.ceil(total_time / samplePeriod) + 1;
+        SwerveSample[] samples = new SwerveSample[count];
+        int segment = 0;
+        double segment_start = 0;
+        for (int k = 0; k < count; k++) {
+            double t = Math.min(k * samplePeriod, total_time);
+            while (segment < segments - 1 && t > segment_start + segment_time[segment]) {
+                segment_start += segment_time[segment];
+                segment++;
+            }
+
+            double s, v, a;
+            if (segments == 0) {
+                s = v = a = 0;
+            } else {
+                double tau = Math.min(t - segment_start, segment_time[segment]);
+                double v0 = speed[segment];
+                double accel_distance = (peak[segment] * peak[segment] - v0 * v0) / (2 * maxAcceleration);
+                if (tau < accel_time[segment]) {
+                    s = v0 * tau + maxAcceleration * tau * tau / 2;
+                    v = v0 + maxAcceleration * tau;
+                    a = maxAcceleration;
+                } else if (tau < accel_time[segment] + cruise_time[segment]) {
+                    s = accel_distance + peak[segment] * (tau - accel_time[segment]);
+                    v = peak[segment];
+                    a = 0;
+                } else {
+                    double decel = tau - accel_time[segment] - cruise_time[segment];
+                    s = accel_distance + peak[segment] * cruise_time[segment]
+                        + peak[segment] * decel - maxAcceleration * decel * decel / 2;
+                    v = peak[segment] - maxAcceleration * decel;
+                    a = -maxAcceleration;
+                }
+                s = Math.min(s, length[segment]);
+            }
+
+            Translation2d corner = corners.get(segment);
+            double dx = segments == 0 ? 0 : ux[segment];
+            double dy = segments == 0 ? 0 : uy[segment];
+            boolean last = k == count - 1;
+            samples[k] = new SwerveSample(
+                t,
+                corner.getX() + dx * s, corner.getY() + dy * s,
+                start_heading + omega * t,
+                last ? 0 : dx * v, last ? 0 : dy * v, last ? 0 : omega,
+                dx * a, dy * a, 0,
+                noForces, noForces);
+        }
+        return samples;
+    }
+}
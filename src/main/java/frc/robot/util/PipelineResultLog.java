@@ -0,0 +1,215 @@
+package frc.robot.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Optional;
+
+import org.photonvision.common.dataflow.structures.Packet;
+import org.photonvision.targeting.PhotonPipelineResult;
+
+import edu.wpi.first.math.MatBuilder;
+import edu.wpi.first.math.Matrix;
+import edu.wpi.first.math.Nat;
+import edu.wpi.first.math.numbers.N1;
+import edu.wpi.first.math.numbers.N3;
+import edu.wpi.first.math.numbers.N8;
+
+/**
+ * Append-only recording of raw PhotonVision pipeline results, so the same camera data can be solved
+ * again with different strategies and std dev models.
+ * <p>
+ * Results are stored in PhotonLib's own packet serialization, the bytes PhotonVision publishes,
+ * together with the FPGA capture timestamp the robot computed for them. The file is a header
+ * followed by records of {@code type, camera, timestamp in microseconds, length, payload}:
+ * <ul>
+ * <li>{@link #cameraRecord}: the camera's name, once per camera before its other records</li>
+ * <li>{@link #calibrationRecord}: the 9 camera matrix and 8 distortion doubles</li>
+ * <li>{@link #resultRecord}: one packed pipeline result</li>
+ * </ul>
+ * A writer stops at a size cap, records after it are dropped.
+ */
+public final class PipelineResultLog {
+    public static final byte cameraRecord = 0;
+    public static final byte calibrationRecord = 1;
+    public static final byte resultRecord = 2;
+
+    private static final byte[] magic = "PVRESULT".getBytes(StandardCharsets.US_ASCII);
+    private static final int version = 1;
+
+    private PipelineResultLog() {}
+
+    /** Appends records from any number of camera threads */
+    public static final class Writer {
+        private final DataOutputStream out;
+        private final Packet packet = new Packet(1024);
+        private long last_flush = System.nanoTime();
+        private final long max_bytes;
+        private long written_bytes = 0;
+        private boolean closed = false;
+
+        /**
+         * @param path file to create
+         * @param max_bytes size the recording stops at
+         * @throws IOException if the file can't be created
+         */
+        public Writer(String path, long max_bytes) throws IOException {
+            this.max_bytes = max_bytes;
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path), 1 << 16));
+            out.write(magic);
+            out.writeInt(version);
+        }
+
+        public synchronized void writeCamera(int camera, String name) throws IOException {
+            write(cameraRecord, camera, 0, name.getBytes(StandardCharsets.UTF_8));
+        }
+
+        public synchronized void writeCalibration(int camera, Matrix<N3, N3> camera_matrix, Matrix<N8, N1> dist_coeffs) throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(17 * 8);
+            for (double value : camera_matrix.getData())
+                buffer.putDouble(value);
+            for (double value : dist_coeffs.getData())
+                buffer.putDouble(value);
+            write(calibrationRecord, camera, 0, buffer.array());
+        }
+
+        /**
+         * @param camera camera index
+         * @param result the result as received from the camera
+         */
+        public synchronized void writeResult(int camera, PhotonPipelineResult result) throws IOException {
+            packet.clear();
+            PhotonPipelineResult.photonStruct.pack(packet, result);
+            write(resultRecord, camera, Math.round(result.getTimestampSeconds() * 1e6), packet.getWrittenDataCopy());
+
+            // lose at most a second of data on a brownout
+            if (!closed && System.nanoTime() - last_flush > 1_000_000_000L) {
+                out.flush();
+                last_flush = System.nanoTime();
+            }
+        }
+
+        /**
+         * @throws IOException once, when the write that reaches the size cap closes the recording
+         */
+        private void write(byte type, int camera, long timestamp, byte[] payload) throws IOException {
+            if (closed)
+                return;
+            if (written_bytes + 14 + payload.length > max_bytes) {
+                close();
+                throw new IOException("the recording reached " + max_bytes / (1024 * 1024) + " MB and was stopped");
+            }
+
+            out.writeByte(type);
+            out.writeByte(camera);
+            out.writeLong(timestamp);
+            out.writeInt(payload.length);
+            out.write(payload);
+            written_bytes += 14 + payload.length;
+        }
+
+        public synchronized long getWrittenBytes() {
+            return written_bytes;
+        }
+
+        /** Closes the recording, later writes are dropped */
+        public synchronized void close() throws IOException {
+            if (closed)
+                return;
+            closed = true;
+            out.close();
+        }
+    }
+
+    /** Streams the records of a recording in order */
+    public static final class Reader implements AutoCloseable {
+        private final DataInputStream in;
+
+        public byte type;
+        public int camera;
+        /** FPGA capture timestamp of a result, in microseconds */
+        public long timestamp;
+        public byte[] payload;
+
+        /**
+         * @param path the recording
+         * @throws IOException if it can't be read or isn't a recording
+         */
+        public Reader(String path) throws IOException {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(path), 1 << 16));
+            byte[] header = new byte[magic.length];
+            in.readFully(header);
+            if (!Arrays.equals(header, magic) || in.readInt() != version) {
+                in.close();
+                throw new IOException(path + " isn't a pipeline result recording");
+            }
+        }
+
+        /**
+         * Reads the next record into the public fields
+         *
+         * @return false at the end of the recording, including a record cut short by a power loss
+         */
+        public boolean next() throws IOException {
+            try {
+                type = in.readByte();
+                camera = in.readUnsignedByte();
+                timestamp = in.readLong();
+                payload = new byte[in.readInt()];
+                in.readFully(payload);
+                return true;
+            } catch (EOFException e) {
+                return false;
+            }
+        }
+
+        public String getCameraName() {
+            return new String(payload, StandardCharsets.UTF_8);
+        }
+
+        public Optional<Matrix<N3, N3>> getCameraMatrix() {
+            ByteBuffer buffer = ByteBuffer.wrap(payload);
+            double[] data = new double[9];
+            for (int i = 0; i < data.length; i++)
+                data[i] = buffer.getDouble();
+            return Optional.of(MatBuilder.fill(Nat.N3(), Nat.N3(), data));
+        }
+
+        public Optional<Matrix<N8, N1>> getDistCoeffs() {
+            ByteBuffer buffer = ByteBuffer.wrap(payload, 9 * 8, 8 * 8);
+            double[] data = new double[8];
+            for (int i = 0; i < data.length; i++)
+                data[i] = buffer.getDouble();
+            return Optional.of(MatBuilder.fill(Nat.N8(), Nat.N1(), data));
+        }
+
+        /**
+         * Unpacks a result record. Its receive timestamp is set so its timestamp is the recorded
+         * capture time moved by {@code offset}.
+         *
+         * @param offset microseconds to add to the recorded time, e.g. to move it to the current FPGA time
+         */
+        public PhotonPipelineResult getResult(long offset) {
+            PhotonPipelineResult result = PhotonPipelineResult.photonStruct.unpack(new Packet(payload));
+
+            // the timestamp is the receive time less the pipeline latency
+            result.setReceiveTimestampMicros(0);
+            long latency = -Math.round(result.getTimestampSeconds() * 1e6);
+            result.setReceiveTimestampMicros(timestamp + offset + latency);
+            return result;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
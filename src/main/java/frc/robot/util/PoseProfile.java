@@ -0,0 +1,153 @@
+package frc.robot.util;
+
+import edu.wpi.first.math.MathUtil;
+
+/**
+ * x, y and heading motion profile from any position and velocity to a stop at a goal, with all
+ * three axes synchronized to arrive together.
+ * <p>
+ * Each axis is a bang-coast-bang profile of at most four constant acceleration segments, starting
+ * with the current velocity even when it points away from the goal. The module speed limit is
+ * shared between translation and rotation: a wheel moves at the translation speed plus the turn
+ * rate times the drive base radius. Several splits of it are tried and the one arriving first is
+ * kept, then the faster axes are slowed to arrive with the slowest one, so the robot drives a
+ * nearly straight line.
+ * <p>
+ * The translation limits are shared between x and y so that the two would arrive together, which
+ * accounts for the velocity each axis starts with as well as its distance. An axis that starts
+ * moving across the line to the goal gets enough of the acceleration to stop quickly, instead of
+ * a share sized by its small displacement.
+ * <p>
+ * Planning allocates nothing and takes tens of microseconds, so it can run again every cycle from
+ * the last setpoint as the goal moves.
+ */
+public class PoseProfile {
+    private static final double[] splits = {0.5, 0.6, 0.7, 0.8, 0.9, 0.95};
+    // keeps a small limit on an axis with nothing to do, so it can still shed any velocity
+    private static final double minAxisShare = 0.05;
+    private static final int shareIterations = 16;
+
+    private final double max_module_speed;
+    private final double max_acceleration;
+    private final double drive_radius;
+
+    private final ProfileAxis x = new ProfileAxis();
+    private final ProfileAxis y = new ProfileAxis();
+    private final ProfileAxis theta = new ProfileAxis();
+
+    /**
+     * @param max_module_speed fastest a module may drive, in m/s
+     * @param max_acceleration fastest the robot may accelerate, in m/s^2
+     * @param drive_radius distance from the robot center to the furthest module, in meters
+     */
+    public PoseProfile(double max_module_speed, double max_acceleration, double drive_radius) {
+        this.max_module_speed = max_module_speed;
+        this.max_acceleration = max_acceleration;
+        this.drive_radius = drive_radius;
+    }
+
+    /**
+     * Plans from a state to a stop at a goal, all field relative
+     *
+     * @param theta_goal goal heading, in radians, any multiple of a turn from the current one
+     */
+    public void plan(double x0, double y0, double theta0, double vx0, double vy0, double omega0,
+            double x_goal, double y_goal, double theta_goal) {
+        theta_goal = theta0 + MathUtil.angleModulus(theta_goal - theta0);
+
+        double best_split = splits[0];
+        double best_share = 0;
+        double best_time = Double.POSITIVE_INFINITY;
+        for (double split : splits) {
+            double share_x = shareTranslation(split, x0, y0, vx0, vy0, x_goal, y_goal);
+            double time = planAll(split, share_x, x0, y0, theta0, vx0, vy0, omega0, x_goal, y_goal, theta_goal);
+            if (time < best_time) {
+                best_time = time;
+                best_split = split;
+                best_share = share_x;
+            }
+        }
+        planAll(best_split, best_share, x0, y0, theta0, vx0, vy0, omega0, x_goal, y_goal, theta_goal);
+
+        x.stretchTo(best_time);
+        y.stretchTo(best_time);
+        theta.stretchTo(best_time);
+    }
+
+    /**
+     * Finds the share of the translation limits for x that makes x and y arrive together, y getting
+     * the rest of the limit vector. The x time falls and the y time rises as the x share grows, so
+     * the crossing is found by bisection.
+     *
+     * @return the x share, y's is {@code sqrt(1 - share^2)}
+     */
+    private double shareTranslation(double split, double x0, double y0, double vx0, double vy0, double x_goal, double y_goal) {
+        double low = minAxisShare;
+        double high = Math.sqrt(1 - minAxisShare * minAxisShare);
+        if (translationTimeDifference(split, low, x0, y0, vx0, vy0, x_goal, y_goal) <= 0)
+            return low;
+        if (translationTimeDifference(split, high, x0, y0, vx0, vy0, x_goal, y_goal) >= 0)
+            return high;
+
+        for (int i = 0; i < shareIterations; i++) {
+            double mid = (low + high) / 2;
+            if (translationTimeDifference(split, mid, x0, y0, vx0, vy0, x_goal, y_goal) > 0)
+                low = mid;
+            else
+                high = mid;
+        }
+        return high;
+    }
+
+    // x arrival time minus y arrival time with the given x share
+    private double translationTimeDifference(double split, double share_x, double x0, double y0, double vx0, double vy0,
+            double x_goal, double y_goal) {
+        double translation_speed = max_module_speed * split;
+        double share_y = Math.sqrt(1 - share_x * share_x);
+        x.plan(x0, vx0, x_goal, translation_speed * share_x, max_acceleration * share_x);
+        y.plan(y0, vy0, y_goal, translation_speed * share_y, max_acceleration * share_y);
+        return x.getTotalTime() - y.getTotalTime();
+    }
+
+    private double planAll(double split, double share_x,
+            double x0, double y0, double theta0, double vx0, double vy0, double omega0,
+            double x_goal, double y_goal, double theta_goal) {
+        double translation_speed = max_module_speed * split;
+        double omega = max_module_speed * (1 - split) / drive_radius;
+        double share_y = Math.sqrt(1 - share_x * share_x);
+
+        x.plan(x0, vx0, x_goal, translation_speed * share_x, max_acceleration * share_x);
+        y.plan(y0, vy0, y_goal, translation_speed * share_y, max_acceleration * share_y);
+        theta.plan(theta0, omega0, theta_goal, omega, max_acceleration / drive_radius);
+        return Math.max(x.getTotalTime(), Math.max(y.getTotalTime(), theta.getTotalTime()));
+    }
+
+    /** @return time until the robot arrives, in seconds */
+    public double getTotalTime() {
+        return Math.max(x.getTotalTime(), Math.max(y.getTotalTime(), theta.getTotalTime()));
+    }
+
+    public double getX(double t) {
+        return x.getPosition(t);
+    }
+
+    public double getY(double t) {
+        return y.getPosition(t);
+    }
+
+    public double getTheta(double t) {
+        return theta.getPosition(t);
+    }
+
+    public double getVx(double t) {
+        return x.getVelocity(t);
+    }
+
+    public double getVy(double t) {
+        return y.getVelocity(t);
+    }
+
+    public double getOmega(double t) {
+        return theta.getVelocity(t);
+    }
+}
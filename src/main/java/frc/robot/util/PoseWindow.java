@@ -0,0 +1,137 @@
+package frc.robot.util;
+
+import java.util.Arrays;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+
+/**
+ * Robust average of the pose estimates of a stationary robot over a sliding time window.
+ * <p>
+ * Estimates further than {@code outlier_distance} from the median position are dropped before
+ * averaging, so a few bad frames (a misread tag, a reflection) can't move the result. Only
+ * estimates whose heading was solved from the tags count towards the heading.
+ */
+public class PoseWindow {
+    private final double window;
+    private final int min_samples;
+    private final double outlier_distance;
+
+    private final double[] timestamp;
+    private final double[] x;
+    private final double[] y;
+    private final double[] theta;
+    private final boolean[] heading_valid;
+    private int next = 0;
+    private int size = 0;
+
+    private final double[] scratch;
+
+    private int inlier_count = 0;
+    private double spread = Double.NaN;
+
+    /**
+     * @param capacity largest number of estimates kept
+     * @param window how long estimates are kept, in seconds
+     * @param min_samples fewest inliers needed for an average
+     * @param outlier_distance distance from the median position beyond which estimates are dropped, in meters
+     */
+    public PoseWindow(int capacity, double window, int min_samples, double outlier_distance) {
+        this.window = window;
+        this.min_samples = min_samples;
+        this.outlier_distance = outlier_distance;
+
+        timestamp = new double[capacity];
+        x = new double[capacity];
+        y = new double[capacity];
+        theta = new double[capacity];
+        heading_valid = new boolean[capacity];
+        scratch = new double[capacity];
+    }
+
+    /**
+     * Adds an estimate, replacing the oldest when full
+     *
+     * @param capture_time timestamp of the estimate, in seconds
+     * @param pose estimated pose
+     * @param has_heading whether the heading was solved from the tags rather than taken from the gyro
+     */
+    public void add(double capture_time, Pose2d pose, boolean has_heading) {
+        timestamp[next] = capture_time;
+        x[next] = pose.getX();
+        y[next] = pose.getY();
+        theta[next] = pose.getRotation().getRadians();
+        heading_valid[next] = has_heading;
+        next = (next + 1) % timestamp.length;
+        size = Math.min(size + 1, timestamp.length);
+    }
+
+    public void clear() {
+        size = 0;
+        next = 0;
+    }
+
+    /**
+     * @param now current time, in seconds
+     * @param fallback_heading heading to use when no estimate in the window has one
+     * @return the averaged pose, or null with too few recent inliers
+     */
+    public Pose2d getAverage(double now, Rotation2d fallback_heading) {
+        inlier_count = 0;
+        spread = Double.NaN;
+
+        double median_x = median(x, now);
+        double median_y = median(y, now);
+        if (Double.isNaN(median_x))
+            return null;
+
+        double sum_x = 0, sum_y = 0, sum_sin = 0, sum_cos = 0, sum_squared = 0;
+        int headings = 0;
+        for (int i = 0; i < size; i++) {
+            if (now - timestamp[i] > window)
+                continue;
+            double distance = Math.hypot(x[i] - median_x, y[i] - median_y);
+            if (distance > outlier_distance)
+                continue;
+
+            inlier_count++;
+            sum_x += x[i];
+            sum_y += y[i];
+            sum_squared += distance * distance;
+            if (heading_valid[i]) {
+                sum_sin += Math.sin(theta[i]);
+                sum_cos += Math.cos(theta[i]);
+                headings++;
+            }
+        }
+        if (inlier_count < min_samples)
+            return null;
+
+        spread = Math.sqrt(sum_squared / inlier_count);
+        Rotation2d heading = headings > 0 ? new Rotation2d(Math.atan2(sum_sin, sum_cos)) : fallback_heading;
+        return new Pose2d(sum_x / inlier_count, sum_y / inlier_count, heading);
+    }
+
+    /** @return number of estimates the last average was taken over */
+    public int getInlierCount() {
+        return inlier_count;
+    }
+
+    /** @return RMS distance of the last average's estimates from the median, in meters */
+    public double getSpread() {
+        return spread;
+    }
+
+    private double median(double[] values, double now) {
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            if (now - timestamp[i] <= window)
+                scratch[count++] = values[i];
+        }
+        if (count == 0)
+            return Double.NaN;
+
+        Arrays.sort(scratch, 0, count);
+        return count % 2 == 1 ? scratch[count / 2] : (scratch[count / 2 - 1] + scratch[count / 2]) / 2;
+    }
+}
@@ -0,0 +1,138 @@
+package frc.robot.util;
+
+/**
+ * One axis of a trapezoid profile from any position and velocity to a stop at a goal, as a
+ * sequence of at most four constant acceleration segments.
+ * <p>
+ * A start moving away from the goal, or too fast to stop before it, brakes to rest first. Planning
+ * and sampling allocate nothing, so an instance can be reused every cycle.
+ */
+public class ProfileAxis {
+    private static final int syncIterations = 24;
+
+    private final double[] segment_time = new double[4];
+    private final double[] segment_accel = new double[4];
+    private int segments = 0;
+
+    private double start;
+    private double start_velocity;
+    private double goal;
+    private double max_velocity;
+    private double max_accel;
+
+    /**
+     * Plans from a state to a stop at a goal
+     *
+     * @param p0 start position
+     * @param v0 start velocity
+     * @param goal goal position
+     * @param max_velocity cruise velocity
+     * @param max_accel acceleration
+     */
+    public void plan(double p0, double v0, double goal, double max_velocity, double max_accel) {
+        this.start = p0;
+        this.start_velocity = v0;
+        this.goal = goal;
+        this.max_velocity = max_velocity;
+        this.max_accel = max_accel;
+        build(max_velocity);
+    }
+
+    /** Slows the cruise so the axis arrives at a later time, if it can */
+    public void stretchTo(double total_time) {
+        if (getTotalTime() >= total_time - 1e-6)
+            return;
+
+        // arrival time falls as the cruise velocity rises, down to where the axis doesn't have to slow down
+        double low = Math.min(Math.abs(start_velocity), max_velocity);
+        double high = max_velocity;
+        build(low);
+        if (getTotalTime() < total_time) {
+            return;
+        }
+        for (int i = 0; i < syncIterations; i++) {
+            double mid = (low + high) / 2;
+            build(mid);
+            if (getTotalTime() > total_time)
+                low = mid;
+            else
+                high = mid;
+        }
+        build(high);
+    }
+
+    private void build(double velocity_limit) {
+        segments = 0;
+        double p = start;
+        double v = start_velocity;
+        double a = max_accel;
+        velocity_limit = Math.max(velocity_limit, 1e-6);
+
+        // stop first if moving away from the goal or too fast to stop before it
+        double d = goal - p;
+        if (v != 0 && (v * d < 0 || v * v / (2 * a) > Math.abs(d))) {
+            add(Math.abs(v) / a, -Math.signum(v) * a);
+            p += Math.signum(v) * v * v / (2 * a);
+            v = 0;
+            d = goal - p;
+        }
+        if (Math.abs(d) < 1e-9)
+            return;
+
+        double direction = Math.signum(d);
+        double u = Math.abs(v);
+        double D = Math.abs(d);
+        double peak = Math.sqrt(a * D + u * u / 2);
+        if (peak <= velocity_limit) {
+            add((peak - u) / a, direction * a);
+            add(peak / a, -direction * a);
+            return;
+        }
+
+        double change_distance = Math.abs(velocity_limit * velocity_limit - u * u) / (2 * a);
+        double stop_distance = velocity_limit * velocity_limit / (2 * a);
+        add(Math.abs(velocity_limit - u) / a, velocity_limit > u ? direction * a : -direction * a);
+        add(Math.max(0, D - change_distance - stop_distance) / velocity_limit, 0);
+        add(velocity_limit / a, -direction * a);
+    }
+
+    private void add(double time, double accel) {
+        if (time <= 0)
+            return;
+        segment_time[segments] = time;
+        segment_accel[segments] = accel;
+        segments++;
+    }
+
+    /** @return time until the axis stops at the goal, in seconds */
+    public double getTotalTime() {
+        double total = 0;
+        for (int i = 0; i < segments; i++)
+            total += segment_time[i];
+        return total;
+    }
+
+    /** @return position at a time since the start, the start before it and the goal after the end */
+    public double getPosition(double t) {
+        double p = start;
+        double v = start_velocity;
+        for (int i = 0; i < segments && t > 0; i++) {
+            double dt = Math.min(t, segment_time[i]);
+            p += v * dt + segment_accel[i] * dt * dt / 2;
+            v += segment_accel[i] * dt;
+            t -= dt;
+        }
+        return t > 0 ? goal : p;
+    }
+
+    /** @return velocity at a time since the start */
+    public double getVelocity(double t) {
+        double v = start_velocity;
+        for (int i = 0; i < segments && t > 0; i++) {
+            double dt = Math.min(t, segment_time[i]);
+            v += segment_accel[i] * dt;
+            t -= dt;
+        }
+        return t > 0 ? 0 : v;
+    }
+}
@@ -0,0 +1,269 @@
+package frc.robot.util;
+
+import static frc.robot.Constants.RobotLogConstants.*;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+import edu.wpi.first.networktables.DoublePublisher;
+import edu.wpi.first.networktables.IntegerPublisher;
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.util.datalog.DataLog;
+import edu.wpi.first.util.datalog.RawLogEntry;
+import edu.wpi.first.util.datalog.StringLogEntry;
+import edu.wpi.first.wpilibj.DataLogManager;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj2.command.Command;
+import edu.wpi.first.wpilibj2.command.CommandScheduler;
+import frc.robot.io.LogReplay;
+
+/**
+ * Binary on-robot log of typed struct entries, written through the WPILib {@link DataLog}.
+ * <p>
+ * Each {@link StructEntry} owns a preallocated buffer, so appending a record only copies fixed size
+ * fields into it and hands the bytes to the log. The log buffers them and flushes to the USB stick
+ * (or the roboRIO if there is none) from its own background thread.
+ * <p>
+ * The time spent appending is measured every cycle. High rate samples are dropped for the rest of
+ * a cycle once it goes over {@code logCycleBudgetUs}, events are always written.
+ */
+public final class RobotLog {
+    /** Marks the end of every robot cycle, replay splits the log into cycles on it */
+    public static final String cycleEntryName = "Robot/Cycle";
+
+    private static DataLog log;
+
+    private static final StructEntry cycle_log = new StructEntry(
+        cycleEntryName, "RobotCycle", "double start;double duration", 2 * 8, false);
+    private static double cycle_start = 0;
+
+    private static final AtomicLong cycle_cost = new AtomicLong();
+    private static final AtomicLong appended_bytes = new AtomicLong();
+    private static final AtomicLong dropped_count = new AtomicLong();
+    private static long cost_sum = 0;
+    private static long max_cost = 0;
+    private static int cost_samples = 0;
+
+    private static DoublePublisher cost_publisher;
+    private static DoublePublisher max_cost_publisher;
+    private static IntegerPublisher bytes_publisher;
+    private static IntegerPublisher dropped_publisher;
+
+    private RobotLog() {}
+
+    /**
+     * Starts the log and records driver station data and command events into it. Entries created
+     * before this are silently discarded.
+     */
+    public static synchronized void start() {
+        if (log != null)
+            return;
+
+        if (LogReplay.isActive()) {
+            DataLogManager.start(LogReplay.getOutputDirectory(), LogReplay.getOutputName(), logFlushPeriod);
+        } else {
+            // empty directory and name let the manager pick the USB stick and a match based file name
+            DataLogManager.start("", "", logFlushPeriod);
+        }
+        log = DataLogManager.getLog();
+        DriverStation.startDataLog(log);
+
+        NetworkTable table = NetworkTableInstance.getDefault().getTable("RobotLog");
+        cost_publisher = table.getDoubleTopic("CostUs").publish();
+        max_cost_publisher = table.getDoubleTopic("MaxCostUs").publish();
+        bytes_publisher = table.getIntegerTopic("Bytes").publish();
+        dropped_publisher = table.getIntegerTopic("Dropped").publish();
+
+        StringLogEntry started = new StringLogEntry(log, "Commands/Started");
+        StringLogEntry finished = new StringLogEntry(log, "Commands/Finished");
+        StringLogEntry interrupted = new StringLogEntry(log, "Commands/Interrupted");
+        CommandScheduler scheduler = CommandScheduler.getInstance();
+        scheduler.onCommandInitialize(command -> logCommand(started, command.getName()));
+        scheduler.onCommandFinish(command -> logCommand(finished, command.getName()));
+        scheduler.onCommandInterrupt((Command command, Optional<Command> interruptor) ->
+            logCommand(interrupted, interruptor.isPresent()
+                ? command.getName() + " by " + interruptor.get().getName()
+                : command.getName()));
+    }
+
+    private static void logCommand(StringLogEntry entry, String name) {
+        long start = System.nanoTime();
+        entry.append(name);
+        cycle_cost.addAndGet(System.nanoTime() - start);
+    }
+
+    /** Marks the start of a robot cycle, call before anything in the loop runs */
+    public static void startCycle() {
+        cycle_start = Timer.getFPGATimestamp();
+    }
+
+    /**
+     * Closes out one robot cycle, call once per loop after everything has logged. Publishes the
+     * average and worst per cycle logging cost every 50 cycles.
+     */
+    public static void endCycle() {
+        if (log == null)
+            return;
+
+        if (cycle_log.begin()) {
+            cycle_log.putDouble(cycle_start).putDouble(Timer.getFPGATimestamp() - cycle_start).append();
+        }
+
+        long cost = cycle_cost.getAndSet(0);
+        cost_sum += cost;
+        max_cost = Math.max(max_cost, cost);
+        cost_samples++;
+
+        if (cost_samples >= 50) {
+            cost_publisher.set(cost_sum / 1000.0 / cost_samples);
+            max_cost_publisher.set(max_cost / 1000.0);
+            bytes_publisher.set(appended_bytes.get());
+            dropped_publisher.set(dropped_count.get());
+
+            cost_sum = 0;
+            max_cost = 0;
+            cost_samples = 0;
+        }
+    }
+
+    /**
+     * Schema fragment for an enum field, so log viewers show names instead of ordinals
+     *
+     * @param values the enum constants
+     * @return e.g. {@code enum {Initial=0,Storage=1} int8}
+     */
+    public static String enumType(Enum<?>[] values) {
+        StringBuilder builder = new StringBuilder("enum {");
+        for (Enum<?> value : values) {
+            if (value.ordinal() > 0)
+                builder.append(',');
+            builder.append(value.name()).append('=').append(value.ordinal());
+        }
+        return builder.append("} int8").toString();
+    }
+
+    /**
+     * A log entry of one struct type with a preallocated encoder. Fields are written with the put
+     * methods in schema order, then {@link #append()} logs the record. An entry is only meant to be
+     * filled from one thread at a time.
+     */
+    public static final class StructEntry {
+        private final String type;
+        private final String schema;
+        private final String name;
+        private final boolean droppable;
+        private final byte[] data;
+        private final ByteBuffer buffer;
+
+        private RawLogEntry entry = null;
+        // set when a put runs past the end of the record, the record is then dropped
+        private boolean overflowed = false;
+        private boolean reported = false;
+
+        /**
+         * @param name entry name in the log
+         * @param type struct type name
+         * @param schema struct schema, e.g. {@code double height;bool moving}
+         * @param size encoded size of the struct in bytes
+         * @param droppable whether records may be dropped when a cycle is over the logging budget
+         */
+        public StructEntry(String name, String type, String schema, int size, boolean droppable) {
+            this.name = name;
+            this.type = type;
+            this.schema = schema;
+            this.droppable = droppable;
+
+            data = new byte[size];
+            buffer = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        /** Starts a new record, returns false if it would be dropped */
+        public boolean begin() {
+            if (log == null)
+                return false;
+
+            if (droppable && cycle_cost.get() > logCycleBudgetUs * 1000) {
+                dropped_count.incrementAndGet();
+                return false;
+            }
+
+            buffer.clear();
+            overflowed = false;
+            return true;
+        }
+
+        private boolean fits(int bytes) {
+            if (buffer.remaining() >= bytes)
+                return true;
+            overflowed = true;
+            return false;
+        }
+
+        public StructEntry putDouble(double value) {
+            if (fits(8))
+                buffer.putDouble(value);
+            return this;
+        }
+
+        public StructEntry putLong(long value) {
+            if (fits(8))
+                buffer.putLong(value);
+            return this;
+        }
+
+        public StructEntry putInt(int value) {
+            if (fits(4))
+                buffer.putInt(value);
+            return this;
+        }
+
+        public StructEntry putEnum(Enum<?> value) {
+            if (fits(1))
+                buffer.put((byte) (value == null ? -1 : value.ordinal()));
+            return this;
+        }
+
+        public StructEntry putByte(int value) {
+            if (fits(1))
+                buffer.put((byte) value);
+            return this;
+        }
+
+        public StructEntry putBoolean(boolean value) {
+            if (fits(1))
+                buffer.put((byte) (value ? 1 : 0));
+            return this;
+        }
+
+        /**
+         * Logs the record filled since {@link #begin()}, timestamped now. A record that doesn't fill
+         * the struct exactly is dropped, and reported the first time.
+         */
+        public void append() {
+            long start = System.nanoTime();
+
+            if (overflowed || buffer.position() != data.length) {
+                if (!reported) {
+                    DriverStation.reportError(name + " wrote " + (overflowed ? "more than " : buffer.position() + " of ")
+                        + data.length + " bytes, dropping its bad records", false);
+                    reported = true;
+                }
+                dropped_count.incrementAndGet();
+                return;
+            }
+            if (entry == null) {
+                // the schema is registered once, the first time the entry is used
+                log.addSchema("struct:" + type, "structschema", schema);
+                entry = new RawLogEntry(log, name, "", "struct:" + type);
+            }
+            entry.append(data);
+
+            appended_bytes.addAndGet(data.length);
+            cycle_cost.addAndGet(System.nanoTime() - start);
+        }
+    }
+}
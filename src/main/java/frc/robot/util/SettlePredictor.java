@@ -0,0 +1,50 @@
+package frc.robot.util;
+
+/**
+ * Predicts whether a Motion Magic controlled mechanism will be settled at its goal a short time
+ * from now, using the profile reference the motor controller reports alongside the measured state.
+ * <p>
+ * Waiting for the position alone to land inside a tight tolerance means waiting for the last
+ * oscillations to damp out. The profile tells us when the setpoint itself will arrive, and the
+ * tracking error and velocity tell us whether the mechanism is following it closely enough to
+ * arrive with it, so the next stage can start while the mechanism is still finishing its move.
+ */
+public final class SettlePredictor {
+    private SettlePredictor() {}
+
+    /**
+     * @param position measured position
+     * @param velocity measured velocity, per second
+     * @param reference Motion Magic position reference
+     * @param reference_slope Motion Magic velocity reference, per second
+     * @param goal goal position
+     * @param tolerance how close to the goal counts as settled
+     * @param tracking_tolerance largest acceptable distance between the position and the reference
+     * @param lookahead how far into the future to predict, in seconds
+     * @return true if the mechanism is predicted to be within tolerance of the goal by the end of the lookahead
+     */
+    public static boolean willSettle(double position, double velocity, double reference, double reference_slope,
+            double goal, double tolerance, double tracking_tolerance, double lookahead) {
+        if (Math.abs(position - goal) <= tolerance && Math.abs(velocity) * lookahead <= tolerance)
+            return true;
+
+        // the profile has to be heading to this goal and reach it inside the lookahead
+        double remaining = goal - reference;
+        if (Math.abs(remaining) > tolerance) {
+            if (Math.signum(reference_slope) != Math.signum(remaining))
+                return false;
+
+            // assume the profile is decelerating linearly to rest, true for the tail of a trapezoid
+            double profile_time = 2 * Math.abs(remaining) / Math.abs(reference_slope);
+            if (profile_time > lookahead)
+                return false;
+        }
+
+        if (Math.abs(position - reference) > tracking_tolerance)
+            return false;
+
+        // the mechanism decelerates with the profile, so it covers about half of velocity * lookahead
+        double predicted = position + 0.5 * velocity * lookahead;
+        return Math.abs(predicted - goal) <= tolerance;
+    }
+}
@@ -0,0 +1,136 @@
+package frc.robot.util;
+
+import static frc.robot.Constants.VisionConstants.*;
+
+import java.util.Arrays;
+import java.util.Optional;
+
+import edu.wpi.first.apriltag.AprilTagFieldLayout;
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Pose3d;
+import edu.wpi.first.math.geometry.Transform2d;
+
+/**
+ * Tracks where the robot last saw a set of tags relative to itself, for lining up with a tag
+ * directly instead of through the field pose estimate.
+ * <p>
+ * Each sighting is moved into the drivetrain's odometry frame with the odometry pose at the frame's
+ * capture time, so the camera latency is made up for and the tag can be found relative to the
+ * current odometry pose at any later time. Odometry drifts, but only over the short time since the
+ * last frame. Sightings of the same tag are low pass filtered.
+ */
+public class TagTracker {
+    private final AprilTagFieldLayout layout;
+    private final int[] tag_ids;
+
+    // per tag id, in the odometry frame
+    private final Pose2d[] tag_poses;
+    private final double[] last_seen;
+    private final int[] frames;
+
+    /**
+     * @param layout field tag layout
+     * @param tag_ids the tags to track
+     */
+    public TagTracker(AprilTagFieldLayout layout, int[] tag_ids) {
+        this.layout = layout;
+        this.tag_ids = tag_ids;
+
+        int max_id = Arrays.stream(tag_ids).max().orElse(0);
+        tag_poses = new Pose2d[max_id + 1];
+        last_seen = new double[max_id + 1];
+        frames = new int[max_id + 1];
+        Arrays.fill(last_seen, Double.NEGATIVE_INFINITY);
+    }
+
+    /**
+     * Adds a sighting of a tag, ignoring tags that aren't tracked and ambiguous ones
+     *
+     * @param id tag id
+     * @param timestamp FPGA capture timestamp of the frame, in seconds
+     * @param odometry_pose drivetrain odometry pose at the capture time
+     * @param robot_to_tag transform from the robot to the tag
+     * @param ambiguity pose ambiguity of the tag
+     */
+    public void addTag(int id, double timestamp, Pose2d odometry_pose, Transform2d robot_to_tag, double ambiguity) {
+        if (id < 0 || id >= tag_poses.length || !isTracked(id) || ambiguity > tagMaxAmbiguity)
+            return;
+        if (timestamp <= last_seen[id])
+            return;
+
+        Pose2d tag_pose = odometry_pose.transformBy(robot_to_tag);
+        if (timestamp - last_seen[id] > tagMaxAge) {
+            tag_poses[id] = tag_pose;
+            frames[id] = 1;
+        } else {
+            tag_poses[id] = tag_poses[id].interpolate(tag_pose, tagFilterGain);
+            frames[id]++;
+        }
+        last_seen[id] = timestamp;
+    }
+
+    /**
+     * @param field_pose a field pose
+     * @param max_distance how far the tag may be from it, in meters
+     * @return the tracked tag nearest a field pose, or -1 if none is that close
+     */
+    public int getNearestTag(Pose2d field_pose, double max_distance) {
+        int nearest = -1;
+        double nearest_distance = max_distance;
+        for (int id : tag_ids) {
+            Optional<Pose3d> tag = layout.getTagPose(id);
+            if (tag.isEmpty())
+                continue;
+            double distance = tag.get().toPose2d().getTranslation().getDistance(field_pose.getTranslation());
+            if (distance <= nearest_distance) {
+                nearest = id;
+                nearest_distance = distance;
+            }
+        }
+        return nearest;
+    }
+
+    /**
+     * How much a tag's sighting can be trusted, from how recent and how steady it is and how far away
+     * the robot is
+     *
+     * @param id tag id
+     * @param now current FPGA time, in seconds
+     * @param odometry_pose current drivetrain odometry pose
+     * @return from 0 for no trust to 1 for full trust
+     */
+    public double getTrust(int id, double now, Pose2d odometry_pose) {
+        if (id < 0 || id >= tag_poses.length || tag_poses[id] == null || now - last_seen[id] > tagMaxAge)
+            return 0;
+
+        double distance = odometry_pose.getTranslation().getDistance(tag_poses[id].getTranslation());
+        double distance_trust = MathUtil.clamp(
+            (tagMaxDistance - distance) / (tagMaxDistance - tagFullTrustDistance), 0, 1);
+        double frame_trust = Math.min(1, (double) frames[id] / tagMinFrames);
+        return distance_trust * frame_trust;
+    }
+
+    /**
+     * Finds a field pose relative to where the tag was seen rather than to the field estimate
+     *
+     * @param id tag id, must have been seen
+     * @param odometry_pose current drivetrain odometry pose
+     * @param field_pose current field pose estimate
+     * @param field_goal the goal on the field
+     * @return the goal moved so it's in the same place relative to the seen tag as to the field tag
+     */
+    public Pose2d getTagRelativeGoal(int id, Pose2d odometry_pose, Pose2d field_pose, Pose2d field_goal) {
+        Transform2d tag_to_goal = new Transform2d(layout.getTagPose(id).get().toPose2d(), field_goal);
+        Transform2d robot_to_tag = new Transform2d(odometry_pose, tag_poses[id]);
+        return field_pose.transformBy(robot_to_tag).transformBy(tag_to_goal);
+    }
+
+    private boolean isTracked(int id) {
+        for (int tracked : tag_ids) {
+            if (tracked == id)
+                return true;
+        }
+        return false;
+    }
+}
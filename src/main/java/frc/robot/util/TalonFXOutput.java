@@ -0,0 +1,155 @@
+package frc.robot.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.ctre.phoenix6.controls.Follower;
+import com.ctre.phoenix6.controls.MotionMagicVoltage;
+import com.ctre.phoenix6.controls.VoltageOut;
+import com.ctre.phoenix6.hardware.TalonFX;
+
+import edu.wpi.first.networktables.IntegerPublisher;
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableInstance;
+
+/**
+ * Thin output layer around a TalonFX that only calls setControl when the request actually changes.
+ * <p>
+ * Phoenix 6 keeps re-sending the last control request at its update frequency, so sending the same
+ * request every loop only costs a JNI call and a CAN frame. This class keeps one mutable instance of
+ * each request type, remembers what was last sent, and counts sent/suppressed writes per device.
+ */
+public class TalonFXOutput {
+    private static final List<TalonFXOutput> outputs = new ArrayList<>();
+    private static final NetworkTable table = NetworkTableInstance.getDefault().getTable("MotorOutputs");
+
+    private enum RequestType {
+        None,
+        Voltage,
+        MotionMagicVoltage,
+        Follower
+    }
+
+    private final TalonFX motor;
+
+    private final VoltageOut voltage_out = new VoltageOut(0);
+    private final MotionMagicVoltage mm_voltage = new MotionMagicVoltage(0).withSlot(0);
+    private Follower follower = null;
+
+    private RequestType last_type = RequestType.None;
+    private double last_value = Double.NaN;
+
+    private long sent_count = 0;
+    private long suppressed_count = 0;
+
+    private final IntegerPublisher sent_publisher;
+    private final IntegerPublisher suppressed_publisher;
+
+    /**
+     * Wraps a motor
+     *
+     * @param name name used to publish the write counters
+     * @param motor the motor to wrap
+     */
+    public TalonFXOutput(String name, TalonFX motor) {
+        this.motor = motor;
+
+        sent_publisher = table.getSubTable(name).getIntegerTopic("Sent").publish();
+        suppressed_publisher = table.getSubTable(name).getIntegerTopic("Suppressed").publish();
+
+        synchronized (outputs) {
+            outputs.add(this);
+        }
+    }
+
+    /**
+     * Sets whether voltage based requests use FOC commutation
+     *
+     * @param enable_foc true to use FOC
+     * @return this output, for chaining
+     */
+    public TalonFXOutput withEnableFOC(boolean enable_foc) {
+        voltage_out.EnableFOC = enable_foc;
+        mm_voltage.EnableFOC = enable_foc;
+        invalidate();
+        return this;
+    }
+
+    public TalonFX getMotor() {
+        return motor;
+    }
+
+    public synchronized void setVoltage(double volts) {
+        if (last_type == RequestType.Voltage && last_value == volts) {
+            suppressed_count++;
+            return;
+        }
+
+        motor.setControl(voltage_out.withOutput(volts));
+        remember(RequestType.Voltage, volts);
+    }
+
+    public synchronized void setMotionMagicVoltage(double position) {
+        if (last_type == RequestType.MotionMagicVoltage && last_value == position) {
+            suppressed_count++;
+            return;
+        }
+
+        motor.setControl(mm_voltage.withPosition(position));
+        remember(RequestType.MotionMagicVoltage, position);
+    }
+
+    /**
+     * Makes this motor follow another one. The follow request never changes once created, so every
+     * call after the first one is suppressed.
+     *
+     * @param leader_id CAN ID of the motor to follow
+     * @param oppose_leader true if this motor should spin opposite of the leader
+     */
+    public synchronized void setFollower(int leader_id, boolean oppose_leader) {
+        if (last_type == RequestType.Follower
+                && follower.MasterID == leader_id
+                && follower.OpposeMasterDirection == oppose_leader) {
+            suppressed_count++;
+            return;
+        }
+
+        follower = new Follower(leader_id, oppose_leader);
+        motor.setControl(follower);
+        remember(RequestType.Follower, leader_id);
+    }
+
+    /** Forces the next request to be sent, even if it matches the last one. */
+    public synchronized void invalidate() {
+        last_type = RequestType.None;
+        last_value = Double.NaN;
+    }
+
+    public synchronized long getSentCount() {
+        return sent_count;
+    }
+
+    public synchronized long getSuppressedCount() {
+        return suppressed_count;
+    }
+
+    private void remember(RequestType type, double value) {
+        last_type = type;
+        last_value = value;
+        sent_count++;
+    }
+
+    private synchronized void publish() {
+        sent_publisher.set(sent_count);
+        suppressed_publisher.set(suppressed_count);
+    }
+
+    /** Publishes the write counters of every output, call once per robot loop. */
+    public static void publishAll() {
+        synchronized (outputs) {
+            for (TalonFXOutput output : outputs) {
+                output.publish();
+            }
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package frc.robot.util;
+
+import edu.wpi.first.math.Matrix;
+import edu.wpi.first.math.VecBuilder;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.numbers.N1;
+import edu.wpi.first.math.numbers.N3;
+
+/**
+ * Combines pose estimates from different cameras that were captured at about the same time into
+ * one measurement, so the pose estimator only replays its odometry buffer once for them.
+ * <p>
+ * Each group is fused at the capture time of its earliest estimate. Later estimates are moved back
+ * to that time by the odometry motion between the two captures, so a moving robot doesn't smear
+ * the fused pose. Estimates without odometry at their capture time are only grouped with frames
+ * captured at exactly the same time.
+ * <p>
+ * Estimates are weighted by the inverse of their variance on each axis, which is the inverse
+ * covariance weighting for the diagonal covariances the estimator takes. Two estimates are only
+ * grouped if they come from different cameras, were captured within {@code window} of each other
+ * and agree within {@code gate_sigmas} standard deviations. Anything else is submitted on its own
+ * so one bad estimate can't drag a good one off.
+ */
+public class VisionFusion {
+    private final int capacity;
+    private final double window;
+    private final double gate_sigmas;
+
+    private int added = 0;
+    private final double[] add_timestamp;
+    private final int[] add_order;
+
+    /** number of fused measurements after {@link #fuse()} */
+    public int count = 0;
+    /** bit mask of the cameras in each fused measurement */
+    public final int[] cameras;
+    /** number of estimates in each fused measurement */
+    public final int[] sources;
+    /** capture time of each fused measurement, that of its earliest estimate */
+    public final double[] timestamp;
+
+    // information (inverse variance) sums per axis, and information weighted sums of the values
+    private final double[] info_x;
+    private final double[] info_y;
+    private final double[] info_theta;
+    private final double[] sum_x;
+    private final double[] sum_y;
+    private final double[] sum_sin;
+    private final double[] sum_cos;
+    // odometry pose at the capture time of each group's first estimate, NaN if unknown
+    private final double[] group_odometry_x;
+    private final double[] group_odometry_y;
+    private final double[] group_odometry_theta;
+
+    private final int[] add_camera;
+    private final double[] add_x;
+    private final double[] add_y;
+    private final double[] add_theta;
+    private final double[] add_var_xy;
+    private final double[] add_var_theta;
+    private final double[] add_odometry_x;
+    private final double[] add_odometry_y;
+    private final double[] add_odometry_theta;
+
+    // an estimate moved to the capture time of a group, see shift()
+    private double shifted_x;
+    private double shifted_y;
+    private double shifted_theta;
+
+    /**
+     * @param capacity largest number of estimates per cycle
+     * @param window longest time between the capture of grouped estimates, in seconds
+     * @param gate_sigmas how many standard deviations grouped estimates may disagree by
+     */
+    public VisionFusion(int capacity, double window, double gate_sigmas) {
+        this.capacity = capacity;
+        this.window = window;
+        this.gate_sigmas = gate_sigmas;
+
+        add_timestamp = new double[capacity];
+        add_order = new int[capacity];
+        add_camera = new int[capacity];
+        add_x = new double[capacity];
+        add_y = new double[capacity];
+        add_theta = new double[capacity];
+        add_var_xy = new double[capacity];
+        add_var_theta = new double[capacity];
+        add_odometry_x = new double[capacity];
+        add_odometry_y = new double[capacity];
+        add_odometry_theta = new double[capacity];
+
+        cameras = new int[capacity];
+        sources = new int[capacity];
+        timestamp = new double[capacity];
+        info_x = new double[capacity];
+        info_y = new double[capacity];
+        info_theta = new double[capacity];
+        sum_x = new double[capacity];
+        sum_y = new double[capacity];
+        sum_sin = new double[capacity];
+        sum_cos = new double[capacity];
+        group_odometry_x = new double[capacity];
+        group_odometry_y = new double[capacity];
+        group_odometry_theta = new double[capacity];
+    }
+
+    public void clear() {
+        added = 0;
+        count = 0;
+    }
+
+    /**
+     * Adds an estimate, dropping it if the cycle is already full
+     *
+     * @param camera index of the camera, below 32
+     * @param capture_time FPGA timestamp of the frame in seconds
+     * @param pose estimated pose
+     * @param odometry odometry pose at the capture time, or null if there is none
+     * @param std_devs x, y and heading standard deviations
+     */
+    public void add(int camera, double capture_time, Pose2d pose, Pose2d odometry, Matrix<N3, N1> std_devs) {
+        if (added >= capacity)
+            return;
+
+        add_camera[added] = camera;
+        add_timestamp[added] = capture_time;
+        add_x[added] = pose.getX();
+        add_y[added] = pose.getY();
+        add_theta[added] = pose.getRotation().getRadians();
+        add_odometry_x[added] = odometry == null ? Double.NaN : odometry.getX();
+        add_odometry_y[added] = odometry == null ? Double.NaN : odometry.getY();
+        add_odometry_theta[added] = odometry == null ? Double.NaN : odometry.getRotation().getRadians();
+        // x and y always share a standard deviation
+        add_var_xy[added] = std_devs.get(0, 0) * std_devs.get(0, 0);
+        add_var_theta[added] = std_devs.get(2, 0) * std_devs.get(2, 0);
+        added++;
+    }
+
+    /** Groups and fuses the estimates added since {@link #clear()} */
+    public void fuse() {
+        // insertion sort by capture time, there are only a handful of estimates
+        for (int i = 0; i < added; i++) {
+            int j = i;
+            while (j > 0 && add_timestamp[add_order[j - 1]] > add_timestamp[i]) {
+                add_order[j] = add_order[j - 1];
+                j--;
+            }
+            add_order[j] = i;
+        }
+
+        count = 0;
+        for (int k = 0; k < added; k++) {
+            int i = add_order[k];
+            int group = findGroup(i);
+            if (group < 0) {
+                group = count++;
+                cameras[group] = 0;
+                sources[group] = 0;
+                info_x[group] = 0;
+                info_y[group] = 0;
+                info_theta[group] = 0;
+                sum_x[group] = 0;
+                sum_y[group] = 0;
+                sum_sin[group] = 0;
+                sum_cos[group] = 0;
+                group_odometry_x[group] = add_odometry_x[i];
+                group_odometry_y[group] = add_odometry_y[i];
+                group_odometry_theta[group] = add_odometry_theta[i];
+                timestamp[group] = add_timestamp[i];
+            }
+            shift(i, group);
+
+            double weight_xy = 1 / add_var_xy[i];
+            double weight_theta = 1 / add_var_theta[i];
+            cameras[group] |= 1 << add_camera[i];
+            sources[group]++;
+            info_x[group] += weight_xy;
+            info_y[group] += weight_xy;
+            info_theta[group] += weight_theta;
+            sum_x[group] += shifted_x * weight_xy;
+            sum_y[group] += shifted_y * weight_xy;
+            // headings are averaged as unit vectors so they wrap correctly
+            sum_sin[group] += Math.sin(shifted_theta) * weight_theta;
+            sum_cos[group] += Math.cos(shifted_theta) * weight_theta;
+        }
+    }
+
+    /**
+     * Moves estimate i back to the capture time of a group, by the odometry motion between the two
+     * captures taken relative to the robot. Returns false, leaving the estimate where it is, if either
+     * capture has no odometry.
+     */
+    private boolean shift(int i, int group) {
+        shifted_x = add_x[i];
+        shifted_y = add_y[i];
+        shifted_theta = add_theta[i];
+        if (add_timestamp[i] == timestamp[group])
+            return true;
+        if (Double.isNaN(add_odometry_x[i]) || Double.isNaN(group_odometry_x[group]))
+            return false;
+
+        // the odometry delta, turned from the odometry heading into the estimate's heading
+        double dx = group_odometry_x[group] - add_odometry_x[i];
+        double dy = group_odometry_y[group] - add_odometry_y[i];
+        double rotation = add_theta[i] - add_odometry_theta[i];
+        double cos = Math.cos(rotation), sin = Math.sin(rotation);
+        shifted_x += cos * dx - sin * dy;
+        shifted_y += sin * dx + cos * dy;
+        shifted_theta += group_odometry_theta[group] - add_odometry_theta[i];
+        return true;
+    }
+
+    private int findGroup(int i) {
+        for (int group = 0; group < count; group++) {
+            if ((cameras[group] & (1 << add_camera[i])) != 0)
+                continue;
+            if (add_timestamp[i] - timestamp[group] > window)
+                continue;
+            if (!shift(i, group))
+                continue;
+
+            double dx = shifted_x - sum_x[group] / info_x[group];
+            double dy = shifted_y - sum_y[group] / info_y[group];
+            double sigma = Math.sqrt(add_var_xy[i] + 1 / info_x[group]);
+            if (Math.hypot(dx, dy) > gate_sigmas * sigma)
+                continue;
+
+            return group;
+        }
+        return -1;
+    }
+
+    /** @return the fused pose of a measurement */
+    public Pose2d getPose(int group) {
+        return new Pose2d(sum_x[group] / info_x[group], sum_y[group] / info_y[group],
+            new Rotation2d(Math.atan2(sum_sin[group], sum_cos[group])));
+    }
+
+    /** @return x, y and heading standard deviations of a measurement */
+    public Matrix<N3, N1> getStdDevs(int group) {
+        return VecBuilder.fill(
+            Math.sqrt(1 / info_x[group]),
+            Math.sqrt(1 / info_y[group]),
+            Math.sqrt(1 / info_theta[group]));
+    }
+}
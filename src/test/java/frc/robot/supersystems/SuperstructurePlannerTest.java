@@ -0,0 +1,196 @@
+package frc.robot.supersystems;
+
+import static frc.robot.Constants.SuperstructurePlannerConstants.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import frc.robot.supersystems.SuperstructurePlanner.Axis;
+import frc.robot.supersystems.SuperstructurePlanner.AxisState;
+import frc.robot.supersystems.SuperstructurePlanner.Plan;
+
+class SuperstructurePlannerTest {
+    private static final double dt = 0.001;
+
+    private final SuperstructurePlanner planner = new SuperstructurePlanner();
+
+    @Test
+    void keepOutBoundsAreOpen() {
+        KeepOut keep_out = new KeepOut("box", 0, 1, 0, 1);
+        assertTrue(keep_out.contains(0.5, 0.5));
+        assertFalse(keep_out.contains(0, 0.5));
+        assertFalse(keep_out.contains(0.5, 1));
+        assertFalse(keep_out.contains(1.5, 0.5));
+    }
+
+    @Test
+    void presetsAreOutsideKeepOuts() {
+        for (Preset preset : Preset.values()) {
+            for (KeepOut keep_out : keepOuts) {
+                assertFalse(keep_out.contains(preset.getHeight(), preset.getAngle(), keepOutHeightMargin, keepOutAngleMargin),
+                    preset + " is inside " + keep_out.name());
+            }
+        }
+    }
+
+    @Test
+    void cachedPlansStayOutOfKeepOuts() {
+        for (Preset from : Preset.values()) {
+            for (Preset to : Preset.values()) {
+                Plan plan = planner.getPlan(from, to);
+                assertTrue(plan.collision_free(), from + " to " + to + " has no collision free plan");
+                simulate(plan, AxisState.atRest(from.getHeight()), AxisState.atRest(from.getAngle()), from + " to " + to);
+            }
+        }
+    }
+
+    @Test
+    void swingUnderIntakeWaitsForElevator() {
+        Plan plan = planner.getPlan(Preset.Storage, Preset.IntakeCatch);
+        assertEquals(Axis.Elevator, plan.lead());
+        assertTrue(plan.gate_rising());
+        assertFalse(plan.isGateReached(Preset.Storage.getHeight()));
+        assertTrue(plan.duration() < plan.sequential_duration());
+    }
+
+    @Test
+    void safeMoveRunsBothAxesTogether() {
+        Plan plan = planner.getPlan(Preset.ScoreL2, Preset.ScoreL3);
+        assertTrue(Double.isNaN(plan.gate()));
+        assertTrue(plan.isGateReached(Preset.ScoreL2.getHeight()));
+    }
+
+    @Test
+    void unsafeDirectMoveIsRoutedThroughPreset() {
+        // a wall across the whole height range below horizontal can't be crossed by either axis alone
+        List<KeepOut> keep_outs = List.of(new KeepOut("wall", 0.3, 0.4, -1, 0.05));
+        SuperstructurePlanner walled = new SuperstructurePlanner(keep_outs);
+        assertFalse(walled.getDirectPlan(Preset.ScoreL1, Preset.ExtractAlgaeHigh).collision_free());
+
+        Plan plan = walled.getPlan(Preset.ScoreL1, Preset.ExtractAlgaeHigh);
+        assertTrue(plan.collision_free());
+        assertNotNull(plan.next());
+        assertEquals(Preset.ExtractAlgaeHigh.getHeight(), plan.next().goal_height(), 1e-9);
+    }
+
+    @Test
+    void restingAtPresetUsesCache() {
+        AxisState elevator = AxisState.atRest(Preset.Storage.getHeight());
+        AxisState pivot = AxisState.atRest(Preset.Storage.getAngle());
+        assertSame(planner.getPlan(Preset.Storage, Preset.IntakeCatch), planner.plan(elevator, pivot, Preset.IntakeCatch));
+
+        // still moving, or about to, so the plan from rest doesn't apply
+        AxisState moving = new AxisState(Preset.Storage.getHeight(), 0.5, Preset.Storage.getHeight());
+        assertNotSame(planner.getPlan(Preset.Storage, Preset.IntakeCatch), planner.plan(moving, pivot, Preset.IntakeCatch));
+        AxisState leaving = new AxisState(Preset.Storage.getHeight(), 0, Preset.ScoreL4.getHeight());
+        assertNotSame(planner.getPlan(Preset.Storage, Preset.IntakeCatch), planner.plan(leaving, pivot, Preset.IntakeCatch));
+    }
+
+    @Test
+    void replanWhileElevatorFallsStaysOut() {
+        // heading down to storage at full speed when the intake is requested
+        AxisState elevator = new AxisState(0.45, -elevatorMaxVelocity * 0.8, Preset.Storage.getHeight());
+        AxisState pivot = AxisState.atRest(0);
+        Plan plan = planner.plan(elevator, pivot, Preset.IntakeCatch);
+
+        assertTrue(plan.collision_free());
+        if (!Double.isNaN(plan.gate()))
+            assertFalse(plan.isGateReached(plan.lead() == Axis.Elevator ? elevator.position() : pivot.position()));
+        simulate(plan, elevator, pivot, "falling elevator to intake");
+
+        // it has to stop before climbing back, so it can't be quicker than the same move from rest
+        Plan from_rest = planner.plan(AxisState.atRest(0.45), pivot, Preset.IntakeCatch);
+        assertTrue(plan.duration() > from_rest.duration());
+    }
+
+    @Test
+    void replanWhileArmSwingsDownStaysOut() {
+        // the arm is still swinging down to the intake when storage is requested
+        AxisState elevator = AxisState.atRest(Preset.IntakeCatch.getHeight());
+        AxisState pivot = new AxisState(-0.1, -pivotMaxVelocity * 0.5, Preset.IntakeCatch.getAngle());
+        Plan plan = planner.plan(elevator, pivot, Preset.Storage);
+
+        assertTrue(plan.collision_free());
+        simulate(plan, elevator, pivot, "swinging arm to storage");
+    }
+
+    @Test
+    void replanCostIsBounded() {
+        // replans run under the superstructure lock, from anywhere between two presets on the way to any third
+        double worst = 0;
+        for (int pass = 0; pass < 2; pass++) {
+            // the first pass only warms up the JIT
+            worst = 0;
+            for (Preset from : Preset.values()) {
+                for (Preset via : Preset.values()) {
+                    double height = (from.getHeight() + via.getHeight()) / 2;
+                    double angle = (from.getAngle() + via.getAngle()) / 2;
+                    AxisState elevator = new AxisState(height,
+                        Math.signum(via.getHeight() - from.getHeight()) * elevatorMaxVelocity * 0.5, via.getHeight());
+                    AxisState pivot = new AxisState(angle,
+                        Math.signum(via.getAngle() - from.getAngle()) * pivotMaxVelocity * 0.5, via.getAngle());
+
+                    for (Preset to : Preset.values()) {
+                        // the quickest of a few runs, so a garbage collection doesn't count against the planner
+                        double cost = Double.POSITIVE_INFINITY;
+                        for (int run = 0; run < 3; run++) {
+                            long start = System.nanoTime();
+                            planner.plan(elevator, pivot, to);
+                            cost = Math.min(cost, (System.nanoTime() - start) / 1e6);
+                        }
+                        worst = Math.max(worst, cost);
+                    }
+                }
+            }
+        }
+        // about 0.3 ms on a desktop, the bound leaves room for slower machines
+        assertTrue(worst < 5, "slowest replan took " + worst + " ms");
+    }
+
+    /**
+     * Drives both axes through a plan and all of its next plans the way the superstructure does,
+     * with an acceleration limited follower and the gate checked against the simulated lead axis,
+     * and fails if they enter a keep-out region
+     */
+    private static void simulate(Plan plan, AxisState elevator, AxisState pivot, String move) {
+        double height = elevator.position(), height_velocity = elevator.velocity(), height_goal = elevator.held_goal();
+        double angle = pivot.position(), angle_velocity = pivot.velocity(), angle_goal = pivot.held_goal();
+
+        for (; plan != null; plan = plan.next()) {
+            boolean released = false;
+            for (double t = 0; t < 10; t += dt) {
+                double lead_position = plan.lead() == Axis.Elevator ? height : angle;
+                if (!released && plan.isGateReached(lead_position))
+                    released = true;
+                if (plan.lead() == Axis.Elevator || released)
+                    height_goal = plan.goal_height();
+                if (plan.lead() == Axis.Pivot || released)
+                    angle_goal = plan.goal_angle();
+
+                height_velocity = follow(height, height_velocity, height_goal, elevatorMaxVelocity, elevatorMaxAcceleration);
+                angle_velocity = follow(angle, angle_velocity, angle_goal, pivotMaxVelocity, pivotMaxAcceleration);
+                height += height_velocity * dt;
+                angle += angle_velocity * dt;
+
+                for (KeepOut keep_out : keepOuts) {
+                    assertFalse(keep_out.contains(height, angle),
+                        move + " enters " + keep_out.name() + " at " + height + " m, " + angle + " rot");
+                }
+
+                if (released && Math.abs(height - plan.goal_height()) < 1e-3 && Math.abs(angle - plan.goal_angle()) < 1e-3
+                        && Math.abs(height_velocity) < 0.05 && Math.abs(angle_velocity) < 0.05)
+                    break;
+            }
+        }
+    }
+
+    // velocity after one step of a follower that brakes as late as it can
+    private static double follow(double position, double velocity, double goal, double max_velocity, double max_acceleration) {
+        double distance = goal - position;
+        double target = Math.signum(distance) * Math.min(max_velocity, Math.sqrt(2 * max_acceleration * Math.abs(distance)));
+        double change = Math.max(-max_acceleration * dt, Math.min(max_acceleration * dt, target - velocity));
+        return velocity + change;
+    }
+}
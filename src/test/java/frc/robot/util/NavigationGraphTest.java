@@ -0,0 +1,127 @@
+package frc.robot.util;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.math.geometry.Translation2d;
+import frc.robot.Constants.PathfindingConstants;
+import frc.robot.FieldConstants;
+
+class NavigationGraphTest {
+    private static final double radius = 0.5;
+
+    @BeforeAll
+    static void setup() {
+        // the field's reef poses check the alliance through the driver station
+        assertTrue(HAL.initialize(500, 0));
+    }
+
+    private static Translation2d[] box(double x0, double y0, double x1, double y1) {
+        return new Translation2d[] {
+            new Translation2d(x0, y0), new Translation2d(x1, y0), new Translation2d(x1, y1), new Translation2d(x0, y1),
+        };
+    }
+
+    private static List<Translation2d[]> obstacles(Translation2d[]... outlines) {
+        return List.of(outlines);
+    }
+
+    private static double length(List<Translation2d> path) {
+        double length = 0;
+        for (int i = 1; i < path.size(); i++)
+            length += path.get(i - 1).getDistance(path.get(i));
+        return length;
+    }
+
+    private static void assertDrivable(NavigationGraph graph, List<Translation2d> path) {
+        for (int i = 1; i < path.size(); i++) {
+            Translation2d a = path.get(i - 1), b = path.get(i);
+            assertTrue(graph.isClear(a.getX(), a.getY(), b.getX(), b.getY()), "path crosses an obstacle from " + a + " to " + b);
+        }
+    }
+
+    @Test
+    void clearLineIsStraight() {
+        NavigationGraph graph = new NavigationGraph(obstacles(box(4, 4, 6, 6)), radius, 10, 10);
+        List<Translation2d> path = graph.findPath(new Translation2d(1, 1), new Translation2d(9, 2));
+        assertEquals(2, path.size());
+    }
+
+    @Test
+    void goesAroundObstacle() {
+        NavigationGraph graph = new NavigationGraph(obstacles(box(4, 3, 6, 7)), radius, 10, 10);
+        Translation2d start = new Translation2d(1, 5), goal = new Translation2d(9, 5);
+        List<Translation2d> path = graph.findPath(start, goal);
+
+        assertTrue(path.size() > 2);
+        assertEquals(start.getX(), path.get(0).getX(), 1e-9);
+        assertEquals(goal.getX(), path.get(path.size() - 1).getX(), 1e-9);
+        assertDrivable(graph, path);
+        // over the top or under the bottom of the grown box, not a long way round
+        assertTrue(length(path) < 8 + 2 * 2.6);
+    }
+
+    @Test
+    void gapMustFitTheRobot() {
+        // a wall across the field with a gap in the middle
+        Translation2d start = new Translation2d(1, 5), goal = new Translation2d(9, 5);
+
+        NavigationGraph narrow = new NavigationGraph(obstacles(box(4.8, 0, 5.2, 4.6), box(4.8, 5.4, 5.2, 10)), radius, 10, 10);
+        assertTrue(narrow.findPath(start, goal).isEmpty());
+
+        NavigationGraph wide = new NavigationGraph(obstacles(box(4.8, 0, 5.2, 4.4), box(4.8, 5.6, 5.2, 10)), radius, 10, 10);
+        List<Translation2d> path = wide.findPath(start, goal);
+        assertFalse(path.isEmpty());
+        assertDrivable(wide, path);
+    }
+
+    @Test
+    void goalInsideObstacleIsApproachedFromOutside() {
+        NavigationGraph graph = new NavigationGraph(obstacles(box(4, 4, 6, 6)), radius, 10, 10);
+        // right against the box's left face, inside its grown outline
+        Translation2d goal = new Translation2d(3.7, 5);
+        assertFalse(graph.isFree(goal.getX(), goal.getY()));
+
+        Translation2d approach = graph.getApproachPoint(goal);
+        assertNotNull(approach);
+        assertTrue(graph.isFree(approach.getX(), approach.getY()));
+        assertTrue(approach.getX() < 4 - radius);
+
+        List<Translation2d> path = graph.findPath(new Translation2d(1, 5), goal);
+        assertEquals(approach.getX(), path.get(path.size() - 1).getX(), 1e-9);
+        assertEquals(approach.getY(), path.get(path.size() - 1).getY(), 1e-9);
+    }
+
+    @Test
+    void pointsOutsideTheFieldWallsAreNotFree() {
+        NavigationGraph graph = new NavigationGraph(obstacles(), radius, 10, 10);
+        assertFalse(graph.isFree(0.2, 5));
+        assertFalse(graph.isFree(5, 9.8));
+        assertTrue(graph.isFree(5, 5));
+    }
+
+    @Test
+    void fieldCanBeCrossed() {
+        NavigationGraph graph = new NavigationGraph(FieldConstants.Obstacles.polygons,
+            PathfindingConstants.robotRadius, FieldConstants.fieldLength, FieldConstants.fieldWidth);
+
+        // from in front of the blue reef to in front of the red one, past the barge
+        Translation2d blue = new Translation2d(2.5, FieldConstants.fieldWidth / 2);
+        Translation2d red = new Translation2d(FieldConstants.fieldLength - 2.5, FieldConstants.fieldWidth / 2);
+        List<Translation2d> path = graph.findPath(blue, red);
+        assertFalse(path.isEmpty(), "no path across the midline");
+        assertDrivable(graph, path);
+
+        // and from one coral station to the far one
+        Translation2d station = new Translation2d(1.6, 1.2);
+        Translation2d far_station = new Translation2d(FieldConstants.fieldLength - 1.6, FieldConstants.fieldWidth - 1.2);
+        path = graph.findPath(station, far_station);
+        assertFalse(path.isEmpty(), "no path between the coral stations");
+        assertDrivable(graph, path);
+    }
+}
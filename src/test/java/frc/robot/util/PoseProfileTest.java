@@ -0,0 +1,152 @@
+package frc.robot.util;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+class PoseProfileTest {
+    private static final double maxModuleSpeed = 4.5;
+    private static final double maxAcceleration = 3.0;
+    private static final double driveRadius = 0.4;
+    private static final double dt = 0.001;
+
+    private final PoseProfile profile = new PoseProfile(maxModuleSpeed, maxAcceleration, driveRadius);
+
+    @Test
+    void arrivesAtRest() {
+        profile.plan(1, 2, 0, 0, 0, 0, 4, 1, 1);
+        double end = profile.getTotalTime();
+        assertEquals(4, profile.getX(end), 1e-6);
+        assertEquals(1, profile.getY(end), 1e-6);
+        assertEquals(1, profile.getTheta(end), 1e-6);
+        assertEquals(0, profile.getVx(end), 1e-6);
+        assertEquals(0, profile.getVy(end), 1e-6);
+        assertEquals(0, profile.getOmega(end), 1e-6);
+    }
+
+    @Test
+    void movingAwayStopsFirst() {
+        // driving away from the goal at 1.5 m/s, it has to brake before it can come back
+        profile.plan(0, 0, 0, -1.5, 0, 0, 2, 0, 0);
+
+        double lowest = 0;
+        double turn_time = Double.NaN;
+        for (double t = 0; t < profile.getTotalTime(); t += dt) {
+            lowest = Math.min(lowest, profile.getX(t));
+            if (Double.isNaN(turn_time) && profile.getVx(t) >= 0)
+                turn_time = t;
+        }
+        // braking at full acceleration, never past where that stops it
+        assertEquals(-1.5 * 1.5 / (2 * maxAcceleration), lowest, 0.01);
+        assertEquals(1.5 / maxAcceleration, turn_time, 0.01);
+
+        PoseProfile from_rest = new PoseProfile(maxModuleSpeed, maxAcceleration, driveRadius);
+        from_rest.plan(0, 0, 0, 0, 0, 0, 2, 0, 0);
+        assertTrue(profile.getTotalTime() > from_rest.getTotalTime());
+    }
+
+    @Test
+    void tooFastToStopOvershootsAndComesBack() {
+        profile.plan(0, 0, 0, 3, 0, 0, 0.5, 0, 0);
+
+        double highest = 0;
+        for (double t = 0; t < profile.getTotalTime(); t += dt)
+            highest = Math.max(highest, profile.getX(t));
+        assertEquals(3.0 * 3.0 / (2 * maxAcceleration), highest, 0.01);
+        assertEquals(0.5, profile.getX(profile.getTotalTime()), 1e-6);
+    }
+
+    @Test
+    void axesStretchToArriveTogether() {
+        // x has much further to go, y and heading are slowed to finish with it
+        profile.plan(0, 0, 0, 0, 0, 0, 4, 0.5, 0.3);
+        double end = profile.getTotalTime();
+
+        double y_arrival = arrival(end, t -> profile.getY(t), 0, 0.5);
+        double theta_arrival = arrival(end, t -> profile.getTheta(t), 0, 0.3);
+        double x_arrival = arrival(end, t -> profile.getX(t), 0, 4);
+        assertEquals(x_arrival, y_arrival, 0.02);
+        assertEquals(x_arrival, theta_arrival, 0.02);
+
+        // and the path stays close to the straight line between the two points
+        for (double t = 0; t < end; t += dt) {
+            double off_line = Math.abs(profile.getY(t) - profile.getX(t) * 0.5 / 4);
+            assertTrue(off_line < 0.05, "off the line by " + off_line + " m at " + t + " s");
+        }
+    }
+
+    @Test
+    void crossTrackVelocityIsShedQuickly() {
+        // sliding sideways at 1 m/s with the goal straight ahead
+        profile.plan(0, 0, 0, 0, 1, 0, 2, 0, 0);
+
+        double widest = 0;
+        for (double t = 0; t < profile.getTotalTime(); t += dt)
+            widest = Math.max(widest, profile.getY(t));
+        // y gets what it needs to stop and come back while x drives, not a share sized by its zero
+        // displacement, which would slide it metres off the line
+        assertTrue(widest < 0.4, "slid " + widest + " m off the line");
+        assertEquals(0, profile.getY(profile.getTotalTime()), 1e-6);
+
+        // and it is not much slower than the same move from rest
+        PoseProfile from_rest = new PoseProfile(maxModuleSpeed, maxAcceleration, driveRadius);
+        from_rest.plan(0, 0, 0, 0, 0, 0, 2, 0, 0);
+        assertTrue(profile.getTotalTime() < from_rest.getTotalTime() * 1.5,
+            profile.getTotalTime() + " s against " + from_rest.getTotalTime() + " s from rest");
+    }
+
+    @Test
+    void stretchKeepsAnAxisWithNothingToDoStill() {
+        profile.plan(0, 0, 0, 0, 0, 0, 3, 0, 0);
+        for (double t = 0; t < profile.getTotalTime(); t += dt) {
+            assertEquals(0, profile.getY(t), 1e-9);
+            assertEquals(0, profile.getTheta(t), 1e-9);
+        }
+    }
+
+    @Test
+    void staysUnderModuleSpeed() {
+        double[][] moves = {
+            // x0, y0, theta0, vx0, vy0, omega0, x goal, y goal, theta goal
+            {0, 0, 0, 0, 0, 0, 6, 3, Math.PI},
+            {0, 0, 0, 0, 0, 0, 0.3, 0.2, -2},
+            {2, 2, 1, 1, -1, 0.5, 7, 5, -1},
+            {0, 0, 0, 0, 0, 3, 5, 0, 0},
+        };
+        for (double[] move : moves) {
+            profile.plan(move[0], move[1], move[2], move[3], move[4], move[5], move[6], move[7], move[8]);
+            for (double t = 0; t < profile.getTotalTime(); t += dt) {
+                double module_speed = Math.hypot(profile.getVx(t), profile.getVy(t))
+                    + Math.abs(profile.getOmega(t)) * driveRadius;
+                double start_speed = Math.hypot(move[3], move[4]) + Math.abs(move[5]) * driveRadius;
+                assertTrue(module_speed <= Math.max(maxModuleSpeed, start_speed) + 1e-6,
+                    "module speed " + module_speed + " m/s at " + t + " s");
+            }
+        }
+    }
+
+    @Test
+    void headingTakesTheShortWayRound() {
+        profile.plan(0, 0, 3, 0, 0, 0, 0, 0, -3);
+        double end = profile.getTotalTime();
+        // -3 rad is 0.28 rad further on from 3 rad, not 6 rad back
+        assertEquals(2 * Math.PI - 3, profile.getTheta(end), 1e-6);
+        assertTrue(end < 1);
+    }
+
+    private interface Sampled {
+        double at(double t);
+    }
+
+    // first time the axis has covered all but a tiny share of its move and stays there
+    private static double arrival(double end, Sampled axis, double start, double goal) {
+        double tolerance = Math.abs(goal - start) * 1e-5;
+        double arrived = end;
+        for (double t = end; t >= 0; t -= dt) {
+            if (Math.abs(axis.at(t) - goal) > tolerance)
+                break;
+            arrived = t;
+        }
+        return arrived;
+    }
+}
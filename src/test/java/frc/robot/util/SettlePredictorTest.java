@@ -0,0 +1,71 @@
+package frc.robot.util;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+class SettlePredictorTest {
+    private static final double tolerance = 0.01;
+    private static final double trackingTolerance = 0.015;
+    private static final double lookahead = 0.06;
+
+    private static boolean willSettle(double position, double velocity, double reference, double reference_slope) {
+        return SettlePredictor.willSettle(position, velocity, reference, reference_slope, 1.0,
+            tolerance, trackingTolerance, lookahead);
+    }
+
+    @Test
+    void settledAtGoal() {
+        assertTrue(willSettle(1.0, 0, 1.0, 0));
+    }
+
+    @Test
+    void passingThroughGoalIsNotSettled() {
+        assertFalse(willSettle(1.0, 1.0, 1.0, 0));
+    }
+
+    @Test
+    void followingProfileTailSettlesEarly() {
+        // still outside the tolerance, but close behind a profile that has nearly arrived
+        assertTrue(willSettle(0.985, 0.5, 0.995, 0.3));
+    }
+
+    @Test
+    void profileStillFarAway() {
+        assertFalse(willSettle(0.5, 2, 0.5, 2));
+    }
+
+    @Test
+    void profileHeadingElsewhere() {
+        assertFalse(willSettle(0.9, -1, 0.9, -1));
+    }
+
+    @Test
+    void laggingBehindProfile() {
+        assertFalse(willSettle(0.97, 1, 0.995, 0.3));
+    }
+
+    @Test
+    void predictionLeadsArrivalByAtMostLookahead() {
+        // the mechanism tracks a trapezoid reference 20 ms late
+        ProfileAxis reference = new ProfileAxis();
+        reference.plan(0, 0, 1.0, 2, 8);
+        double lag = 0.02;
+        double dt = 0.001;
+
+        double predicted = Double.NaN;
+        double arrived = Double.NaN;
+        for (double t = 0; t < reference.getTotalTime() + 0.5; t += dt) {
+            double position = reference.getPosition(t - lag);
+            double velocity = t < lag ? 0 : reference.getVelocity(t - lag);
+            if (Double.isNaN(predicted) && willSettle(position, velocity, reference.getPosition(t), reference.getVelocity(t)))
+                predicted = t;
+            if (Double.isNaN(arrived) && Math.abs(position - 1.0) <= tolerance)
+                arrived = t;
+        }
+
+        assertFalse(Double.isNaN(predicted));
+        assertTrue(predicted < arrived, "predicted at " + predicted + " s, arrived at " + arrived + " s");
+        assertTrue(arrived - predicted <= lookahead + dt, "predicted " + (arrived - predicted) + " s early");
+    }
+}